@@ -0,0 +1,2 @@
+CREATE TABLE chat_unread_counts (chat_id text PRIMARY KEY, unread_count integer NOT NULL, FOREIGN KEY (chat_id) REFERENCES chats (id) ON DELETE CASCADE);
+INSERT INTO chat_unread_counts (chat_id, unread_count) SELECT chat_id, count(*) FROM messages WHERE read = 0 AND state = 'received' GROUP BY chat_id;
@@ -0,0 +1 @@
+CREATE TABLE user_digests (user_id text PRIMARY KEY, digest text NOT NULL, FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE);
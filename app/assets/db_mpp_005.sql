@@ -0,0 +1,6 @@
+CREATE VIRTUAL TABLE messages_fts USING fts3 (title, body);
+CREATE TRIGGER messages_fts_insert AFTER INSERT ON messages BEGIN INSERT INTO messages_fts (docid, title, body) VALUES (new.rowid, new.title, new.body); END;
+CREATE TRIGGER messages_fts_update AFTER UPDATE OF title, body ON messages BEGIN UPDATE messages_fts SET title = new.title, body = new.body WHERE docid = new.rowid; END;
+CREATE TRIGGER messages_fts_delete AFTER DELETE ON messages BEGIN DELETE FROM messages_fts WHERE docid = old.rowid; END;
+CREATE TABLE messages_fts_backfill (next_rowid integer NOT NULL, max_rowid integer NOT NULL);
+INSERT INTO messages_fts_backfill (next_rowid, max_rowid) SELECT 0, ifnull(max(rowid), 0) FROM messages;
@@ -0,0 +1,5 @@
+CREATE TRIGGER messages_unread_insert AFTER INSERT ON messages WHEN new.read = 0 AND new.state = 'received' BEGIN INSERT OR IGNORE INTO chat_unread_counts (chat_id, unread_count) VALUES (new.chat_id, 0); UPDATE chat_unread_counts SET unread_count = unread_count + 1 WHERE chat_id = new.chat_id; END;
+CREATE TRIGGER messages_unread_update AFTER UPDATE OF chat_id, read, state ON messages WHEN (old.read = 0 AND old.state = 'received') OR (new.read = 0 AND new.state = 'received') BEGIN UPDATE chat_unread_counts SET unread_count = max(0, unread_count - 1) WHERE chat_id = old.chat_id AND old.read = 0 AND old.state = 'received'; INSERT OR IGNORE INTO chat_unread_counts (chat_id, unread_count) SELECT new.chat_id, 0 WHERE new.read = 0 AND new.state = 'received'; UPDATE chat_unread_counts SET unread_count = unread_count + 1 WHERE chat_id = new.chat_id AND new.read = 0 AND new.state = 'received'; END;
+CREATE TRIGGER messages_unread_delete AFTER DELETE ON messages WHEN old.read = 0 AND old.state = 'received' BEGIN UPDATE chat_unread_counts SET unread_count = max(0, unread_count - 1) WHERE chat_id = old.chat_id; END;
+DELETE FROM chat_unread_counts;
+INSERT INTO chat_unread_counts (chat_id, unread_count) SELECT chat_id, count(*) FROM messages WHERE read = 0 AND state = 'received' GROUP BY chat_id;
@@ -29,7 +29,7 @@ final class DbConfiguration implements SQLiteOpenHelperConfiguration {
 
 	@Nonnull
 	public static final String DB_NAME = "mpp";
-	public static final int DB_VERSION = 1;
+	public static final int DB_VERSION = 6;
 
 	@Nonnull
 	@Override
@@ -34,6 +34,8 @@ import static org.solovyev.android.messenger.App.isAppium;
 @Singleton
 public class DefaultConfiguration implements Configuration {
 
+	private static final int MAX_CONCURRENT_SYNC_ACCOUNTS = 3;
+
 	@Nonnull
 	private final List<Realm> realms = new ArrayList<Realm>();
 
@@ -92,4 +94,9 @@ public class DefaultConfiguration implements Configuration {
 
 		return this.realms;
 	}
+
+	@Override
+	public int getMaxConcurrentSyncAccounts() {
+		return MAX_CONCURRENT_SYNC_ACCOUNTS;
+	}
 }
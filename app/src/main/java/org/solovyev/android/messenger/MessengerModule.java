@@ -38,6 +38,8 @@ import org.solovyev.android.messenger.chats.ChatDao;
 import org.solovyev.android.messenger.chats.ChatService;
 import org.solovyev.android.messenger.chats.DefaultChatService;
 import org.solovyev.android.messenger.chats.SqliteChatDao;
+import org.solovyev.android.messenger.http.DefaultHttpExecutor;
+import org.solovyev.android.messenger.http.HttpExecutor;
 import org.solovyev.android.messenger.messages.DefaultMessageService;
 import org.solovyev.android.messenger.messages.MessageDao;
 import org.solovyev.android.messenger.messages.MessageService;
@@ -83,6 +85,7 @@ public class MessengerModule extends AbstractModule {
 		bind(MessengerListeners.class).to(DefaultMessengerListeners.class);
 		bind(ExceptionHandler.class).to(DefaultExceptionHandler.class);
 		bind(NotificationService.class).to(DefaultNotificationService.class);
+		bind(HttpExecutor.class).to(DefaultHttpExecutor.class);
 		bind(SQLiteOpenHelperConfiguration.class).to(DbConfiguration.class);
 		bind(android.database.sqlite.SQLiteOpenHelper.class).to(SQLiteOpenHelper.class);
 
@@ -167,7 +167,7 @@ public final class SqliteDao<E extends Identifiable> extends AbstractSQLiteHelpe
 		@Nonnull
 		@Override
 		public Collection<E> retrieveData(@Nonnull Cursor cursor) {
-			return new ListMapper<E>(mapper.getCursorMapper()).convert(cursor);
+			return mapper.getListMapper().convert(cursor);
 		}
 	}
 
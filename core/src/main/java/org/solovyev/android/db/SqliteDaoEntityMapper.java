@@ -23,6 +23,7 @@ import org.solovyev.android.messenger.Identifiable;
 import org.solovyev.common.Converter;
 
 import javax.annotation.Nonnull;
+import java.util.List;
 
 public interface SqliteDaoEntityMapper<E extends Identifiable> {
 
@@ -31,4 +32,10 @@ public interface SqliteDaoEntityMapper<E extends Identifiable> {
 
 	@Nonnull
 	Converter<Cursor, E> getCursorMapper();
+
+	/**
+	 * @return mapper which converts all rows of cursor at once (might be more efficient than applying {@link #getCursorMapper()} to each row)
+	 */
+	@Nonnull
+	Converter<Cursor, List<E>> getListMapper();
 }
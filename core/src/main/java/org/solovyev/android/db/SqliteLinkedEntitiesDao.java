@@ -96,6 +96,18 @@ public class SqliteLinkedEntitiesDao<E extends Identifiable & Mergeable<E>> exte
 		return doDbQuery(getSqliteOpenHelper(), new LoadEntityIdsById(getContext(), id, getSqliteOpenHelper()));
 	}
 
+	/**
+	 * @return query of entities linked to entity which id is the only argument of the query
+	 */
+	@Nonnull
+	public static String newLinkedEntitiesQuery(@Nonnull String tableName,
+												@Nonnull String idColumnName,
+												@Nonnull String linkedTableName,
+												@Nonnull String linkedIdColumnName,
+												@Nonnull String linkedEntityIdColumnName) {
+		return "select * from " + tableName + " where " + idColumnName + " in (select " + linkedEntityIdColumnName + " from " + linkedTableName + " where " + linkedIdColumnName + " = ? )";
+	}
+
 	public final class LoadEntityIdsById extends AbstractDbQuery<List<String>> {
 
 		@Nonnull
@@ -109,7 +121,7 @@ public class SqliteLinkedEntitiesDao<E extends Identifiable & Mergeable<E>> exte
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.query(tableName, null, idColumnName + " in (select " + linkedEntityIdColumnName + " from " + linkedTableName + " where " + linkedIdColumnName + " = ? )", new String[]{id}, null, null, null);
+			return db.rawQuery(newLinkedEntitiesQuery(tableName, idColumnName, linkedTableName, linkedIdColumnName, linkedEntityIdColumnName), new String[]{id});
 		}
 
 		@Nonnull
@@ -29,6 +29,7 @@ import org.solovyev.android.Threads;
 import org.solovyev.android.messenger.accounts.AccountService;
 import org.solovyev.android.messenger.accounts.connection.AccountConnectionsService;
 import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.http.HttpExecutor;
 import org.solovyev.android.messenger.messages.MessageService;
 import org.solovyev.android.messenger.messages.UnreadMessagesCounter;
 import org.solovyev.android.messenger.notifications.NotificationService;
@@ -124,6 +125,10 @@ public final class App implements SharedPreferences.OnSharedPreferenceChangeList
 	@Nonnull
 	private ExceptionHandler exceptionHandler;
 
+	@Inject
+	@Nonnull
+	private HttpExecutor httpExecutor;
+
 	@Inject
 	@Nonnull
 	private NotificationService notificationService;
@@ -268,6 +273,11 @@ public final class App implements SharedPreferences.OnSharedPreferenceChangeList
 		return instance.exceptionHandler;
 	}
 
+	@Nonnull
+	public static HttpExecutor getHttpExecutor() {
+		return instance.httpExecutor;
+	}
+
 	@Nonnull
 	public static NotificationService getNotificationService() {
 		return instance.notificationService;
@@ -301,6 +311,10 @@ public final class App implements SharedPreferences.OnSharedPreferenceChangeList
 	public static void exit(Activity activity) {
 		getAccountConnectionsService().tryStopAll();
 
+		// pending messages and changes must not be lost
+		getChatService().shutdownQueues();
+		getUserService().shutdownQueues();
+
 		stopOngoingNotificationService(instance.application);
 
 		activity.finish();
@@ -433,6 +447,10 @@ public final class App implements SharedPreferences.OnSharedPreferenceChangeList
 		this.exceptionHandler = exceptionHandler;
 	}
 
+	public void setHttpExecutor(@Nonnull HttpExecutor httpExecutor) {
+		this.httpExecutor = httpExecutor;
+	}
+
 	public void setNotificationService(@Nonnull NotificationService notificationService) {
 		this.notificationService = notificationService;
 	}
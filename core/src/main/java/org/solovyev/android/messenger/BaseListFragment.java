@@ -433,6 +433,7 @@ public abstract class BaseListFragment<LI extends MessengerListItem>
 			listView.setOnItemClickListener(new ListViewOnItemClickListener());
 			listView.setOnItemLongClickListener(new ListViewOnItemLongClickListener());
 		}
+		adapter.setOnListItemChangedListener(new ListItemViewUpdater());
 
 		if (onListLoadedCallNeeded) {
 			onListLoaded();
@@ -648,6 +649,7 @@ public abstract class BaseListFragment<LI extends MessengerListItem>
 	@Override
 	public void onDestroyView() {
 		super.onDestroyView();
+		adapter.setOnListItemChangedListener(null);
 		onListLoadedCallNeeded = true;
 	}
 
@@ -981,6 +983,25 @@ public abstract class BaseListFragment<LI extends MessengerListItem>
 		}
 	}
 
+	private class ListItemViewUpdater implements BaseListItemAdapter.OnListItemChangedListener<LI> {
+
+		@Override
+		public void onListItemChanged(int position, @Nonnull LI listItem) {
+			final ListView listView = getListViewById();
+			if (listView != null) {
+				final int index = position + listView.getHeaderViewsCount() - listView.getFirstVisiblePosition();
+				if (index >= 0 && index < listView.getChildCount()) {
+					final View view = listView.getChildAt(index);
+					if (adapter.getView(position, view, listView) != view) {
+						// view can't be updated in place
+						adapter.notifyDataSetChanged();
+					}
+				}
+				// else: list item is not visible, its view will be bound on scroll
+			}
+		}
+	}
+
 	private class EmptyAdapterObserver extends DataSetObserver {
 		@Override
 		public void onChanged() {
@@ -17,6 +17,7 @@
 package org.solovyev.android.messenger;
 
 import android.content.Context;
+import android.database.DataSetObserver;
 import android.os.Bundle;
 import android.widget.SectionIndexer;
 import com.google.common.base.Predicate;
@@ -29,8 +30,13 @@ import org.solovyev.common.Objects;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import static org.solovyev.common.text.Strings.isEmpty;
 
 public class BaseListItemAdapter<LI extends ListItem & Identifiable> extends ListItemAdapter<LI> implements SectionIndexer {
 
@@ -42,6 +48,31 @@ public class BaseListItemAdapter<LI extends ListItem & Identifiable> extends Lis
 
 	private final boolean saveSelection;
 
+	/*
+	 * Indices of list items by id: built lazily and dropped on every structural change of the adapter (see
+	 * IndicesObserver). Changes of list items' content don't affect the indices, see notifyListItemsChanged()
+	 */
+
+	// key: list item id, value: position of the shown list item
+	@Nonnull
+	private final Map<String, Integer> positionsById = new HashMap<String, Integer>();
+
+	// number of shown list items when positionsById were built
+	private int positionsCount = -1;
+
+	// key: list item id, value: list item (shown or filtered out)
+	@Nonnull
+	private final Map<String, LI> allElementsById = new HashMap<String, LI>();
+
+	// number of all list items when allElementsById were built
+	private int allElementsCount = -1;
+
+	private boolean notifyingListItemsChanged;
+
+	// updates views of changed list items, set while adapter is shown in a list view
+	@Nullable
+	private OnListItemChangedListener<? super LI> onListItemChangedListener;
+
 	public BaseListItemAdapter(@Nonnull Context context, @Nonnull List<? extends LI> listItems) {
 		this(context, listItems, true, true);
 	}
@@ -54,6 +85,7 @@ public class BaseListItemAdapter<LI extends ListItem & Identifiable> extends Lis
 			sectionIndexer = EmptySectionIndexer.getInstance();
 		}
 		this.saveSelection = saveSelection;
+		registerDataSetObserver(new IndicesObserver());
 	}
 
 	public void onEvent(@Nonnull UserEvent event) {
@@ -99,14 +131,133 @@ public class BaseListItemAdapter<LI extends ListItem & Identifiable> extends Lis
 	}
 
 	public int getPositionById(@Nonnull String id) {
-		for (int i = 0; i < getCount(); i++) {
-			final LI item = getItem(i);
-			if (item.getId().equals(id)) {
-				return i;
+		if (positionsCount != getCount()) {
+			indexPositions();
+		}
+
+		Integer position = positionsById.get(id);
+		if (position != null && !getItem(position).getId().equals(id)) {
+			// list was changed without notification (e.g. inside doWork())
+			indexPositions();
+			position = positionsById.get(id);
+		}
+
+		return position != null ? position : -1;
+	}
+
+	private void indexPositions() {
+		positionsById.clear();
+
+		final int count = getCount();
+		for (int i = count - 1; i >= 0; i--) {
+			// first occurrence wins
+			positionsById.put(getItem(i).getId(), i);
+		}
+		positionsCount = count;
+	}
+
+	/**
+	 * @return list item with <var>id</var> among all elements of the adapter (including filtered out), null if there is no such item
+	 */
+	@Nullable
+	protected LI findInAllElementsById(@Nonnull String id) {
+		final Collection<LI> allElements = getAllElements();
+		if (allElementsCount != allElements.size()) {
+			allElementsById.clear();
+			for (LI item : allElements) {
+				// first occurrence wins
+				if (!allElementsById.containsKey(item.getId())) {
+					allElementsById.put(item.getId(), item);
+				}
 			}
+			allElementsCount = allElements.size();
 		}
+		return allElementsById.get(id);
+	}
 
-		return -1;
+	/**
+	 * Notifies observers that content of some list items has changed while neither order nor number of items have
+	 * changed => list items index is kept and next lookup by id costs O(1) (unlike after {@link #notifyDataSetChanged()})
+	 */
+	protected void notifyListItemsChanged() {
+		notifyingListItemsChanged = true;
+		try {
+			notifyDataSetChanged();
+		} finally {
+			notifyingListItemsChanged = false;
+		}
+	}
+
+	/**
+	 * Notifies that content of <var>listItem</var> has changed. If adapter is shown in a list view only view of this
+	 * list item is updated (see {@link OnListItemChangedListener}): lookup of the position costs O(1), list items which
+	 * are not visible are not touched. Otherwise observers are notified as in {@link #notifyListItemsChanged()}.
+	 */
+	protected void notifyListItemChanged(@Nonnull LI listItem) {
+		final OnListItemChangedListener<? super LI> listener = onListItemChangedListener;
+		if (listener != null) {
+			final int position = getPositionById(listItem.getId());
+			if (position >= 0) {
+				listener.onListItemChanged(position, listItem);
+			}
+			// else: list item is filtered out => nothing to update
+		} else {
+			notifyListItemsChanged();
+		}
+	}
+
+	/**
+	 * Same as {@link #notifyListItemChanged(ListItem)} for several list items, observers are notified only once
+	 */
+	protected void notifyListItemsChanged(@Nonnull Collection<? extends LI> listItems) {
+		if (onListItemChangedListener != null) {
+			for (LI listItem : listItems) {
+				notifyListItemChanged(listItem);
+			}
+		} else if (!listItems.isEmpty()) {
+			notifyListItemsChanged();
+		}
+	}
+
+	public void setOnListItemChangedListener(@Nullable OnListItemChangedListener<? super LI> listener) {
+		this.onListItemChangedListener = listener;
+	}
+
+	/**
+	 * Inserts <var>listItem</var> to the position found by binary search with {@link #getComparator()}: O(log n)
+	 * comparisons instead of the full sort done after {@link #add(Object)}. List must be sorted by the same comparator.
+	 * If there is no comparator or list is filtered list item is added as usual.
+	 */
+	protected void insertSorted(@Nonnull LI listItem) {
+		final Comparator<? super LI> comparator = getComparator();
+		if (comparator != null && isEmpty(getFilterText())) {
+			insert(listItem, getInsertPosition(listItem, comparator));
+		} else {
+			add(listItem);
+		}
+	}
+
+	/**
+	 * @return position after all list items which are not greater than <var>listItem</var> (so insertion of equal
+	 * list items keeps their order)
+	 */
+	private int getInsertPosition(@Nonnull LI listItem, @Nonnull Comparator<? super LI> comparator) {
+		int low = 0;
+		int high = getCount();
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (comparator.compare(getItem(middle), listItem) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private void invalidateIndices() {
+		positionsCount = -1;
+		allElementsCount = -1;
 	}
 
 	public static final class ListItemComparator implements Comparator<ListItem> {
@@ -148,6 +299,28 @@ public class BaseListItemAdapter<LI extends ListItem & Identifiable> extends Lis
 		return selectionHelper;
 	}
 
+	/**
+	 * Listener which updates view of one list item (instead of rebinding all visible views)
+	 */
+	public static interface OnListItemChangedListener<LI> {
+		void onListItemChanged(int position, @Nonnull LI listItem);
+	}
+
+	private final class IndicesObserver extends DataSetObserver {
+
+		@Override
+		public void onChanged() {
+			if (!notifyingListItemsChanged) {
+				invalidateIndices();
+			}
+		}
+
+		@Override
+		public void onInvalidated() {
+			invalidateIndices();
+		}
+	}
+
 	protected static <D extends EntityAware & Identifiable> void removeIf(@Nonnull final ListAdapter<? extends BaseMessengerListItem<D>> adapter, @Nonnull final Predicate<D> filter) {
 		adapter.doWork(new Runnable() {
 			@Override
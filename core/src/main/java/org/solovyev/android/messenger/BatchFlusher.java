@@ -0,0 +1,172 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Schedules flushes of a write-behind buffer (see e.g. {@link org.solovyev.android.messenger.chats.IncomingMessagesQueue}).
+ * Owner of the buffer provides flush procedure (which must be safe to run concurrently with itself) and notifies this
+ * class about changes:
+ * 1. {@link #schedule()}: flush is run <var>delayMillis</var> after the first change added to the empty buffer, delay is
+ * not prolonged by the following changes
+ * 2. {@link #execute()}: flush is run as soon as possible (e.g. buffer is full)
+ * 3. {@link #shutdown()}: pending changes are flushed on the calling thread, after that each change is flushed
+ * immediately on the thread which added it
+ * Flushes are run on own daemon thread => pending changes might be lost if process is killed before {@link #shutdown()}
+ */
+@ThreadSafe
+public final class BatchFlusher {
+
+	@Nonnull
+	private final ScheduledExecutorService executor;
+
+	private final long delayMillis;
+
+	@Nonnull
+	private final Runnable flush;
+
+	@GuardedBy("this")
+	@Nullable
+	private ScheduledFuture<?> scheduled;
+
+	@GuardedBy("this")
+	private boolean shutdown;
+
+	@Nonnull
+	private final Runnable runner = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (BatchFlusher.this) {
+				// changes added from now on need new flush
+				scheduled = null;
+			}
+			flush.run();
+		}
+	};
+
+	/**
+	 * @param name        name of flushing thread
+	 * @param delayMillis max time in milliseconds for which changes stay in the buffer
+	 * @param flush       flush procedure of the buffer
+	 */
+	public BatchFlusher(@Nonnull String name, long delayMillis, @Nonnull Runnable flush) {
+		this(newFlushExecutor(name), delayMillis, flush);
+	}
+
+	public BatchFlusher(@Nonnull ScheduledExecutorService executor, long delayMillis, @Nonnull Runnable flush) {
+		this.executor = executor;
+		this.delayMillis = delayMillis;
+		this.flush = flush;
+	}
+
+	/**
+	 * @param name name of flushing thread
+	 * @return executor with one named daemon thread
+	 */
+	@Nonnull
+	public static ScheduledExecutorService newFlushExecutor(@Nonnull String name) {
+		return newSingleThreadScheduledExecutor(new FlusherThreadFactory(name));
+	}
+
+	/**
+	 * Method schedules flush if it is not scheduled yet
+	 */
+	public void schedule() {
+		synchronized (this) {
+			if (!shutdown) {
+				if (scheduled == null) {
+					scheduled = executor.schedule(runner, delayMillis, MILLISECONDS);
+				}
+				return;
+			}
+		}
+
+		flush.run();
+	}
+
+	/**
+	 * Method runs flush as soon as possible without waiting for the scheduled one
+	 */
+	public void execute() {
+		synchronized (this) {
+			if (!shutdown) {
+				executor.execute(runner);
+				return;
+			}
+		}
+
+		flush.run();
+	}
+
+	/**
+	 * Method stops background flushing and flushes pending changes on the calling thread
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			if (!shutdown) {
+				shutdown = true;
+				if (scheduled != null) {
+					scheduled.cancel(false);
+					scheduled = null;
+				}
+				executor.shutdown();
+			}
+		}
+
+		flush.run();
+	}
+
+	public synchronized boolean isShutdown() {
+		return shutdown;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	private static final class FlusherThreadFactory implements ThreadFactory {
+
+		@Nonnull
+		private final String name;
+
+		private FlusherThreadFactory(@Nonnull String name) {
+			this.name = name;
+		}
+
+		@Nonnull
+		@Override
+		public Thread newThread(@Nonnull Runnable r) {
+			final Thread thread = new Thread(r, name + " flusher");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -29,4 +29,9 @@ public interface Configuration {
 	@Nonnull
 	Collection<Realm> getRealms();
 
+	/**
+	 * @return max number of accounts which are synchronized at the same time
+	 */
+	int getMaxConcurrentSyncAccounts();
+
 }
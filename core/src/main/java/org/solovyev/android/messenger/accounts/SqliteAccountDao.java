@@ -24,6 +24,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import java.util.Collection;
+import java.util.List;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -194,6 +195,12 @@ public class SqliteAccountDao extends AbstractSQLiteHelper implements AccountDao
 		public Converter<Cursor, Account> getCursorMapper() {
 			return cursorMapper;
 		}
+
+		@Nonnull
+		@Override
+		public Converter<Cursor, List<Account>> getListMapper() {
+			return new ListMapper<Account>(cursorMapper);
+		}
 	}
 
 	private class LoadAccount extends AbstractDbQuery<Collection<Account>> {
@@ -27,7 +27,12 @@ import static org.solovyev.android.messenger.App.getExceptionHandler;
 import static org.solovyev.android.messenger.accounts.AccountState.disabled_by_app;
 import static org.solovyev.android.messenger.accounts.connection.DefaultAccountConnections.TAG;
 
-class ConnectionRunnable implements Runnable {
+/**
+ * Starts account connection. If start fails it is retried after <var>recoverySleepMillis</var> on
+ * {@link ConnectionScheduler} (no thread is held while waiting), after {@link AccountConnection#getRetryCount()} failed
+ * retries connection is stopped and account is disabled.
+ */
+public final class ConnectionRunnable implements Runnable {
 
 	public static final long DEFAULT_RECOVERY_SLEEP_MILLIS = 3000L;
 
@@ -36,30 +41,45 @@ class ConnectionRunnable implements Runnable {
 
 	private final long recoverySleepMillis;
 
+	@Nonnull
+	private final ConnectionScheduler.Task retry;
+
+	/**
+	 * Number of done attempts. Attempts never run concurrently: retry is scheduled only after the previous attempt is
+	 * done
+	 */
+	private int attempt;
+
 	public ConnectionRunnable(@Nonnull AccountConnection connection) {
-		this(connection, DEFAULT_RECOVERY_SLEEP_MILLIS);
+		this(connection, DEFAULT_RECOVERY_SLEEP_MILLIS, ConnectionScheduler.getInstance());
 	}
 
-	ConnectionRunnable(@Nonnull AccountConnection connection, long recoverySleepMillis) {
+	ConnectionRunnable(@Nonnull AccountConnection connection, long recoverySleepMillis, @Nonnull ConnectionScheduler scheduler) {
 		this.connection = connection;
 		this.recoverySleepMillis = recoverySleepMillis;
+		this.retry = scheduler.newTask(new Runnable() {
+			@Override
+			public void run() {
+				if (!ConnectionRunnable.this.connection.isStopped()) {
+					tryStart();
+				}
+			}
+		});
 	}
 
 	@Override
 	public void run() {
-		final int retryCount = connection.getRetryCount();
-		int attempt = 0;
-
-		AccountConnectionException lastError = startConnection(attempt++);
-		while (lastError != null) {
-			if (attempt > retryCount) {
-				onMaxAttemptsReached(lastError);
-				break;
-			} else {
-				lastError = startConnectionDelayed(attempt++);
-				if (connection.isStopped()) {
-					break;
-				}
+		tryStart();
+	}
+
+	private void tryStart() {
+		final AccountConnectionException error = startConnection(attempt++);
+		if (error != null) {
+			if (attempt > connection.getRetryCount()) {
+				onMaxAttemptsReached(connection, error);
+			} else if (!connection.isStopped()) {
+				// let's wait a little bit - may be the exception was caused by connectivity problem
+				retry.schedule(recoverySleepMillis);
 			}
 		}
 	}
@@ -91,7 +111,14 @@ class ConnectionRunnable implements Runnable {
 		return e;
 	}
 
-	private void onMaxAttemptsReached(@Nullable AccountConnectionException lastError) {
+	/**
+	 * Method stops connection which failed too many times in a row and disables its account. Must be used for
+	 * failures of started connections as well as for failures on start.
+	 *
+	 * @param connection connection
+	 * @param lastError  last error
+	 */
+	public static void onMaxAttemptsReached(@Nonnull AccountConnection connection, @Nullable AccountConnectionException lastError) {
 		Log.d(TAG, "Max retry count reached => stopping...");
 
 		if (!connection.isStopped()) {
@@ -104,20 +131,4 @@ class ConnectionRunnable implements Runnable {
 			getAccountService().changeAccountState(connection.getAccount(), disabled_by_app);
 		}
 	}
-
-	private AccountConnectionException startConnectionDelayed(int attempt) {
-		AccountConnectionException exception = null;
-
-		try {
-			// let's wait a little bit - may be the exception was caused by connectivity problem
-			Thread.sleep(recoverySleepMillis);
-		} catch (InterruptedException e) {
-		} finally {
-			if (!connection.isStopped()) {
-				exception = startConnection(attempt + 1);
-			}
-		}
-
-		return exception;
-	}
 }
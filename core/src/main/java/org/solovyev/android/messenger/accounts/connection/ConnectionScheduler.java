@@ -0,0 +1,197 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.accounts.connection;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Runs background work of all account connections on a constant number of threads: one timer thread which only
+ * fires scheduled tasks and a bounded pool for blocking I/O (connecting, long polling). Connections don't park threads
+ * between checks: each check is a {@link Task} which is scheduled again after it is done and can be woken up
+ * explicitly by {@link Task#execute()}.
+ */
+public final class ConnectionScheduler {
+
+	/**
+	 * Max number of blocking connection operations (e.g. long polls) running at the same time
+	 */
+	private static final int IO_POOL_SIZE = 6;
+
+	@Nonnull
+	private static final ConnectionScheduler instance = new ConnectionScheduler(newScheduledThreadPool(1, new ConnectionThreadFactory("timer")),
+			newFixedThreadPool(IO_POOL_SIZE, new ConnectionThreadFactory("io")));
+
+	@Nonnull
+	private final ScheduledExecutorService timer;
+
+	@Nonnull
+	private final ExecutorService io;
+
+	ConnectionScheduler(@Nonnull ScheduledExecutorService timer, @Nonnull ExecutorService io) {
+		this.timer = timer;
+		this.io = io;
+	}
+
+	@Nonnull
+	public static ConnectionScheduler getInstance() {
+		return instance;
+	}
+
+	@Nonnull
+	public Executor getIoExecutor() {
+		return io;
+	}
+
+	@Nonnull
+	public Task newTask(@Nonnull Runnable runnable) {
+		return new Task(runnable);
+	}
+
+	/**
+	 * Task of one connection. Task never runs concurrently with itself: if it is woken up while running it is run once
+	 * more after it's done. Each scheduling replaces the previous one.
+	 */
+	public final class Task {
+
+		@Nonnull
+		private final Runnable runnable;
+
+		@GuardedBy("this")
+		@Nullable
+		private ScheduledFuture<?> scheduled;
+
+		@GuardedBy("this")
+		private boolean running;
+
+		@GuardedBy("this")
+		private boolean rerun;
+
+		@GuardedBy("this")
+		private boolean cancelled;
+
+		@Nonnull
+		private final Runnable runner = new Runnable() {
+			@Override
+			public void run() {
+				synchronized (Task.this) {
+					if (cancelled) {
+						return;
+					}
+
+					if (running) {
+						rerun = true;
+						return;
+					}
+					running = true;
+				}
+
+				try {
+					runnable.run();
+				} finally {
+					synchronized (Task.this) {
+						running = false;
+						if (rerun && !cancelled) {
+							rerun = false;
+							io.execute(runner);
+						}
+					}
+				}
+			}
+		};
+
+		private Task(@Nonnull Runnable runnable) {
+			this.runnable = runnable;
+		}
+
+		/**
+		 * Method runs task on I/O pool as soon as possible (replacing scheduled run)
+		 */
+		public synchronized void execute() {
+			cancelScheduled();
+			cancelled = false;
+			io.execute(runner);
+		}
+
+		/**
+		 * Method schedules task to be run on I/O pool after <var>delayMillis</var> (replacing previously scheduled run)
+		 */
+		public synchronized void schedule(long delayMillis) {
+			cancelScheduled();
+			cancelled = false;
+			scheduled = timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					io.execute(runner);
+				}
+			}, delayMillis, MILLISECONDS);
+		}
+
+		/**
+		 * Method cancels scheduled run, if task is running now it is not interrupted
+		 */
+		public synchronized void cancel() {
+			cancelScheduled();
+			cancelled = true;
+			rerun = false;
+		}
+
+		public synchronized boolean isScheduled() {
+			return scheduled != null && !scheduled.isDone();
+		}
+
+		@GuardedBy("this")
+		private void cancelScheduled() {
+			if (scheduled != null) {
+				scheduled.cancel(false);
+				scheduled = null;
+			}
+		}
+	}
+
+	private static final class ConnectionThreadFactory implements ThreadFactory {
+
+		@Nonnull
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Nonnull
+		private final String name;
+
+		private ConnectionThreadFactory(@Nonnull String name) {
+			this.name = name;
+		}
+
+		@Nonnull
+		@Override
+		public Thread newThread(@Nonnull Runnable r) {
+			final Thread thread = new Thread(r, "Account connection " + name + " thread: " + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -36,12 +36,9 @@ import javax.annotation.concurrent.GuardedBy;
 import java.util.*;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.collect.Iterables.find;
-import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 import static org.solovyev.android.messenger.App.getSyncService;
 import static org.solovyev.android.messenger.App.newTag;
@@ -81,14 +78,15 @@ public final class DefaultAccountConnections implements AccountConnections {
 	@Nonnull
 	private final Set<AccountConnection> connections = new HashSet<AccountConnection>();
 
-	@Nonnull
-	private final AtomicInteger threadCounter = new AtomicInteger(0);
-
 	@Nonnull
 	private final ScheduledExecutorService postStartExecutor = newSingleThreadScheduledExecutor();
 
+	/**
+	 * Connections are started on bounded pool: {@link AccountConnection#start()} only establishes connection, further
+	 * work (including retries of failed starts, see {@link ConnectionRunnable}) is scheduled on {@link ConnectionScheduler}
+	 */
 	@Nonnull
-	private Executor executor = newCachedThreadPool(new ConnectionThreadFactory());
+	private Executor executor = ConnectionScheduler.getInstance().getIoExecutor();
 
 	@Inject
 	public DefaultAccountConnections(@Nonnull Context context) {
@@ -292,13 +290,4 @@ public final class DefaultAccountConnections implements AccountConnections {
 			return connection != null && connection.getAccount().equals(account);
 		}
 	}
-
-	private class ConnectionThreadFactory implements ThreadFactory {
-
-		@Nonnull
-		@Override
-		public Thread newThread(@Nonnull Runnable r) {
-			return new Thread(r, "Account connection thread: " + threadCounter.incrementAndGet());
-		}
-	}
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.accounts.connection;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe histogram of latencies with fixed buckets
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * Upper bounds (exclusive) of buckets in milliseconds, last bucket contains all values >= last bound
+	 */
+	@Nonnull
+	private static final long[] BOUNDS = {100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+	@Nonnull
+	private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+
+	public void record(long millis) {
+		counts.incrementAndGet(getBucket(millis));
+	}
+
+	static int getBucket(long millis) {
+		int bucket = 0;
+		while (bucket < BOUNDS.length && millis >= BOUNDS[bucket]) {
+			bucket++;
+		}
+		return bucket;
+	}
+
+	/**
+	 * @return number of recorded values in each bucket, see {@link #getBucketName(int)}
+	 */
+	@Nonnull
+	public long[] getCounts() {
+		final long[] result = new long[counts.length()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = counts.get(i);
+		}
+		return result;
+	}
+
+	public long getCount() {
+		long result = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			result += counts.get(i);
+		}
+		return result;
+	}
+
+	@Nonnull
+	public static String getBucketName(int bucket) {
+		if (bucket < BOUNDS.length) {
+			return "<" + BOUNDS[bucket] + "ms";
+		} else {
+			return ">=" + BOUNDS[BOUNDS.length - 1] + "ms";
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder result = new StringBuilder("LatencyHistogram{");
+		boolean first = true;
+		for (int i = 0; i < counts.length(); i++) {
+			final long count = counts.get(i);
+			if (count > 0) {
+				if (!first) {
+					result.append(", ");
+				}
+				result.append(getBucketName(i)).append(": ").append(count);
+				first = false;
+			}
+		}
+		result.append('}');
+		return result.toString();
+	}
+}
@@ -22,11 +22,22 @@ import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 import java.util.concurrent.TimeUnit;
 
-import static java.lang.Thread.currentThread;
-
+import static java.lang.System.nanoTime;
+import static org.solovyev.android.messenger.accounts.connection.ConnectionRunnable.onMaxAttemptsReached;
+import static org.solovyev.android.messenger.accounts.connection.ReconnectPolicy.newDefaultReconnectPolicy;
+
+/**
+ * Connection which periodically checks that it is connected and reconnects if needed. Checks are scheduled on
+ * {@link ConnectionScheduler} (no thread is held between the checks), reconnects are governed by
+ * {@link ReconnectPolicy} (backoff with jitter between failed attempts, circuit breaker for flapping servers). Once
+ * circuit breaker is open connection keeps probing the server (open -> half open -> open) until it comes back. If
+ * breaker stays closed but more than {@link #getRetryCount()} scheduled checks fail in a row connection is stopped and
+ * account is disabled (as for failures on start, see {@link ConnectionRunnable}). Failures of on-demand reconnects
+ * (see {@link #reconnect()}) don't count as failed checks. Use {@link #continueLoop()} to check connection immediately
+ * (e.g. when connection is lost).
+ */
 public abstract class LoopedAccountConnection<A extends Account> extends BaseAccountConnection<A> {
 
 	private static final long DEFAULT_WAIT_MILLIS = 30L * 60L * 1000L;
@@ -34,61 +45,152 @@ public abstract class LoopedAccountConnection<A extends Account> extends BaseAcc
 
 	private final long waitMillis;
 
-	@Nullable
-	private volatile Thread thread;
+	@Nonnull
+	private final ConnectionScheduler.Task check;
+
+	@Nonnull
+	private final ReconnectPolicy reconnectPolicy;
+
+	/**
+	 * Number of scheduled checks failed in a row, checks are never run concurrently
+	 */
+	private volatile int failedChecks;
 
 	protected LoopedAccountConnection(@Nonnull A account, @Nonnull Context context) {
 		this(account, context, DEFAULT_WAIT_MILLIS);
 	}
 
 	protected LoopedAccountConnection(@Nonnull A account, @Nonnull Context context, long waitMillis) {
+		this(account, context, waitMillis, ConnectionScheduler.getInstance(), newDefaultReconnectPolicy());
+	}
+
+	protected LoopedAccountConnection(@Nonnull A account, @Nonnull Context context, long waitTime, @Nonnull TimeUnit waitTimeUnit) {
+		this(account, context, waitTimeUnit.toMillis(waitTime));
+	}
+
+	protected LoopedAccountConnection(@Nonnull A account,
+									  @Nonnull Context context,
+									  long waitMillis,
+									  @Nonnull ConnectionScheduler scheduler,
+									  @Nonnull ReconnectPolicy reconnectPolicy) {
 		super(account, context);
 		if (waitMillis < MIN_WAIT_MILLIS) {
 			Log.w(TAG, "Too small connection wait time may lead to fast battery drain. Wait time should be more than 5 minutes.");
 		}
 		this.waitMillis = waitMillis;
+		this.reconnectPolicy = reconnectPolicy;
+		this.check = scheduler.newTask(new Runnable() {
+			@Override
+			public void run() {
+				check();
+			}
+		});
 	}
 
-	protected LoopedAccountConnection(@Nonnull A account, @Nonnull Context context, long waitTime, @Nonnull TimeUnit waitTimeUnit) {
-		this(account, context, waitTimeUnit.toMillis(waitTime));
-	}
-
+	/**
+	 * First connection is done on the caller's thread (errors are handled by the caller, see {@link ConnectionRunnable}),
+	 * after that method returns and further checks are scheduled
+	 */
 	@Override
 	protected final void start0() throws AccountConnectionException {
-		thread = currentThread();
+		// explicit start => previous failures should not prevent connecting
+		reconnectPolicy.reset();
+		failedChecks = 0;
+		reconnect();
+		check.schedule(waitMillis);
+	}
 
-		// Try to create connection (if not exists)
-		while (!isStopped()) {
-			Log.d(TAG, "Connection is not stopped trying to reconnect");
+	private void check() {
+		if (isStopped()) {
+			return;
+		}
 
-			reconnectIfDisconnected();
-			try {
-				Thread.sleep(waitMillis);
-			} catch (InterruptedException e) {
-			}
+		Log.d(TAG, "Connection is not stopped trying to reconnect");
+
+		try {
+			reconnect();
+			failedChecks = 0;
+			check.schedule(waitMillis);
+		} catch (AccountConnectionException e) {
+			onCheckFailed(e);
+		} catch (RuntimeException e) {
+			onCheckFailed(new AccountConnectionException(getAccount().getId(), e));
+		}
+	}
+
+	private void onCheckFailed(@Nonnull AccountConnectionException e) {
+		failedChecks++;
+		Log.w(TAG, "Connection check failed " + failedChecks + " time(s) in a row: " + reconnectPolicy, e);
+
+		// open breaker limits the rate of attempts itself => account is not disabled while server is probed
+		if (reconnectPolicy.getState() == ReconnectPolicy.State.closed && failedChecks > getRetryCount()) {
+			onMaxAttemptsReached(this, e);
+		} else if (!isStopped()) {
+			check.schedule(Math.min(waitMillis, reconnectPolicy.getDelayMillis()));
+		}
+	}
+
+	/**
+	 * Method reconnects if connection is lost. If circuit breaker of {@link ReconnectPolicy} is open method fails
+	 * immediately without trying to connect.
+	 *
+	 * @throws AccountConnectionException if connection can't be established
+	 */
+	protected final void reconnect() throws AccountConnectionException {
+		if (!reconnectPolicy.tryAcquire()) {
+			throw new AccountConnectionException(getAccount().getId());
+		}
+
+		final long start = nanoTime();
+		final boolean reconnected;
+		try {
+			reconnected = reconnectIfDisconnected();
+		} catch (AccountConnectionException e) {
+			reconnectPolicy.onFailure();
+			throw e;
+		} catch (RuntimeException e) {
+			reconnectPolicy.onFailure();
+			throw e;
 		}
 
-		thread = null;
+		if (reconnected) {
+			reconnectPolicy.onSuccess(TimeUnit.NANOSECONDS.toMillis(nanoTime() - start));
+			Log.d(TAG, "Reconnected: " + reconnectPolicy);
+		} else {
+			// connection was alive
+			reconnectPolicy.reset();
+		}
 	}
 
+	/**
+	 * Method wakes up the connection: check (and reconnect if needed) is done as soon as possible (or as soon as
+	 * {@link ReconnectPolicy} allows)
+	 */
 	public void continueLoop() {
-		final Thread localThread = thread;
-		if (localThread != null) {
-			localThread.interrupt();
+		if (!isStopped()) {
+			check.execute();
 		}
 	}
 
+	@Nonnull
+	public ReconnectPolicy getReconnectPolicy() {
+		return reconnectPolicy;
+	}
+
 	@Override
 	protected final void stop0() {
 		try {
 			disconnect();
 		} finally {
-			// finish loop
-			continueLoop();
+			check.cancel();
 		}
 	}
 
 	protected abstract void disconnect();
 
-	protected abstract void reconnectIfDisconnected() throws AccountConnectionException;
+	/**
+	 * @return true if connection was established, false if connection was alive
+	 * @throws AccountConnectionException if connection can't be established
+	 */
+	protected abstract boolean reconnectIfDisconnected() throws AccountConnectionException;
 }
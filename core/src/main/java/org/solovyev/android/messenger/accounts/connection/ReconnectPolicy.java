@@ -0,0 +1,215 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.accounts.connection;
+
+import com.google.common.base.Ticker;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Reconnect policy of one account connection:
+ * <ul>
+ * <li>failed attempts are retried with exponential backoff and jitter</li>
+ * <li>after <var>failureThreshold</var> consecutive failures circuit breaker opens: no attempts are allowed for
+ * <var>openMillis</var>, after that one probe attempt is allowed (half open state) which either closes the breaker
+ * or opens it again</li>
+ * <li>latencies of successful reconnects are collected in {@link LatencyHistogram}</li>
+ * </ul>
+ */
+public final class ReconnectPolicy {
+
+	public static enum State {
+		closed,
+		open,
+		half_open
+	}
+
+	@Nonnull
+	private final Ticker ticker;
+
+	@Nonnull
+	private final Random random;
+
+	private final long minDelayMillis;
+
+	private final long maxDelayMillis;
+
+	private final int failureThreshold;
+
+	private final long openMillis;
+
+	@Nonnull
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	@GuardedBy("this")
+	@Nonnull
+	private State state = State.closed;
+
+	@GuardedBy("this")
+	private int failures;
+
+	/**
+	 * Time (in ticker's nanoseconds) when breaker was opened
+	 */
+	@GuardedBy("this")
+	private long openedAt;
+
+	@GuardedBy("this")
+	private int opens;
+
+	ReconnectPolicy(long minDelayMillis, long maxDelayMillis, int failureThreshold, long openMillis, @Nonnull Ticker ticker, @Nonnull Random random) {
+		this.minDelayMillis = minDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+		this.ticker = ticker;
+		this.random = random;
+	}
+
+	@Nonnull
+	public static ReconnectPolicy newReconnectPolicy(long minDelayMillis, long maxDelayMillis, int failureThreshold, long openMillis) {
+		return new ReconnectPolicy(minDelayMillis, maxDelayMillis, failureThreshold, openMillis, Ticker.systemTicker(), new Random());
+	}
+
+	/**
+	 * Policy for connections to remote servers: 2 seconds .. 2 minutes backoff, breaker opens for 5 minutes after 5
+	 * failures in a row
+	 */
+	@Nonnull
+	public static ReconnectPolicy newDefaultReconnectPolicy() {
+		return newReconnectPolicy(SECONDS.toMillis(2), MINUTES.toMillis(2), 5, MINUTES.toMillis(5));
+	}
+
+	/**
+	 * @return true if reconnect attempt can be done now. In half open state only one attempt is allowed until its
+	 * result is reported.
+	 */
+	public synchronized boolean tryAcquire() {
+		switch (state) {
+			case closed:
+				return true;
+			case open:
+				if (getOpenRemainingMillis() <= 0) {
+					state = State.half_open;
+					return true;
+				}
+				return false;
+			default:
+				// probe is in progress
+				return false;
+		}
+	}
+
+	/**
+	 * @return delay before next attempt: 0 if there were no failures, backoff delay if breaker is closed and remaining
+	 * time if breaker is open
+	 */
+	public synchronized long getDelayMillis() {
+		switch (state) {
+			case closed:
+				return failures == 0 ? 0 : getBackoffMillis(failures);
+			case open:
+				return Math.max(0, getOpenRemainingMillis());
+			default:
+				return getBackoffMillis(1);
+		}
+	}
+
+	public synchronized void onSuccess(long latencyMillis) {
+		latencies.record(latencyMillis);
+		state = State.closed;
+		failures = 0;
+	}
+
+	public synchronized void onFailure() {
+		failures++;
+		if (state == State.half_open || failures >= failureThreshold) {
+			state = State.open;
+			openedAt = ticker.read();
+			opens++;
+		}
+	}
+
+	/**
+	 * Method closes the breaker and forgets failures (e.g. if connection is explicitly restarted)
+	 */
+	public synchronized void reset() {
+		state = State.closed;
+		failures = 0;
+	}
+
+	@Nonnull
+	public synchronized State getState() {
+		return state;
+	}
+
+	public synchronized int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @param retryCount max number of failed retries
+	 * @return true if there were more than <var>retryCount</var> failures in a row => connection should give up
+	 */
+	public synchronized boolean isExhausted(int retryCount) {
+		return failures > retryCount;
+	}
+
+	/**
+	 * @return how many times breaker was opened
+	 */
+	public synchronized int getOpens() {
+		return opens;
+	}
+
+	@Nonnull
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	@GuardedBy("this")
+	private long getOpenRemainingMillis() {
+		return openMillis - NANOSECONDS.toMillis(ticker.read() - openedAt);
+	}
+
+	/**
+	 * @return random value in [delay / 2, delay], where delay = min(maxDelayMillis, minDelayMillis * 2 ^ (failures - 1))
+	 */
+	@GuardedBy("this")
+	private long getBackoffMillis(int failures) {
+		final int exponent = Math.min(Math.max(failures - 1, 0), 30);
+		final long delay = Math.min(maxDelayMillis, minDelayMillis << exponent);
+		return delay / 2 + (long) (random.nextDouble() * (delay - delay / 2));
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ReconnectPolicy{" +
+				"state=" + state +
+				", failures=" + failures +
+				", opens=" + opens +
+				", next attempt in " + getDelayMillis() + "ms" +
+				", latencies=" + latencies +
+				'}';
+	}
+}
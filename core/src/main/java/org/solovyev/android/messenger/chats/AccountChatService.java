@@ -37,6 +37,15 @@ public interface AccountChatService {
 	@Nonnull
 	List<Message> getOlderMessagesForChat(@Nonnull String accountChatId, @Nonnull Integer offset) throws AccountConnectionException;
 
+	/**
+	 * Method imports the whole history of the chat. Import might be done in several calls: each call continues from
+	 * where the previous one stopped. Realms which don't keep history on server do nothing.
+	 *
+	 * @param accountChatId account chat id
+	 * @return number of saved messages
+	 */
+	int backfillMessagesForChat(@Nonnull String accountChatId) throws AccountConnectionException;
+
 	@Nonnull
 	List<AccountChat> getChats() throws AccountConnectionException;
 
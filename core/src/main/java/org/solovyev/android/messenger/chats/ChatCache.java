@@ -16,31 +16,21 @@
 
 package org.solovyev.android.messenger.chats;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
 
-import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.entities.EntityCache;
+import org.solovyev.android.messenger.users.UserEvent;
 
-class ChatCache {
+import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
 
-	// key: chat id, value: chat
-	@Nonnull
-	private final Map<Entity, Chat> chats = new HashMap<Entity, Chat>();
+@ThreadSafe
+class ChatCache extends EntityCache<Chat> {
 
-	public void put(@Nonnull Chat chat) {
-		synchronized (chats) {
-			chats.put(chat.getEntity(), chat);
-		}
-	}
+	private static final int MAX_SIZE = 256;
 
-	@Nullable
-	public Chat get(@Nonnull Entity chat) {
-		synchronized (chats) {
-			return chats.get(chat);
-		}
+	ChatCache() {
+		super(MAX_SIZE);
 	}
 
 	public void onEvent(@Nonnull ChatEvent event) {
@@ -50,4 +40,12 @@ class ChatCache {
 				break;
 		}
 	}
+
+	public void onEvent(@Nonnull UserEvent event) {
+		switch (event.getType()) {
+			case chat_removed:
+				remove(newEntityFromEntityId(event.getDataAsChatId()));
+				break;
+		}
+	}
 }
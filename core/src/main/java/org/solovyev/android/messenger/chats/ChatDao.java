@@ -73,4 +73,17 @@ public interface ChatDao extends LinkedEntitiesDao<Chat>, Dao<Chat> {
 
 	@Nonnull
 	List<String> readLastChatIds(@Nullable String userId, boolean privateChat, int count);
+
+	/**
+	 * Method loads chats with messages ordered by the send time of the last message (newest first). Each chat is
+	 * loaded together with the id of its last message and the number of unread messages, so the whole list is loaded
+	 * with a constant number of queries.
+	 *
+	 * @param userId      id of user for which chats should be loaded, if null chats of all enabled accounts are loaded
+	 * @param privateChat true if only private chats should be loaded
+	 * @param count       max number of chats
+	 * @return list of last chats
+	 */
+	@Nonnull
+	List<LastChat> readLastChats(@Nullable String userId, boolean privateChat, int count);
 }
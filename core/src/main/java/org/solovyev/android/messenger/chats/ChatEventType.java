@@ -60,6 +60,14 @@ public enum ChatEventType {
 		}
 	},
 
+	// data == list of changed messages for chat (read status and/or state of messages have been changed)
+	messages_changed {
+		@Override
+		protected void checkData(@Nullable Object data) {
+			assert data instanceof List;
+		}
+	},
+
 	// data == new last message for chat
 	last_message_changed {
 		@Override
@@ -97,6 +105,14 @@ public enum ChatEventType {
 		protected void checkData(@Nullable Object data) {
 			assert data instanceof Message;
 		}
+	},
+
+	// data == list of messages which have been read in chat
+	messages_read {
+		@Override
+		protected void checkData(@Nullable Object data) {
+			assert data instanceof List;
+		}
 	};
 
 	public final boolean isEvent(@Nonnull ChatEventType chatEventType, @Nonnull Chat eventChat, @Nonnull Chat chat) {
@@ -25,6 +25,7 @@ import javax.annotation.Nonnull;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
+import org.solovyev.android.messenger.db.PropertiesCursorMapper;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.entities.EntityMapper;
 import org.solovyev.android.properties.AProperty;
@@ -35,7 +36,7 @@ import org.solovyev.common.Converter;
  * Date: 6/9/12
  * Time: 9:42 PM
  */
-public class ChatMapper implements Converter<Cursor, Chat> {
+public class ChatMapper implements Converter<Cursor, Chat>, PropertiesCursorMapper<Chat> {
 
 	@Nonnull
 	private final ChatDao chatDao;
@@ -47,14 +48,19 @@ public class ChatMapper implements Converter<Cursor, Chat> {
 	@Nonnull
 	@Override
 	public Chat convert(@Nonnull Cursor c) {
+		final String chatId = c.getString(0);
+		return convert(c, chatDao.readPropertiesById(chatId));
+	}
+
+	@Nonnull
+	@Override
+	public Chat convert(@Nonnull Cursor c, @Nonnull List<AProperty> properties) {
 		final Entity chat = EntityMapper.newInstanceFor(0).convert(c);
 
 		final DateTimeFormatter dateTimeFormatter = ISODateTimeFormat.basicDateTime();
 		final String lastMessagesSyncDateString = c.getString(3);
 		final DateTime lastMessagesSyncDate = lastMessagesSyncDateString == null ? null : dateTimeFormatter.parseDateTime(lastMessagesSyncDateString);
 
-		final List<AProperty> properties = chatDao.readPropertiesById(chat.getEntityId());
-
 		return Chats.newChat(chat, properties, lastMessagesSyncDate);
 	}
 }
\ No newline at end of file
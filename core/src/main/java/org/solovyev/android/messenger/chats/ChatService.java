@@ -130,6 +130,17 @@ public interface ChatService extends JEventListeners<JEventListener<ChatEvent>,
 
 	void saveMessages(@Nonnull Entity accountChat, @Nonnull Collection<? extends Message> messages, boolean updateChatSyncDate);
 
+	/**
+	 * Method saves messages received in realtime: messages are saved asynchronously in batches, see {@link IncomingMessagesQueue}
+	 *
+	 * @param accountChat chat
+	 * @param messages    received messages
+	 */
+	void receiveMessages(@Nonnull Entity accountChat, @Nonnull Collection<? extends Message> messages);
+
+	@Nonnull
+	IncomingMessagesQueue getIncomingMessagesQueue();
+
 	void markMessageRead(@Nonnull Chat chat, @Nonnull Message message) throws AccountConnectionException;
 
 	void removeChat(@Nonnull Entity chat);
@@ -143,6 +154,19 @@ public interface ChatService extends JEventListeners<JEventListener<ChatEvent>,
 
 	void updateMessageState(@Nonnull Message message);
 
+	/**
+	 * Read statuses and states of messages (see {@link #markMessageRead(Chat, Message)}, {@link #updateMessageState(Message)})
+	 * are written to the database in batches with a small delay. This method writes all pending changes immediately.
+	 */
+	void flushMessageChanges();
+
+	/**
+	 * Method saves all pending incoming messages (see {@link #receiveMessages(Entity, Collection)}) and message changes
+	 * (see {@link #flushMessageChanges()}) and stops saving them in background: from now on they are saved immediately.
+	 * Must be called on application exit.
+	 */
+	void shutdownQueues();
+
 	/*
 	**********************************************************************
 	*
@@ -238,6 +262,17 @@ public interface ChatService extends JEventListeners<JEventListener<ChatEvent>,
 
 	void syncChat(@Nonnull Entity chat, @Nonnull Entity user) throws AccountException;
 
+	/**
+	 * Method imports the whole history of all chats of the account (see {@link AccountChatService#backfillMessagesForChat(String)}).
+	 * NOTE: might take a long time
+	 *
+	 * Chats which history can't be loaded are skipped, exception is thrown only if history of all chats failed to load
+	 *
+	 * @param account account for which history should be imported
+	 * @return number of saved messages
+	 */
+	int backfillMessages(@Nonnull Account<?> account) throws AccountException;
+
 	/**
 	 * Method merges specified <var>chats</var> with already saved in the storage.
 	 *
@@ -136,6 +136,12 @@ public class DefaultChatService implements ChatService {
 	@Nonnull
 	private final Object lock;
 
+	@Nonnull
+	private MessageChangesQueue messageChanges;
+
+	@Nonnull
+	private IncomingMessagesQueue incomingMessages;
+
 	@Inject
 	public DefaultChatService(@Nonnull PersistenceLock lock, @Nonnull Executor eventExecutor) {
 		this.listeners = Listeners.newEventListenersBuilderFor(ChatEvent.class).withHardReferences().withExecutor(eventExecutor).create();
@@ -146,6 +152,9 @@ public class DefaultChatService implements ChatService {
 	@Override
 	public void init() {
 		this.lastMessages = new LastMessages(this, messageService);
+		this.messageChanges = new MessageChangesQueue(this, messageDao, lock);
+		this.incomingMessages = new IncomingMessagesQueue(this);
+		this.userService.addListener(new UserEventListener());
 	}
 
 	@Nonnull
@@ -281,6 +290,9 @@ public class DefaultChatService implements ChatService {
 	@Nonnull
 	@Override
 	public Map<Entity, Integer> getUnreadChats() {
+		// pending read statuses and states should be taken into account
+		flushMessageChanges();
+
 		synchronized (lock) {
 			return chatDao.getUnreadChats();
 		}
@@ -384,7 +396,8 @@ public class DefaultChatService implements ChatService {
 			}
 
 			if (result != null) {
-				cache.put(result);
+				// chat might be changed while it was loaded => don't override it
+				cache.putIfAbsent(result);
 			}
 		}
 
@@ -444,6 +457,32 @@ public class DefaultChatService implements ChatService {
 
 	}
 
+	@Override
+	public int backfillMessages(@Nonnull Account<?> account) throws AccountException {
+		final AccountChatService accountChatService = account.getAccountChatService();
+
+		final List<Chat> chats = userService.getChats(account.getUser().getEntity());
+
+		int result = 0;
+		AccountConnectionException lastError = null;
+		int failedCount = 0;
+		for (Chat chat : chats) {
+			try {
+				result += accountChatService.backfillMessagesForChat(chat.getEntity().getAccountEntityId());
+			} catch (AccountConnectionException e) {
+				// one broken chat (e.g. removed on the server) must not stop back-filling of other chats
+				Log.w(TAG, "History of chat " + chat.getId() + " was not back-filled", e);
+				lastError = e;
+				failedCount++;
+			}
+		}
+
+		if (lastError != null && failedCount == chats.size()) {
+			throw lastError;
+		}
+		return result;
+	}
+
 	@Override
 	public void saveMessages(@Nonnull Entity chat, @Nonnull Collection<? extends Message> messages) {
 		saveMessages(chat, messages, false);
@@ -460,6 +499,17 @@ public class DefaultChatService implements ChatService {
 		}
 	}
 
+	@Override
+	public void receiveMessages(@Nonnull Entity chat, @Nonnull Collection<? extends Message> messages) {
+		incomingMessages.add(chat, messages);
+	}
+
+	@Nonnull
+	@Override
+	public IncomingMessagesQueue getIncomingMessagesQueue() {
+		return incomingMessages;
+	}
+
 	private void saveMessages(@Nonnull Chat chat, @Nonnull Collection<? extends Message> messages, boolean updateMessagesSyncDate) {
 		final MutableAccountChat accountChat = newEmptyAccountChat(chat, getParticipants(chat.getEntity()));
 
@@ -507,15 +557,8 @@ public class DefaultChatService implements ChatService {
 		final Account account = getAccountByEntity(message.getEntity());
 
 		if (account.getAccountChatService().markMessageRead(message)) {
-			final boolean changed;
-			synchronized (lock) {
-				changed = messageDao.changeReadStatus(message.getId(), true);
-			}
-
-			if (changed) {
-				fireEvent(ChatEventType.message_changed.newEvent(chat, message));
-				fireEvent(ChatEventType.message_read.newEvent(chat, message));
-			}
+			// change is written later together with other changes, see MessageChangesQueue
+			messageChanges.addReadChange(chat, message);
 		}
 	}
 
@@ -538,28 +581,33 @@ public class DefaultChatService implements ChatService {
 	private void updateMessageState(@Nonnull Chat chat, @Nonnull Message message, @Nonnull MessageState newState) {
 		message = message.cloneWithNewState(newState);
 
-		final boolean changed;
-		synchronized (lock) {
-			changed = messageDao.changeMessageState(message.getId(), message.getState());
-		}
+		messageChanges.addStateChange(chat, message);
+	}
 
-		if (changed) {
-			fireEvent(ChatEventType.message_state_changed.newEvent(chat, message));
-		}
+	@Override
+	public void flushMessageChanges() {
+		messageChanges.flush();
+	}
+
+	@Override
+	public void shutdownQueues() {
+		// incoming messages first: saving of them might change messages
+		incomingMessages.shutdown();
+		messageChanges.shutdown();
 	}
 
 	@Nonnull
 	@Override
 	public List<UiChat> getLastUiChats(@Nonnull User user, @Nullable String query, int count) {
-		final List<String> chatIds = chatDao.readLastChatIds(user.getId(), false, isEmpty(query) ? count : Integer.MAX_VALUE);
-		return toUiChats(user, query, chatIds);
+		final List<LastChat> lastChats = chatDao.readLastChats(user.getId(), false, isEmpty(query) ? count : Integer.MAX_VALUE);
+		return toUiChats(user, query, lastChats);
 	}
 
 	@Nonnull
 	@Override
 	public List<UiChat> getLastUiChats(@Nullable String query, int count) {
-		final List<String> chatIds = chatDao.readLastChatIds(null, false, isEmpty(query) ? count : Integer.MAX_VALUE);
-		return toUiChats(null, query, chatIds);
+		final List<LastChat> lastChats = chatDao.readLastChats(null, false, isEmpty(query) ? count : Integer.MAX_VALUE);
+		return toUiChats(null, query, lastChats);
 	}
 
 	@Nonnull
@@ -575,26 +623,35 @@ public class DefaultChatService implements ChatService {
 	}
 
 	@Nonnull
-	private List<UiChat> toUiChats(@Nullable User user, @Nullable String query, @Nonnull List<String> chatIds) {
-		final List<UiChat> result = new ArrayList<UiChat>(chatIds.size());
+	private List<UiChat> toUiChats(@Nullable User user, @Nullable String query, @Nonnull List<LastChat> lastChats) {
+		final List<UiChat> result = new ArrayList<UiChat>(lastChats.size());
 
 		final PrefixFilter<String> chatFilter = new PrefixFilter<String>(query == null ? "" : query);
 
-		for (String chatId : chatIds) {
-			final Chat chat = getChatById(newEntityFromEntityId(chatId));
-			if (chat != null) {
-				final Message lastMessage = getLastMessage(chat.getEntity());
-				if (lastMessage != null) {
-					final UiChat uiChat;
-					if (user != null) {
-						uiChat = loadUiChat(user, chat);
-					} else {
-						uiChat = loadUiChat(chat);
-					}
-
-					if (chatFilter.apply(uiChat.getDisplayName())) {
-						result.add(uiChat);
-					}
+		// all last messages are loaded at once
+		final List<String> lastMessageIds = new ArrayList<String>(lastChats.size());
+		for (LastChat lastChat : lastChats) {
+			lastMessageIds.add(lastChat.getLastMessageId());
+		}
+
+		final Map<String, Message> lastMessages = new HashMap<String, Message>(lastChats.size());
+		for (Message lastMessage : messageDao.readMessagesByIds(lastMessageIds)) {
+			lastMessages.put(lastMessage.getId(), lastMessage);
+		}
+
+		for (LastChat lastChat : lastChats) {
+			final Message lastMessage = lastMessages.get(lastChat.getLastMessageId());
+			if (lastMessage != null) {
+				final Chat chat = lastChat.getChat();
+				final UiChat uiChat;
+				if (user != null) {
+					uiChat = loadUiChat(user, chat, lastMessage, lastChat.getUnreadMessagesCount());
+				} else {
+					uiChat = loadUiChat(chat, lastMessage, lastChat.getUnreadMessagesCount());
+				}
+
+				if (chatFilter.apply(uiChat.getDisplayName())) {
+					result.add(uiChat);
 				}
 			}
 		}
@@ -610,6 +667,7 @@ public class DefaultChatService implements ChatService {
 			final Message lastMessage = getLastMessage(chat.getEntity());
 			if (lastMessage == null) {
 				chatDao.delete(user, chat);
+				cache.remove(chat.getEntity());
 			}
 		}
 	}
@@ -617,6 +675,7 @@ public class DefaultChatService implements ChatService {
 	@Override
 	public void removeChat(@Nonnull Entity chat) {
 		chatDao.deleteById(chat.getEntityId());
+		cache.remove(chat);
 	}
 
 	@Override
@@ -638,7 +697,7 @@ public class DefaultChatService implements ChatService {
 	@Nonnull
 	@Override
 	public List<Message> syncOlderMessagesForChat(@Nonnull Entity chat, @Nonnull Entity user) throws AccountException {
-		final Integer offset = messageService.getMessages(chat).size();
+		final Integer offset = messageService.getMessagesCount(chat);
 
 		final List<Message> messages = getAccountByEntity(user).getAccountChatService().getOlderMessagesForChat(chat.getAccountEntityId(), offset);
 		saveMessages(chat, messages);
@@ -817,4 +876,16 @@ public class DefaultChatService implements ChatService {
 			lastMessages.onEvent(event);
 		}
 	}
+
+	private final class UserEventListener extends AbstractJEventListener<UserEvent> {
+
+		private UserEventListener() {
+			super(UserEvent.class);
+		}
+
+		@Override
+		public void onEvent(@Nonnull UserEvent event) {
+			cache.onEvent(event);
+		}
+	}
 }
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.chats;
+
+import android.util.Log;
+import org.solovyev.android.messenger.BatchFlusher;
+import org.solovyev.android.messenger.accounts.connection.LatencyHistogram;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.messages.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Ingestion queue for messages received in realtime (from any realm): messages are collected for {@link #FLUSH_DELAY} ms
+ * (or until {@link #FLUSH_THRESHOLD} messages are pending), grouped by chat and each group is saved by one call of
+ * {@link ChatService#saveMessages(Entity, Collection)} (one transaction, one {@link ChatEventType#messages_added} event).
+ * If the group can't be saved its messages are saved one by one, so one bad message doesn't drop the whole group.
+ * If consumers can't keep up and {@link #CAPACITY} messages are pending the producer saves the messages itself
+ * (backpressure), so the queue never grows unbounded and latency of a single message is bounded by the flush delay plus
+ * the time of one flush.
+ */
+@ThreadSafe
+public final class IncomingMessagesQueue {
+
+	static final long FLUSH_DELAY = 100;
+
+	static final int FLUSH_THRESHOLD = 200;
+
+	static final int CAPACITY = 2000;
+
+	@Nonnull
+	private static final String TAG = "IncomingMessagesQueue";
+
+	@Nonnull
+	private final ChatService chatService;
+
+	// key: chat
+	@GuardedBy("this")
+	@Nonnull
+	private Map<Entity, PendingMessages> pending = new LinkedHashMap<Entity, PendingMessages>();
+
+	@GuardedBy("this")
+	private int pendingCount;
+
+	// flushes must be done one by one (otherwise messages of one chat might be saved out of order)
+	@Nonnull
+	private final Object flushLock = new Object();
+
+	@Nonnull
+	private final BatchFlusher flusher;
+
+	/*
+	**********************************************************************
+	*
+	*                           COUNTERS
+	*
+	**********************************************************************
+	*/
+
+	@Nonnull
+	private final AtomicLong receivedCount = new AtomicLong();
+
+	@Nonnull
+	private final AtomicLong savedCount = new AtomicLong();
+
+	@Nonnull
+	private final AtomicLong failedCount = new AtomicLong();
+
+	@Nonnull
+	private final AtomicLong flushesCount = new AtomicLong();
+
+	@Nonnull
+	private final AtomicLong backpressureCount = new AtomicLong();
+
+	// time between receiving and saving of a message
+	@Nonnull
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	IncomingMessagesQueue(@Nonnull ChatService chatService) {
+		this(chatService, FLUSH_DELAY);
+	}
+
+	IncomingMessagesQueue(@Nonnull ChatService chatService, long flushDelay) {
+		this.chatService = chatService;
+		this.flusher = new BatchFlusher("Incoming messages", flushDelay, new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		});
+	}
+
+	void add(@Nonnull Entity chat, @Nonnull Collection<? extends Message> messages) {
+		if (messages.isEmpty()) {
+			return;
+		}
+
+		final long now = currentTimeMillis();
+		final boolean first;
+		final int count;
+		synchronized (this) {
+			first = pendingCount == 0;
+
+			PendingMessages chatMessages = pending.get(chat);
+			if (chatMessages == null) {
+				chatMessages = new PendingMessages();
+				pending.put(chat, chatMessages);
+			}
+			chatMessages.add(messages, now);
+
+			pendingCount += messages.size();
+			count = pendingCount;
+		}
+		receivedCount.addAndGet(messages.size());
+
+		if (count >= CAPACITY) {
+			// backpressure: producer saves messages on its own thread instead of growing the queue
+			backpressureCount.incrementAndGet();
+			flush();
+		} else if (count >= FLUSH_THRESHOLD && count - messages.size() < FLUSH_THRESHOLD) {
+			flusher.execute();
+		} else if (first) {
+			flusher.schedule();
+		}
+	}
+
+	/**
+	 * Method saves all pending messages and fires events. Method blocks until messages are saved.
+	 */
+	void flush() {
+		synchronized (flushLock) {
+			final Map<Entity, PendingMessages> flushed;
+			synchronized (this) {
+				if (pending.isEmpty()) {
+					return;
+				}
+				flushed = pending;
+				pending = new LinkedHashMap<Entity, PendingMessages>();
+				pendingCount = 0;
+			}
+
+			flushesCount.incrementAndGet();
+			for (Map.Entry<Entity, PendingMessages> entry : flushed.entrySet()) {
+				final Entity chat = entry.getKey();
+				final PendingMessages chatMessages = entry.getValue();
+				try {
+					chatService.saveMessages(chat, chatMessages.messages);
+					savedCount.addAndGet(chatMessages.messages.size());
+				} catch (RuntimeException e) {
+					Log.w(TAG, "Messages of " + chat + " can't be saved together, saving one by one", e);
+					saveOneByOne(chat, chatMessages.messages);
+				}
+
+				final long now = currentTimeMillis();
+				for (Long receivedTime : chatMessages.receivedTimes) {
+					latencies.record(now - receivedTime);
+				}
+			}
+		}
+	}
+
+	private void saveOneByOne(@Nonnull Entity chat, @Nonnull List<Message> messages) {
+		final List<String> droppedIds = new ArrayList<String>();
+		RuntimeException lastError = null;
+		for (Message message : messages) {
+			try {
+				chatService.saveMessages(chat, Collections.singletonList(message));
+				savedCount.incrementAndGet();
+			} catch (RuntimeException e) {
+				droppedIds.add(message.getId());
+				lastError = e;
+			}
+		}
+
+		if (lastError != null) {
+			failedCount.addAndGet(droppedIds.size());
+			Log.e(TAG, "Messages of " + chat + " were dropped: " + droppedIds, lastError);
+		}
+	}
+
+	/**
+	 * Method saves all pending messages and stops background saving: messages added after this call are saved
+	 * immediately
+	 */
+	void shutdown() {
+		flusher.shutdown();
+	}
+
+	public synchronized int getPendingCount() {
+		return pendingCount;
+	}
+
+	public long getReceivedCount() {
+		return receivedCount.get();
+	}
+
+	public long getSavedCount() {
+		return savedCount.get();
+	}
+
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public long getFlushesCount() {
+		return flushesCount.get();
+	}
+
+	/**
+	 * @return number of times producers had to save messages on their own because the queue was full
+	 */
+	public long getBackpressureCount() {
+		return backpressureCount.get();
+	}
+
+	@Nonnull
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	@Override
+	public String toString() {
+		return "IncomingMessagesQueue{" +
+				"pending=" + getPendingCount() +
+				", received=" + getReceivedCount() +
+				", saved=" + getSavedCount() +
+				", failed=" + getFailedCount() +
+				", flushes=" + getFlushesCount() +
+				", backpressure=" + getBackpressureCount() +
+				", latencies=" + latencies +
+				'}';
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	private static final class PendingMessages {
+
+		@Nonnull
+		private final List<Message> messages = new ArrayList<Message>();
+
+		@Nonnull
+		private final List<Long> receivedTimes = new ArrayList<Long>();
+
+		private void add(@Nonnull Collection<? extends Message> messages, long receivedTime) {
+			for (Message message : messages) {
+				this.messages.add(message);
+				this.receivedTimes.add(receivedTime);
+			}
+		}
+	}
+}
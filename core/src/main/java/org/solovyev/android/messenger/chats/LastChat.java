@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.chats;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Chat loaded together with the id of its last message and the number of unread messages (see {@link ChatDao#readLastChats(String, boolean, int)})
+ */
+public final class LastChat {
+
+	@Nonnull
+	private final Chat chat;
+
+	@Nonnull
+	private final String lastMessageId;
+
+	private final int unreadMessagesCount;
+
+	private LastChat(@Nonnull Chat chat, @Nonnull String lastMessageId, int unreadMessagesCount) {
+		this.chat = chat;
+		this.lastMessageId = lastMessageId;
+		this.unreadMessagesCount = unreadMessagesCount;
+	}
+
+	@Nonnull
+	static LastChat newLastChat(@Nonnull Chat chat, @Nonnull String lastMessageId, int unreadMessagesCount) {
+		return new LastChat(chat, lastMessageId, unreadMessagesCount);
+	}
+
+	@Nonnull
+	public Chat getChat() {
+		return chat;
+	}
+
+	@Nonnull
+	public String getLastMessageId() {
+		return lastMessageId;
+	}
+
+	public int getUnreadMessagesCount() {
+		return unreadMessagesCount;
+	}
+}
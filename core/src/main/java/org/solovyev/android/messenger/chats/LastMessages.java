@@ -75,12 +75,13 @@ class LastMessages {
 				break;
 				case message_changed: {
 					if (data instanceof Message) {
-						final Message message = (Message) data;
-						final Message messageFromCache = lastMessagesCache.get(chat.getEntity());
-						if (messageFromCache == null || messageFromCache.equals(message)) {
-							lastMessagesCache.put(chat.getEntity(), message);
-							changedLastMessages.put(chat, message);
-						}
+						tryUpdateLastMessage(chat, changedLastMessages, (Message) data);
+					}
+				}
+				break;
+				case messages_changed: {
+					for (Message message : event.getDataAsMessages()) {
+						tryUpdateLastMessage(chat, changedLastMessages, message);
 					}
 				}
 				break;
@@ -92,6 +93,16 @@ class LastMessages {
 		}
 	}
 
+	private void tryUpdateLastMessage(@Nonnull Chat chat,
+									  @Nonnull Map<Chat, Message> changedLastMessages,
+									  @Nonnull Message message) {
+		final Message messageFromCache = lastMessagesCache.get(chat.getEntity());
+		if (messageFromCache == null || messageFromCache.equals(message)) {
+			lastMessagesCache.put(chat.getEntity(), message);
+			changedLastMessages.put(chat, message);
+		}
+	}
+
 	private void tryPutNewLastMessage(@Nonnull Chat chat,
 									  @Nonnull Map<Chat, Message> changedLastMessages,
 									  @Nullable Message message) {
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.messenger.chats;
+
+import org.solovyev.android.messenger.BatchFlusher;
+import org.solovyev.android.messenger.messages.ChangedMessageIds;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.MessageDao;
+import org.solovyev.android.messenger.messages.MessageState;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Write-behind queue for read statuses and states of messages: changes are collected for {@link #FLUSH_DELAY} ms,
+ * changes of the same message are coalesced and then all changes are written in one transaction. One
+ * {@link ChatEventType#messages_changed} (and one {@link ChatEventType#messages_read}) event is fired per chat.
+ * Readers which need to see pending changes (e.g. unread messages count) must call {@link #flush()} first.
+ */
+@ThreadSafe
+final class MessageChangesQueue {
+
+	static final long FLUSH_DELAY = 50;
+
+	@Nonnull
+	private final ChatService chatService;
+
+	@Nonnull
+	private final MessageDao messageDao;
+
+	// persistence lock
+	@Nonnull
+	private final Object lock;
+
+	// key: message id
+	@GuardedBy("changes")
+	@Nonnull
+	private final Map<String, MessageChange> changes = new LinkedHashMap<String, MessageChange>();
+
+	@Nonnull
+	private final BatchFlusher flusher;
+
+	MessageChangesQueue(@Nonnull ChatService chatService, @Nonnull MessageDao messageDao, @Nonnull Object lock) {
+		this(chatService, messageDao, lock, BatchFlusher.newFlushExecutor("Message changes"));
+	}
+
+	MessageChangesQueue(@Nonnull ChatService chatService, @Nonnull MessageDao messageDao, @Nonnull Object lock, @Nonnull ScheduledExecutorService executor) {
+		this.chatService = chatService;
+		this.messageDao = messageDao;
+		this.lock = lock;
+		this.flusher = new BatchFlusher(executor, FLUSH_DELAY, new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		});
+	}
+
+	void addReadChange(@Nonnull Chat chat, @Nonnull Message message) {
+		addChange(chat, message, true, false);
+	}
+
+	void addStateChange(@Nonnull Chat chat, @Nonnull Message message) {
+		addChange(chat, message, false, true);
+	}
+
+	private void addChange(@Nonnull Chat chat, @Nonnull Message message, boolean read, boolean state) {
+		synchronized (changes) {
+			MessageChange change = changes.get(message.getId());
+			if (change == null) {
+				change = new MessageChange(chat);
+				changes.put(message.getId(), change);
+			}
+			change.add(message, read, state);
+		}
+
+		flusher.schedule();
+	}
+
+	/**
+	 * Method writes all pending changes to the database and fires events. Method blocks until changes are written.
+	 */
+	void flush() {
+		final List<MessageChange> changes;
+		final ChangedMessageIds changedMessageIds;
+
+		// flushes must be done one by one (otherwise older changes might override newer) => take changes under the lock
+		synchronized (lock) {
+			synchronized (this.changes) {
+				changes = new ArrayList<MessageChange>(this.changes.values());
+				this.changes.clear();
+			}
+
+			if (changes.isEmpty()) {
+				return;
+			}
+
+			final List<String> readMessageIds = new ArrayList<String>();
+			final Map<String, MessageState> states = new HashMap<String, MessageState>();
+			for (MessageChange change : changes) {
+				final Message message = change.message;
+				if (change.read) {
+					readMessageIds.add(message.getId());
+				}
+				if (change.state) {
+					states.put(message.getId(), message.getState());
+				}
+			}
+
+			changedMessageIds = messageDao.changeReadStatusesAndStates(readMessageIds, states);
+		}
+
+		// key: chat
+		final Map<Chat, List<Message>> changedMessages = new LinkedHashMap<Chat, List<Message>>();
+		final Map<Chat, List<Message>> readMessagesByChats = new LinkedHashMap<Chat, List<Message>>();
+		// events are fired only for messages which were changed in the database
+		for (MessageChange change : changes) {
+			final Message message = change.message;
+			final boolean read = changedMessageIds.isReadChanged(message.getId());
+			if (read) {
+				getMessages(readMessagesByChats, change.chat).add(message);
+			}
+			if (read || changedMessageIds.isStateChanged(message.getId())) {
+				getMessages(changedMessages, change.chat).add(message);
+			}
+		}
+
+		final List<ChatEvent> events = new ArrayList<ChatEvent>(changedMessages.size() + readMessagesByChats.size());
+		for (Map.Entry<Chat, List<Message>> entry : changedMessages.entrySet()) {
+			events.add(ChatEventType.messages_changed.newEvent(entry.getKey(), entry.getValue()));
+		}
+		for (Map.Entry<Chat, List<Message>> entry : readMessagesByChats.entrySet()) {
+			events.add(ChatEventType.messages_read.newEvent(entry.getKey(), entry.getValue()));
+		}
+		if (!events.isEmpty()) {
+			chatService.fireEvents(events);
+		}
+	}
+
+	/**
+	 * Method writes all pending changes and stops background writing: changes added after this call are written
+	 * immediately
+	 */
+	void shutdown() {
+		flusher.shutdown();
+	}
+
+	@Nonnull
+	private static List<Message> getMessages(@Nonnull Map<Chat, List<Message>> messagesByChats, @Nonnull Chat chat) {
+		List<Message> result = messagesByChats.get(chat);
+		if (result == null) {
+			result = new ArrayList<Message>();
+			messagesByChats.put(chat, result);
+		}
+		return result;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	private static final class MessageChange {
+
+		@Nonnull
+		private final Chat chat;
+
+		// the latest version of the message
+		private Message message;
+
+		private boolean read;
+
+		private boolean state;
+
+		private MessageChange(@Nonnull Chat chat) {
+			this.chat = chat;
+		}
+
+		private void add(@Nonnull Message message, boolean read, boolean state) {
+			this.read |= read;
+			this.state |= state;
+
+			if (this.read && !message.isRead()) {
+				// message has been already marked as read
+				message = message.cloneRead();
+			}
+			if (!state && this.message != null && this.state) {
+				// keep the state which is going to be written
+				message = message.cloneWithNewState(this.message.getState());
+			}
+			this.message = message;
+		}
+	}
+}
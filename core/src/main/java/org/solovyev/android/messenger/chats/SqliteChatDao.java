@@ -33,10 +33,13 @@ import org.solovyev.android.db.properties.PropertyByIdDbQuery;
 import org.solovyev.android.messenger.LinkedEntitiesDao;
 import org.solovyev.android.messenger.MergeDaoResult;
 import org.solovyev.android.messenger.accounts.AccountState;
+import org.solovyev.android.messenger.db.PropertiesCursorMapper;
+import org.solovyev.android.messenger.db.PropertiesListMapper;
 import org.solovyev.android.messenger.db.StringIdMapper;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.entities.EntityMapper;
 import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.MessageState;
 import org.solovyev.android.messenger.messages.SqliteMessageDao;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.android.messenger.users.UserService;
@@ -52,11 +55,35 @@ import java.util.*;
 import static com.google.common.collect.Iterables.find;
 import static com.google.common.collect.Iterables.transform;
 import static org.solovyev.android.db.AndroidDbUtils.*;
+import static org.solovyev.android.db.SqliteLinkedEntitiesDao.newLinkedEntitiesQuery;
 import static org.solovyev.common.text.Strings.isEmpty;
 
 @Singleton
 public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 
+	/*
+	**********************************************************************
+	*
+	*                           QUERIES
+	*
+	**********************************************************************
+	*/
+
+	// NOTE: query plans of these queries are checked in ChatQueryPlanTest
+
+	static final String SELECT_USER_CHATS = newLinkedEntitiesQuery("chats", "id", "user_chats", "user_id", "chat_id");
+
+	static final String SELECT_CHAT_PARTICIPANTS = "select * from user_chats where chat_id = ?";
+
+	// full scan of chat_unread_counts is expected here: table has at most one row per chat
+	static final String SELECT_UNREAD_CHATS = "select c.id, c.account_id, c.account_chat_id, cuc.unread_count from chats c, chat_unread_counts cuc where c.id = cuc.chat_id and cuc.unread_count > 0";
+
+	private static final String PRIVATE_CHAT_CONDITION = "and exists (select * from chat_properties cp where cp.chat_id = c.id and cp.property_name = 'private' and cp.property_value = 'true') ";
+
+	private static final String USER_CONDITION = "and uc.user_id = ? ";
+
+	private static final String ENABLED_ACCOUNTS_CONDITION = "and uc.user_id in (select a.user_id from accounts a where a.state = ?) ";
+
     /*
 	**********************************************************************
     *
@@ -86,7 +113,7 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 	@Inject
 	public SqliteChatDao(@Nonnull Application context, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
 		super(context, sqliteOpenHelper);
-		final ChatDaoMapper chatDaoMapper = new ChatDaoMapper(this);
+		final ChatDaoMapper chatDaoMapper = new ChatDaoMapper(this, context, sqliteOpenHelper);
 		dao = new SqliteDao<Chat>("chats", "id", chatDaoMapper, context, sqliteOpenHelper);
 		linkedEntitiesDao = new SqliteLinkedEntitiesDao<Chat>("chats", "id", context, sqliteOpenHelper, "user_chats", "user_id", "chat_id", dao);
 	}
@@ -131,6 +158,12 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 		return doDbQuery(getSqliteOpenHelper(), new LoadLastChatIds(userId, privateChat, count));
 	}
 
+	@Nonnull
+	@Override
+	public List<LastChat> readLastChats(@Nullable String userId, boolean privateChat, int count) {
+		return doDbQuery(getSqliteOpenHelper(), new LoadLastChats(userId, privateChat, count));
+	}
+
 	@Nonnull
 	@Override
 	public Collection<String> readAllIds() {
@@ -201,7 +234,7 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.query("user_chats", null, "chat_id = ? ", new String[]{chatId}, null, null, null);
+			return db.rawQuery(SELECT_CHAT_PARTICIPANTS, new String[]{chatId});
 		}
 
 		@Nonnull
@@ -228,13 +261,13 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.query("chats", null, "id in (select chat_id from user_chats where user_id = ? ) ", new String[]{userId}, null, null, null);
+			return db.rawQuery(SELECT_USER_CHATS, new String[]{userId});
 		}
 
 		@Nonnull
 		@Override
 		public List<Chat> retrieveData(@Nonnull Cursor cursor) {
-			return new ListMapper<Chat>(new ChatMapper(chatDao)).convert(cursor);
+			return newChatListMapper(new ChatMapper(chatDao), getContext(), getSqliteOpenHelper()).convert(cursor);
 		}
 	}
 
@@ -472,11 +505,8 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.rawQuery(	"select c.id, c.account_id, c.account_chat_id, count(*) from chats c, messages m " +
-								"where c.id = m.chat_id " +
-								"and m.read = 0 " +
-								"and m.state = 'received' " +
-								"group by c.id, c.account_id, c.account_chat_id", null);
+			// counters are maintained by triggers on messages table (see db_mpp_006.sql) => no need to count messages
+			return db.rawQuery(SELECT_UNREAD_CHATS, null);
 		}
 
 		@Nonnull
@@ -498,13 +528,22 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 		}
 	}
 
+	@Nonnull
+	private static PropertiesListMapper<Chat> newChatListMapper(@Nonnull ChatMapper chatMapper, @Nonnull Context context, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+		return new PropertiesListMapper<Chat>(chatMapper, context, sqliteOpenHelper, "chat_properties", "chat_id");
+	}
+
 	private static final class ChatDaoMapper implements SqliteDaoEntityMapper<Chat> {
 
 		@Nonnull
 		private final ChatMapper chatMapper;
 
-		private ChatDaoMapper(@Nonnull ChatDao dao) {
+		@Nonnull
+		private final PropertiesListMapper<Chat> chatListMapper;
+
+		private ChatDaoMapper(@Nonnull ChatDao dao, @Nonnull Context context, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
 			chatMapper = new ChatMapper(dao);
+			chatListMapper = newChatListMapper(chatMapper, context, sqliteOpenHelper);
 		}
 
 		@Nonnull
@@ -518,6 +557,97 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 		public Converter<Cursor, Chat> getCursorMapper() {
 			return chatMapper;
 		}
+
+		@Nonnull
+		@Override
+		public Converter<Cursor, List<Chat>> getListMapper() {
+			return chatListMapper;
+		}
+	}
+
+	/**
+	 * @param forUser true if chats of one user are loaded (argument: user id), false if chats of all enabled accounts
+	 *                are loaded (argument: enabled state)
+	 * @return query of last chats with their last messages and unread messages counts, first argument is removed state
+	 */
+	@Nonnull
+	static String newLastChatsQuery(boolean forUser, boolean privateChat, int count) {
+		// last message is found through index on (chat_id, send_time), unread messages counts are maintained by triggers
+		final StringBuilder sql = new StringBuilder();
+		sql.append("select c.*, lm.id as last_message_id, ");
+		sql.append("ifnull((select cuc.unread_count from chat_unread_counts cuc where cuc.chat_id = c.id), 0) as unread_count ");
+		sql.append("from chats c, messages lm, user_chats uc ");
+		sql.append("where uc.chat_id = c.id ");
+		sql.append("and lm.id = (select m.id from messages m where m.chat_id = c.id and m.state <> ? order by m.send_time desc, m.id desc limit 1) ");
+		if (privateChat) {
+			sql.append(PRIVATE_CHAT_CONDITION);
+		}
+		sql.append(forUser ? USER_CONDITION : ENABLED_ACCOUNTS_CONDITION);
+		sql.append("group by c.id order by lm.send_time desc, lm.id desc limit ").append(count);
+		return sql.toString();
+	}
+
+	/**
+	 * @see #newLastChatsQuery(boolean, boolean, int), no removed state argument
+	 */
+	@Nonnull
+	static String newLastChatIdsQuery(boolean forUser, boolean privateChat, int count) {
+		final StringBuilder sql = new StringBuilder();
+		sql.append("select c.id, m.send_time from chats c, messages m, user_chats uc where c.id = m.chat_id and uc.chat_id = c.id ");
+		if (privateChat) {
+			sql.append(PRIVATE_CHAT_CONDITION);
+		}
+		sql.append(forUser ? USER_CONDITION : ENABLED_ACCOUNTS_CONDITION);
+		sql.append("group by c.id order by m.send_time desc limit ").append(count);
+		return sql.toString();
+	}
+
+	private class LoadLastChats extends AbstractDbQuery<List<LastChat>> {
+
+		@Nullable
+		private final String userId;
+
+		private final boolean privateChat;
+
+		private final int count;
+
+		public LoadLastChats(@Nullable String userId, boolean privateChat, int count) {
+			super(SqliteChatDao.this.getContext(), SqliteChatDao.this.getSqliteOpenHelper());
+			this.userId = userId;
+			this.privateChat = privateChat;
+			this.count = count;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			final boolean forUser = !isEmpty(userId);
+			final String sql = newLastChatsQuery(forUser, privateChat, count);
+			if (forUser) {
+				return db.rawQuery(sql, new String[]{MessageState.removed.name(), userId});
+			} else {
+				return db.rawQuery(sql, new String[]{MessageState.removed.name(), AccountState.enabled.name()});
+			}
+		}
+
+		@Nonnull
+		@Override
+		public List<LastChat> retrieveData(@Nonnull Cursor cursor) {
+			final ChatMapper chatMapper = new ChatMapper(SqliteChatDao.this);
+			final int lastMessageIdColumn = cursor.getColumnIndexOrThrow("last_message_id");
+			final int unreadCountColumn = cursor.getColumnIndexOrThrow("unread_count");
+
+			final PropertiesCursorMapper<LastChat> lastChatMapper = new PropertiesCursorMapper<LastChat>() {
+				@Nonnull
+				@Override
+				public LastChat convert(@Nonnull Cursor cursor, @Nonnull List<AProperty> properties) {
+					final Chat chat = chatMapper.convert(cursor, properties);
+					return LastChat.newLastChat(chat, cursor.getString(lastMessageIdColumn), cursor.getInt(unreadCountColumn));
+				}
+			};
+
+			return new PropertiesListMapper<LastChat>(lastChatMapper, getContext(), getSqliteOpenHelper(), "chat_properties", "chat_id").convert(cursor);
+		}
 	}
 
 	private class LoadLastChatIds extends AbstractDbQuery<List<String>> {
@@ -539,15 +669,12 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			String start = "select c.id, m.send_time from chats c, messages m, user_chats uc where c.id = m.chat_id and uc.chat_id = c.id ";
-			if (privateChat) {
-				start += "and exists (select * from chat_properties cp where cp.chat_id = c.id and cp.property_name = 'private' and cp.property_value = 'true') ";
-			}
-			final String end = "group by c.id order by m.send_time desc limit " + count;
-			if (!isEmpty(userId)) {
-				return db.rawQuery(start + "and uc.user_id = ? " + end, new String[]{userId});
+			final boolean forUser = !isEmpty(userId);
+			final String sql = newLastChatIdsQuery(forUser, privateChat, count);
+			if (forUser) {
+				return db.rawQuery(sql, new String[]{userId});
 			} else {
-				return db.rawQuery(start + "and uc.user_id in (select a.user_id from accounts a where a.state = ?) " + end, new String[]{AccountState.enabled.name()});
+				return db.rawQuery(sql, new String[]{AccountState.enabled.name()});
 			}
 		}
 
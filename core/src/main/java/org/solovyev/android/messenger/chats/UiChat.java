@@ -73,8 +73,23 @@ public final class UiChat implements Identifiable, EntityAware {
 
 	@Nonnull
 	static UiChat loadUiChat(@Nonnull User user, @Nonnull Chat chat, @Nullable Account account) {
-		final Message lastMessage = getLastMessage(chat);
-		final int unreadMessagesCount = getUnreadMessagesCount(chat);
+		return loadUiChat(user, chat, account, getLastMessage(chat), getUnreadMessagesCount(chat));
+	}
+
+	@Nonnull
+	static UiChat loadUiChat(@Nonnull User user, @Nonnull Chat chat, @Nullable Message lastMessage, int unreadMessagesCount) {
+		final Account account = getAccountService().getAccountByEntity(user.getEntity());
+		return loadUiChat(user, chat, account, lastMessage, unreadMessagesCount);
+	}
+
+	@Nonnull
+	static UiChat loadUiChat(@Nonnull Chat chat, @Nullable Message lastMessage, int unreadMessagesCount) {
+		final Account account = getAccountService().getAccountByEntity(chat.getEntity());
+		return loadUiChat(account.getUser(), chat, account, lastMessage, unreadMessagesCount);
+	}
+
+	@Nonnull
+	private static UiChat loadUiChat(@Nonnull User user, @Nonnull Chat chat, @Nullable Account account, @Nullable Message lastMessage, int unreadMessagesCount) {
 		final String displayName = Chats.getDisplayName(chat, lastMessage, user, unreadMessagesCount);
 		final boolean online = isParticipantsOnline(user, chat);
 
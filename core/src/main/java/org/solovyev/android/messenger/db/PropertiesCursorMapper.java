@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.solovyev.android.messenger.db;
+
+import android.database.Cursor;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.solovyev.android.properties.AProperty;
+
+/**
+ * Converts current row of cursor to entity using already loaded properties
+ * (see {@link PropertiesListMapper})
+ */
+public interface PropertiesCursorMapper<E> {
+
+	@Nonnull
+	E convert(@Nonnull Cursor cursor, @Nonnull List<AProperty> properties);
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.solovyev.android.messenger.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.solovyev.android.db.AbstractDbQuery;
+import org.solovyev.android.properties.AProperty;
+import org.solovyev.common.Converter;
+
+import static org.solovyev.android.db.AndroidDbUtils.MAX_IN_COUNT;
+import static org.solovyev.android.db.AndroidDbUtils.doDbQuery;
+import static org.solovyev.android.db.AndroidDbUtils.inClause;
+import static org.solovyev.android.db.AndroidDbUtils.inClauseValues;
+import static org.solovyev.android.properties.Properties.newProperty;
+
+/**
+ * Converts all rows of cursor to entities. Properties of the entities are loaded with one query per
+ * {@link org.solovyev.android.db.AndroidDbUtils#MAX_IN_COUNT} entities instead of one query per entity.
+ * Entity id must be stored in the first column of cursor.
+ */
+public final class PropertiesListMapper<E> implements Converter<Cursor, List<E>> {
+
+	@Nonnull
+	private final PropertiesCursorMapper<E> mapper;
+
+	@Nonnull
+	private final Context context;
+
+	@Nonnull
+	private final SQLiteOpenHelper sqliteOpenHelper;
+
+	@Nonnull
+	private final String propertiesTableName;
+
+	@Nonnull
+	private final String idColumnName;
+
+	public PropertiesListMapper(@Nonnull PropertiesCursorMapper<E> mapper,
+								@Nonnull Context context,
+								@Nonnull SQLiteOpenHelper sqliteOpenHelper,
+								@Nonnull String propertiesTableName,
+								@Nonnull String idColumnName) {
+		this.mapper = mapper;
+		this.context = context;
+		this.sqliteOpenHelper = sqliteOpenHelper;
+		this.propertiesTableName = propertiesTableName;
+		this.idColumnName = idColumnName;
+	}
+
+	@Nonnull
+	@Override
+	public List<E> convert(@Nonnull Cursor cursor) {
+		final List<String> ids = new ArrayList<String>(cursor.getCount());
+		if (cursor.moveToFirst()) {
+			while (!cursor.isAfterLast()) {
+				ids.add(cursor.getString(0));
+				cursor.moveToNext();
+			}
+		}
+
+		if (ids.isEmpty()) {
+			return new ArrayList<E>();
+		}
+
+		final Map<String, List<AProperty>> properties = new HashMap<String, List<AProperty>>(ids.size());
+		for (List<String> idsChunk : org.solovyev.common.collections.Collections.split(ids, MAX_IN_COUNT)) {
+			doDbQuery(sqliteOpenHelper, new LoadPropertiesByIds(idsChunk, properties));
+		}
+
+		final List<E> result = new ArrayList<E>(ids.size());
+		if (cursor.moveToFirst()) {
+			while (!cursor.isAfterLast()) {
+				List<AProperty> entityProperties = properties.get(cursor.getString(0));
+				if (entityProperties == null) {
+					entityProperties = Collections.emptyList();
+				}
+				result.add(mapper.convert(cursor, entityProperties));
+				cursor.moveToNext();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return query of properties of entities with specified ids, ids are the arguments of the query
+	 */
+	@Nonnull
+	static String newPropertiesQuery(@Nonnull String propertiesTableName, @Nonnull String idColumnName, @Nonnull List<String> ids) {
+		return "select " + idColumnName + ", property_name, property_value from " + propertiesTableName + " where " + idColumnName + " in " + inClause(ids);
+	}
+
+	private final class LoadPropertiesByIds extends AbstractDbQuery<Map<String, List<AProperty>>> {
+
+		@Nonnull
+		private final List<String> ids;
+
+		@Nonnull
+		private final Map<String, List<AProperty>> properties;
+
+		private LoadPropertiesByIds(@Nonnull List<String> ids, @Nonnull Map<String, List<AProperty>> properties) {
+			super(context, sqliteOpenHelper);
+			this.ids = ids;
+			this.properties = properties;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			return db.rawQuery(newPropertiesQuery(propertiesTableName, idColumnName, ids), inClauseValues(ids));
+		}
+
+		@Nonnull
+		@Override
+		public Map<String, List<AProperty>> retrieveData(@Nonnull Cursor cursor) {
+			if (cursor.moveToFirst()) {
+				while (!cursor.isAfterLast()) {
+					final String id = cursor.getString(0);
+					List<AProperty> entityProperties = properties.get(id);
+					if (entityProperties == null) {
+						entityProperties = new ArrayList<AProperty>();
+						properties.put(id, entityProperties);
+					}
+					entityProperties.add(newProperty(cursor.getString(1), cursor.getString(2)));
+					cursor.moveToNext();
+				}
+			}
+			return properties;
+		}
+	}
+}
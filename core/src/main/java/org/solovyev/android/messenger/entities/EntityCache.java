@@ -0,0 +1,222 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.messenger.entities;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of entities. Cache is split into segments (each segment is guarded by its own lock) and each segment
+ * evicts least recently used entities when it becomes full.
+ */
+@ThreadSafe
+public class EntityCache<T extends EntityAware> {
+
+	private static final int SEGMENTS_COUNT = 8;
+
+	@Nonnull
+	private final Segment<T>[] segments;
+
+	@Nonnull
+	private final AtomicLong hits = new AtomicLong();
+
+	@Nonnull
+	private final AtomicLong misses = new AtomicLong();
+
+	@Nonnull
+	private final AtomicLong evictions = new AtomicLong();
+
+	public EntityCache(int maxSize) {
+		if (maxSize < SEGMENTS_COUNT) {
+			throw new IllegalArgumentException("Cache size must be at least " + SEGMENTS_COUNT);
+		}
+
+		//noinspection unchecked
+		segments = new Segment[SEGMENTS_COUNT];
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment<T>(maxSize / SEGMENTS_COUNT, evictions);
+		}
+	}
+
+	@Nullable
+	public T get(@Nonnull Entity key) {
+		final T result = getSegment(key).get(key);
+		if (result != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return result;
+	}
+
+	public void put(@Nonnull T entity) {
+		final Entity key = entity.getEntity();
+		getSegment(key).put(key, entity, true);
+	}
+
+	public void putAll(@Nonnull Collection<? extends T> entities) {
+		for (T entity : entities) {
+			put(entity);
+		}
+	}
+
+	/**
+	 * Method puts entity only if there is no entity with the same key in the cache. Should be used for entities loaded
+	 * from persistence storage: entity might be changed (and put to the cache) while it's being loaded.
+	 */
+	public void putIfAbsent(@Nonnull T entity) {
+		final Entity key = entity.getEntity();
+		getSegment(key).put(key, entity, false);
+	}
+
+	/**
+	 * Method increases max size of the cache if it is less than <var>maxSize</var>, cache is never shrunk
+	 */
+	public void ensureCapacity(int maxSize) {
+		final int segmentMaxSize = (maxSize + SEGMENTS_COUNT - 1) / SEGMENTS_COUNT;
+		for (Segment<T> segment : segments) {
+			segment.ensureCapacity(segmentMaxSize);
+		}
+	}
+
+	public int getMaxSize() {
+		int result = 0;
+		for (Segment<T> segment : segments) {
+			result += segment.getMaxSize();
+		}
+		return result;
+	}
+
+	public void remove(@Nonnull Entity key) {
+		getSegment(key).remove(key);
+	}
+
+	public void clear() {
+		for (Segment<T> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	public int size() {
+		int result = 0;
+		for (Segment<T> segment : segments) {
+			result += segment.size();
+		}
+		return result;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	@Nonnull
+	private Segment<T> getSegment(@Nonnull Entity key) {
+		return segments[(key.hashCode() & 0x7FFFFFFF) % SEGMENTS_COUNT];
+	}
+
+	@Override
+	public String toString() {
+		return "EntityCache{" +
+				"size=" + size() +
+				", hits=" + hits +
+				", misses=" + misses +
+				", evictions=" + evictions +
+				'}';
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	private static final class Segment<T> {
+
+		// access ordered => eldest entry is the least recently used one
+		@GuardedBy("this")
+		@Nonnull
+		private final Map<Entity, T> entities;
+
+		@GuardedBy("this")
+		private int maxSize;
+
+		private Segment(int maxSize, @Nonnull final AtomicLong evictions) {
+			this.maxSize = maxSize;
+			entities = new LinkedHashMap<Entity, T>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Entity, T> eldest) {
+					if (size() > Segment.this.maxSize) {
+						evictions.incrementAndGet();
+						return true;
+					} else {
+						return false;
+					}
+				}
+			};
+		}
+
+		@Nullable
+		synchronized T get(@Nonnull Entity key) {
+			return entities.get(key);
+		}
+
+		synchronized void put(@Nonnull Entity key, @Nonnull T entity, boolean replace) {
+			if (replace || !entities.containsKey(key)) {
+				entities.put(key, entity);
+			}
+		}
+
+		synchronized void ensureCapacity(int maxSize) {
+			if (this.maxSize < maxSize) {
+				this.maxSize = maxSize;
+			}
+		}
+
+		synchronized int getMaxSize() {
+			return maxSize;
+		}
+
+		synchronized void remove(@Nonnull Entity key) {
+			entities.remove(key);
+		}
+
+		synchronized void clear() {
+			entities.clear();
+		}
+
+		synchronized int size() {
+			return entities.size();
+		}
+	}
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.http;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.solovyev.android.http.HttpRuntimeIoException;
+import org.solovyev.android.http.HttpTransaction;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link HttpExecutor} based on two pooled {@link DefaultHttpClient}s: one for regular requests and one for long
+ * poll requests. Connections are kept alive between requests and responses are transparently gzip-decompressed.
+ */
+@Singleton
+public class DefaultHttpExecutor implements HttpExecutor {
+
+	private static final int MAX_CONNECTIONS = 16;
+	private static final int MAX_CONNECTIONS_PER_ROUTE = 6;
+
+	private static final int MAX_LONG_POLL_CONNECTIONS = 4;
+
+	private static final long KEEP_ALIVE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+	/**
+	 * Max time of waiting for free connection in the pool
+	 */
+	private static final long CONNECTION_POOL_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+	private static final int SOCKET_BUFFER_SIZE = 8192;
+
+	@Nonnull
+	private static final String CONTEXT_COUNTING_ENTITY = "messenger.countingEntity";
+
+	@Nonnull
+	private final DefaultHttpClient client;
+
+	@Nonnull
+	private final DefaultHttpClient longPollClient;
+
+	@Nonnull
+	private final HttpMetrics metrics = new HttpMetrics();
+
+	@Inject
+	public DefaultHttpExecutor() {
+		this(newSchemeRegistry());
+	}
+
+	public DefaultHttpExecutor(@Nonnull SchemeRegistry schemeRegistry) {
+		this.client = newHttpClient(schemeRegistry, MAX_CONNECTIONS, MAX_CONNECTIONS_PER_ROUTE);
+		this.longPollClient = newHttpClient(schemeRegistry, MAX_LONG_POLL_CONNECTIONS, MAX_LONG_POLL_CONNECTIONS);
+	}
+
+	@Nonnull
+	private static SchemeRegistry newSchemeRegistry() {
+		final SchemeRegistry result = new SchemeRegistry();
+		result.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+		result.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+		return result;
+	}
+
+	@Nonnull
+	private static DefaultHttpClient newHttpClient(@Nonnull SchemeRegistry schemeRegistry, int maxConnections, int maxConnectionsPerRoute) {
+		final HttpParams params = new BasicHttpParams();
+		HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+		HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+		HttpConnectionParams.setSocketBufferSize(params, SOCKET_BUFFER_SIZE);
+		HttpTimeouts.DEFAULT.applyTo(params);
+
+		ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+		ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnectionsPerRoute));
+		ConnManagerParams.setTimeout(params, CONNECTION_POOL_TIMEOUT_MILLIS);
+
+		final DefaultHttpClient result = new DefaultHttpClient(new ThreadSafeClientConnManager(params, schemeRegistry), params);
+		result.setKeepAliveStrategy(new KeepAliveStrategy());
+		// NOTE: order matters: bytes must be counted before decompression
+		result.addRequestInterceptor(new GzipRequestInterceptor());
+		result.addResponseInterceptor(new CountingResponseInterceptor());
+		result.addResponseInterceptor(new GzipResponseInterceptor());
+		return result;
+	}
+
+	@Override
+	public <R> R execute(@Nonnull HttpTransaction<R> transaction) throws IOException {
+		return execute(transaction, HttpTimeouts.DEFAULT);
+	}
+
+	@Override
+	public <R> R execute(@Nonnull HttpTransaction<R> transaction, @Nonnull HttpTimeouts timeouts) throws IOException {
+		return execute(client, transaction, timeouts);
+	}
+
+	@Nonnull
+	@Override
+	public <R> List<R> execute(@Nonnull List<? extends HttpTransaction<R>> transactions, @Nonnull HttpTimeouts timeouts) throws IOException {
+		final List<R> result = new ArrayList<R>(transactions.size());
+		for (HttpTransaction<R> transaction : transactions) {
+			result.add(execute(client, transaction, timeouts));
+		}
+		return result;
+	}
+
+	@Override
+	public <R> R executeLongPoll(@Nonnull HttpTransaction<R> transaction, @Nonnull HttpTimeouts timeouts) throws IOException {
+		return execute(longPollClient, transaction, timeouts);
+	}
+
+	@Nonnull
+	@Override
+	public HttpMetrics getMetrics() {
+		return metrics;
+	}
+
+	private <R> R execute(@Nonnull DefaultHttpClient client, @Nonnull HttpTransaction<R> transaction, @Nonnull HttpTimeouts timeouts) throws IOException {
+		final HttpUriRequest request = transaction.createRequest();
+		timeouts.applyTo(request.getParams());
+
+		final HttpContext context = new BasicHttpContext();
+		final long startTime = System.currentTimeMillis();
+		boolean success = false;
+		HttpResponse response = null;
+		try {
+			response = client.execute(request, context);
+			final R result = transaction.getResponse(response);
+			success = true;
+			return result;
+		} catch (HttpRuntimeIoException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else {
+				throw new IOException(e);
+			}
+		} finally {
+			if (response != null) {
+				// connection is returned to the pool only after the content has been consumed
+				consumeContent(response);
+			}
+
+			final CountingEntity countingEntity = (CountingEntity) context.getAttribute(CONTEXT_COUNTING_ENTITY);
+			metrics.onRequest(getEndpoint(request.getURI()), System.currentTimeMillis() - startTime, countingEntity == null ? 0 : countingEntity.getCount(), success);
+		}
+	}
+
+	private static void consumeContent(@Nonnull HttpResponse response) {
+		final HttpEntity entity = response.getEntity();
+		if (entity != null) {
+			try {
+				entity.consumeContent();
+			} catch (IOException e) {
+				// connection will not be reused
+			}
+		}
+	}
+
+	@Nonnull
+	static String getEndpoint(@Nonnull URI uri) {
+		final int port = uri.getPort();
+		return port < 0 ? uri.getHost() + uri.getPath() : uri.getHost() + ":" + port + uri.getPath();
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	private static final class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+		@Override
+		public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+			final BasicHeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+			while (it.hasNext()) {
+				final HeaderElement element = it.nextElement();
+				final String value = element.getValue();
+				if (value != null && "timeout".equalsIgnoreCase(element.getName())) {
+					try {
+						return Long.parseLong(value) * 1000L;
+					} catch (NumberFormatException e) {
+						// use default
+					}
+				}
+			}
+			return KEEP_ALIVE_MILLIS;
+		}
+	}
+
+	private static final class GzipRequestInterceptor implements HttpRequestInterceptor {
+
+		@Override
+		public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+			if (!request.containsHeader("Accept-Encoding")) {
+				request.addHeader("Accept-Encoding", "gzip");
+			}
+		}
+	}
+
+	private static final class CountingResponseInterceptor implements HttpResponseInterceptor {
+
+		@Override
+		public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+			final HttpEntity entity = response.getEntity();
+			if (entity != null) {
+				final CountingEntity countingEntity = new CountingEntity(entity);
+				context.setAttribute(CONTEXT_COUNTING_ENTITY, countingEntity);
+				response.setEntity(countingEntity);
+			}
+		}
+	}
+
+	private static final class GzipResponseInterceptor implements HttpResponseInterceptor {
+
+		@Override
+		public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+			final HttpEntity entity = response.getEntity();
+			if (entity != null) {
+				final Header contentEncoding = entity.getContentEncoding();
+				if (contentEncoding != null) {
+					for (HeaderElement element : contentEncoding.getElements()) {
+						if ("gzip".equalsIgnoreCase(element.getName())) {
+							response.setEntity(new GzipDecompressingEntity(entity));
+							return;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static final class GzipDecompressingEntity extends HttpEntityWrapper {
+
+		private GzipDecompressingEntity(@Nonnull HttpEntity entity) {
+			super(entity);
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			return new GZIPInputStream(wrappedEntity.getContent());
+		}
+
+		@Override
+		public long getContentLength() {
+			// length of decompressed content is unknown
+			return -1;
+		}
+
+		@Nullable
+		@Override
+		public Header getContentEncoding() {
+			// content is decompressed
+			return null;
+		}
+	}
+
+	private static final class CountingEntity extends HttpEntityWrapper {
+
+		private volatile long count;
+
+		@Nullable
+		private InputStream content;
+
+		private CountingEntity(@Nonnull HttpEntity entity) {
+			super(entity);
+		}
+
+		@Override
+		public synchronized InputStream getContent() throws IOException {
+			// NOTE: streamed entity returns the same stream every time => wrap it only once
+			if (content == null) {
+				content = new CountingInputStream(wrappedEntity.getContent());
+			}
+			return content;
+		}
+
+		long getCount() {
+			return count;
+		}
+
+		private final class CountingInputStream extends FilterInputStream {
+
+			private CountingInputStream(@Nonnull InputStream in) {
+				super(in);
+			}
+
+			@Override
+			public int read() throws IOException {
+				final int result = super.read();
+				if (result >= 0) {
+					count++;
+				}
+				return result;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				final int result = super.read(b, off, len);
+				if (result > 0) {
+					count += result;
+				}
+				return result;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				final long result = super.skip(n);
+				if (result > 0) {
+					count += result;
+				}
+				return result;
+			}
+		}
+	}
+}
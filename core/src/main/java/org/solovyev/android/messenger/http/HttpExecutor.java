@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.http;
+
+import org.solovyev.android.http.HttpTransaction;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Executes HTTP transactions of all realms through shared pooled connections.
+ * Long poll requests are executed through separate connections so they never starve regular requests.
+ */
+public interface HttpExecutor {
+
+	<R> R execute(@Nonnull HttpTransaction<R> transaction) throws IOException;
+
+	<R> R execute(@Nonnull HttpTransaction<R> transaction, @Nonnull HttpTimeouts timeouts) throws IOException;
+
+	@Nonnull
+	<R> List<R> execute(@Nonnull List<? extends HttpTransaction<R>> transactions, @Nonnull HttpTimeouts timeouts) throws IOException;
+
+	/**
+	 * Method executes request which might be held by server for a long time (see {@link org.solovyev.android.messenger.longpoll.RealmLongPollService})
+	 */
+	<R> R executeLongPoll(@Nonnull HttpTransaction<R> transaction, @Nonnull HttpTimeouts timeouts) throws IOException;
+
+	@Nonnull
+	HttpMetrics getMetrics();
+}
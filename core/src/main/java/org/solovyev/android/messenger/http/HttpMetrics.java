@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.http;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Latency and traffic of HTTP requests grouped by endpoint (host + path)
+ */
+public final class HttpMetrics {
+
+	@Nonnull
+	private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+
+	void onRequest(@Nonnull String endpoint, long timeMillis, long bytes, boolean success) {
+		EndpointMetrics metrics = endpoints.get(endpoint);
+		if (metrics == null) {
+			final EndpointMetrics newMetrics = new EndpointMetrics();
+			metrics = endpoints.putIfAbsent(endpoint, newMetrics);
+			if (metrics == null) {
+				metrics = newMetrics;
+			}
+		}
+		metrics.onRequest(timeMillis, bytes, success);
+	}
+
+	@Nullable
+	public EndpointMetrics getEndpointMetrics(@Nonnull String endpoint) {
+		final EndpointMetrics metrics = endpoints.get(endpoint);
+		return metrics == null ? null : metrics.copy();
+	}
+
+	@Nonnull
+	public Map<String, EndpointMetrics> getAllEndpointMetrics() {
+		final Map<String, EndpointMetrics> result = new HashMap<String, EndpointMetrics>(endpoints.size());
+		for (Map.Entry<String, EndpointMetrics> entry : endpoints.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().copy());
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "HttpMetrics" + getAllEndpointMetrics();
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	public static final class EndpointMetrics {
+
+		private int count;
+		private int errors;
+		private long totalTime;
+		private long maxTime;
+		private long bytes;
+
+		private synchronized void onRequest(long timeMillis, long bytes, boolean success) {
+			this.count++;
+			if (!success) {
+				this.errors++;
+			}
+			this.totalTime += timeMillis;
+			this.maxTime = Math.max(this.maxTime, timeMillis);
+			this.bytes += bytes;
+		}
+
+		@Nonnull
+		private synchronized EndpointMetrics copy() {
+			final EndpointMetrics copy = new EndpointMetrics();
+			copy.count = count;
+			copy.errors = errors;
+			copy.totalTime = totalTime;
+			copy.maxTime = maxTime;
+			copy.bytes = bytes;
+			return copy;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public int getErrors() {
+			return errors;
+		}
+
+		public long getTotalTime() {
+			return totalTime;
+		}
+
+		public long getMaxTime() {
+			return maxTime;
+		}
+
+		public long getAverageTime() {
+			return count == 0 ? 0 : totalTime / count;
+		}
+
+		/**
+		 * @return number of bytes received over the network (i.e. compressed size for gzipped responses)
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		@Override
+		public String toString() {
+			return "EndpointMetrics{" +
+					"count=" + count +
+					", errors=" + errors +
+					", averageTime=" + getAverageTime() +
+					"ms, maxTime=" + maxTime +
+					"ms, bytes=" + bytes +
+					'}';
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.http;
+
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection and socket timeouts of HTTP requests, realms define their own timeouts
+ */
+public final class HttpTimeouts {
+
+	@Nonnull
+	public static final HttpTimeouts DEFAULT = newHttpTimeouts(TimeUnit.SECONDS.toMillis(15), TimeUnit.SECONDS.toMillis(30));
+
+	private final int connectionTimeout;
+
+	private final int socketTimeout;
+
+	private HttpTimeouts(int connectionTimeout, int socketTimeout) {
+		this.connectionTimeout = connectionTimeout;
+		this.socketTimeout = socketTimeout;
+	}
+
+	@Nonnull
+	public static HttpTimeouts newHttpTimeouts(long connectionTimeoutMillis, long socketTimeoutMillis) {
+		return new HttpTimeouts((int) connectionTimeoutMillis, (int) socketTimeoutMillis);
+	}
+
+	public int getConnectionTimeout() {
+		return connectionTimeout;
+	}
+
+	public int getSocketTimeout() {
+		return socketTimeout;
+	}
+
+	void applyTo(@Nonnull HttpParams params) {
+		HttpConnectionParams.setConnectionTimeout(params, connectionTimeout);
+		HttpConnectionParams.setSoTimeout(params, socketTimeout);
+	}
+
+	@Override
+	public String toString() {
+		return "HttpTimeouts{" +
+				"connectionTimeout=" + connectionTimeout +
+				", socketTimeout=" + socketTimeout +
+				'}';
+	}
+}
@@ -22,59 +22,143 @@ import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
 import org.solovyev.android.messenger.accounts.AccountException;
 import org.solovyev.android.messenger.accounts.connection.BaseAccountConnection;
+import org.solovyev.android.messenger.accounts.connection.ConnectionScheduler;
+import org.solovyev.android.messenger.accounts.connection.ReconnectPolicy;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import static org.solovyev.android.messenger.App.newTag;
+import static org.solovyev.android.messenger.accounts.connection.ConnectionRunnable.onMaxAttemptsReached;
+import static org.solovyev.android.messenger.accounts.connection.ReconnectPolicy.newReconnectPolicy;
 
+/**
+ * Each long poll is a separate task on {@link ConnectionScheduler}'s I/O pool: after the poll is done next poll is
+ * submitted => threads are shared between connections. If poll fails new long polling session is started after
+ * backoff delay.
+ */
 public abstract class LongPollAccountConnection extends BaseAccountConnection<Account> {
 
 	public static final String TAG = newTag("LongPolling");
 
+	/**
+	 * Delay before the first retry of failed poll
+	 */
+	private static final long MIN_RETRY_MILLIS = 3000L;
+
+	private static final long MAX_RETRY_MILLIS = 5L * 60L * 1000L;
+
+	/**
+	 * Only backoff is used: number of retries is limited by {@link #getRetryCount()}
+	 */
+	@Nonnull
+	private final ReconnectPolicy reconnectPolicy = newReconnectPolicy(MIN_RETRY_MILLIS, MAX_RETRY_MILLIS, Integer.MAX_VALUE, 0);
+
 	@Nonnull
 	private final RealmLongPollService realmLongPollService;
 
+	@Nonnull
+	private final ConnectionScheduler.Task poll;
+
+	/**
+	 * Data of current long polling session, null if session must be (re)started. Accessed only from {@link #poll}
+	 * (and from {@link #start0()} before the first poll is submitted)
+	 */
+	@Nullable
+	private Object longPollingData;
+
 	protected LongPollAccountConnection(@Nonnull Account account,
 										@Nonnull Context context,
 										@Nonnull RealmLongPollService realmLongPollService,
 										int retryCount) {
+		this(account, context, realmLongPollService, retryCount, ConnectionScheduler.getInstance());
+	}
+
+	protected LongPollAccountConnection(@Nonnull Account account,
+										@Nonnull Context context,
+										@Nonnull RealmLongPollService realmLongPollService,
+										int retryCount,
+										@Nonnull ConnectionScheduler scheduler) {
 		super(account, context, retryCount);
 		this.realmLongPollService = realmLongPollService;
+		this.poll = scheduler.newTask(new Runnable() {
+			@Override
+			public void run() {
+				poll();
+			}
+		});
 	}
 
+	/**
+	 * Long polling session is started on the caller's thread (errors are handled by the caller), polls are done in
+	 * background
+	 */
 	@Override
 	public void start0() throws AccountConnectionException {
-		// first loop guarantees that if something gone wrong we will initiate new long polling session
-		while (!isStopped()) {
-			try {
+		try {
+			Log.i(TAG, "Long polling initiated!");
+			longPollingData = realmLongPollService.startLongPolling();
+			reconnectPolicy.reset();
+		} catch (RuntimeException e) {
+			throw new AccountConnectionException(getAccount().getId(), e);
+		} catch (AccountException e) {
+			throw new AccountConnectionException(getAccount().getId(), e);
+		}
 
-				Log.i(TAG, "Long polling initiated!");
-				Object longPollingData = realmLongPollService.startLongPolling();
+		poll.execute();
+	}
+
+	private void poll() {
+		if (isStopped()) {
+			return;
+		}
 
-				// second loop do long poll job for one session
-				while (!isStopped()) {
-					Log.i(TAG, "Long polling started!");
+		try {
+			Object data = longPollingData;
+			if (data == null) {
+				Log.i(TAG, "Long polling initiated!");
+				data = realmLongPollService.startLongPolling();
+				longPollingData = data;
+			}
 
-					final LongPollResult longPollResult = realmLongPollService.waitForResult(longPollingData);
-					if (longPollResult != null) {
-						longPollingData = longPollResult.updateLongPollServerData(longPollingData);
-						longPollResult.doUpdates(getAccount());
-					}
+			Log.i(TAG, "Long polling started!");
 
-					Log.i(TAG, "Long polling ended!");
+			final LongPollResult longPollResult = realmLongPollService.waitForResult(data);
+			if (longPollResult != null) {
+				longPollingData = longPollResult.updateLongPollServerData(data);
+				longPollResult.doUpdates(getAccount());
+			}
 
-				}
+			Log.i(TAG, "Long polling ended!");
 
-			} catch (RuntimeException e) {
-				throw new AccountConnectionException(getAccount().getId(), e);
-			} catch (AccountException e) {
-				throw new AccountConnectionException(getAccount().getId(), e);
+			reconnectPolicy.reset();
+			if (!isStopped()) {
+				poll.execute();
 			}
+		} catch (RuntimeException e) {
+			onPollFailed(new AccountConnectionException(getAccount().getId(), e));
+		} catch (AccountException e) {
+			onPollFailed(new AccountConnectionException(getAccount().getId(), e));
+		}
+	}
+
+	private void onPollFailed(@Nonnull AccountConnectionException e) {
+		// new session must be started
+		longPollingData = null;
+		reconnectPolicy.onFailure();
+		Log.w(TAG, "Long polling failed: " + reconnectPolicy, e);
+
+		if (reconnectPolicy.isExhausted(getRetryCount())) {
+			reconnectPolicy.reset();
+			onMaxAttemptsReached(this, e);
+		} else if (!isStopped()) {
+			poll.schedule(reconnectPolicy.getDelayMillis());
 		}
 	}
 
 	@Override
 	protected void stop0() {
+		poll.cancel();
 	}
 
 }
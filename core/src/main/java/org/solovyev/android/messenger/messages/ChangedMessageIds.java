@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.messages;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Ids of messages which rows were actually changed by
+ * {@link MessageDao#changeReadStatusesAndStates(java.util.Collection, java.util.Map)}
+ */
+public final class ChangedMessageIds {
+
+	@Nonnull
+	private static final ChangedMessageIds EMPTY = new ChangedMessageIds(Collections.<String>emptySet(), Collections.<String>emptySet());
+
+	@Nonnull
+	private final Set<String> readMessageIds;
+
+	@Nonnull
+	private final Set<String> stateMessageIds;
+
+	/**
+	 * @param readMessageIds  ids of messages which were unread before and are read now
+	 * @param stateMessageIds ids of messages which state has been changed
+	 */
+	public ChangedMessageIds(@Nonnull Set<String> readMessageIds, @Nonnull Set<String> stateMessageIds) {
+		this.readMessageIds = readMessageIds;
+		this.stateMessageIds = stateMessageIds;
+	}
+
+	@Nonnull
+	public static ChangedMessageIds empty() {
+		return EMPTY;
+	}
+
+	public boolean isReadChanged(@Nonnull String messageId) {
+		return readMessageIds.contains(messageId);
+	}
+
+	public boolean isStateChanged(@Nonnull String messageId) {
+		return stateMessageIds.contains(messageId);
+	}
+
+	public boolean isEmpty() {
+		return readMessageIds.isEmpty() && stateMessageIds.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "ChangedMessageIds{" +
+				"read=" + readMessageIds +
+				", state=" + stateMessageIds +
+				'}';
+	}
+}
@@ -16,11 +16,13 @@
 
 package org.solovyev.android.messenger.messages;
 
+import android.util.Log;
 import android.widget.ImageView;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.joda.time.DateTime;
 import org.solovyev.android.http.ImageLoader;
+import org.solovyev.android.messenger.Background;
 import org.solovyev.android.messenger.accounts.*;
 import org.solovyev.android.messenger.chats.AccountChatService;
 import org.solovyev.android.messenger.chats.Chat;
@@ -32,6 +34,7 @@ import org.solovyev.android.messenger.users.UserService;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
+import java.util.Collections;
 import java.util.List;
 
 import static java.util.Arrays.asList;
@@ -41,6 +44,19 @@ import static org.solovyev.android.messenger.messages.Messages.copySentMessage;
 @Singleton
 public class DefaultMessageService implements MessageService {
 
+	@Nonnull
+	private static final String TAG = "MessageService";
+
+	/**
+	 * Number of rows checked in one transaction while old messages are being indexed for search
+	 */
+	static final int SEARCH_INDEX_CHUNK = 1000;
+
+	/**
+	 * Pause between two chunks of indexing (other writers shouldn't wait for the whole index to be built)
+	 */
+	private static final long SEARCH_INDEX_PAUSE = 100L;
+
     /*
 	**********************************************************************
     *
@@ -65,6 +81,10 @@ public class DefaultMessageService implements MessageService {
 	@Nonnull
 	private ChatService chatService;
 
+	@Inject
+	@Nonnull
+	private Background background;
+
 	@GuardedBy("lock")
 	@Inject
 	@Nonnull
@@ -80,6 +100,7 @@ public class DefaultMessageService implements MessageService {
 
 	@Override
 	public void init() {
+		background.getLowPriorityExecutor().execute(new SearchIndexBuilder());
 	}
 
 	@Nonnull
@@ -88,6 +109,23 @@ public class DefaultMessageService implements MessageService {
 		return dao.readMessages(chat.getEntityId());
 	}
 
+	@Nonnull
+	@Override
+	public List<Message> getMessagesBefore(@Nonnull Entity chat, @Nullable Message anchor, int limit) {
+		return dao.readMessagesBefore(chat.getEntityId(), anchor, limit);
+	}
+
+	@Nonnull
+	@Override
+	public List<Message> getMessagesAfter(@Nonnull Entity chat, @Nullable Message anchor, int limit) {
+		return dao.readMessagesAfter(chat.getEntityId(), anchor, limit);
+	}
+
+	@Override
+	public int getMessagesCount(@Nonnull Entity chat) {
+		return dao.getMessagesCount(chat.getEntityId());
+	}
+
 	@Nullable
 	@Override
 	public Message getSameMessage(@Nonnull String body, @Nonnull DateTime sendTime, @Nonnull Entity author, @Nonnull Entity recipient) {
@@ -140,13 +178,91 @@ public class DefaultMessageService implements MessageService {
 
 	@Override
 	public int getUnreadMessagesCount() {
+		// read your writes: pending read statuses must be written first
+		chatService.flushMessageChanges();
+
 		synchronized (lock) {
 			return this.dao.getUnreadMessagesCount();
 		}
 	}
 
+	@Nonnull
+	@Override
+	public List<MessageSearchResult> search(@Nonnull String query, @Nullable Entity chat, int limit, int offset) {
+		final String ftsQuery = toFtsQuery(query);
+		if (ftsQuery == null) {
+			return Collections.emptyList();
+		}
+
+		return dao.searchMessages(ftsQuery, chat == null ? null : chat.getEntityId(), limit, offset);
+	}
+
+	/**
+	 * Converts user input to full text search query: each word (sequence of letters and digits) is searched as a prefix,
+	 * all words must be present in the message. Operators and special characters are dropped.
+	 *
+	 * @return full text search query or null if <var>query</var> contains no words
+	 */
+	@Nullable
+	static String toFtsQuery(@Nonnull String query) {
+		final StringBuilder result = new StringBuilder();
+
+		int wordStart = -1;
+		for (int i = 0; i <= query.length(); i++) {
+			final boolean wordChar = i < query.length() && Character.isLetterOrDigit(query.charAt(i));
+			if (wordChar) {
+				if (wordStart < 0) {
+					wordStart = i;
+				}
+			} else if (wordStart >= 0) {
+				if (result.length() > 0) {
+					result.append(' ');
+				}
+				// lower case: upper case words might be treated as operators (OR, NOT, NEAR etc)
+				result.append(query.substring(wordStart, i).toLowerCase()).append('*');
+				wordStart = -1;
+			}
+		}
+
+		return result.length() == 0 ? null : result.toString();
+	}
+
 	@Nonnull
 	private Account getAccountByUser(@Nonnull Entity userEntity) throws UnsupportedAccountException {
 		return accountService.getAccountById(userEntity.getAccountId());
 	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	/**
+	 * Indexes messages stored before full text search was introduced, see {@link MessageDao#indexMessagesForSearch(int)}
+	 */
+	private final class SearchIndexBuilder implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				boolean hasMore = true;
+				while (hasMore) {
+					synchronized (lock) {
+						hasMore = dao.indexMessagesForSearch(SEARCH_INDEX_CHUNK);
+					}
+
+					if (hasMore) {
+						Thread.sleep(SEARCH_INDEX_PAUSE);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				Log.e(TAG, "Unable to build search index", e);
+			}
+		}
+	}
 }
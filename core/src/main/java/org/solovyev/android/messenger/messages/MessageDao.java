@@ -26,6 +26,8 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public interface MessageDao extends Dao<Message> {
 
@@ -35,6 +37,41 @@ public interface MessageDao extends Dao<Message> {
 	@Nonnull
 	List<Message> readMessages(@Nonnull String chatId);
 
+	/**
+	 * @param messageIds ids of messages to be loaded
+	 * @return messages with specified ids (in no particular order), not existing messages are skipped
+	 */
+	@Nonnull
+	List<Message> readMessagesByIds(@Nonnull List<String> messageIds);
+
+	/**
+	 * Method reads page of messages which were sent before <var>anchor</var> message. Messages are ordered by send time
+	 * and by id (if send times are equal) which gives a stable order for keyset pagination.
+	 *
+	 * @param chatId id of chat
+	 * @param anchor message before which messages should be loaded, if null the newest messages in chat are loaded
+	 * @param limit  max number of messages to be loaded
+	 * @return messages in chronological order
+	 */
+	@Nonnull
+	List<Message> readMessagesBefore(@Nonnull String chatId, @Nullable Message anchor, int limit);
+
+	/**
+	 * Method reads page of messages which were sent after <var>anchor</var> message (see {@link #readMessagesBefore(String, Message, int)})
+	 *
+	 * @param chatId id of chat
+	 * @param anchor message after which messages should be loaded, if null the oldest messages in chat are loaded
+	 * @param limit  max number of messages to be loaded
+	 * @return messages in chronological order
+	 */
+	@Nonnull
+	List<Message> readMessagesAfter(@Nonnull String chatId, @Nullable Message anchor, int limit);
+
+	/**
+	 * @return number of not removed messages in chat
+	 */
+	int getMessagesCount(@Nonnull String chatId);
+
 	@Nonnull
 	MergeDaoResult<Message, String> mergeMessages(@Nonnull String chatId, @Nonnull Collection<? extends Message> messages);
 
@@ -56,8 +93,47 @@ public interface MessageDao extends Dao<Message> {
 
 	boolean changeMessageState(@Nonnull String messageId, @Nonnull MessageState state);
 
+	/**
+	 * Method marks messages as read and changes states of messages in one transaction
+	 *
+	 * @param readMessageIds ids of messages to be marked as read
+	 * @param states         key: message id, value: new state of the message
+	 * @return ids of messages which rows were actually changed (messages which were already read or had the same state
+	 * are not included)
+	 */
+	@Nonnull
+	ChangedMessageIds changeReadStatusesAndStates(@Nonnull Collection<String> readMessageIds, @Nonnull Map<String, MessageState> states);
+
 	void deleteAll();
 
+	/**
+	 * Numbers of unread messages per chat are stored in the separate table which is updated every time message is
+	 * inserted, updated or removed. This method recounts unread messages and rebuilds that table from scratch
+	 * (e.g. if it became inconsistent).
+	 */
+	void rebuildUnreadCounts();
+
+	/**
+	 * Method searches messages using full text index (see messages_fts table)
+	 *
+	 * @param ftsQuery query in SQLite full text search syntax
+	 * @param chatId   if not null only messages of this chat are searched
+	 * @param limit    max number of results
+	 * @param offset   number of results to skip
+	 * @return found messages ordered by rank
+	 */
+	@Nonnull
+	List<MessageSearchResult> searchMessages(@Nonnull String ftsQuery, @Nullable String chatId, int limit, int offset);
+
+	/**
+	 * Messages stored before full text index was introduced are indexed in chunks by this method (new messages are
+	 * indexed when they are inserted)
+	 *
+	 * @param count max number of rows to be checked
+	 * @return true if there are still not indexed messages
+	 */
+	boolean indexMessagesForSearch(int count);
+
 	@Nonnull
 	List<AProperty> readPropertiesById(@Nonnull String messageId);
 
@@ -22,6 +22,7 @@ import java.util.List;
 
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
+import org.solovyev.android.messenger.db.PropertiesCursorMapper;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.entities.EntityMapper;
 import org.solovyev.android.messenger.users.UserService;
@@ -33,7 +34,7 @@ import javax.annotation.Nonnull;
 import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
 import static org.solovyev.android.messenger.messages.Messages.newMessage;
 
-public class MessageMapper implements Converter<Cursor, Message> {
+public class MessageMapper implements Converter<Cursor, Message>, PropertiesCursorMapper<Message> {
 
 	@Nonnull
 	private final MessageDao dao;
@@ -45,6 +46,13 @@ public class MessageMapper implements Converter<Cursor, Message> {
 	@Nonnull
 	@Override
 	public Message convert(@Nonnull Cursor cursor) {
+		final String messageId = cursor.getString(0);
+		return convert(cursor, dao.readPropertiesById(messageId));
+	}
+
+	@Nonnull
+	@Override
+	public Message convert(@Nonnull Cursor cursor, @Nonnull List<AProperty> properties) {
 		final Entity entity = EntityMapper.newInstanceFor(0).convert(cursor);
 
 		final MutableMessage message = newMessage(entity);
@@ -65,7 +73,7 @@ public class MessageMapper implements Converter<Cursor, Message> {
 		final boolean read = cursor.getInt(10) == 1;
 		message.setRead(read);
 
-		message.setProperties(dao.readPropertiesById(entity.getEntityId()));
+		message.setProperties(properties);
 
 		return message;
 	}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.messages;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Message found by {@link MessageService#search(String, org.solovyev.android.messenger.entities.Entity, int, int)}
+ * together with the fragment of its text where the query matched
+ */
+public final class MessageSearchResult {
+
+	/**
+	 * Marks start of matched text in snippet
+	 */
+	@Nonnull
+	public static final String MATCH_START = "<b>";
+
+	/**
+	 * Marks end of matched text in snippet
+	 */
+	@Nonnull
+	public static final String MATCH_END = "</b>";
+
+	/**
+	 * Replaces text omitted in snippet
+	 */
+	@Nonnull
+	public static final String ELLIPSIS = "...";
+
+	@Nonnull
+	private final Message message;
+
+	@Nonnull
+	private final String snippet;
+
+	private final int rank;
+
+	MessageSearchResult(@Nonnull Message message, @Nonnull String snippet, int rank) {
+		this.message = message;
+		this.snippet = snippet;
+		this.rank = rank;
+	}
+
+	@Nonnull
+	public Message getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return fragment of message text with matches surrounded by {@link #MATCH_START} and {@link #MATCH_END}
+	 */
+	@Nonnull
+	public String getSnippet() {
+		return snippet;
+	}
+
+	/**
+	 * @return number of matches in the message, results are ordered by rank (descending) and then by send time (descending)
+	 */
+	public int getRank() {
+		return rank;
+	}
+
+	@Override
+	public String toString() {
+		return "MessageSearchResult{" +
+				"message=" + message.getId() +
+				", snippet='" + snippet + '\'' +
+				", rank=" + rank +
+				'}';
+	}
+}
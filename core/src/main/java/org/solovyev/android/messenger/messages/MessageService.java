@@ -38,6 +38,33 @@ public interface MessageService {
 	@Nonnull
 	List<Message> getMessages(@Nonnull Entity chat);
 
+	/**
+	 * Method returns page of messages sent before <var>anchor</var>, see {@link MessageDao#readMessagesBefore(String, Message, int)}
+	 *
+	 * @param chat   chat
+	 * @param anchor message before which messages should be loaded, if null the newest messages are returned
+	 * @param limit  max number of messages
+	 * @return messages in chronological order
+	 */
+	@Nonnull
+	List<Message> getMessagesBefore(@Nonnull Entity chat, @Nullable Message anchor, int limit);
+
+	/**
+	 * Method returns page of messages sent after <var>anchor</var>, see {@link MessageDao#readMessagesAfter(String, Message, int)}
+	 *
+	 * @param chat   chat
+	 * @param anchor message after which messages should be loaded, if null the oldest messages are returned
+	 * @param limit  max number of messages
+	 * @return messages in chronological order
+	 */
+	@Nonnull
+	List<Message> getMessagesAfter(@Nonnull Entity chat, @Nullable Message anchor, int limit);
+
+	/**
+	 * @return number of messages stored for chat
+	 */
+	int getMessagesCount(@Nonnull Entity chat);
+
 	@Nullable
 	Message getSameMessage(@Nonnull String body, @Nonnull DateTime sendTime, @Nonnull Entity author, @Nonnull Entity recipient);
 
@@ -57,4 +84,16 @@ public interface MessageService {
 	 */
 	int getUnreadMessagesCount();
 
+	/**
+	 * Method searches messages containing all words of <var>query</var> (words are matched by prefix)
+	 *
+	 * @param query  text entered by user
+	 * @param chat   if not null only messages of this chat are searched
+	 * @param limit  max number of results
+	 * @param offset number of results to skip (for paging)
+	 * @return found messages ordered by relevance (and then by send time, newest first)
+	 */
+	@Nonnull
+	List<MessageSearchResult> search(@Nonnull String query, @Nullable Entity chat, int limit, int offset);
+
 }
@@ -19,8 +19,6 @@ package org.solovyev.android.messenger.messages;
 import android.content.Context;
 import android.os.Handler;
 import android.util.Log;
-import com.google.common.base.Function;
-import com.google.common.base.Predicates;
 import org.joda.time.DateTime;
 import org.solovyev.android.messenger.BaseListItemAdapter;
 import org.solovyev.android.messenger.accounts.Account;
@@ -34,8 +32,6 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
 
-import static com.google.common.collect.Iterables.find;
-import static com.google.common.collect.Lists.transform;
 import static java.util.Arrays.asList;
 import static org.solovyev.android.messenger.App.newTag;
 import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
@@ -128,6 +124,9 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 				case message_changed:
 					onMessageChanged(event);
 					break;
+				case messages_changed:
+					onMessagesChanged(event.getDataAsMessages());
+					break;
 				case user_is_typing:
 				case user_is_not_typing:
 					onTypingEvent(type, event.getDataAsEntity(), chat);
@@ -141,23 +140,59 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 		final MessageListItem listItem = findInAllElements(message);
 		if (listItem != null) {
 			listItem.onMessageChanged(event.getDataAsMessage());
-			notifyDataSetChanged();
+			notifyListItemChanged(listItem);
 		}
 	}
 
 	void addSendingMessage(@Nonnull Message message) {
 		final MessageListItem listItem = newMessageListItem(message);
-		add(listItem);
+		insertSorted(listItem);
 		sendingListItems.put(message.getOriginalId(), listItem);
 	}
 
+	void addOlderMessages(@Nonnull List<Message> messages) {
+		addMessages(messages);
+	}
+
+	/**
+	 * @return the oldest message shown in the list (typing and sending messages are excluded) or null if there is no such message
+	 */
+	@Nullable
+	Message getOldestMessage() {
+		MessageListItem result = null;
+
+		final Comparator<? super MessageListItem> comparator = getComparator();
+		for (MessageListItem listItem : getAllElements()) {
+			if (!isTypingListItem(listItem) && !isSendingListItem(listItem)) {
+				if (result == null || comparator.compare(listItem, result) < 0) {
+					result = listItem;
+				}
+			}
+		}
+
+		return result == null ? null : result.getMessage();
+	}
+
+	// lookups by key (instead of Map#containsValue) keep getOldestMessage() linear in the number of list items
+	private boolean isTypingListItem(@Nonnull MessageListItem listItem) {
+		return userTypingListItems.get(listItem.getMessage().getAuthor()) == listItem;
+	}
+
+	private boolean isSendingListItem(@Nonnull MessageListItem listItem) {
+		return sendingListItems.get(listItem.getMessage().getOriginalId()) == listItem;
+	}
+
 	private void addMessages(@Nonnull List<Message> messages) {
-		final List<MessageListItem> listItems = transform(messages, new Function<Message, MessageListItem>() {
-			@Override
-			public MessageListItem apply(Message message) {
-				return newMessageListItem(message);
+		final List<MessageListItem> listItems = new ArrayList<MessageListItem>(messages.size());
+		final List<Message> shownMessages = new ArrayList<Message>();
+		for (Message message : messages) {
+			if (findInAllElements(message) == null) {
+				listItems.add(newMessageListItem(message));
+			} else {
+				// message is already shown (e.g. loaded and received at the same time) => just update it
+				shownMessages.add(message);
 			}
-		});
+		}
 
 		for (MessageListItem listItem : listItems) {
 			final Message message = listItem.getMessage();
@@ -165,7 +200,17 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 			removeSendingListItem(message);
 		}
 
-		addAll(listItems);
+		if (listItems.size() == 1) {
+			// realtime message: binary search instead of full sort
+			insertSorted(listItems.get(0));
+		} else if (!listItems.isEmpty()) {
+			// one sort of the whole list is cheaper than shifting the list on every insertion
+			addAll(listItems);
+		}
+
+		if (!shownMessages.isEmpty()) {
+			onMessagesChanged(shownMessages);
+		}
 	}
 
 	private void removeTypingListItem(@Nonnull Message message) {
@@ -199,11 +244,28 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 				final MessageListItem listItem = findInAllElements(message);
 				if (listItem != null) {
 					listItem.onMessageChanged(message);
-					notifyDataSetChanged();
+					notifyListItemChanged(listItem);
 				}
 		}
 	}
 
+	private void onMessagesChanged(@Nonnull List<Message> messages) {
+		final List<MessageListItem> changedListItems = new ArrayList<MessageListItem>();
+		for (Message message : messages) {
+			if (message.getState() == MessageState.removed) {
+				removeListItem(message);
+			} else {
+				final MessageListItem listItem = findInAllElements(message);
+				if (listItem != null) {
+					listItem.onMessageChanged(message);
+					changedListItems.add(listItem);
+				}
+			}
+		}
+
+		notifyListItemsChanged(changedListItems);
+	}
+
 	private void onTypingEvent(@Nonnull ChatEventType type, @Nonnull Entity user, @Nonnull Chat chat) {
 		MessageListItem listItem = userTypingListItems.get(user);
 		if (type == ChatEventType.user_is_typing) {
@@ -215,7 +277,7 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 
 				// create fake list item
 				listItem = newMessageListItem(message);
-				add(listItem);
+				insertSorted(listItem);
 
 				// add list item to the map
 				userTypingListItems.put(user, listItem);
@@ -258,6 +320,7 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 		return getContext().getString(R.string.mpp_user_is_typing);
 	}
 
+	@Nonnull
 	@Override
 	protected Comparator<? super MessageListItem> getComparator() {
 		return MessageListItem.Comparator.getInstance();
@@ -265,12 +328,12 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 
 	@Nullable
 	private MessageListItem findInAllElements(@Nonnull Message message) {
-		return findInAllElements(newMessageListItem(message));
+		return findInAllElementsById(message.getId());
 	}
 
 	@Nullable
 	private MessageListItem findInAllElements(@Nonnull MessageListItem listItem) {
-		return find(getAllElements(), Predicates.<MessageListItem>equalTo(listItem), null);
+		return findInAllElementsById(listItem.getId());
 	}
 
 	@Nonnull
@@ -279,7 +342,10 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 	}
 
 	protected void removeListItem(@Nonnull Message message) {
-		remove(newMessageListItem(message));
+		final MessageListItem listItem = findInAllElements(message);
+		if (listItem != null) {
+			remove(listItem);
+		}
 	}
 
 	@Override
@@ -98,6 +98,12 @@ public final class MessagesFragment extends BaseAsyncListFragment<Message, Messa
 	@Nonnull
 	private static final String ARG_CHAT = "chat";
 
+	/**
+	 * Number of messages loaded from the database at once: the newest page is loaded first, older pages are loaded when
+	 * user scrolls to the top of the list
+	 */
+	static final int MESSAGES_PAGE_SIZE = 50;
+
 
     /*
 	**********************************************************************
@@ -137,6 +143,8 @@ public final class MessagesFragment extends BaseAsyncListFragment<Message, Messa
 
 	private EditText messageBody;
 
+	private boolean loadingOlderMessages = false;
+
 	public MessagesFragment() {
 		super(TAG, R.string.mpp_chat, false, false);
 	}
@@ -379,7 +387,26 @@ public final class MessagesFragment extends BaseAsyncListFragment<Message, Messa
 	public void onTopReached() {
 		super.onTopReached();
 
-		syncOlderMessages();
+		loadOlderMessages();
+	}
+
+	/**
+	 * Method loads next page of older messages from the database. If there are no more messages in the database
+	 * messages are requested from the remote server.
+	 */
+	private void loadOlderMessages() {
+		if (loadingOlderMessages) {
+			return;
+		}
+
+		final Message oldestMessage = getAdapter().getOldestMessage();
+		final FragmentActivity activity = getActivity();
+		if (oldestMessage != null && activity != null) {
+			loadingOlderMessages = true;
+			new OlderMessagesLoader(activity).executeInParallel(oldestMessage);
+		} else {
+			syncOlderMessages();
+		}
 	}
 
 	private void syncOlderMessages() {
@@ -448,6 +475,47 @@ public final class MessagesFragment extends BaseAsyncListFragment<Message, Messa
 		return (MessagesAdapter) super.getAdapter();
 	}
 
+	private class OlderMessagesLoader extends MessengerAsyncTask<Message, Void, List<Message>> {
+
+		private OlderMessagesLoader(@Nonnull Context context) {
+			super(context);
+		}
+
+		@Override
+		protected List<Message> doWork(@Nonnull List<Message> anchors) {
+			assert anchors.size() == 1;
+			return App.getMessageService().getMessagesBefore(chat.getEntity(), anchors.get(0), MESSAGES_PAGE_SIZE);
+		}
+
+		@Override
+		protected void onSuccessPostExecute(@Nullable List<Message> messages) {
+			loadingOlderMessages = false;
+
+			if (messages != null && !messages.isEmpty()) {
+				final ListView lv = getListViewById();
+				if (lv != null) {
+					final Integer transcriptMode = lv.getTranscriptMode();
+					lv.setTranscriptMode(ListView.TRANSCRIPT_MODE_DISABLED);
+					getAdapter().addOlderMessages(messages);
+					setTranscriptMode(lv, transcriptMode);
+				} else {
+					getAdapter().addOlderMessages(messages);
+				}
+			}
+
+			if (messages == null || messages.size() < MESSAGES_PAGE_SIZE) {
+				// local history is exhausted => ask server
+				syncOlderMessages();
+			}
+		}
+
+		@Override
+		protected void onFailurePostExecute(@Nonnull Exception e) {
+			loadingOlderMessages = false;
+			super.onFailurePostExecute(e);
+		}
+	}
+
 	private static class ListViewPostActions implements Runnable {
 
 		@Nonnull
@@ -494,7 +562,7 @@ public final class MessagesFragment extends BaseAsyncListFragment<Message, Messa
 		@Nonnull
 		@Override
 		protected List<Message> getElements(@Nonnull Context context) {
-			return App.getMessageService().getMessages(chat.getEntity());
+			return App.getMessageService().getMessagesBefore(chat.getEntity(), null, MESSAGES_PAGE_SIZE);
 		}
 
 		@Nonnull
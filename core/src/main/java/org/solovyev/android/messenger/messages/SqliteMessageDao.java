@@ -20,8 +20,12 @@ import android.app.Application;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+import com.google.common.base.Objects;
 import com.google.inject.Inject;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormatter;
@@ -32,6 +36,7 @@ import org.solovyev.android.messenger.MergeDaoResult;
 import org.solovyev.android.messenger.MergeDaoResultImpl;
 import org.solovyev.android.messenger.chats.Chat;
 import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.db.PropertiesListMapper;
 import org.solovyev.android.messenger.db.StringIdMapper;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.users.UserService;
@@ -45,17 +50,50 @@ import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static com.google.common.collect.Iterables.getFirst;
 import static org.solovyev.android.db.AndroidDbUtils.*;
+import static org.solovyev.android.messenger.App.newTag;
 import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
+import static org.solovyev.android.messenger.messages.MessageState.received;
 import static org.solovyev.android.messenger.messages.MessageState.removed;
 
 
 @Singleton
 public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao {
 
+	@Nonnull
+	private static final String TAG = newTag("MessageDao");
+
+	/*
+	**********************************************************************
+	*
+	*                           QUERIES
+	*
+	**********************************************************************
+	*/
+
+	// NOTE: query plans of these queries are checked in MessageQueryPlanTest
+
+	static final String SELECT_CHAT_MESSAGES = "select * from messages where chat_id = ? and state <> ?";
+
+	static final String SELECT_ALL_CHAT_MESSAGES = "select * from messages where chat_id = ?";
+
+	static final String SELECT_OLDEST_MESSAGE_ID = "select id from messages where chat_id = ? and state <> ? order by send_time asc";
+
+	static final String SELECT_LAST_MESSAGE_ID = "select id from messages where chat_id = ? and state <> ? order by send_time desc";
+
+	static final String SELECT_MESSAGES_COUNT = "select count(*) from messages where chat_id = ? and state <> ?";
+
+	static final String SELECT_SAME_MESSAGES = "select * from messages where body = ? and author_id = ? and recipient_id = ? and abs(send_time - ?) < 60000";
+
     /*
 	**********************************************************************
     *
@@ -86,9 +124,13 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 	@Nonnull
 	private final MessageMapper mapper = new MessageMapper(SqliteMessageDao.this);
 
+	@Nonnull
+	private final PropertiesListMapper<Message> listMapper;
+
 	@Inject
 	public SqliteMessageDao(@Nonnull Application context, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
 		super(context, sqliteOpenHelper);
+		this.listMapper = new PropertiesListMapper<Message>(mapper, context, sqliteOpenHelper, "message_properties", "message_id");
 		this.dao = new SqliteDao<Message>("messages", "id", new MessageDaoMapper(), context, sqliteOpenHelper);
 	}
 
@@ -100,7 +142,7 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 
 	@Override
 	public long create(@Nonnull Message message) {
-		final long result = dao.create(message);
+		final long result = doDbExec(getSqliteOpenHelper(), new InsertMessage(message));
 		if (result != DbExec.SQL_ERROR) {
 			doDbExec(getSqliteOpenHelper(), new InsertProperties(message));
 		}
@@ -127,7 +169,7 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 
 	@Override
 	public long update(@Nonnull Message message) {
-		final long rows = dao.update(message);
+		final long rows = doDbExec(getSqliteOpenHelper(), new UpdateMessage(message));
 		if (rows > 0) {
 			// message exists => can remove/insert properties
 			doDbExecs(getSqliteOpenHelper(), Arrays.<DbExec>asList(new DeleteProperties(message), new InsertProperties(message)));
@@ -137,12 +179,12 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 
 	@Override
 	public void delete(@Nonnull Message message) {
-		dao.delete(message);
+		deleteById(message.getId());
 	}
 
 	@Override
 	public void deleteById(@Nonnull String id) {
-		dao.deleteById(id);
+		doDbExec(getSqliteOpenHelper(), new DeleteMessage(id));
 	}
 
 	@Nonnull
@@ -151,6 +193,36 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		return doDbQuery(getSqliteOpenHelper(), new LoadMessages(getContext(), chatId, getSqliteOpenHelper()));
 	}
 
+	@Nonnull
+	@Override
+	public List<Message> readMessagesByIds(@Nonnull List<String> messageIds) {
+		final List<Message> result = new ArrayList<Message>(messageIds.size());
+		for (List<String> messageIdsChunk : org.solovyev.common.collections.Collections.split(messageIds, MAX_IN_COUNT)) {
+			result.addAll(doDbQuery(getSqliteOpenHelper(), new LoadMessagesByIds(getContext(), messageIdsChunk, getSqliteOpenHelper())));
+		}
+		return result;
+	}
+
+	@Nonnull
+	@Override
+	public List<Message> readMessagesBefore(@Nonnull String chatId, @Nullable Message anchor, int limit) {
+		final List<Message> messages = doDbQuery(getSqliteOpenHelper(), new LoadMessagesPage(getContext(), chatId, anchor, false, limit, getSqliteOpenHelper()));
+		// messages are loaded in reversed order
+		Collections.reverse(messages);
+		return messages;
+	}
+
+	@Nonnull
+	@Override
+	public List<Message> readMessagesAfter(@Nonnull String chatId, @Nullable Message anchor, int limit) {
+		return doDbQuery(getSqliteOpenHelper(), new LoadMessagesPage(getContext(), chatId, anchor, true, limit, getSqliteOpenHelper()));
+	}
+
+	@Override
+	public int getMessagesCount(@Nonnull String chatId) {
+		return doDbQuery(getSqliteOpenHelper(), new MessagesCountLoader(getContext(), getSqliteOpenHelper(), chatId));
+	}
+
 	@Nonnull
 	@Override
 	public String getOldestMessageForChat(@Nonnull String chatId) {
@@ -186,9 +258,82 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		return rows != 0;
 	}
 
+	@Nonnull
+	@Override
+	public ChangedMessageIds changeReadStatusesAndStates(@Nonnull Collection<String> readMessageIds, @Nonnull Map<String, MessageState> states) {
+		final List<DbExec> execs = new ArrayList<DbExec>(readMessageIds.size() + states.size());
+		final List<ReadStatusUpdater> readStatusUpdaters = new ArrayList<ReadStatusUpdater>(readMessageIds.size());
+		for (String messageId : readMessageIds) {
+			final ReadStatusUpdater readStatusUpdater = new ReadStatusUpdater(messageId, true);
+			readStatusUpdaters.add(readStatusUpdater);
+			execs.add(readStatusUpdater);
+		}
+		final List<StateUpdater> stateUpdaters = new ArrayList<StateUpdater>(states.size());
+		for (Map.Entry<String, MessageState> entry : states.entrySet()) {
+			final StateUpdater stateUpdater = new StateUpdater(entry.getKey(), entry.getValue());
+			stateUpdaters.add(stateUpdater);
+			execs.add(stateUpdater);
+		}
+
+		doDbExecs(getSqliteOpenHelper(), execs);
+
+		final Set<String> readResult = new HashSet<String>();
+		for (ReadStatusUpdater readStatusUpdater : readStatusUpdaters) {
+			if (readStatusUpdater.isChanged()) {
+				readResult.add(readStatusUpdater.messageId);
+			}
+		}
+		final Set<String> stateResult = new HashSet<String>();
+		for (StateUpdater stateUpdater : stateUpdaters) {
+			if (stateUpdater.isChanged()) {
+				stateResult.add(stateUpdater.messageId);
+			}
+		}
+		return new ChangedMessageIds(readResult, stateResult);
+	}
+
 	@Override
 	public void deleteAll() {
-		doDbExec(getSqliteOpenHelper(), DeleteAllRowsDbExec.newInstance("messages"));
+		doDbExecs(getSqliteOpenHelper(), Arrays.<DbExec>asList(DeleteAllRowsDbExec.newInstance("messages"), DeleteAllRowsDbExec.newInstance("chat_unread_counts")));
+	}
+
+	@Override
+	public void rebuildUnreadCounts() {
+		doDbExecs(getSqliteOpenHelper(), Arrays.<DbExec>asList(DeleteAllRowsDbExec.newInstance("chat_unread_counts"), new InsertUnreadCounts()));
+	}
+
+	@Nonnull
+	@Override
+	public List<MessageSearchResult> searchMessages(@Nonnull String ftsQuery, @Nullable String chatId, int limit, int offset) {
+		final List<SearchHit> hits = doDbQuery(getSqliteOpenHelper(), new SearchMessages(getContext(), ftsQuery, chatId, limit, offset, getSqliteOpenHelper()));
+		if (hits.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		final List<String> messageIds = new ArrayList<String>(hits.size());
+		for (SearchHit hit : hits) {
+			messageIds.add(hit.messageId);
+		}
+
+		// key: message id
+		final Map<String, Message> messages = new HashMap<String, Message>(hits.size());
+		for (Message message : readMessagesByIds(messageIds)) {
+			messages.put(message.getId(), message);
+		}
+
+		final List<MessageSearchResult> result = new ArrayList<MessageSearchResult>(hits.size());
+		for (SearchHit hit : hits) {
+			final Message message = messages.get(hit.messageId);
+			if (message != null) {
+				result.add(new MessageSearchResult(message, hit.snippet, hit.rank));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean indexMessagesForSearch(int count) {
+		return doDbExec(getSqliteOpenHelper(), new IndexMessagesForSearch(count)) > 0;
 	}
 
 	@Nonnull
@@ -210,31 +355,49 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 
 		final Chat chat = getChatService().getChatById(newEntityFromEntityId(chatId));
 
-		if (chat != null) {
+		if (chat != null && !messages.isEmpty()) {
+			final List<String> messageIds = new ArrayList<String>(messages.size());
 			for (Message message : messages) {
-				final Message messageFromDb = read(message.getId());
+				messageIds.add(message.getId());
+			}
+
+			// key: message id
+			final Map<String, Message> messagesFromDb = new HashMap<String, Message>();
+			for (Message messageFromDb : readMessagesByIds(messageIds)) {
+				messagesFromDb.put(messageFromDb.getId(), messageFromDb);
+			}
+
+			// key: message id, value: new/merged message
+			final Map<String, Message> addedMessages = new LinkedHashMap<String, Message>();
+			final Map<String, Message> updatedMessages = new LinkedHashMap<String, Message>();
+			for (Message message : messages) {
+				final String messageId = message.getId();
+				final Message messageFromDb = messagesFromDb.get(messageId);
 				if (messageFromDb == null) {
-					result.addAddedObject(message);
+					final Message addedMessage = addedMessages.get(messageId);
+					addedMessages.put(messageId, addedMessage == null ? message : addedMessage.merge(message));
 				} else {
-					final Message mergedMessage = messageFromDb.merge(message);
-					result.addUpdatedObject(mergedMessage);
+					final Message updatedMessage = updatedMessages.get(messageId);
+					final Message mergedMessage = (updatedMessage == null ? messageFromDb : updatedMessage).merge(message);
+					if (hasSameContent(messageFromDb, mergedMessage)) {
+						// nothing to write
+						updatedMessages.remove(messageId);
+					} else {
+						updatedMessages.put(messageId, mergedMessage);
+					}
 				}
 			}
 
-			final List<DbExec> execs = new ArrayList<DbExec>();
+			final MergeMessages mergeMessages = new MergeMessages(addedMessages.values(), updatedMessages.values());
+			doDbExec(getSqliteOpenHelper(), mergeMessages);
 
-			for (Message updatedMessage : result.getUpdatedObjects()) {
-				execs.add(new UpdateMessage(updatedMessage));
-				execs.add(new DeleteProperties(updatedMessage));
-				execs.add(new InsertProperties(updatedMessage));
+			// only messages which were actually written are reported
+			for (Message addedMessage : mergeMessages.getInsertedMessages()) {
+				result.addAddedObject(addedMessage);
 			}
-
-			for (Message addedMessage : result.getAddedObjects()) {
-				execs.add(new InsertMessage(addedMessage));
-				execs.add(new InsertProperties(addedMessage));
+			for (Message updatedMessage : mergeMessages.getUpdatedMessages()) {
+				result.addUpdatedObject(updatedMessage);
 			}
-
-			doDbExecs(getSqliteOpenHelper(), execs);
 		}
 
 		return result;
@@ -274,7 +437,7 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.query("messages", null, "chat_id = ?", new String[]{chatId}, null, null, null);
+			return db.rawQuery(SELECT_ALL_CHAT_MESSAGES, new String[]{chatId});
 		}
 
 		@Nonnull
@@ -284,38 +447,362 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		}
 	}
 
-	public static final class InsertMessage extends AbstractObjectDbExec<Message> {
+	public static final class InsertMessage implements DbExec {
 
-		public InsertMessage(@Nullable Message message) {
-			super(message);
+		@Nonnull
+		private final Message message;
+
+		public InsertMessage(@Nonnull Message message) {
+			this.message = message;
 		}
 
 		@Override
 		public long exec(@Nonnull SQLiteDatabase db) {
-			final Message message = getNotNullObject();
-
 			final ContentValues values = toContentValues(message);
 
 			return db.insert("messages", null, values);
 		}
 	}
 
-	private static final class UpdateMessage extends AbstractObjectDbExec<Message> {
+	private static final class UpdateMessage implements DbExec {
+
+		@Nonnull
+		private final Message message;
 
 		private UpdateMessage(@Nonnull Message message) {
-			super(message);
+			this.message = message;
 		}
 
 		@Override
 		public long exec(@Nonnull SQLiteDatabase db) {
-			final Message message = getNotNullObject();
-
 			final ContentValues values = toContentValues(message);
 
 			return db.update("messages", values, "id = ?", new String[]{String.valueOf(message.getEntity().getEntityId())});
 		}
 	}
 
+	private static final class DeleteMessage implements DbExec {
+
+		@Nonnull
+		private final String messageId;
+
+		private DeleteMessage(@Nonnull String messageId) {
+			this.messageId = messageId;
+		}
+
+		@Override
+		public long exec(@Nonnull SQLiteDatabase db) {
+			return db.delete("messages", "id = ?", new String[]{messageId});
+		}
+	}
+
+	private static final class InsertUnreadCounts implements DbExec {
+
+		@Override
+		public long exec(@Nonnull SQLiteDatabase db) {
+			db.execSQL("insert into chat_unread_counts (chat_id, unread_count) " +
+					"select chat_id, count(*) from messages where read = 0 and state = ? group by chat_id", new Object[]{received.name()});
+			return 0;
+		}
+	}
+
+	/**
+	 * Writes merged messages in one transaction reusing compiled statements. Message which violates a constraint (e.g.
+	 * unknown author) is skipped and logged, other messages are written.
+	 */
+	private static final class MergeMessages implements DbExec {
+
+		private static final String MESSAGE_COLUMNS = "account_id, account_message_id, chat_id, author_id, recipient_id, send_date, send_time, title, body, read, state";
+
+		@Nonnull
+		private final Collection<Message> addedMessages;
+
+		@Nonnull
+		private final Collection<Message> updatedMessages;
+
+		@Nonnull
+		private final List<Message> insertedMessages = new ArrayList<Message>();
+
+		@Nonnull
+		private final List<Message> writtenUpdatedMessages = new ArrayList<Message>();
+
+		private MergeMessages(@Nonnull Collection<Message> addedMessages,
+							  @Nonnull Collection<Message> updatedMessages) {
+			this.addedMessages = addedMessages;
+			this.updatedMessages = updatedMessages;
+		}
+
+		@Override
+		public long exec(@Nonnull SQLiteDatabase db) {
+			final SQLiteStatement insertMessage = db.compileStatement("insert into messages (" + MESSAGE_COLUMNS + ", id) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+			final SQLiteStatement updateMessage = db.compileStatement("update messages set " + MESSAGE_COLUMNS.replace(",", " = ?,") + " = ? where id = ?");
+			final SQLiteStatement deleteMessage = db.compileStatement("delete from messages where id = ?");
+			final SQLiteStatement deleteProperties = db.compileStatement("delete from message_properties where message_id = ?");
+			final SQLiteStatement insertProperty = db.compileStatement("insert into message_properties (message_id, property_name, property_value) values (?, ?, ?)");
+			try {
+				db.beginTransaction();
+				try {
+					for (Message message : addedMessages) {
+						if (insertMessage(insertMessage, deleteMessage, insertProperty, message)) {
+							insertedMessages.add(message);
+						}
+					}
+
+					for (Message message : updatedMessages) {
+						if (updateMessage(updateMessage, deleteProperties, insertProperty, message)) {
+							writtenUpdatedMessages.add(message);
+						}
+					}
+
+					db.setTransactionSuccessful();
+				} finally {
+					db.endTransaction();
+				}
+			} finally {
+				insertMessage.close();
+				updateMessage.close();
+				deleteMessage.close();
+				deleteProperties.close();
+				insertProperty.close();
+			}
+
+			return insertedMessages.size() + writtenUpdatedMessages.size();
+		}
+
+		private static boolean insertMessage(@Nonnull SQLiteStatement insertMessage,
+											 @Nonnull SQLiteStatement deleteMessage,
+											 @Nonnull SQLiteStatement insertProperty,
+											 @Nonnull Message message) {
+			bindMessage(insertMessage, message);
+			try {
+				insertMessage.executeInsert();
+			} catch (SQLiteConstraintException e) {
+				// nothing was written
+				Log.e(TAG, "Message " + message.getId() + " was not inserted", e);
+				return false;
+			}
+
+			try {
+				insertProperties(insertProperty, message);
+				return true;
+			} catch (SQLiteConstraintException e) {
+				// properties are removed on cascade
+				deleteMessage.bindString(1, message.getId());
+				deleteMessage.execute();
+				Log.e(TAG, "Properties of message " + message.getId() + " were not inserted", e);
+				return false;
+			}
+		}
+
+		private static boolean updateMessage(@Nonnull SQLiteStatement updateMessage,
+											 @Nonnull SQLiteStatement deleteProperties,
+											 @Nonnull SQLiteStatement insertProperty,
+											 @Nonnull Message message) {
+			bindMessage(updateMessage, message);
+			try {
+				// message is updated first: if update fails nothing is written
+				updateMessage.execute();
+			} catch (SQLiteConstraintException e) {
+				Log.e(TAG, "Message " + message.getId() + " was not updated", e);
+				return false;
+			}
+
+			deleteProperties.bindString(1, message.getId());
+			deleteProperties.execute();
+			try {
+				insertProperties(insertProperty, message);
+			} catch (SQLiteConstraintException e) {
+				// message itself is updated => it is still reported as updated
+				Log.e(TAG, "Properties of message " + message.getId() + " were not updated", e);
+			}
+			return true;
+		}
+
+		@Nonnull
+		List<Message> getInsertedMessages() {
+			return insertedMessages;
+		}
+
+		@Nonnull
+		List<Message> getUpdatedMessages() {
+			return writtenUpdatedMessages;
+		}
+
+		private static void bindMessage(@Nonnull SQLiteStatement statement, @Nonnull Message message) {
+			final Entity entity = message.getEntity();
+			final Entity recipient = message.getRecipient();
+
+			statement.clearBindings();
+			statement.bindString(1, entity.getAccountId());
+			statement.bindString(2, entity.getAccountEntityId());
+			statement.bindString(3, message.getChat().getEntityId());
+			statement.bindString(4, message.getAuthor().getEntityId());
+			bindNullableString(statement, 5, recipient == null ? null : recipient.getEntityId());
+			statement.bindString(6, ISODateTimeFormat.basicDateTime().print(message.getSendDate()));
+			statement.bindLong(7, message.getSendDate().getMillis());
+			bindNullableString(statement, 8, message.getTitle());
+			bindNullableString(statement, 9, message.getBody());
+			statement.bindLong(10, message.isRead() ? 1 : 0);
+			statement.bindString(11, message.getState().name());
+			statement.bindString(12, entity.getEntityId());
+		}
+
+		private static void insertProperties(@Nonnull SQLiteStatement statement, @Nonnull Message message) {
+			for (AProperty property : message.getProperties().getPropertiesCollection()) {
+				final String value = property.getValue();
+				if (value != null) {
+					statement.bindString(1, message.getId());
+					statement.bindString(2, property.getName());
+					statement.bindString(3, value);
+					statement.executeInsert();
+				}
+			}
+		}
+
+		private static void bindNullableString(@Nonnull SQLiteStatement statement, int index, @Nullable String value) {
+			if (value == null) {
+				statement.bindNull(index);
+			} else {
+				statement.bindString(index, value);
+			}
+		}
+	}
+
+	private static final class SearchHit {
+
+		@Nonnull
+		private final String messageId;
+
+		@Nonnull
+		private final String snippet;
+
+		private final int rank;
+
+		private SearchHit(@Nonnull String messageId, @Nonnull String snippet, int rank) {
+			this.messageId = messageId;
+			this.snippet = snippet;
+			this.rank = rank;
+		}
+	}
+
+	/**
+	 * Full text search over messages_fts table (rows of which have the same rowid as rows of messages table). Rank of the
+	 * message is the number of matches: each match is described by 4 numbers in result of offsets() function.
+	 */
+	private static final class SearchMessages extends AbstractDbQuery<List<SearchHit>> {
+
+		private static final String OFFSETS_COUNT = "(length(offsets(messages_fts)) - length(replace(offsets(messages_fts), ' ', '')) + 1)";
+
+		@Nonnull
+		private final String ftsQuery;
+
+		@Nullable
+		private final String chatId;
+
+		private final int limit;
+
+		private final int offset;
+
+		private SearchMessages(@Nonnull Context context,
+							   @Nonnull String ftsQuery,
+							   @Nullable String chatId,
+							   int limit,
+							   int offset,
+							   @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+			super(context, sqliteOpenHelper);
+			this.ftsQuery = ftsQuery;
+			this.chatId = chatId;
+			this.limit = limit;
+			this.offset = offset;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			final List<String> args = new ArrayList<String>();
+			args.add(ftsQuery);
+			args.add(removed.name());
+
+			final StringBuilder sql = new StringBuilder();
+			sql.append("select m.id, snippet(messages_fts, '").append(MessageSearchResult.MATCH_START).append("', '")
+					.append(MessageSearchResult.MATCH_END).append("', '").append(MessageSearchResult.ELLIPSIS).append("'), ");
+			sql.append(OFFSETS_COUNT).append(" / 4 as rank ");
+			sql.append("from messages_fts, messages m ");
+			sql.append("where messages_fts match ? and m.rowid = messages_fts.docid and m.state <> ? ");
+			if (chatId != null) {
+				sql.append("and m.chat_id = ? ");
+				args.add(chatId);
+			}
+			sql.append("order by rank desc, m.send_time desc limit ? offset ?");
+			args.add(String.valueOf(limit));
+			args.add(String.valueOf(offset));
+
+			return db.rawQuery(sql.toString(), args.toArray(new String[args.size()]));
+		}
+
+		@Nonnull
+		@Override
+		public List<SearchHit> retrieveData(@Nonnull Cursor cursor) {
+			final List<SearchHit> result = new ArrayList<SearchHit>(cursor.getCount());
+			while (cursor.moveToNext()) {
+				final String snippet = cursor.getString(1);
+				result.add(new SearchHit(cursor.getString(0), snippet == null ? "" : snippet, cursor.getInt(2)));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Indexes next chunk of messages stored before messages_fts table was created. Rows to be indexed and progress are
+	 * kept in messages_fts_backfill table which is removed when all rows are indexed.
+	 *
+	 * @see MessageDao#indexMessagesForSearch(int)
+	 */
+	private static final class IndexMessagesForSearch implements DbExec {
+
+		private final int count;
+
+		private IndexMessagesForSearch(int count) {
+			this.count = count;
+		}
+
+		@Override
+		public long exec(@Nonnull SQLiteDatabase db) {
+			long result = 0;
+
+			db.beginTransaction();
+			try {
+				final Cursor cursor = db.rawQuery("select next_rowid, max_rowid from messages_fts_backfill", null);
+				try {
+					if (cursor.moveToFirst()) {
+						final long nextRowId = cursor.getLong(0);
+						final long maxRowId = cursor.getLong(1);
+						final long lastRowId = Math.min(nextRowId + count, maxRowId);
+
+						// rows might have been already indexed by trigger (e.g. if rowid was reused) => check
+						db.execSQL("insert into messages_fts (docid, title, body) " +
+								"select m.rowid, m.title, m.body from messages m " +
+								"where m.rowid > ? and m.rowid <= ? and not exists (select f.docid from messages_fts f where f.docid = m.rowid)", new Object[]{nextRowId, lastRowId});
+
+						if (lastRowId < maxRowId) {
+							db.execSQL("update messages_fts_backfill set next_rowid = ?", new Object[]{lastRowId});
+							result = 1;
+						} else {
+							db.execSQL("delete from messages_fts_backfill");
+						}
+					}
+				} finally {
+					cursor.close();
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+
+			return result;
+		}
+	}
+
 	private class MessageDaoMapper implements SqliteDaoEntityMapper<Message> {
 
 		@Nonnull
@@ -329,6 +816,12 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		public Converter<Cursor, Message> getCursorMapper() {
 			return mapper;
 		}
+
+		@Nonnull
+		@Override
+		public Converter<Cursor, List<Message>> getListMapper() {
+			return listMapper;
+		}
 	}
 
 
@@ -347,13 +840,104 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.query("messages", null, "chat_id = ? and state <> ?", new String[]{chatId, removed.name()}, null, null, null);
+			return db.rawQuery(SELECT_CHAT_MESSAGES, new String[]{chatId, removed.name()});
 		}
 
 		@Nonnull
 		@Override
 		public List<Message> retrieveData(@Nonnull Cursor cursor) {
-			return new ListMapper<Message>(mapper).convert(cursor);
+			return listMapper.convert(cursor);
+		}
+	}
+
+	/**
+	 * Keyset pagination query: page is located relatively to (send_time, id) of anchor message
+	 */
+	private final class LoadMessagesPage extends AbstractDbQuery<List<Message>> {
+
+		@Nonnull
+		private final String chatId;
+
+		@Nullable
+		private final Message anchor;
+
+		private final boolean after;
+
+		private final int limit;
+
+		private LoadMessagesPage(@Nonnull Context context,
+								 @Nonnull String chatId,
+								 @Nullable Message anchor,
+								 boolean after,
+								 int limit,
+								 @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+			super(context, sqliteOpenHelper);
+			this.chatId = chatId;
+			this.anchor = anchor;
+			this.after = after;
+			this.limit = limit;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			final String sql = newMessagesPageQuery(anchor != null, after, limit);
+			if (anchor == null) {
+				return db.rawQuery(sql, new String[]{chatId, removed.name()});
+			} else {
+				final String sendTime = String.valueOf(anchor.getSendDate().getMillis());
+				return db.rawQuery(sql, new String[]{chatId, removed.name(), sendTime, sendTime, anchor.getId()});
+			}
+		}
+
+		@Nonnull
+		@Override
+		public List<Message> retrieveData(@Nonnull Cursor cursor) {
+			return listMapper.convert(cursor);
+		}
+	}
+
+	/**
+	 * @param anchored true if page starts after/before anchor message: 3 additional arguments are expected (send time
+	 *                 of anchor, its send time again and its id)
+	 * @param after    true if page goes after anchor (newer messages), false if before (older messages)
+	 * @return query of messages page: arguments are chat id and removed state (+ anchor arguments)
+	 */
+	@Nonnull
+	static String newMessagesPageQuery(boolean anchored, boolean after, int limit) {
+		final String order = after ? "asc" : "desc";
+		final StringBuilder sql = new StringBuilder(SELECT_CHAT_MESSAGES);
+		if (anchored) {
+			final String sign = after ? ">" : "<";
+			sql.append(" and (send_time ").append(sign).append(" ? or (send_time = ? and id ").append(sign).append(" ?))");
+		}
+		sql.append(" order by send_time ").append(order).append(", id ").append(order);
+		sql.append(" limit ").append(limit);
+		return sql.toString();
+	}
+
+	private final class LoadMessagesByIds extends AbstractDbQuery<List<Message>> {
+
+		@Nonnull
+		private final List<String> messageIds;
+
+		private LoadMessagesByIds(@Nonnull Context context,
+								  @Nonnull List<String> messageIds,
+								  @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+			super(context, sqliteOpenHelper);
+			this.messageIds = messageIds;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			return db.query("messages", null, "id in " + inClause(messageIds), inClauseValues(messageIds), null, null, null);
+		}
+
+		@Nonnull
+		@Override
+		public List<Message> retrieveData(@Nonnull Cursor cursor) {
+			return listMapper.convert(cursor);
 		}
 	}
 
@@ -378,7 +962,7 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Nonnull
 		@Override
 		public List<Message> retrieveData(@Nonnull Cursor cursor) {
-			return new ListMapper<Message>(mapper).convert(cursor);
+			return listMapper.convert(cursor);
 		}
 	}
 
@@ -395,7 +979,7 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.rawQuery("select id from messages where chat_id = ? and state <> ? order by send_time asc", new String[]{chatId, removed.name()});
+			return db.rawQuery(SELECT_OLDEST_MESSAGE_ID, new String[]{chatId, removed.name()});
 		}
 
 		@Nonnull
@@ -409,6 +993,33 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		}
 	}
 
+	private static class MessagesCountLoader extends AbstractDbQuery<Integer> {
+
+		@Nonnull
+		private String chatId;
+
+		protected MessagesCountLoader(@Nonnull Context context, @Nonnull SQLiteOpenHelper sqliteOpenHelper, @Nonnull String chatId) {
+			super(context, sqliteOpenHelper);
+			this.chatId = chatId;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			return db.rawQuery(SELECT_MESSAGES_COUNT, new String[]{chatId, removed.name()});
+		}
+
+		@Nonnull
+		@Override
+		public Integer retrieveData(@Nonnull Cursor cursor) {
+			if (cursor.moveToFirst()) {
+				return cursor.getInt(0);
+			} else {
+				return 0;
+			}
+		}
+	}
+
 	private static class LastMessageLoader extends AbstractDbQuery<String> {
 
 		@Nonnull
@@ -422,7 +1033,7 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.rawQuery("select id from messages where chat_id = ? and state <> ? order by send_time desc", new String[]{chatId, removed.name()});
+			return db.rawQuery(SELECT_LAST_MESSAGE_ID, new String[]{chatId, removed.name()});
 		}
 
 		@Nonnull
@@ -460,6 +1071,32 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		return values;
 	}
 
+	/**
+	 * @return true if messages will be stored in the same way, i.e. <var>m2</var> can be skipped if <var>m1</var> is already stored
+	 */
+	private static boolean hasSameContent(@Nonnull Message m1, @Nonnull Message m2) {
+		return m1.isRead() == m2.isRead()
+				&& m1.getState() == m2.getState()
+				&& m1.getChat().equals(m2.getChat())
+				&& m1.getAuthor().equals(m2.getAuthor())
+				&& Objects.equal(m1.getRecipient(), m2.getRecipient())
+				&& m1.getSendDate().getMillis() == m2.getSendDate().getMillis()
+				&& Objects.equal(m1.getBody(), m2.getBody())
+				&& Objects.equal(m1.getTitle(), m2.getTitle())
+				&& getPropertyValues(m1).equals(getPropertyValues(m2));
+	}
+
+	@Nonnull
+	private static Map<String, String> getPropertyValues(@Nonnull Message message) {
+		final Map<String, String> result = new HashMap<String, String>();
+		for (AProperty property : message.getProperties().getPropertiesCollection()) {
+			if (property.getValue() != null) {
+				result.put(property.getName(), property.getValue());
+			}
+		}
+		return result;
+	}
+
 	private static class UnreadMessagesCountLoader extends AbstractDbQuery<Integer> {
 
 		private UnreadMessagesCountLoader(@Nonnull Context context, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
@@ -469,7 +1106,7 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.rawQuery("select count(*) from messages where read = 0 and and state <> ?", new String[]{removed.name()});
+			return db.rawQuery("select sum(cuc.unread_count) from chat_unread_counts cuc, chats c where c.id = cuc.chat_id", null);
 		}
 
 		@Nonnull
@@ -495,12 +1132,21 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 			this.read = read;
 		}
 
+		// set after execution
+		private boolean changed;
+
 		@Override
 		public long exec(@Nonnull SQLiteDatabase db) {
 			final ContentValues values = new ContentValues();
 			final int newReadValue = read ? 1 : 0;
 			values.put("read", newReadValue);
-			return db.update("messages", values, "id = ? and read <> ?", new String[]{messageId, String.valueOf(newReadValue)});
+			final int rows = db.update("messages", values, "id = ? and read <> ?", new String[]{messageId, String.valueOf(newReadValue)});
+			changed = rows > 0;
+			return rows;
+		}
+
+		boolean isChanged() {
+			return changed;
 		}
 	}
 
@@ -517,11 +1163,20 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 			this.state = state;
 		}
 
+		// set after execution
+		private boolean changed;
+
 		@Override
 		public long exec(@Nonnull SQLiteDatabase db) {
 			final ContentValues values = new ContentValues();
 			values.put("state", state.name());
-			return db.update("messages", values, "id = ?", new String[]{messageId});
+			final int rows = db.update("messages", values, "id = ? and state <> ?", new String[]{messageId, state.name()});
+			changed = rows > 0;
+			return rows;
+		}
+
+		boolean isChanged() {
+			return changed;
 		}
 	}
 
@@ -601,13 +1256,13 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
 			final String sendTime = String.valueOf(this.sendTime.getMillis());
-			return db.query("messages", null, "body = ? and author_id = ? and recipient_id = ? and abs(send_time - ?) < 60000", new String[]{body, author.getEntityId(), recipient.getEntityId(), sendTime}, null, null, null);
+			return db.rawQuery(SELECT_SAME_MESSAGES, new String[]{body, author.getEntityId(), recipient.getEntityId(), sendTime});
 		}
 
 		@Nonnull
 		@Override
 		public List<Message> retrieveData(@Nonnull Cursor cursor) {
-			return new ListMapper<Message>(mapper).convert(cursor);
+			return listMapper.convert(cursor);
 		}
 	}
 }
@@ -138,8 +138,8 @@ public final class UnreadMessagesCounter {
 		}
 	}
 
-	private void onMessageRead(@Nonnull Chat chat) {
-		changeCounter(chat, -1);
+	private void onMessagesRead(@Nonnull Chat chat, int count) {
+		changeCounter(chat, -count);
 		// many messages can be read at once (e.g. chat was opened => wait a little bit for them, too)
 		fireCounterChanged(false);
 	}
@@ -251,7 +251,10 @@ public final class UnreadMessagesCounter {
 		public void onEvent(@Nonnull ChatEvent event) {
 			switch (event.getType()) {
 				case message_read:
-					onMessageRead(event.getChat());
+					onMessagesRead(event.getChat(), 1);
+					break;
+				case messages_read:
+					onMessagesRead(event.getChat(), event.getDataAsMessages().size());
 					break;
 				case message_added:
 					onMessageAdded(event.getChat(), asList(event.getDataAsMessage()));
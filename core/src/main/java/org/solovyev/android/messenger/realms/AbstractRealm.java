@@ -198,6 +198,12 @@ public abstract class AbstractRealm<C extends AccountConfiguration> implements R
 		return createUserFragmentClass;
 	}
 
+	@Nullable
+	@Override
+	public RealmRateLimiter getRateLimiter() {
+		return null;
+	}
+
 	@Override
 	public boolean isInternetConnectionRequired() {
 		return internetConnectionRequired;
@@ -111,6 +111,13 @@ public interface Realm<C extends AccountConfiguration> extends Identifiable {
 
 	boolean isHtmlMessage();
 
+	/**
+	 * @return limiter which must be acquired before each request to the realm's server (shared by all accounts of the
+	 * realm), null if realm doesn't limit rate of requests
+	 */
+	@Nullable
+	RealmRateLimiter getRateLimiter();
+
 	/*
 	**********************************************************************
     *
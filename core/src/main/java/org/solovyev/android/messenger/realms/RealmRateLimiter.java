@@ -0,0 +1,62 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Spaces requests to the realm's server: each {@link #acquire()} returns not earlier than <var>interval</var>
+ * milliseconds after the previous one. One instance must be shared by all the clients of the realm (see
+ * {@link Realm#getRateLimiter()}).
+ */
+@ThreadSafe
+public final class RealmRateLimiter {
+
+	private final long interval;
+
+	@GuardedBy("this")
+	private long nextStartTime;
+
+	public RealmRateLimiter(long interval) {
+		this.interval = interval;
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Method blocks current thread until next request to the realm's server can be done
+	 *
+	 * @throws InterruptedException if thread was interrupted while waiting
+	 */
+	public void acquire() throws InterruptedException {
+		final long startTime;
+		synchronized (this) {
+			startTime = Math.max(currentTimeMillis(), nextStartTime);
+			nextStartTime = startTime + interval;
+		}
+
+		final long delay = startTime - currentTimeMillis();
+		if (delay > 0) {
+			Thread.sleep(delay);
+		}
+	}
+}
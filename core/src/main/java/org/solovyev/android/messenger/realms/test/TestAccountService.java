@@ -214,6 +214,11 @@ public class TestAccountService implements AccountUserService, AccountChatServic
 		return Collections.emptyList();
 	}
 
+	@Override
+	public int backfillMessagesForChat(@Nonnull String accountChatId) {
+		return 0;
+	}
+
 	@Nonnull
 	@Override
 	public synchronized List<AccountChat> getChats() {
@@ -16,11 +16,11 @@
 
 package org.solovyev.android.messenger.sync;
 
-import android.util.Log;
-
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.Configuration;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountEvent;
 import org.solovyev.android.messenger.accounts.AccountService;
@@ -30,15 +30,9 @@ import org.solovyev.common.listeners.JEventListener;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.EnumSet;
-import java.util.Set;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
-
-import static java.lang.System.currentTimeMillis;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 @Singleton
 public class DefaultSyncService implements SyncService {
@@ -55,6 +49,10 @@ public class DefaultSyncService implements SyncService {
 	@Nonnull
 	private AccountService accountService;
 
+	@Inject
+	@Nonnull
+	private Configuration configuration;
+
     /*
 	**********************************************************************
     *
@@ -66,31 +64,32 @@ public class DefaultSyncService implements SyncService {
 	@Nonnull
 	private final Set<SyncTask> runningTasks = EnumSet.noneOf(SyncTask.class);
 
-	@GuardedBy("syncAllTaskRunning")
-	@Nonnull
-	private final AtomicBoolean syncAllTaskRunning = new AtomicBoolean(false);
+	// future of 'all synchronization task', null if task is not running
+	@GuardedBy("this")
+	@Nullable
+	private ListenableFuture<?> syncAllFuture;
 
 	@Nonnull
-	private final Executor executor = Executors.newSingleThreadExecutor();
+	private SyncEngine engine;
 
 	@Nonnull
 	private final JEventListener<AccountEvent> realmEventListener = new RealmEventListener();
 
 	@Override
 	public void init() {
+		engine = new SyncEngine(configuration.getMaxConcurrentSyncAccounts());
 		accountService.addListener(realmEventListener);
 	}
 
+	@Nonnull
 	@Override
-	public void syncAll(final boolean force) throws SyncAllTaskIsAlreadyRunning {
-		startSyncAllTask(accountService.getEnabledAccounts(), force);
+	public Future<?> syncAll(final boolean force) throws SyncAllTaskIsAlreadyRunning {
+		return startSyncAllTask(accountService.getEnabledAccounts(), force);
 	}
 
 	@Override
-	public boolean isSyncAllTaskRunning() {
-		synchronized (syncAllTaskRunning) {
-			return syncAllTaskRunning.get();
-		}
+	public synchronized boolean isSyncAllTaskRunning() {
+		return syncAllFuture != null;
 	}
 
 	/**
@@ -98,23 +97,36 @@ public class DefaultSyncService implements SyncService {
 	 *
 	 * @param accounts realms for which synchronization should be done
 	 * @param force    force synchronization. See {@link SyncService#syncAll(boolean)}
+	 * @return future which is done when synchronization is finished
 	 * @throws SyncAllTaskIsAlreadyRunning thrown when task if 'all synchronization task' is already running
 	 */
-	private void startSyncAllTask(@Nonnull Collection<Account> accounts, boolean force) throws SyncAllTaskIsAlreadyRunning {
-		synchronized (syncAllTaskRunning) {
-			if (syncAllTaskRunning.get()) {
-				throw new SyncAllTaskIsAlreadyRunning();
-			} else {
-				syncAllTaskRunning.set(true);
-			}
+	@Nonnull
+	private synchronized Future<?> startSyncAllTask(@Nonnull Collection<Account> accounts, boolean force) throws SyncAllTaskIsAlreadyRunning {
+		if (syncAllFuture != null) {
+			throw new SyncAllTaskIsAlreadyRunning();
 		}
 
-		executor.execute(new SyncRunnable(force, accounts));
+		final ListenableFuture<?> future = engine.submit(accounts, Arrays.asList(SyncTask.values()), force);
+		syncAllFuture = future;
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				onSyncAllTaskFinished(future);
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return future;
 	}
 
+	private synchronized void onSyncAllTaskFinished(@Nonnull ListenableFuture<?> future) {
+		if (syncAllFuture == future) {
+			syncAllFuture = null;
+		}
+	}
+
+	@Nonnull
 	@Override
-	public void syncAllForAccount(@Nonnull Account account, boolean force) throws SyncAllTaskIsAlreadyRunning {
-		startSyncAllTask(Arrays.asList(account), force);
+	public Future<?> syncAllForAccount(@Nonnull Account account, boolean force) throws SyncAllTaskIsAlreadyRunning {
+		return startSyncAllTask(Arrays.asList(account), force);
 	}
 
 	@Override
@@ -135,14 +147,28 @@ public class DefaultSyncService implements SyncService {
 
 	@Override
 	public void waitWhileSyncFinished() {
-		while (this.isSyncAllTaskRunning()) {
+		final Future<?> future;
+		synchronized (this) {
+			future = syncAllFuture;
+		}
+
+		if (future != null) {
 			try {
-				Thread.sleep(100);
+				future.get();
 			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// errors are handled by sync engine
 			}
 		}
 	}
 
+	@Nonnull
+	@Override
+	public SyncTaskMetrics getMetrics(@Nonnull SyncTask syncTask) {
+		return engine.getMetrics(syncTask);
+	}
+
     /*
 	**********************************************************************
     *
@@ -160,7 +186,7 @@ public class DefaultSyncService implements SyncService {
 		private final Runnable afterSyncCallback;
 
 		public ServiceSyncAsyncTask(@Nonnull SyncTask syncTask, @Nullable Runnable afterSyncCallback) {
-			super(Arrays.asList(syncTask));
+			super(engine, Arrays.asList(syncTask));
 			this.syncTask = syncTask;
 			this.afterSyncCallback = afterSyncCallback;
 		}
@@ -210,59 +236,6 @@ public class DefaultSyncService implements SyncService {
 		}
 	}
 
-	private class SyncRunnable implements Runnable {
-
-		private final String TAG_TIME = App.newSubTag(App.TAG_TIME, "ServiceSync");
-
-		private final boolean force;
-
-		@Nonnull
-		private final Collection<Account> accounts;
-
-		public SyncRunnable(boolean force, @Nonnull Collection<Account> accounts) {
-			this.force = force;
-			this.accounts = accounts;
-		}
-
-		@Override
-		public void run() {
-			try {
-
-				for (Account account : accounts) {
-					final SyncData syncData = new SyncDataImpl(account.getId());
-
-					for (SyncTask syncTask : SyncTask.values()) {
-						try {
-							try {
-								checkRunningTask(syncTask);
-								if (force || syncTask.isTime(syncData)) {
-									final long start = currentTimeMillis();
-									syncTask.doTask(syncData);
-									final long end = currentTimeMillis();
-									final long duration = end - start;
-									if (duration > 1000) {
-										Log.e(TAG_TIME, "Work time is too long for account: " + account + " and task: " + syncTask + ". Time: " + duration + "ms");
-									}
-								}
-							} finally {
-								releaseRunningTask(syncTask);
-							}
-						} catch (TaskIsAlreadyRunningException e) {
-							// ok, task is already running => start another task
-						} catch (RuntimeException e) {
-							App.getExceptionHandler().handleException(e);
-						}
-					}
-				}
-
-			} finally {
-				synchronized (syncAllTaskRunning) {
-					syncAllTaskRunning.set(false);
-				}
-			}
-		}
-	}
-
 	private final class RealmEventListener extends AbstractJEventListener<AccountEvent> {
 
 		private RealmEventListener() {
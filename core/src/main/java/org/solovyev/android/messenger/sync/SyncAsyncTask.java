@@ -16,45 +16,37 @@
 
 package org.solovyev.android.messenger.sync;
 
-import android.util.Log;
-
-import org.solovyev.android.messenger.App;
-import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.api.MessengerAsyncTask;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
-import static java.lang.System.currentTimeMillis;
 import static org.solovyev.android.messenger.App.getAccountService;
 
 class SyncAsyncTask extends MessengerAsyncTask<Void, Void, Void> {
 
-	private static final String TAG_TIME = App.newSubTag(App.TAG_TIME, "Async");
+	@Nonnull
+	private final SyncEngine engine;
 
 	@Nonnull
 	private final List<SyncTask> syncTasks;
 
-	public SyncAsyncTask(@Nonnull List<SyncTask> syncTasks) {
+	public SyncAsyncTask(@Nonnull SyncEngine engine, @Nonnull List<SyncTask> syncTasks) {
 		super(true);
+		this.engine = engine;
 		this.syncTasks = syncTasks;
 	}
 
 	@Override
 	protected Void doWork(@Nonnull List<Void> voids) {
-		for (Account account : getAccountService().getEnabledAccounts()) {
-			final SyncData syncData = new SyncDataImpl(account.getId());
-
-			for (SyncTask syncTask : syncTasks) {
-				final long start = currentTimeMillis();
-				syncTask.doTask(syncData);
-				final long end = currentTimeMillis();
-				final long duration = end - start;
-				if (duration > 1000) {
-					Log.e(TAG_TIME, "Work time is too long for account: " + account + " and task: " + syncTask + ". Time: " + duration + "ms");
-				}
-			}
+		try {
+			engine.submit(getAccountService().getEnabledAccounts(), syncTasks, true).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
 		}
 
 		return null;
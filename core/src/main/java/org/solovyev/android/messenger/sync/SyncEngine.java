@@ -0,0 +1,254 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.messenger.sync;
+
+import android.util.Log;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.realms.RealmRateLimiter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Runs synchronization tasks of different accounts in parallel:
+ * 1. tasks of one account are executed one by one in the order they were submitted
+ * 2. no more than <var>maxConcurrentAccounts</var> accounts are synchronized at the same time
+ * 3. tasks of the same realm are started not more often than realm's rate limiter allows (see {@link org.solovyev.android.messenger.realms.Realm#getRateLimiter()})
+ * 4. task which is already waiting in the account's queue is not submitted twice: future of the waiting task is returned instead
+ * Execution time of each task is recorded, see {@link #getMetrics(SyncTask)}
+ */
+@ThreadSafe
+class SyncEngine {
+
+	private static final String TAG = App.newTag("SyncEngine");
+
+	private static final String TAG_TIME = App.newSubTag(App.TAG_TIME, "SyncEngine");
+
+	@Nonnull
+	private final ExecutorService executor;
+
+	// key: account id, value: queue of account's tasks
+	@GuardedBy("queues")
+	@Nonnull
+	private final Map<String, AccountQueue> queues = new HashMap<String, AccountQueue>();
+
+	// key: account id + task, value: future of the task waiting in the queue
+	@GuardedBy("queues")
+	@Nonnull
+	private final Map<String, ListenableFuture<Void>> waitingTasks = new HashMap<String, ListenableFuture<Void>>();
+
+	// filled in constructor => read only afterwards
+	@Nonnull
+	private final Map<SyncTask, SyncTaskMetrics> metrics = new EnumMap<SyncTask, SyncTaskMetrics>(SyncTask.class);
+
+	/**
+	 * @param maxConcurrentAccounts max number of accounts synchronized at the same time
+	 */
+	SyncEngine(int maxConcurrentAccounts) {
+		this.executor = Executors.newFixedThreadPool(maxConcurrentAccounts, new SyncThreadFactory());
+		for (SyncTask syncTask : SyncTask.values()) {
+			metrics.put(syncTask, new SyncTaskMetrics());
+		}
+	}
+
+	/**
+	 * Method submits all <var>syncTasks</var> for each account in <var>accounts</var>
+	 *
+	 * @return future which is done when all submitted tasks are done
+	 */
+	@Nonnull
+	ListenableFuture<List<Void>> submit(@Nonnull Collection<Account> accounts, @Nonnull Collection<SyncTask> syncTasks, boolean force) {
+		final List<ListenableFuture<Void>> futures = new ArrayList<ListenableFuture<Void>>(accounts.size() * syncTasks.size());
+		for (Account account : accounts) {
+			for (SyncTask syncTask : syncTasks) {
+				futures.add(submit(account, syncTask, force));
+			}
+		}
+		return Futures.allAsList(futures);
+	}
+
+	@Nonnull
+	ListenableFuture<Void> submit(@Nonnull Account account, @Nonnull SyncTask syncTask, boolean force) {
+		final String key = account.getId() + ":" + syncTask;
+
+		synchronized (queues) {
+			final ListenableFuture<Void> waitingTask = waitingTasks.get(key);
+			if (waitingTask != null) {
+				return waitingTask;
+			}
+
+			final ListenableFutureTask<Void> result = ListenableFutureTask.create(new SyncCallable(key, account, syncTask, force));
+			waitingTasks.put(key, result);
+
+			AccountQueue queue = queues.get(account.getId());
+			if (queue == null) {
+				queue = new AccountQueue();
+				queues.put(account.getId(), queue);
+			}
+			queue.execute(result);
+
+			return result;
+		}
+	}
+
+	/**
+	 * @return snapshot of metrics of <var>syncTask</var>, only executed tasks are counted (i.e. tasks skipped as
+	 * {@link SyncTask#isTime(SyncData)} returned false are not)
+	 */
+	@Nonnull
+	SyncTaskMetrics getMetrics(@Nonnull SyncTask syncTask) {
+		return metrics.get(syncTask).copy();
+	}
+
+	// for tests
+	void doTask(@Nonnull SyncTask syncTask, @Nonnull SyncData syncData) {
+		syncTask.doTask(syncData);
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	private final class SyncCallable implements Callable<Void> {
+
+		@Nonnull
+		private final String key;
+
+		@Nonnull
+		private final Account account;
+
+		@Nonnull
+		private final SyncTask syncTask;
+
+		private final boolean force;
+
+		private SyncCallable(@Nonnull String key, @Nonnull Account account, @Nonnull SyncTask syncTask, boolean force) {
+			this.key = key;
+			this.account = account;
+			this.syncTask = syncTask;
+			this.force = force;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			synchronized (queues) {
+				// task is not waiting anymore => same task submitted from now on should be run again
+				waitingTasks.remove(key);
+			}
+
+			try {
+				final SyncData syncData = new SyncDataImpl(account.getId());
+				if (force || syncTask.isTime(syncData)) {
+					final RealmRateLimiter rateLimiter = account.getRealm().getRateLimiter();
+					if (rateLimiter != null) {
+						rateLimiter.acquire();
+					}
+
+					final long start = currentTimeMillis();
+					boolean success = false;
+					try {
+						doTask(syncTask, syncData);
+						success = true;
+					} finally {
+						final long duration = currentTimeMillis() - start;
+						metrics.get(syncTask).onTaskDone(duration, success);
+
+						if (duration > 1000) {
+							Log.e(TAG_TIME, "Work time is too long for account: " + account + " and task: " + syncTask + ". Time: " + duration + "ms");
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				// interrupted while waiting for realm's rate limiter => task is skipped
+				Thread.currentThread().interrupt();
+				Log.w(TAG, "Task " + syncTask + " for account " + account.getId() + " was interrupted and skipped");
+			} catch (RuntimeException e) {
+				App.getExceptionHandler().handleException(e);
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * Executes tasks one by one on the engine's executor
+	 */
+	private final class AccountQueue implements Executor {
+
+		@GuardedBy("this")
+		@Nonnull
+		private final Queue<Runnable> tasks = new LinkedList<Runnable>();
+
+		@GuardedBy("this")
+		@Nullable
+		private Runnable active;
+
+		@Override
+		public synchronized void execute(@Nonnull final Runnable task) {
+			tasks.offer(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} finally {
+						scheduleNext();
+					}
+				}
+			});
+
+			if (active == null) {
+				scheduleNext();
+			}
+		}
+
+		private synchronized void scheduleNext() {
+			active = tasks.poll();
+			if (active != null) {
+				executor.execute(active);
+			}
+		}
+	}
+
+	private static final class SyncThreadFactory implements ThreadFactory {
+
+		@Nonnull
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(@Nonnull Runnable r) {
+			final Thread thread = new Thread(r, "Sync #" + counter.incrementAndGet());
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	}
+}
@@ -20,6 +20,7 @@ import org.solovyev.android.messenger.accounts.Account;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.concurrent.Future;
 
 public interface SyncService {
 
@@ -32,9 +33,11 @@ public interface SyncService {
 	 * Method runs all synchronization tasks over all realms registered in system
 	 *
 	 * @param force true if all data should be synchronized regardless to individual synchronization parameters (frequency, scheduling, etc)
+	 * @return future which is done when synchronization is finished
 	 * @throws SyncAllTaskIsAlreadyRunning if task for synchronization is already running
 	 */
-	void syncAll(boolean force) throws SyncAllTaskIsAlreadyRunning;
+	@Nonnull
+	Future<?> syncAll(boolean force) throws SyncAllTaskIsAlreadyRunning;
 
 	boolean isSyncAllTaskRunning();
 
@@ -42,11 +45,22 @@ public interface SyncService {
 	 * Method runs all synchronization tasks for specified <var>realm</var>
 	 *
 	 * @param force true if all data should be synchronized regardless to individual synchronization parameters (frequency, scheduling, etc)
+	 * @return future which is done when synchronization is finished
 	 * @throws SyncAllTaskIsAlreadyRunning if task for synchronization is already running
 	 */
-	void syncAllForAccount(@Nonnull Account account, boolean force) throws SyncAllTaskIsAlreadyRunning;
+	@Nonnull
+	Future<?> syncAllForAccount(@Nonnull Account account, boolean force) throws SyncAllTaskIsAlreadyRunning;
 
 	void sync(@Nonnull SyncTask syncTask, @Nullable Runnable afterSyncCallback) throws TaskIsAlreadyRunningException;
 
+	/**
+	 * Method blocks current thread until 'all synchronization task' is finished (returns immediately if task is not running)
+	 */
 	void waitWhileSyncFinished();
+
+	/**
+	 * @return execution time metrics of <var>syncTask</var> (over all accounts) since the application start
+	 */
+	@Nonnull
+	SyncTaskMetrics getMetrics(@Nonnull SyncTask syncTask);
 }
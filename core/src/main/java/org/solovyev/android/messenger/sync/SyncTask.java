@@ -106,6 +106,18 @@ public enum SyncTask {
 		protected void doTask0(@Nonnull SyncData syncData) throws AccountException {
 			getChatService().syncMessages(getAccountService().getAccountById(syncData.getAccountId()));
 		}
+	},
+
+	chat_history {
+		@Override
+		public boolean isTime(@Nonnull SyncData syncData) {
+			return isTimeForChatsUpdate(syncData);
+		}
+
+		@Override
+		protected void doTask0(@Nonnull SyncData syncData) throws AccountException {
+			getChatService().backfillMessages(getAccountService().getAccountById(syncData.getAccountId()));
+		}
 	};
 
 	private static final String TAG = newTag("SyncTask");
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.sync;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Number and execution time of runs of one {@link SyncTask} (of all accounts)
+ */
+public final class SyncTaskMetrics {
+
+	private int count;
+	private int errors;
+	private long totalTime;
+	private long maxTime;
+
+	synchronized void onTaskDone(long timeMillis, boolean success) {
+		this.count++;
+		if (!success) {
+			this.errors++;
+		}
+		this.totalTime += timeMillis;
+		this.maxTime = Math.max(this.maxTime, timeMillis);
+	}
+
+	@Nonnull
+	synchronized SyncTaskMetrics copy() {
+		final SyncTaskMetrics copy = new SyncTaskMetrics();
+		copy.count = count;
+		copy.errors = errors;
+		copy.totalTime = totalTime;
+		copy.maxTime = maxTime;
+		return copy;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getErrors() {
+		return errors;
+	}
+
+	public long getTotalTime() {
+		return totalTime;
+	}
+
+	public long getMaxTime() {
+		return maxTime;
+	}
+
+	public long getAverageTime() {
+		return count == 0 ? 0 : totalTime / count;
+	}
+
+	@Override
+	public String toString() {
+		return "SyncTaskMetrics{" +
+				"count=" + count +
+				", errors=" + errors +
+				", averageTime=" + getAverageTime() +
+				"ms, maxTime=" + maxTime +
+				"ms}";
+	}
+}
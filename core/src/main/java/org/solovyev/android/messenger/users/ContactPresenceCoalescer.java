@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import org.solovyev.android.messenger.BatchFlusher;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates presence changes of contacts which come in bursts (e.g. whole roster sends its presences after
+ * reconnection): changes are buffered for a short window and then passed to {@link Consumer} in one batch per user.
+ * Several changes of one contact within the window (e.g. online-offline-online flip-flops) are collapsed into the last one.
+ * Flushes never run concurrently => batches are passed to the consumer in order of their creation.
+ */
+final class ContactPresenceCoalescer {
+
+	/**
+	 * Time in milliseconds for which presence changes are buffered
+	 */
+	static final long DEFAULT_WINDOW = 250L;
+
+	/**
+	 * Number of buffered contacts after which buffer is flushed without waiting for the end of the window
+	 */
+	static final int MAX_BUFFERED = 1000;
+
+	@Nonnull
+	private final Consumer consumer;
+
+	@Nonnull
+	private final BatchFlusher flusher;
+
+	/**
+	 * key: user id, value: buffered changes of user's contacts
+	 */
+	@GuardedBy("this")
+	@Nonnull
+	private Map<String, UserChanges> changes = new LinkedHashMap<String, UserChanges>();
+
+	@GuardedBy("this")
+	private int bufferedCount;
+
+	@Nonnull
+	private final Object flushLock = new Object();
+
+	ContactPresenceCoalescer(long windowMillis, @Nonnull Consumer consumer) {
+		this.consumer = consumer;
+		this.flusher = new BatchFlusher("Contact presences", windowMillis, new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		});
+	}
+
+	/**
+	 * @param user      owner of the contact
+	 * @param contact   contact which presence has changed
+	 * @param available new presence of the contact
+	 */
+	void add(@Nonnull User user, @Nonnull User contact, boolean available) {
+		final boolean first;
+		final boolean full;
+		synchronized (this) {
+			UserChanges userChanges = changes.get(user.getId());
+			if (userChanges == null) {
+				userChanges = new UserChanges(user);
+				changes.put(user.getId(), userChanges);
+			}
+
+			if (userChanges.add(contact, available)) {
+				bufferedCount++;
+			}
+			first = bufferedCount == 1;
+			full = bufferedCount == MAX_BUFFERED;
+		}
+
+		if (full) {
+			flusher.execute();
+		} else if (first) {
+			flusher.schedule();
+		}
+	}
+
+	/**
+	 * Method passes all buffered changes to the consumer on the calling thread
+	 */
+	void flush() {
+		synchronized (flushLock) {
+			final Collection<UserChanges> flushed;
+			synchronized (this) {
+				if (changes.isEmpty()) {
+					return;
+				}
+				flushed = changes.values();
+				changes = new LinkedHashMap<String, UserChanges>();
+				bufferedCount = 0;
+			}
+
+			for (UserChanges userChanges : flushed) {
+				final List<User> contacts = userChanges.getChangedContacts();
+				if (!contacts.isEmpty()) {
+					consumer.onContactsPresenceChanged(userChanges.user, contacts);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method passes all buffered changes to the consumer and stops background flushing: changes added after this call
+	 * are passed to the consumer immediately
+	 */
+	void shutdown() {
+		flusher.shutdown();
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	interface Consumer {
+
+		/**
+		 * @param user     owner of the contacts
+		 * @param contacts contacts with changed presence (presence is set in {@link User#isOnline()})
+		 */
+		void onContactsPresenceChanged(@Nonnull User user, @Nonnull List<User> contacts);
+	}
+
+	private static final class UserChanges {
+
+		@Nonnull
+		private final User user;
+
+		/**
+		 * key: contact id, value: contact with the latest presence
+		 */
+		@Nonnull
+		private final Map<String, User> contacts = new LinkedHashMap<String, User>();
+
+		private UserChanges(@Nonnull User user) {
+			this.user = user;
+		}
+
+		/**
+		 * @return true if contact was not buffered before
+		 */
+		private boolean add(@Nonnull User contact, boolean available) {
+			return contacts.put(contact.getId(), contact.cloneWithNewStatus(available)) == null;
+		}
+
+		@Nonnull
+		private List<User> getChangedContacts() {
+			return new ArrayList<User>(contacts.values());
+		}
+	}
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import org.solovyev.android.messenger.entities.Entity;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.lang.Math.min;
+
+/**
+ * Search index over contacts of each account user: display names, logins and phone numbers of contacts are split into
+ * normalized (lower case) tokens which are kept sorted => prefix query is a binary search followed by a scan of
+ * matched tokens only.
+ * Index of account user is built on first search (see {@link #put(Entity, List, long)}) and then is updated from
+ * {@link UserEvent}s (see {@link #onEvent(UserEvent)}). Each update creates new immutable {@link Snapshot} => searches
+ * don't need any locking.
+ */
+@ThreadSafe
+final class ContactSearchIndex {
+
+	// key: account user entity, value: index of his contacts
+	@Nonnull
+	private final ConcurrentMap<Entity, Snapshot> snapshots = new ConcurrentHashMap<Entity, Snapshot>();
+
+	// incremented on each change of the index: snapshot built from contacts loaded before some change must not be stored
+	@GuardedBy("this")
+	private long version;
+
+	@Nullable
+	Snapshot get(@Nonnull Entity user) {
+		return snapshots.get(user);
+	}
+
+	synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Builds index of <var>contacts</var> of <var>user</var>. Index is stored only if there were no changes since
+	 * <var>version</var> (otherwise <var>contacts</var> might be already outdated)
+	 *
+	 * @return index of <var>contacts</var>
+	 */
+	@Nonnull
+	Snapshot put(@Nonnull Entity user, @Nonnull List<User> contacts, long version) {
+		final Snapshot result = Snapshot.newSnapshot(contacts);
+		synchronized (this) {
+			if (this.version == version) {
+				snapshots.put(user, result);
+			}
+		}
+		return result;
+	}
+
+	public synchronized void onEvent(@Nonnull UserEvent event) {
+		final User user = event.getUser();
+		final Snapshot snapshot = snapshots.get(user.getEntity());
+
+		switch (event.getType()) {
+			case changed:
+				// user might be a contact of any account user
+				for (Map.Entry<Entity, Snapshot> entry : snapshots.entrySet()) {
+					entry.setValue(entry.getValue().withContacts(Collections.singletonList(user), false));
+				}
+				version++;
+				break;
+			case contacts_added:
+				if (snapshot != null) {
+					snapshots.put(user.getEntity(), snapshot.withContacts(event.getDataAsUsers(), true));
+				}
+				version++;
+				break;
+			case contact_removed:
+				if (snapshot != null) {
+					snapshots.put(user.getEntity(), snapshot.withoutContact(event.getDataAsUserId()));
+				}
+				version++;
+				break;
+			case contacts_changed:
+				if (snapshot != null) {
+					snapshots.put(user.getEntity(), snapshot.withContacts(event.getDataAsUsers(), false));
+				}
+				version++;
+				break;
+			case contacts_presence_changed:
+				if (snapshot != null) {
+					snapshots.put(user.getEntity(), snapshot.withStatuses(event.getDataAsUsers()));
+				}
+				version++;
+				break;
+		}
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	@Nonnull
+	static Set<String> getTokens(@Nonnull User contact) {
+		final Set<String> result = new TreeSet<String>();
+		addWords(result, contact.getDisplayName());
+		addWords(result, contact.getLogin());
+		for (String phoneNumber : contact.getPhoneNumbers()) {
+			final String digits = toDigits(phoneNumber);
+			if (digits.length() > 0) {
+				result.add(digits);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return normalized words of <var>query</var>, phone number is returned as one word consisting of digits
+	 */
+	@Nonnull
+	static String[] getQueryTokens(@Nullable String query) {
+		if (query == null) {
+			return new String[0];
+		}
+
+		final String digits = toDigits(query);
+		if (digits.length() > 0 && isPhoneNumber(query)) {
+			return new String[]{digits};
+		}
+
+		final Set<String> result = new TreeSet<String>();
+		addWords(result, query);
+		return result.toArray(new String[result.size()]);
+	}
+
+	private static void addWords(@Nonnull Collection<String> words, @Nullable String s) {
+		if (s == null) {
+			return;
+		}
+
+		int wordStart = -1;
+		for (int i = 0; i <= s.length(); i++) {
+			if (i < s.length() && Character.isLetterOrDigit(s.charAt(i))) {
+				if (wordStart < 0) {
+					wordStart = i;
+				}
+			} else if (wordStart >= 0) {
+				words.add(s.substring(wordStart, i).toLowerCase());
+				wordStart = -1;
+			}
+		}
+	}
+
+	private static boolean isPhoneNumber(@Nonnull String s) {
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (!Character.isDigit(c) && "+-() ".indexOf(c) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Nonnull
+	private static String toDigits(@Nonnull String s) {
+		final StringBuilder result = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (Character.isDigit(c)) {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	@Immutable
+	static final class Snapshot {
+
+		@Nonnull
+		private final User[] contacts;
+
+		// key: contact id, value: position in contacts
+		@Nonnull
+		private final Map<String, Integer> positions;
+
+		// tokens of each contact, sorted
+		@Nonnull
+		private final String[][] contactTokens;
+
+		// tokens of all contacts, sorted
+		@Nonnull
+		private final String[] tokens;
+
+		// tokenContacts[i] = position of contact to whom tokens[i] belongs
+		@Nonnull
+		private final int[] tokenContacts;
+
+		private Snapshot(@Nonnull User[] contacts,
+						 @Nonnull Map<String, Integer> positions,
+						 @Nonnull String[][] contactTokens,
+						 @Nonnull String[] tokens,
+						 @Nonnull int[] tokenContacts) {
+			this.contacts = contacts;
+			this.positions = positions;
+			this.contactTokens = contactTokens;
+			this.tokens = tokens;
+			this.tokenContacts = tokenContacts;
+		}
+
+		@Nonnull
+		static Snapshot newSnapshot(@Nonnull List<User> contacts) {
+			final User[] result = new User[contacts.size()];
+			final Map<String, Integer> positions = new HashMap<String, Integer>(contacts.size());
+			final String[][] contactTokens = new String[contacts.size()][];
+			final List<Token> tokens = new ArrayList<Token>(3 * contacts.size());
+
+			int position = 0;
+			for (User contact : contacts) {
+				if (positions.containsKey(contact.getId())) {
+					// duplicate: first occurrence is kept
+					continue;
+				}
+
+				final Set<String> words = getTokens(contact);
+				result[position] = contact;
+				positions.put(contact.getId(), position);
+				contactTokens[position] = words.toArray(new String[words.size()]);
+				for (String word : words) {
+					tokens.add(new Token(word, position));
+				}
+				position++;
+			}
+
+			Collections.sort(tokens);
+
+			final String[] sortedTokens = new String[tokens.size()];
+			final int[] tokenContacts = new int[tokens.size()];
+			for (int i = 0; i < tokens.size(); i++) {
+				final Token token = tokens.get(i);
+				sortedTokens[i] = token.value;
+				tokenContacts[i] = token.contact;
+			}
+
+			return new Snapshot(Arrays.copyOf(result, position), positions, Arrays.copyOf(contactTokens, position), sortedTokens, tokenContacts);
+		}
+
+		int size() {
+			return contacts.length;
+		}
+
+		/**
+		 * @return first <var>count</var> contacts (excluding <var>exceptIds</var>) which have tokens starting with each
+		 * word of <var>query</var>, all contacts match empty query
+		 */
+		@Nonnull
+		List<User> find(@Nullable String query, int count, @Nonnull Set<String> exceptIds) {
+			final List<User> result = new ArrayList<User>(min(count, contacts.length));
+			if (count <= 0) {
+				return result;
+			}
+
+			final String[] queryTokens = getQueryTokens(query);
+			if (queryTokens.length == 0) {
+				for (User contact : contacts) {
+					if (!exceptIds.contains(contact.getId())) {
+						result.add(contact);
+						if (result.size() >= count) {
+							break;
+						}
+					}
+				}
+				return result;
+			}
+
+			// candidates are looked up by the first word, other words are checked against tokens of each candidate
+			final String prefix = queryTokens[0];
+			final boolean[] checked = new boolean[contacts.length];
+			for (int i = lowerBound(prefix); i < tokens.length && tokens[i].startsWith(prefix); i++) {
+				final int position = tokenContacts[i];
+				if (!checked[position]) {
+					checked[position] = true;
+					final User contact = contacts[position];
+					if (!exceptIds.contains(contact.getId()) && matches(contactTokens[position], queryTokens)) {
+						result.add(contact);
+						if (result.size() >= count) {
+							break;
+						}
+					}
+				}
+			}
+
+			return result;
+		}
+
+		private int lowerBound(@Nonnull String prefix) {
+			final int position = Arrays.binarySearch(tokens, prefix);
+			return position >= 0 ? position : -position - 1;
+		}
+
+		private static boolean matches(@Nonnull String[] contactTokens, @Nonnull String[] queryTokens) {
+			for (int i = 1; i < queryTokens.length; i++) {
+				boolean found = false;
+				for (String contactToken : contactTokens) {
+					if (contactToken.startsWith(queryTokens[i])) {
+						found = true;
+						break;
+					}
+				}
+
+				if (!found) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @param addNew true if contacts not present in this snapshot should be added
+		 * @return snapshot with updated <var>changedContacts</var>, same snapshot if nothing has changed
+		 */
+		@Nonnull
+		Snapshot withContacts(@Nonnull List<User> changedContacts, boolean addNew) {
+			User[] result = null;
+			boolean rebuild = false;
+			final List<User> newContacts = new ArrayList<User>();
+
+			for (User contact : changedContacts) {
+				final Integer position = positions.get(contact.getId());
+				if (position != null) {
+					if (result == null) {
+						result = contacts.clone();
+					}
+					result[position] = contact;
+					if (!rebuild) {
+						final Set<String> newTokens = getTokens(contact);
+						rebuild = !Arrays.equals(contactTokens[position], newTokens.toArray(new String[newTokens.size()]));
+					}
+				} else if (addNew) {
+					newContacts.add(contact);
+				}
+			}
+
+			if (result == null && newContacts.isEmpty()) {
+				return this;
+			} else if (!rebuild && newContacts.isEmpty()) {
+				// tokens are the same => only contacts have to be replaced
+				return new Snapshot(result, positions, contactTokens, tokens, tokenContacts);
+			} else {
+				final List<User> allContacts = new ArrayList<User>(Arrays.asList(result != null ? result : contacts));
+				allContacts.addAll(newContacts);
+				return newSnapshot(allContacts);
+			}
+		}
+
+		@Nonnull
+		Snapshot withStatuses(@Nonnull List<User> changedContacts) {
+			final List<User> result = new ArrayList<User>(changedContacts.size());
+			for (User contact : changedContacts) {
+				final Integer position = positions.get(contact.getId());
+				if (position != null) {
+					result.add(contacts[position].cloneWithNewStatus(contact.isOnline()));
+				}
+			}
+			return withContacts(result, false);
+		}
+
+		@Nonnull
+		Snapshot withoutContact(@Nonnull String contactId) {
+			final Integer position = positions.get(contactId);
+			if (position == null) {
+				return this;
+			}
+
+			final List<User> result = new ArrayList<User>(Arrays.asList(contacts));
+			result.remove((int) position);
+			return newSnapshot(result);
+		}
+	}
+
+	private static final class Token implements Comparable<Token> {
+
+		@Nonnull
+		private final String value;
+
+		private final int contact;
+
+		private Token(@Nonnull String value, int contact) {
+			this.value = value;
+			this.contact = contact;
+		}
+
+		@Override
+		public int compareTo(@Nonnull Token that) {
+			return this.value.compareTo(that.value);
+		}
+	}
+}
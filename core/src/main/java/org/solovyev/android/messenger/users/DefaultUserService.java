@@ -42,7 +42,10 @@ import org.solovyev.common.listeners.Listeners;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.collect.Iterables.*;
 import static com.google.common.collect.Lists.newArrayList;
@@ -51,7 +54,6 @@ import static java.lang.Math.min;
 import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableList;
 import static org.solovyev.android.Threads.isUiThread;
-import static org.solovyev.android.messenger.users.ContactsDisplayMode.all_contacts;
 import static org.solovyev.android.messenger.users.UiContact.loadRecentUiContact;
 import static org.solovyev.android.messenger.users.UiContact.loadUiContact;
 import static org.solovyev.android.messenger.users.UserEventType.*;
@@ -61,6 +63,12 @@ import static org.solovyev.common.text.Strings.fromStackTrace;
 @Singleton
 public class DefaultUserService implements UserService {
 
+	/**
+	 * Contacts of {@link IncrementalAccountUserService} are fully reloaded with this period: realm's digests might
+	 * not cover all profile fields
+	 */
+	private static final long FULL_CONTACTS_SYNC_PERIOD = TimeUnit.DAYS.toMillis(1);
+
 	/*
 	**********************************************************************
 	*
@@ -110,9 +118,23 @@ public class DefaultUserService implements UserService {
 	@Nonnull
 	private final UserCache cache = new UserCache();
 
+	@Nonnull
+	private final ContactSearchIndex contactsIndex = new ContactSearchIndex();
+
 	@Nonnull
 	private UserIconsService iconsService;
 
+	/**
+	 * Account id => time of the last full synchronization of contacts (since start of the application)
+	 */
+	@Nonnull
+	private final ConcurrentMap<String, Long> fullContactsSyncTimes = new ConcurrentHashMap<String, Long>();
+
+	private volatile long fullContactsSyncPeriod = FULL_CONTACTS_SYNC_PERIOD;
+
+	@Nonnull
+	private final ContactPresenceCoalescer presenceCoalescer = new ContactPresenceCoalescer(ContactPresenceCoalescer.DEFAULT_WINDOW, new PresenceConsumer());
+
 	@Inject
 	public DefaultUserService(@Nonnull PersistenceLock lock, @Nonnull Executor eventExecutor) {
 		this.listeners = Listeners.newEventListenersBuilderFor(UserEvent.class).withHardReferences().withExecutor(eventExecutor).create();
@@ -185,8 +207,8 @@ public class DefaultUserService implements UserService {
 					throw new NoSuchElementException("User with id: " + user.getEntityId() + " doesn't exist");
 				}
 			} else {
-				// user was loaded either from dao or from API => cache
-				cache.put(result);
+				// user was loaded either from dao or from API => cache (user might be changed while it was loaded => don't override it)
+				cache.putIfAbsent(result);
 			}
 
 			if (!saved) {
@@ -293,6 +315,7 @@ public class DefaultUserService implements UserService {
 			synchronized (lock) {
 				result = userDao.readContacts(user.getEntityId());
 			}
+			cache.onContactsLoaded(user, result.size());
 			contacts.update(user, result);
 		}
 
@@ -312,34 +335,36 @@ public class DefaultUserService implements UserService {
 
 	@Override
 	public void onContactPresenceChanged(@Nonnull User user, @Nonnull final User contact, final boolean available) {
-		final User newContact = contact.cloneWithNewStatus(available);
-		synchronized (lock) {
-			userDao.updateOnlineStatus(newContact);
-		}
+		// presences come in bursts => they are saved and reported in batches, see PresenceConsumer
+		presenceCoalescer.add(user, contact, available);
+	}
+
+	@Override
+	public void shutdownQueues() {
+		presenceCoalescer.shutdown();
+	}
 
-		listeners.fireEvent(contacts_presence_changed.newEvent(user, asList(newContact)));
+	// for tests
+	void flushContactPresences() {
+		presenceCoalescer.flush();
 	}
 
 	@Nonnull
 	@Override
 	public List<UiContact> findContacts(@Nonnull User user, @Nullable String query, int count, @Nonnull Collection<UiContact> except) {
+		return findContacts(user, query, count, getContactIds(except));
+	}
+
+	@Nonnull
+	private List<UiContact> findContacts(@Nonnull User user, @Nullable String query, int count, @Nonnull Set<String> exceptIds) {
 		Log.d(TAG, "Find contacts for user: " + user.getLogin() + ", query: " + query);
-		final List<UiContact> result = new ArrayList<UiContact>();
 
-		final List<User> contacts = getContacts(user.getEntity());
-		final ContactFilter filter = new ContactFilter(query, all_contacts);
+		final List<User> contacts = getContactsIndex(user.getEntity()).find(query, count, exceptIds);
 
 		final Account account = accountService.getAccountByEntity(user.getEntity());
-
-		for (final User contact : contacts) {
-			if (!isExceptedUser(except, contact)) {
-				if (filter.apply(contact)) {
-					result.add(loadUiContact(contact, account));
-					if (result.size() >= count) {
-						break;
-					}
-				}
-			}
+		final List<UiContact> result = new ArrayList<UiContact>(contacts.size());
+		for (User contact : contacts) {
+			result.add(loadUiContact(contact, account));
 		}
 
 		Log.d(TAG, "Found contacts count: " + result.size());
@@ -347,13 +372,23 @@ public class DefaultUserService implements UserService {
 		return result;
 	}
 
-	private boolean isExceptedUser(@Nonnull Collection<UiContact> exceptions, @Nonnull final User contact) {
-		return find(exceptions, new Predicate<UiContact>() {
-			@Override
-			public boolean apply(@Nullable UiContact uiContact) {
-				return uiContact != null && uiContact.getContact().equals(contact);
-			}
-		}, null) != null;
+	@Nonnull
+	private ContactSearchIndex.Snapshot getContactsIndex(@Nonnull Entity user) {
+		ContactSearchIndex.Snapshot result = contactsIndex.get(user);
+		if (result == null) {
+			final long version = contactsIndex.getVersion();
+			result = contactsIndex.put(user, getContacts(user), version);
+		}
+		return result;
+	}
+
+	@Nonnull
+	private static Set<String> getContactIds(@Nonnull Collection<UiContact> uiContacts) {
+		final Set<String> result = new HashSet<String>(uiContacts.size());
+		for (UiContact uiContact : uiContacts) {
+			result.add(uiContact.getContact().getId());
+		}
+		return result;
 	}
 
 	@Nonnull
@@ -371,8 +406,9 @@ public class DefaultUserService implements UserService {
 		final int accountsSize = accountUsers.size();
 		if (accountsSize > 0) {
 			final int accountCount = max(2 * except.size() / accountsSize + count / accountsSize, 1);
+			final Set<String> exceptIds = getContactIds(except);
 			for (User user : accountUsers) {
-				result.addAll(findContacts(user, query, accountCount, except));
+				result.addAll(findContacts(user, query, accountCount, exceptIds));
 			}
 		}
 
@@ -422,7 +458,12 @@ public class DefaultUserService implements UserService {
 	@Override
 	@Nonnull
 	public List<User> syncContacts(@Nonnull Account<?> account) throws AccountException {
-		final List<User> contacts = account.getAccountUserService().getContacts();
+		final AccountUserService accountUserService = account.getAccountUserService();
+		if (accountUserService instanceof IncrementalAccountUserService) {
+			return syncContactsIncrementally(account, (IncrementalAccountUserService) accountUserService);
+		}
+
+		final List<User> contacts = accountUserService.getContacts();
 
 		if (!contacts.isEmpty()) {
 			mergeContacts(account, contacts, false, true);
@@ -433,6 +474,85 @@ public class DefaultUserService implements UserService {
 		return unmodifiableList(contacts);
 	}
 
+	/**
+	 * Only contacts which digests differ from the stored ones are loaded and merged (rows of unchanged contacts are not
+	 * touched), see {@link IncrementalAccountUserService}. All contacts are reloaded on first synchronization after
+	 * start of the application and then every {@link #FULL_CONTACTS_SYNC_PERIOD} ms.
+	 *
+	 * @return list of changed or new contacts
+	 */
+	@Nonnull
+	private List<User> syncContactsIncrementally(@Nonnull Account<?> account, @Nonnull IncrementalAccountUserService accountUserService) throws AccountException {
+		final Map<String, String> digests = accountUserService.getContactDigests();
+		if (digests.isEmpty()) {
+			Log.w(TAG, "User contacts synchronization returned empty list for realm " + account.getId());
+			return Collections.emptyList();
+		}
+
+		final Map<String, String> storedDigests;
+		synchronized (lock) {
+			storedDigests = userDao.readContactDigests(account.getUser().getId());
+		}
+
+		final List<String> changedAccountUserIds = new ArrayList<String>();
+		for (Map.Entry<String, String> entry : digests.entrySet()) {
+			final String userId = account.newUserEntity(entry.getKey()).getEntityId();
+			if (!entry.getValue().equals(storedDigests.get(userId))) {
+				changedAccountUserIds.add(entry.getKey());
+			}
+		}
+
+		Log.d(TAG, "Contacts of " + account.getId() + ": " + changedAccountUserIds.size() + " of " + digests.size() + " changed");
+
+		final long now = System.currentTimeMillis();
+		final Long fullSyncTime = fullContactsSyncTimes.get(account.getId());
+		final boolean fullSync = fullSyncTime == null || now - fullSyncTime >= fullContactsSyncPeriod;
+
+		final List<User> contacts;
+		if (fullSync) {
+			contacts = accountUserService.getContacts();
+		} else if (changedAccountUserIds.isEmpty()) {
+			contacts = Collections.emptyList();
+		} else if (changedAccountUserIds.size() > digests.size() / 2) {
+			// e.g. first synchronization: one request for all contacts is cheaper than loading them by ids
+			final Set<String> changed = new HashSet<String>(changedAccountUserIds);
+			contacts = new ArrayList<User>(changed.size());
+			for (User contact : accountUserService.getContacts()) {
+				if (changed.contains(contact.getEntity().getAccountEntityId())) {
+					contacts.add(contact);
+				}
+			}
+		} else {
+			contacts = accountUserService.getUsersByIds(changedAccountUserIds);
+		}
+
+		if (!contacts.isEmpty()) {
+			mergeContacts(account, contacts, false, true);
+
+			// digests are stored only for loaded contacts => if some contact was not loaded it is checked again next time
+			final Map<String, String> changedDigests = new HashMap<String, String>(contacts.size());
+			for (User contact : contacts) {
+				final String digest = digests.get(contact.getEntity().getAccountEntityId());
+				if (digest != null) {
+					changedDigests.put(contact.getId(), digest);
+				}
+			}
+
+			synchronized (lock) {
+				userDao.updateDigests(changedDigests);
+			}
+
+			if (fullSync) {
+				fullContactsSyncTimes.put(account.getId(), now);
+			}
+		} else {
+			// nothing changed => only sync date should be updated
+			accountService.saveAccountSyncData(account.updateContactsSyncDate());
+		}
+
+		return unmodifiableList(contacts);
+	}
+
 	@Override
 	public void mergeContacts(@Nonnull Account account, @Nonnull List<User> contacts, boolean allowRemoval, boolean allowUpdate) {
 		final User user = account.getUser();
@@ -570,6 +690,11 @@ public class DefaultUserService implements UserService {
 		}
 	}
 
+	// for tests
+	void setFullContactsSyncPeriod(long fullContactsSyncPeriod) {
+		this.fullContactsSyncPeriod = fullContactsSyncPeriod;
+	}
+
 	/*
 	**********************************************************************
 	*
@@ -578,6 +703,18 @@ public class DefaultUserService implements UserService {
 	**********************************************************************
 	*/
 
+	private final class PresenceConsumer implements ContactPresenceCoalescer.Consumer {
+
+		@Override
+		public void onContactsPresenceChanged(@Nonnull User user, @Nonnull List<User> contacts) {
+			synchronized (lock) {
+				userDao.updateOnlineStatuses(contacts);
+			}
+
+			listeners.fireEvent(contacts_presence_changed.newEvent(user, contacts));
+		}
+	}
+
 	private final class UserEventListener extends AbstractJEventListener<UserEvent> {
 
 		private UserEventListener() {
@@ -588,6 +725,7 @@ public class DefaultUserService implements UserService {
 		public void onEvent(@Nonnull UserEvent event) {
 			cache.onEvent(event);
 			contacts.onEvent(event);
+			contactsIndex.onEvent(event);
 			chats.onEvent(event);
 		}
 	}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import org.solovyev.android.messenger.accounts.AccountConnectionException;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Account user service which supports incremental synchronization of contacts: instead of loading and merging full
+ * profiles of all contacts only digests are loaded, compared with digests stored after previous synchronization and
+ * only new or changed contacts are fully loaded and merged (see {@link UserService#syncContacts(org.solovyev.android.messenger.accounts.Account)})
+ */
+public interface IncrementalAccountUserService extends AccountUserService {
+
+	/**
+	 * Digest must change if any property shown to the user changes, it is up to realm which data is used to build
+	 * it (e.g. short subset of profile fields which is cheap to load), see {@link Users#getDigest(User)}
+	 *
+	 * @return key: account user id of contact, value: digest of contact's profile
+	 */
+	@Nonnull
+	Map<String, String> getContactDigests() throws AccountConnectionException;
+
+	/**
+	 * @param accountUserIds account user ids
+	 * @return fully loaded users (users which were not found are not returned)
+	 */
+	@Nonnull
+	List<User> getUsersByIds(@Nonnull Collection<String> accountUserIds) throws AccountConnectionException;
+}
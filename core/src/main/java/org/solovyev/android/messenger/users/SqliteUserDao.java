@@ -31,6 +31,7 @@ import org.solovyev.android.db.properties.PropertyByIdDbQuery;
 import org.solovyev.android.messenger.LinkedEntitiesDao;
 import org.solovyev.android.messenger.MergeDaoResult;
 import org.solovyev.android.messenger.ReplacePropertyExec;
+import org.solovyev.android.messenger.db.PropertiesListMapper;
 import org.solovyev.android.properties.AProperty;
 import org.solovyev.common.Converter;
 import org.solovyev.common.collections.Collections;
@@ -42,9 +43,12 @@ import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.solovyev.android.db.AndroidDbUtils.*;
+import static org.solovyev.android.db.SqliteLinkedEntitiesDao.newLinkedEntitiesQuery;
 import static org.solovyev.android.messenger.users.Users.newOnlineProperty;
 
 /**
@@ -60,6 +64,20 @@ import static org.solovyev.android.messenger.users.Users.newOnlineProperty;
 @Singleton
 public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao {
 
+	/*
+	**********************************************************************
+	*
+	*                           QUERIES
+	*
+	**********************************************************************
+	*/
+
+	// NOTE: query plans of these queries are checked in UserQueryPlanTest
+
+	static final String SELECT_CONTACTS = newLinkedEntitiesQuery("users", "id", "user_contacts", "user_id", "contact_id");
+
+	static final String SELECT_CONTACT_DIGESTS = "select ud.user_id, ud.digest from user_digests ud, user_contacts uc where uc.contact_id = ud.user_id and uc.user_id = ?";
+
 	@Nonnull
 	private final Dao<User> dao;
 
@@ -69,7 +87,7 @@ public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao
 	@Inject
 	public SqliteUserDao(@Nonnull Application context, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
 		super(context, sqliteOpenHelper);
-		final UserDaoMapper userDaoMapper = new UserDaoMapper(this);
+		final UserDaoMapper userDaoMapper = new UserDaoMapper(this, context, sqliteOpenHelper);
 		dao = new SqliteDao<User>("users", "id", userDaoMapper, context, sqliteOpenHelper);
 		linkedEntitiesDao = new SqliteLinkedEntitiesDao<User>("users", "id", context, sqliteOpenHelper, "user_contacts", "user_id", "contact_id", dao);
 	}
@@ -142,6 +160,7 @@ public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao
 		doDbExec(getSqliteOpenHelper(), DeleteAllRowsDbExec.newInstance("user_contacts"));
 		doDbExec(getSqliteOpenHelper(), DeleteAllRowsDbExec.newInstance("user_properties"));
 		doDbExec(getSqliteOpenHelper(), DeleteAllRowsDbExec.newInstance("user_chats"));
+		doDbExec(getSqliteOpenHelper(), DeleteAllRowsDbExec.newInstance("user_digests"));
 		dao.deleteAll();
 	}
 
@@ -190,6 +209,30 @@ public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao
 		doDbExec(getSqliteOpenHelper(), newReplacePropertyExec(user, newOnlineProperty(user.isOnline())));
 	}
 
+	@Override
+	public void updateOnlineStatuses(@Nonnull Collection<User> contacts) {
+		if (!contacts.isEmpty()) {
+			final List<DbExec> execs = new ArrayList<DbExec>(contacts.size());
+			for (User contact : contacts) {
+				execs.add(newReplacePropertyExec(contact, newOnlineProperty(contact.isOnline())));
+			}
+			doDbExecs(getSqliteOpenHelper(), execs);
+		}
+	}
+
+	@Nonnull
+	@Override
+	public Map<String, String> readContactDigests(@Nonnull String userId) {
+		return doDbQuery(getSqliteOpenHelper(), new LoadContactDigests(getContext(), userId, getSqliteOpenHelper()));
+	}
+
+	@Override
+	public void updateDigests(@Nonnull Map<String, String> digests) {
+		if (!digests.isEmpty()) {
+			doDbExec(getSqliteOpenHelper(), new UpdateDigests(digests));
+		}
+	}
+
 	@Nonnull
 	private ReplacePropertyExec newReplacePropertyExec(@Nonnull User user,
 													   @Nonnull AProperty property) {
@@ -274,13 +317,65 @@ public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.query("users", null, "id in (select contact_id from user_contacts where user_id = ? ) ", new String[]{userId}, null, null, null);
+			return db.rawQuery(SELECT_CONTACTS, new String[]{userId});
 		}
 
 		@Nonnull
 		@Override
 		public List<User> retrieveData(@Nonnull Cursor cursor) {
-			return new ListMapper<User>(new UserMapper(userDao)).convert(cursor);
+			return newUserListMapper(new UserMapper(userDao), getContext(), getSqliteOpenHelper()).convert(cursor);
+		}
+	}
+
+	private static final class LoadContactDigests extends AbstractDbQuery<Map<String, String>> {
+
+		@Nonnull
+		private final String userId;
+
+		private LoadContactDigests(@Nonnull Context context, @Nonnull String userId, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+			super(context, sqliteOpenHelper);
+			this.userId = userId;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			return db.rawQuery(SELECT_CONTACT_DIGESTS, new String[]{userId});
+		}
+
+		@Nonnull
+		@Override
+		public Map<String, String> retrieveData(@Nonnull Cursor cursor) {
+			final Map<String, String> result = new HashMap<String, String>(cursor.getCount());
+			while (cursor.moveToNext()) {
+				result.put(cursor.getString(0), cursor.getString(1));
+			}
+			return result;
+		}
+	}
+
+	private static final class UpdateDigests implements DbExec {
+
+		@Nonnull
+		private final Map<String, String> digests;
+
+		private UpdateDigests(@Nonnull Map<String, String> digests) {
+			this.digests = digests;
+		}
+
+		@Override
+		public long exec(@Nonnull SQLiteDatabase db) {
+			final ContentValues values = new ContentValues(2);
+
+			long result = 0;
+			for (Map.Entry<String, String> entry : digests.entrySet()) {
+				values.put("user_id", entry.getKey());
+				values.put("digest", entry.getValue());
+				if (db.replace("user_digests", null, values) != SQL_ERROR) {
+					result++;
+				}
+			}
+			return result;
 		}
 	}
 
@@ -379,13 +474,22 @@ public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao
 		return values;
 	}
 
+	@Nonnull
+	private static PropertiesListMapper<User> newUserListMapper(@Nonnull UserMapper userMapper, @Nonnull Context context, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+		return new PropertiesListMapper<User>(userMapper, context, sqliteOpenHelper, "user_properties", "user_id");
+	}
+
 	private static final class UserDaoMapper implements SqliteDaoEntityMapper<User> {
 
 		@Nonnull
 		private final UserMapper userMapper;
 
-		private UserDaoMapper(@Nonnull UserDao dao) {
+		@Nonnull
+		private final PropertiesListMapper<User> userListMapper;
+
+		private UserDaoMapper(@Nonnull UserDao dao, @Nonnull Context context, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
 			userMapper = new UserMapper(dao);
+			userListMapper = newUserListMapper(userMapper, context, sqliteOpenHelper);
 		}
 
 		@Nonnull
@@ -399,6 +503,12 @@ public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao
 		public Converter<Cursor, User> getCursorMapper() {
 			return userMapper;
 		}
+
+		@Nonnull
+		@Override
+		public Converter<Cursor, List<User>> getListMapper() {
+			return userListMapper;
+		}
 	}
 
 }
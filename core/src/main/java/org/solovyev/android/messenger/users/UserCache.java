@@ -17,42 +17,40 @@
 package org.solovyev.android.messenger.users;
 
 import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.entities.EntityCache;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
-import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
+
+/**
+ * Cache grows with the number of loaded contacts (see {@link #onContactsLoaded(Entity, int)}) => contacts of all
+ * accounts plus {@link #MIN_SIZE} other users fit in it and presence bursts don't evict each other
+ */
 @ThreadSafe
-class UserCache {
+class UserCache extends EntityCache<User> {
 
-	// key: user entity, value: user object
-	@GuardedBy("users")
+	static final int MIN_SIZE = 1024;
+
+	// key: user entity, value: number of user's contacts
 	@Nonnull
-	private final Map<Entity, User> users = new HashMap<Entity, User>();
+	private final ConcurrentMap<Entity, Integer> contactsCounts = new ConcurrentHashMap<Entity, Integer>();
 
-	@Nullable
-	public User get(@Nonnull Entity key) {
-		synchronized (users) {
-			return users.get(key);
-		}
+	UserCache() {
+		super(MIN_SIZE);
 	}
 
-	public void put(@Nonnull User user) {
-		synchronized (users) {
-			users.put(user.getEntity(), user);
-		}
-	}
+	void onContactsLoaded(@Nonnull Entity user, int contactsCount) {
+		contactsCounts.put(user, contactsCount);
 
-	private void put(@Nonnull List<User> users) {
-		synchronized (this.users) {
-			for (User user : users) {
-				this.users.put(user.getEntity(), user);
-			}
+		int size = MIN_SIZE;
+		for (Integer count : contactsCounts.values()) {
+			size += count;
 		}
+		ensureCapacity(size);
 	}
 
 	public void onEvent(@Nonnull UserEvent event) {
@@ -61,9 +59,12 @@ class UserCache {
 			case changed:
 				put(user);
 				break;
+			case contact_removed:
+				remove(newEntityFromEntityId(event.getDataAsUserId()));
+				break;
 			case contacts_changed:
 			case contacts_presence_changed:
-				put(event.getDataAsUsers());
+				putAll(event.getDataAsUsers());
 				break;
 		}
 	}
@@ -25,6 +25,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * User: serso
@@ -128,4 +129,26 @@ public interface UserDao extends LinkedEntitiesDao<User>, Dao<User> {
 													 boolean allowUpdate);
 
 	void updateOnlineStatus(@Nonnull User contact);
+
+	/**
+	 * Method updates online statuses of all <var>contacts</var> in one transaction
+	 *
+	 * @param contacts contacts with new online statuses
+	 */
+	void updateOnlineStatuses(@Nonnull Collection<User> contacts);
+
+	/**
+	 * @param userId id of a user for which digests of contacts should be returned
+	 * @return key: contact id, value: stored digest of contact (contacts without digest are not returned)
+	 * @see IncrementalAccountUserService
+	 */
+	@Nonnull
+	Map<String, String> readContactDigests(@Nonnull String userId);
+
+	/**
+	 * Method stores digests of users (replacing existing ones)
+	 *
+	 * @param digests key: user id, value: digest
+	 */
+	void updateDigests(@Nonnull Map<String, String> digests);
 }
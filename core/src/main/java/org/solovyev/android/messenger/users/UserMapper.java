@@ -18,6 +18,7 @@ package org.solovyev.android.messenger.users;
 
 import android.database.Cursor;
 
+import org.solovyev.android.messenger.db.PropertiesCursorMapper;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.entities.EntityMapper;
 import org.solovyev.android.properties.AProperty;
@@ -28,7 +29,7 @@ import java.util.List;
 
 import static org.solovyev.android.messenger.users.Users.newUser;
 
-public class UserMapper implements Converter<Cursor, User> {
+public class UserMapper implements Converter<Cursor, User>, PropertiesCursorMapper<User> {
 
 	@Nonnull
 	private final UserDao dao;
@@ -45,4 +46,11 @@ public class UserMapper implements Converter<Cursor, User> {
 
 		return newUser(entity, properties);
 	}
+
+	@Nonnull
+	@Override
+	public User convert(@Nonnull Cursor c, @Nonnull List<AProperty> properties) {
+		final Entity entity = EntityMapper.newInstanceFor(0).convert(c);
+		return newUser(entity, properties);
+	}
 }
@@ -131,6 +131,12 @@ public interface UserService {
 	 */
 	void onContactPresenceChanged(@Nonnull User user, @Nonnull User contact, boolean available);
 
+	/**
+	 * Method saves all pending presence changes (see {@link #onContactPresenceChanged(User, User, boolean)}) and stops
+	 * saving them in background: from now on they are saved immediately. Must be called on application exit.
+	 */
+	void shutdownQueues();
+
 	@Nonnull
 	List<UiContact> findContacts(@Nonnull User user, @Nullable String query, int count);
 
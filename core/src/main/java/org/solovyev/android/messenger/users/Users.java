@@ -34,8 +34,13 @@ import org.solovyev.android.properties.AProperty;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import static android.view.View.GONE;
@@ -119,6 +124,44 @@ public final class Users {
 		}
 	}
 
+	/**
+	 * Digest of user's profile: all properties except online status (which is synchronized separately) are used.
+	 * Two users with the same properties have the same digest regardless of the order of the properties.
+	 *
+	 * @param user user
+	 * @return hex string of MD5 of user's properties
+	 */
+	@Nonnull
+	public static String getDigest(@Nonnull User user) {
+		final List<AProperty> properties = new ArrayList<AProperty>(user.getPropertiesCollection());
+		Collections.sort(properties, new Comparator<AProperty>() {
+			@Override
+			public int compare(AProperty lhs, AProperty rhs) {
+				return lhs.getName().compareTo(rhs.getName());
+			}
+		});
+
+		final StringBuilder sb = new StringBuilder();
+		for (AProperty property : properties) {
+			if (!User.PROPERTY_ONLINE.equals(property.getName())) {
+				sb.append(property.getName()).append('=').append(property.getValue()).append('\n');
+			}
+		}
+
+		try {
+			final byte[] digest = MessageDigest.getInstance("MD5").digest(sb.toString().getBytes("UTF-8"));
+			final StringBuilder result = new StringBuilder(2 * digest.length);
+			for (byte b : digest) {
+				result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return result.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
 	public static boolean tryShowEditUserFragment(@Nonnull final User user, @Nonnull final BaseFragmentActivity activity) {
 		final Account account = App.getAccountService().getAccountByEntity(user.getEntity());
 		final Realm realm = account.getRealm();
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.common.collections.multimap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * List which stores its elements in small chunks. Copy of the list (see {@link #newMutableCopy()}) shares chunks with
+ * the original list and copies only the chunks it modifies => adding, changing or removing one element costs
+ * O(n / CHUNK_SIZE + CHUNK_SIZE) instead of O(n).
+ * Frozen list (see {@link #freeze()}) can't be modified and can be safely shared between threads.
+ */
+final class ChunkedList<V> extends AbstractList<V> implements RandomAccess {
+
+	static final int CHUNK_SIZE = 64;
+
+	@Nonnull
+	private Object[][] chunks;
+
+	// index of the first element of each chunk
+	@Nonnull
+	private int[] offsets;
+
+	// chunks which were created by this list and can be modified in place, null if list is frozen
+	@Nullable
+	private boolean[] ownedChunks;
+
+	private int chunksCount;
+
+	private int size;
+
+	private ChunkedList(@Nonnull Object[][] chunks, @Nonnull int[] offsets, @Nullable boolean[] ownedChunks, int chunksCount, int size) {
+		this.chunks = chunks;
+		this.offsets = offsets;
+		this.ownedChunks = ownedChunks;
+		this.chunksCount = chunksCount;
+		this.size = size;
+	}
+
+	@Nonnull
+	static <V> ChunkedList<V> newFrozenList(@Nonnull Collection<? extends V> values) {
+		final Object[] elements = values.toArray();
+		final int size = elements.length;
+		final int chunksCount = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+		final Object[][] chunks = new Object[Math.max(chunksCount, 1)][];
+		final int[] offsets = new int[chunks.length];
+		for (int i = 0; i < chunksCount; i++) {
+			final int offset = i * CHUNK_SIZE;
+			chunks[i] = Arrays.copyOfRange(elements, offset, Math.min(offset + CHUNK_SIZE, size));
+			offsets[i] = offset;
+		}
+
+		return new ChunkedList<V>(chunks, offsets, null, chunksCount, size);
+	}
+
+	/**
+	 * @return modifiable list with the same elements. Chunks are shared with this list until they are modified.
+	 */
+	@Nonnull
+	ChunkedList<V> newMutableCopy() {
+		return new ChunkedList<V>(chunks.clone(), offsets.clone(), new boolean[chunks.length], chunksCount, size);
+	}
+
+	/**
+	 * Makes this list unmodifiable. Frozen list can be shared between threads.
+	 *
+	 * @return this list
+	 */
+	@Nonnull
+	ChunkedList<V> freeze() {
+		ownedChunks = null;
+		return this;
+	}
+
+	boolean isFrozen() {
+		return ownedChunks == null;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(int index) {
+		checkElementIndex(index);
+		final int chunk = getChunkIndex(index);
+		return (V) chunks[chunk][index - offsets[chunk]];
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V set(int index, V value) {
+		checkMutable();
+		checkElementIndex(index);
+
+		final int chunk = getChunkIndex(index);
+		final Object[] elements = getOwnedChunk(chunk);
+		final int position = index - offsets[chunk];
+		final V oldValue = (V) elements[position];
+		elements[position] = value;
+		return oldValue;
+	}
+
+	@Override
+	public void add(int index, V value) {
+		checkMutable();
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+
+		if (chunksCount == 0 || (index == size && chunks[chunksCount - 1].length >= CHUNK_SIZE)) {
+			// appending to the end of the list: start new chunk
+			insertChunk(chunksCount, new Object[]{value});
+		} else {
+			final int chunk = index == size ? chunksCount - 1 : getChunkIndex(index);
+			final int position = index - offsets[chunk];
+			final Object[] oldElements = chunks[chunk];
+
+			final Object[] elements = new Object[oldElements.length + 1];
+			System.arraycopy(oldElements, 0, elements, 0, position);
+			elements[position] = value;
+			System.arraycopy(oldElements, position, elements, position + 1, oldElements.length - position);
+
+			if (elements.length > 2 * CHUNK_SIZE) {
+				// chunk is too big => split it
+				setChunk(chunk, Arrays.copyOfRange(elements, 0, CHUNK_SIZE));
+				insertChunk(chunk + 1, Arrays.copyOfRange(elements, CHUNK_SIZE, elements.length));
+			} else {
+				setChunk(chunk, elements);
+			}
+		}
+
+		size++;
+		modCount++;
+		updateOffsets();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V remove(int index) {
+		checkMutable();
+		checkElementIndex(index);
+
+		final int chunk = getChunkIndex(index);
+		final int position = index - offsets[chunk];
+		final Object[] oldElements = chunks[chunk];
+		final V oldValue = (V) oldElements[position];
+
+		if (oldElements.length == 1) {
+			removeChunk(chunk);
+		} else {
+			final Object[] elements = new Object[oldElements.length - 1];
+			System.arraycopy(oldElements, 0, elements, 0, position);
+			System.arraycopy(oldElements, position + 1, elements, position, elements.length - position);
+			setChunk(chunk, elements);
+		}
+
+		size--;
+		modCount++;
+		updateOffsets();
+		return oldValue;
+	}
+
+	@Override
+	public void clear() {
+		checkMutable();
+
+		chunks = new Object[1][];
+		offsets = new int[1];
+		ownedChunks = new boolean[1];
+		chunksCount = 0;
+		size = 0;
+		modCount++;
+	}
+
+	@Nonnull
+	@Override
+	public Iterator<V> iterator() {
+		if (isFrozen()) {
+			// list can't be changed => iterate directly over chunks
+			return new FrozenIterator();
+		} else {
+			return super.iterator();
+		}
+	}
+
+	private int getChunkIndex(int index) {
+		final int result = Arrays.binarySearch(offsets, 0, chunksCount, index);
+		if (result >= 0) {
+			return result;
+		} else {
+			// insertion point - 1
+			return -result - 2;
+		}
+	}
+
+	@Nonnull
+	private Object[] getOwnedChunk(int chunk) {
+		assert ownedChunks != null;
+		if (!ownedChunks[chunk]) {
+			chunks[chunk] = chunks[chunk].clone();
+			ownedChunks[chunk] = true;
+		}
+		return chunks[chunk];
+	}
+
+	private void setChunk(int chunk, @Nonnull Object[] elements) {
+		assert ownedChunks != null;
+		chunks[chunk] = elements;
+		ownedChunks[chunk] = true;
+	}
+
+	private void insertChunk(int chunk, @Nonnull Object[] elements) {
+		assert ownedChunks != null;
+		if (chunksCount == chunks.length) {
+			final int capacity = 2 * chunks.length;
+			chunks = Arrays.copyOf(chunks, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+			ownedChunks = Arrays.copyOf(ownedChunks, capacity);
+		}
+
+		System.arraycopy(chunks, chunk, chunks, chunk + 1, chunksCount - chunk);
+		System.arraycopy(ownedChunks, chunk, ownedChunks, chunk + 1, chunksCount - chunk);
+		chunksCount++;
+		setChunk(chunk, elements);
+	}
+
+	private void removeChunk(int chunk) {
+		assert ownedChunks != null;
+		System.arraycopy(chunks, chunk + 1, chunks, chunk, chunksCount - chunk - 1);
+		System.arraycopy(ownedChunks, chunk + 1, ownedChunks, chunk, chunksCount - chunk - 1);
+		chunksCount--;
+		chunks[chunksCount] = null;
+	}
+
+	private void updateOffsets() {
+		int offset = 0;
+		for (int i = 0; i < chunksCount; i++) {
+			offsets[i] = offset;
+			offset += chunks[i].length;
+		}
+	}
+
+	private void checkMutable() {
+		if (isFrozen()) {
+			throw new UnsupportedOperationException("List is frozen");
+		}
+	}
+
+	private void checkElementIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+	}
+
+	private final class FrozenIterator implements Iterator<V> {
+
+		private int chunk = 0;
+
+		private int position = 0;
+
+		@Override
+		public boolean hasNext() {
+			return chunk < chunksCount;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public V next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			final Object[] elements = chunks[chunk];
+			final V result = (V) elements[position];
+			position++;
+			if (position == elements.length) {
+				chunk++;
+				position = 0;
+			}
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("List is frozen");
+		}
+	}
+}
@@ -25,7 +25,11 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
-public class ObjectsChangedMapUpdater<K, V> implements ThreadSafeMultimap.MapUpdater<K, V> {
+/**
+ * Replaces changed objects in all lists of multimap. As each list is updated independently this updater also implements
+ * {@link ThreadSafeMultimap.ListUpdater} => {@link ThreadSafeMultimap} can apply it key by key without blocking the whole map
+ */
+public class ObjectsChangedMapUpdater<K, V> implements ThreadSafeMultimap.MapUpdater<K, V>, ThreadSafeMultimap.ListUpdater<V> {
 
 	@Nonnull
 	private final Collection<V> changedObjects;
@@ -62,6 +66,26 @@ public class ObjectsChangedMapUpdater<K, V> implements ThreadSafeMultimap.MapUpd
 
 	}
 
+	@Nullable
+	@Override
+	public List<V> update(@Nonnull List<V> values) {
+		List<V> result = null;
+
+		for (int i = 0; i < values.size(); i++) {
+			final V object = values.get(i);
+			for (V changedObject : changedObjects) {
+				if (object.equals(changedObject)) {
+					if (result == null) {
+						result = ThreadSafeMultimap.copy(values);
+					}
+					result.set(i, changedObject);
+				}
+			}
+		}
+
+		return result;
+	}
+
 	private boolean containsChangedObjects(@Nonnull Map<K, List<V>> map) {
 		if (changedObjects.size() > 1) {
 			return true;
@@ -14,30 +14,54 @@
  * limitations under the License.
  */
 
+
 package org.solovyev.common.collections.multimap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import java.util.*;
-
-import org.solovyev.android.messenger.entities.Entity;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static java.util.Collections.emptyList;
-import static java.util.Collections.unmodifiableList;
 import static java.util.Collections.unmodifiableMap;
 
+/**
+ * Multimap which values are stored in immutable lists (see {@link ChunkedList}) => reads are done without locking.
+ * Updates of the same key are serialized by striped locks, updates of different keys can be done concurrently.
+ * Updaters get an immutable list/map and should make a copy via {@link #copy(List)}/{@link #copy(Map)} if they want
+ * to change it: copy shares the storage with the original list and copies only changed chunks.
+ */
 @ThreadSafe
 public final class ThreadSafeMultimap<K, V> {
 
 	@Nonnull
 	public static final List<?> NO_VALUE = emptyList();
 
+	private static final int STRIPES_COUNT = 16;
+
 	@Nonnull
-	private volatile Map<K, List<V>> map;
+	private final ConcurrentMap<K, List<V>> map;
+
+	@Nonnull
+	private final Object[] stripes = new Object[STRIPES_COUNT];
+
+	// key updates hold read lock, whole map updates hold write lock
+	@Nonnull
+	private final ReadWriteLock mapLock = new ReentrantReadWriteLock();
 
 	private ThreadSafeMultimap(@Nonnull Map<K, List<V>> map) {
-		this.map = map;
+		this.map = new ConcurrentHashMap<K, List<V>>(map.size());
+		for (Map.Entry<K, List<V>> entry : map.entrySet()) {
+			this.map.put(entry.getKey(), freeze(entry.getValue()));
+		}
+
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Object();
+		}
 	}
 
 	@Nonnull
@@ -56,27 +80,53 @@ public final class ThreadSafeMultimap<K, V> {
 		if (values == null) {
 			return (List<V>) NO_VALUE;
 		} else {
-			return unmodifiableList(values);
+			return values;
 		}
 	}
 
-	public synchronized boolean update(@Nonnull K key, @Nonnull ListUpdater<V> updater) {
-		final List<V> newValue = updater.update(get(key));
-		if (newValue != null) {
-			map.put(key, newValue);
-			return true;
-		} else {
-			return false;
+	public boolean update(@Nonnull K key, @Nonnull ListUpdater<V> updater) {
+		mapLock.readLock().lock();
+		try {
+			synchronized (getStripe(key)) {
+				final List<V> newValue = updater.update(get(key));
+				if (newValue != null) {
+					map.put(key, freeze(newValue));
+					return true;
+				} else {
+					return false;
+				}
+			}
+		} finally {
+			mapLock.readLock().unlock();
 		}
 	}
 
-	public synchronized boolean update(@Nonnull MapUpdater<K, V> updater) {
-		Map<K, List<V>> newMap = updater.update(unmodifiableMap(map));
-		if (newMap != null) {
-			map = newMap;
-			return true;
+	public boolean update(@Nonnull MapUpdater<K, V> updater) {
+		if (updater instanceof ListUpdater) {
+			// updater can be applied to each list separately => no need to block the whole map
+			final ListUpdater<V> listUpdater = (ListUpdater<V>) updater;
+
+			boolean updated = false;
+			for (K key : map.keySet()) {
+				updated |= update(key, listUpdater);
+			}
+			return updated;
 		} else {
-			return false;
+			mapLock.writeLock().lock();
+			try {
+				final Map<K, List<V>> newMap = updater.update(unmodifiableMap(map));
+				if (newMap != null) {
+					map.keySet().retainAll(newMap.keySet());
+					for (Map.Entry<K, List<V>> entry : newMap.entrySet()) {
+						map.put(entry.getKey(), freeze(entry.getValue()));
+					}
+					return true;
+				} else {
+					return false;
+				}
+			} finally {
+				mapLock.writeLock().unlock();
+			}
 		}
 	}
 
@@ -87,7 +137,28 @@ public final class ThreadSafeMultimap<K, V> {
 	}
 
 	public void remove(@Nonnull K key) {
-		map.remove(key);
+		mapLock.readLock().lock();
+		try {
+			synchronized (getStripe(key)) {
+				map.remove(key);
+			}
+		} finally {
+			mapLock.readLock().unlock();
+		}
+	}
+
+	@Nonnull
+	private Object getStripe(@Nonnull K key) {
+		return stripes[(key.hashCode() & 0x7FFFFFFF) % STRIPES_COUNT];
+	}
+
+	@Nonnull
+	private static <V> List<V> freeze(@Nonnull List<V> values) {
+		if (values instanceof ChunkedList) {
+			return ((ChunkedList<V>) values).freeze();
+		} else {
+			return ChunkedList.newFrozenList(values);
+		}
 	}
 
 	/*
@@ -117,6 +188,11 @@ public final class ThreadSafeMultimap<K, V> {
 	}
 
 	public static <V> List<V> copy(@Nonnull List<V> values) {
-		return new ArrayList<V>(values);
+		if (values instanceof ChunkedList) {
+			// only changed chunks will be copied
+			return ((ChunkedList<V>) values).newMutableCopy();
+		} else {
+			return new ArrayList<V>(values);
+		}
 	}
 }
@@ -36,6 +36,8 @@ import org.solovyev.android.messenger.chats.ChatDao;
 import org.solovyev.android.messenger.chats.ChatService;
 import org.solovyev.android.messenger.chats.DefaultChatService;
 import org.solovyev.android.messenger.chats.SqliteChatDao;
+import org.solovyev.android.messenger.http.DefaultHttpExecutor;
+import org.solovyev.android.messenger.http.HttpExecutor;
 import org.solovyev.android.messenger.messages.DefaultMessageService;
 import org.solovyev.android.messenger.messages.MessageDao;
 import org.solovyev.android.messenger.messages.MessageService;
@@ -102,6 +104,7 @@ public abstract class AbstractTestModule extends AbstractModule {
 		bind(MessengerListeners.class).to(DefaultMessengerListeners.class);
 		bind(NotificationService.class).to(DefaultNotificationService.class);
 		bind(ExceptionHandler.class).to(DefaultExceptionHandler.class);
+		bind(HttpExecutor.class).to(DefaultHttpExecutor.class);
 		bind(Configuration.class).to(getConfigurationClass());
 		bind(org.solovyev.android.http.ImageLoader.class).to(ImageLoader.class);
 		bind(NetworkStateService.class).to(NetworkStateServiceImpl.class).in(Scopes.SINGLETON);
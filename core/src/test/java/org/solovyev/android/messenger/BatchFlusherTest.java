@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class BatchFlusherTest {
+
+	@Nonnull
+	private ScheduledExecutorService executor;
+
+	@Nonnull
+	private ScheduledFuture future;
+
+	@Nonnull
+	private final AtomicInteger flushes = new AtomicInteger();
+
+	@Nonnull
+	private BatchFlusher flusher;
+
+	@Before
+	public void setUp() throws Exception {
+		executor = mock(ScheduledExecutorService.class);
+		future = mock(ScheduledFuture.class);
+		when(executor.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenReturn(future);
+		flusher = new BatchFlusher(executor, 100, new Runnable() {
+			@Override
+			public void run() {
+				flushes.incrementAndGet();
+			}
+		});
+	}
+
+	@Test
+	public void testDelayShouldNotBeProlonged() throws Exception {
+		flusher.schedule();
+		flusher.schedule();
+		flusher.schedule();
+
+		verify(executor, times(1)).schedule(any(Runnable.class), eq(100L), eq(TimeUnit.MILLISECONDS));
+		assertEquals(0, flushes.get());
+	}
+
+	@Test
+	public void testShutdownShouldFlushOnCallingThread() throws Exception {
+		flusher.schedule();
+		flusher.shutdown();
+
+		assertTrue(flusher.isShutdown());
+		assertEquals(1, flushes.get());
+		verify(future).cancel(false);
+		verify(executor).shutdown();
+
+		// no background flushes after shutdown
+		flusher.schedule();
+		flusher.execute();
+		assertEquals(3, flushes.get());
+		verify(executor, times(1)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+		verify(executor, never()).execute(any(Runnable.class));
+	}
+}
@@ -40,4 +40,9 @@ public class TestConfiguration implements Configuration {
 		realms.add(realm);
 		return realms;
 	}
+
+	@Override
+	public int getMaxConcurrentSyncAccounts() {
+		return 3;
+	}
 }
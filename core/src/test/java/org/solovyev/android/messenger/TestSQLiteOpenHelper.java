@@ -28,6 +28,7 @@ import org.solovyev.android.db.SQLiteOpenHelperConfiguration;
 import javax.annotation.Nonnull;
 import java.text.DecimalFormat;
 import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * User: serso
@@ -49,6 +50,10 @@ public class TestSQLiteOpenHelper extends SQLiteOpenHelper {
 
 	private boolean finished = false;
 
+	// each DAO query/exec asks open helper for database => number of requests to the database
+	@Nonnull
+	private final AtomicInteger dbRequestsCount = new AtomicInteger();
+
 	@Inject
 	public TestSQLiteOpenHelper(@Nonnull Context context, @Nonnull SQLiteOpenHelperConfiguration configuration) {
 		super(context.getApplicationContext(), configuration.getName(), configuration.getCursorFactory(), configuration.getVersion());
@@ -90,6 +95,26 @@ public class TestSQLiteOpenHelper extends SQLiteOpenHelper {
 		}
 	}
 
+	@Override
+	public synchronized SQLiteDatabase getReadableDatabase() {
+		dbRequestsCount.incrementAndGet();
+		return super.getReadableDatabase();
+	}
+
+	@Override
+	public synchronized SQLiteDatabase getWritableDatabase() {
+		dbRequestsCount.incrementAndGet();
+		return super.getWritableDatabase();
+	}
+
+	public int getDbRequestsCount() {
+		return dbRequestsCount.get();
+	}
+
+	public void resetDbRequestsCount() {
+		dbRequestsCount.set(0);
+	}
+
 	@Override
 	public void onOpen(SQLiteDatabase db) {
 		super.onOpen(db);
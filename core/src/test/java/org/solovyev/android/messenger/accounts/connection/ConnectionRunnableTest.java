@@ -29,7 +29,11 @@ import org.solovyev.android.messenger.accounts.AccountConnectionException;
 import org.solovyev.android.messenger.accounts.AccountState;
 
 import javax.annotation.Nonnull;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
 import static org.mockito.Mockito.*;
 import static org.robolectric.Robolectric.application;
 import static org.solovyev.android.messenger.AppTest.mockApp;
@@ -41,10 +45,23 @@ public class ConnectionRunnableTest {
 	@Nonnull
 	private Account account;
 
+	@Nonnull
+	private ScheduledExecutorService timer;
+
 	@Before
 	public void setUp() throws Exception {
 		mockApp();
 		account = newMockAccountWithStaticConnection();
+
+		// scheduled retries are run immediately
+		timer = mock(ScheduledExecutorService.class);
+		when(timer.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				((Runnable) invocation.getArguments()[0]).run();
+				return mock(ScheduledFuture.class);
+			}
+		});
 	}
 
 	@Test
@@ -57,7 +74,7 @@ public class ConnectionRunnableTest {
 	}
 
 	private void runConnection(@Nonnull AccountConnection connection) {
-		final ConnectionRunnable runnable = new ConnectionRunnable(connection, 0);
+		final ConnectionRunnable runnable = new ConnectionRunnable(connection, 0, new ConnectionScheduler(timer, sameThreadExecutor()));
 		runnable.run();
 	}
 
@@ -109,6 +126,18 @@ public class ConnectionRunnableTest {
 		Assert.assertTrue(connection.isStopped());
 	}
 
+	@Test
+	public void testShouldNotBlockThreadBeforeRetry() throws Exception {
+		final AccountConnection connection = newBrokenConnection(account);
+		final ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+
+		final ConnectionRunnable runnable = new ConnectionRunnable(connection, 60L * 60L * 1000L, new ConnectionScheduler(timer, sameThreadExecutor()));
+		runnable.run();
+
+		verify(connection, times(1)).start();
+		verify(timer, times(1)).schedule(any(Runnable.class), eq(60L * 60L * 1000L), eq(TimeUnit.MILLISECONDS));
+	}
+
 	@Nonnull
 	private AccountConnection newBrokenConnection(@Nonnull Account account) throws AccountConnectionException {
 		final AccountConnection connection = account.newConnection(application);
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.accounts.connection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.*;
+
+public class ConnectionSchedulerTest {
+
+	@Nonnull
+	private ScheduledExecutorService timer;
+
+	@Nonnull
+	private ExecutorService io;
+
+	@Nonnull
+	private ConnectionScheduler scheduler;
+
+	@Before
+	public void setUp() throws Exception {
+		timer = newScheduledThreadPool(1);
+		io = newFixedThreadPool(4);
+		scheduler = new ConnectionScheduler(timer, io);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		timer.shutdownNow();
+		io.shutdownNow();
+	}
+
+	@Test
+	public void testTaskShouldNotRunConcurrentlyWithItself() throws Exception {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final AtomicInteger runs = new AtomicInteger();
+		final ConnectionScheduler.Task task = scheduler.newTask(new Runnable() {
+			@Override
+			public void run() {
+				final int r = running.incrementAndGet();
+				maxRunning.set(Math.max(maxRunning.get(), r));
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				running.decrementAndGet();
+				runs.incrementAndGet();
+			}
+		});
+
+		for (int i = 0; i < 10; i++) {
+			task.execute();
+		}
+
+		Thread.sleep(500);
+		assertEquals(1, maxRunning.get());
+		// wake-ups during the run are collapsed into one more run
+		assertTrue(runs.get() >= 2);
+		assertTrue(runs.get() < 10);
+	}
+
+	@Test
+	public void testRescheduleShouldReplacePreviousSchedule() throws Exception {
+		final AtomicInteger runs = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ConnectionScheduler.Task task = scheduler.newTask(new Runnable() {
+			@Override
+			public void run() {
+				runs.incrementAndGet();
+				latch.countDown();
+			}
+		});
+
+		task.schedule(50);
+		task.schedule(100);
+		task.schedule(150);
+		assertTrue(task.isScheduled());
+
+		assertTrue(latch.await(1, SECONDS));
+		Thread.sleep(300);
+		assertEquals(1, runs.get());
+		assertFalse(task.isScheduled());
+	}
+
+	@Test
+	public void testCancelledTaskShouldNotRun() throws Exception {
+		final AtomicInteger runs = new AtomicInteger();
+		final ConnectionScheduler.Task task = scheduler.newTask(new Runnable() {
+			@Override
+			public void run() {
+				runs.incrementAndGet();
+			}
+		});
+
+		task.schedule(50);
+		task.cancel();
+
+		Thread.sleep(200);
+		assertEquals(0, runs.get());
+	}
+}
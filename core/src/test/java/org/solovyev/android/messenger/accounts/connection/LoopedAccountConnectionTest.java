@@ -17,82 +17,254 @@
 package org.solovyev.android.messenger.accounts.connection;
 
 import android.content.Context;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
+import org.solovyev.android.messenger.accounts.AccountState;
 
+import javax.annotation.Nonnull;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 import static java.util.concurrent.Executors.newScheduledThreadPool;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.Assert.*;
-import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.*;
+import static org.solovyev.android.messenger.AppTest.mockApp;
+import static org.solovyev.android.messenger.accounts.connection.ReconnectPolicy.newReconnectPolicy;
 
 @RunWith(RobolectricTestRunner.class)
 public class LoopedAccountConnectionTest {
 
 	public static final int LOOP_TIME = 50;
 
+	private static final long TIMEOUT = 5000L;
+
+	private static final int FAILURE_THRESHOLD = 3;
+
+	@Nonnull
+	private ScheduledExecutorService timer;
+
+	@Nonnull
+	private ExecutorService io;
+
+	@Nonnull
+	private ConnectionScheduler scheduler;
+
+	@Before
+	public void setUp() throws Exception {
+		mockApp();
+		timer = newScheduledThreadPool(1);
+		io = newFixedThreadPool(2);
+		scheduler = new ConnectionScheduler(timer, io);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		timer.shutdownNow();
+		io.shutdownNow();
+	}
+
 	@Test
-	public void testShouldRunInfinitely() throws Exception {
-		final TestLoopedConnection connection = new TestLoopedConnection(10);
-		try {
-			connection.start();
-			fail();
-		} catch (AccountConnectionException e) {
-			assertEquals("test", e.getAccountId());
-		}
+	public void testStartShouldNotBlock() throws Exception {
+		final TestLoopedConnection connection = new TestLoopedConnection(Integer.MAX_VALUE, LOOP_TIME);
+		connection.start();
+
+		assertEquals(1, connection.count.get());
+		assertFalse(connection.isStopped());
+
+		connection.stop();
 	}
 
 	@Test
-	public void testShouldStopOnStop() throws Exception {
-		int maxCount = 20;
-		final TestLoopedConnection connection = new TestLoopedConnection(maxCount);
-		newScheduledThreadPool(1).schedule(new Runnable() {
-			@Override
-			public void run() {
-				connection.stop();
-			}
-		}, maxCount * LOOP_TIME / 2, MILLISECONDS);
+	public void testShouldCheckConnectionPeriodically() throws Exception {
+		final TestLoopedConnection connection = new TestLoopedConnection(Integer.MAX_VALUE, LOOP_TIME);
+		connection.start();
+
+		waitForCount(connection, 4);
+		connection.stop();
+	}
 
+	@Test
+	public void testShouldStopOnStop() throws Exception {
+		final TestLoopedConnection connection = new TestLoopedConnection(Integer.MAX_VALUE, LOOP_TIME);
 		connection.start();
+		waitForCount(connection, 2);
+
+		connection.stop();
 		assertTrue(connection.isStopped());
-		assertTrue(connection.count < maxCount);
 		assertTrue(connection.disconnectCalled);
+
+		Thread.sleep(2 * LOOP_TIME);
+		final int count = connection.count.get();
+		Thread.sleep(4 * LOOP_TIME);
+		assertEquals(count, connection.count.get());
+	}
+
+	@Test
+	public void testShouldCheckImmediatelyOnContinueLoop() throws Exception {
+		final TestLoopedConnection connection = new TestLoopedConnection(Integer.MAX_VALUE, 60L * 60L * 1000L);
+		connection.start();
+		assertEquals(1, connection.count.get());
+
+		connection.continueLoop();
+		waitForCount(connection, 2);
+
+		connection.continueLoop();
+		waitForCount(connection, 3);
+
+		connection.stop();
+	}
+
+	@Test
+	public void testShouldOpenCircuitBreakerIfChecksFail() throws Exception {
+		// first check (on start) passes, all next checks fail
+		final TestLoopedConnection connection = new TestLoopedConnection(1, LOOP_TIME);
+		connection.start();
+
+		// 1 successful check + FAILURE_THRESHOLD failed checks
+		waitForCount(connection, 1 + FAILURE_THRESHOLD);
+		Thread.sleep(4 * LOOP_TIME);
+
+		final ReconnectPolicy policy = connection.getReconnectPolicy();
+		assertEquals(ReconnectPolicy.State.open, policy.getState());
+		assertEquals(1 + FAILURE_THRESHOLD, connection.count.get());
+		assertEquals(1, policy.getLatencies().getCount());
+
+		// breaker is open => connection is not stopped but no attempts are done even if woken up
+		assertFalse(connection.isStopped());
+		connection.continueLoop();
+		Thread.sleep(2 * LOOP_TIME);
+		assertEquals(1 + FAILURE_THRESHOLD, connection.count.get());
+		verify(App.getAccountService(), never()).changeAccountState(connection.getAccount(), AccountState.disabled_by_app);
+
+		connection.stop();
+	}
+
+	@Test
+	public void testShouldResetCircuitBreakerOnStart() throws Exception {
+		final TestLoopedConnection connection = new TestLoopedConnection(1, LOOP_TIME);
+		connection.start();
+		waitForCount(connection, 1 + FAILURE_THRESHOLD);
+		connection.stop();
+		assertEquals(ReconnectPolicy.State.open, connection.getReconnectPolicy().getState());
+
+		connection.maxCount = Integer.MAX_VALUE;
+		connection.start();
+		assertEquals(2 + FAILURE_THRESHOLD, connection.count.get());
+		assertEquals(ReconnectPolicy.State.closed, connection.getReconnectPolicy().getState());
+		connection.stop();
 	}
 
 	@Test
-	public void testShouldContinueWorkAfterInterruption() throws Exception {
-		int maxCount = 20;
-		final TestLoopedConnection connection = new TestLoopedConnection(maxCount);
-		final Thread connectionThread = Thread.currentThread();
-		newScheduledThreadPool(1).schedule(new Runnable() {
-			@Override
-			public void run() {
-				connectionThread.interrupt();
+	public void testShouldDisableAccountIfRetriesAreExhausted() throws Exception {
+		// breaker never opens => only number of retries limits reconnects
+		final TestLoopedConnection connection = new TestLoopedConnection(1, LOOP_TIME, newReconnectPolicy(10, LOOP_TIME, Integer.MAX_VALUE, 0));
+		connection.start();
+
+		// 1 successful check + (retry count + 1) failed checks
+		final int retryCount = connection.getRetryCount();
+		waitForCount(connection, 2 + retryCount);
+		Thread.sleep(4 * LOOP_TIME);
+
+		assertEquals(2 + retryCount, connection.count.get());
+		assertTrue(connection.isStopped());
+		verify(App.getAccountService(), times(1)).changeAccountState(connection.getAccount(), AccountState.disabled_by_app);
+	}
+
+	@Test
+	public void testShouldRecoverIfServerComesBackAfterCircuitBreakerOpened() throws Exception {
+		final TestLoopedConnection connection = new TestLoopedConnection(1, LOOP_TIME, newReconnectPolicy(10, LOOP_TIME, FAILURE_THRESHOLD, 2 * LOOP_TIME));
+		connection.start();
+
+		// breaker opens and then half open probes fail more times than retry count allows
+		final int retryCount = connection.getRetryCount();
+		waitForCount(connection, 2 + FAILURE_THRESHOLD + retryCount);
+		final ReconnectPolicy policy = connection.getReconnectPolicy();
+		assertTrue(policy.getOpens() > 1);
+		assertFalse(connection.isStopped());
+		verify(App.getAccountService(), never()).changeAccountState(connection.getAccount(), AccountState.disabled_by_app);
+
+		// server is back
+		connection.maxCount = Integer.MAX_VALUE;
+		final long start = currentTimeMillis();
+		while (policy.getState() != ReconnectPolicy.State.closed) {
+			if (currentTimeMillis() - start > TIMEOUT) {
+				fail("Connection was not restored: " + policy);
 			}
-		}, maxCount * LOOP_TIME / 2, MILLISECONDS);
+			Thread.sleep(10);
+		}
+
+		// periodic checks are continued
+		final int count = connection.count.get();
+		waitForCount(connection, count + 2);
+		assertFalse(connection.isStopped());
+		assertEquals(0, policy.getFailures());
+		verify(App.getAccountService(), never()).changeAccountState(connection.getAccount(), AccountState.disabled_by_app);
+
+		connection.stop();
+	}
 
-		try {
-			connection.start();
-			fail();
-		} catch (AccountConnectionException e) {
-			assertEquals("test", e.getAccountId());
+	@Test
+	public void testFailedOnDemandReconnectsShouldNotConsumeRetries() throws Exception {
+		// long backoff => only one check is done after on-demand reconnects
+		final long hour = 60L * 60L * 1000L;
+		final TestLoopedConnection connection = new TestLoopedConnection(1, hour, newReconnectPolicy(hour, hour, Integer.MAX_VALUE, 0));
+		connection.start();
+
+		final int retryCount = connection.getRetryCount();
+		for (int i = 0; i <= retryCount; i++) {
+			try {
+				connection.reconnect();
+				fail();
+			} catch (AccountConnectionException e) {
+				// ok
+			}
 		}
 
+		// one failed check
+		connection.continueLoop();
+		waitForCount(connection, 3 + retryCount);
+		Thread.sleep(2 * LOOP_TIME);
+
 		assertFalse(connection.isStopped());
-		assertTrue(connection.count == maxCount);
-		assertFalse(connection.disconnectCalled);
+		verify(App.getAccountService(), never()).changeAccountState(connection.getAccount(), AccountState.disabled_by_app);
+
+		connection.stop();
+	}
+
+	private static void waitForCount(@Nonnull TestLoopedConnection connection, int count) throws InterruptedException {
+		final long start = currentTimeMillis();
+		while (connection.count.get() < count) {
+			if (currentTimeMillis() - start > TIMEOUT) {
+				fail("Only " + connection.count.get() + " checks of " + count + " were done");
+			}
+			Thread.sleep(10);
+		}
 	}
 
-	private static final class TestLoopedConnection extends LoopedAccountConnection {
+	private final class TestLoopedConnection extends LoopedAccountConnection {
+
+		private volatile int maxCount;
+
+		@Nonnull
+		private final AtomicInteger count = new AtomicInteger();
 
-		private final int maxCount;
-		private int count;
 		private volatile boolean disconnectCalled = false;
 
-		protected TestLoopedConnection(int maxCount) {
-			super(mock(Account.class), mock(Context.class), LOOP_TIME);
+		private TestLoopedConnection(int maxCount, long waitMillis) {
+			this(maxCount, waitMillis, newReconnectPolicy(10, LOOP_TIME, FAILURE_THRESHOLD, 60L * 60L * 1000L));
+		}
+
+		private TestLoopedConnection(int maxCount, long waitMillis, @Nonnull ReconnectPolicy reconnectPolicy) {
+			super(mock(Account.class), mock(Context.class), waitMillis, scheduler, reconnectPolicy);
 			this.maxCount = maxCount;
 		}
 
@@ -102,11 +274,11 @@ public class LoopedAccountConnectionTest {
 		}
 
 		@Override
-		protected void reconnectIfDisconnected() throws AccountConnectionException {
-			count++;
-			if (count >= maxCount) {
+		protected boolean reconnectIfDisconnected() throws AccountConnectionException {
+			if (count.incrementAndGet() > maxCount) {
 				throw new AccountConnectionException("test");
 			}
+			return true;
 		}
 	}
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.accounts.connection;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.*;
+import static org.solovyev.android.messenger.accounts.connection.ReconnectPolicy.State.closed;
+import static org.solovyev.android.messenger.accounts.connection.ReconnectPolicy.State.half_open;
+import static org.solovyev.android.messenger.accounts.connection.ReconnectPolicy.State.open;
+
+public class ReconnectPolicyTest {
+
+	private static final long MIN_DELAY = 1000;
+	private static final long MAX_DELAY = 60000;
+	private static final int FAILURE_THRESHOLD = 5;
+	private static final long OPEN_MILLIS = 300000;
+
+	@Nonnull
+	private FakeTicker ticker;
+
+	@Nonnull
+	private ReconnectPolicy policy;
+
+	@Before
+	public void setUp() throws Exception {
+		ticker = new FakeTicker();
+		policy = new ReconnectPolicy(MIN_DELAY, MAX_DELAY, FAILURE_THRESHOLD, OPEN_MILLIS, ticker, new Random(0));
+	}
+
+	@Test
+	public void testDelayShouldGrowExponentiallyWithJitter() throws Exception {
+		final ReconnectPolicy policy = new ReconnectPolicy(MIN_DELAY, MAX_DELAY, Integer.MAX_VALUE, OPEN_MILLIS, ticker, new Random(0));
+		assertEquals(0, policy.getDelayMillis());
+
+		long maxDelay = MIN_DELAY;
+		for (int failure = 1; failure < 20; failure++) {
+			policy.onFailure();
+			for (int i = 0; i < 10; i++) {
+				final long delay = policy.getDelayMillis();
+				assertTrue(delay + " > " + maxDelay, delay <= maxDelay);
+				assertTrue(delay + " < " + maxDelay / 2, delay >= maxDelay / 2);
+			}
+			maxDelay = Math.min(MAX_DELAY, maxDelay * 2);
+		}
+		assertEquals(closed, policy.getState());
+	}
+
+	@Test
+	public void testBreakerShouldOpenAfterThreshold() throws Exception {
+		for (int i = 0; i < FAILURE_THRESHOLD - 1; i++) {
+			assertTrue(policy.tryAcquire());
+			policy.onFailure();
+			assertEquals(closed, policy.getState());
+		}
+
+		assertTrue(policy.tryAcquire());
+		policy.onFailure();
+		assertEquals(open, policy.getState());
+		assertEquals(1, policy.getOpens());
+
+		assertFalse(policy.tryAcquire());
+		assertEquals(OPEN_MILLIS, policy.getDelayMillis());
+
+		ticker.advance(OPEN_MILLIS / 2);
+		assertFalse(policy.tryAcquire());
+		assertEquals(OPEN_MILLIS / 2, policy.getDelayMillis());
+	}
+
+	@Test
+	public void testBreakerShouldAllowOneProbeAfterOpenPeriod() throws Exception {
+		openBreaker();
+
+		ticker.advance(OPEN_MILLIS);
+		assertTrue(policy.tryAcquire());
+		assertEquals(half_open, policy.getState());
+		// probe is in progress
+		assertFalse(policy.tryAcquire());
+
+		policy.onSuccess(150);
+		assertEquals(closed, policy.getState());
+		assertEquals(0, policy.getFailures());
+		assertEquals(0, policy.getDelayMillis());
+		assertTrue(policy.tryAcquire());
+	}
+
+	@Test
+	public void testFailedProbeShouldOpenBreakerAgain() throws Exception {
+		openBreaker();
+
+		ticker.advance(OPEN_MILLIS);
+		assertTrue(policy.tryAcquire());
+		policy.onFailure();
+
+		assertEquals(open, policy.getState());
+		assertEquals(2, policy.getOpens());
+		assertFalse(policy.tryAcquire());
+		assertEquals(OPEN_MILLIS, policy.getDelayMillis());
+	}
+
+	@Test
+	public void testResetShouldCloseBreaker() throws Exception {
+		openBreaker();
+
+		policy.reset();
+		assertEquals(closed, policy.getState());
+		assertTrue(policy.tryAcquire());
+	}
+
+	@Test
+	public void testShouldCollectLatencies() throws Exception {
+		policy.onSuccess(50);
+		policy.onSuccess(99);
+		policy.onSuccess(700);
+		policy.onSuccess(60000);
+
+		final LatencyHistogram latencies = policy.getLatencies();
+		assertEquals(4, latencies.getCount());
+
+		final long[] counts = latencies.getCounts();
+		assertEquals(2, counts[LatencyHistogram.getBucket(0)]);
+		assertEquals(1, counts[LatencyHistogram.getBucket(999)]);
+		assertEquals(1, counts[counts.length - 1]);
+		assertEquals("LatencyHistogram{<100ms: 2, <1000ms: 1, >=30000ms: 1}", latencies.toString());
+	}
+
+	private void openBreaker() {
+		for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+			policy.onFailure();
+		}
+		assertEquals(open, policy.getState());
+	}
+
+	private static final class FakeTicker extends Ticker {
+
+		private long nanos = 1000000000L;
+
+		@Override
+		public long read() {
+			return nanos;
+		}
+
+		void advance(long millis) {
+			nanos += MILLISECONDS.toNanos(millis);
+		}
+	}
+}
@@ -22,6 +22,7 @@ import com.google.inject.Inject;
 import org.junit.Test;
 import org.solovyev.android.db.Dao;
 import org.solovyev.android.messenger.DefaultDaoTest;
+import org.solovyev.android.messenger.TestSQLiteOpenHelper;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.messages.Message;
 import org.solovyev.android.messenger.messages.MessageDao;
@@ -45,6 +46,10 @@ public class ChatDaoTest extends DefaultDaoTest<Chat> {
 	@Nonnull
 	private MessageDao messageDao;
 
+	@Inject
+	@Nonnull
+	private TestSQLiteOpenHelper sqliteOpenHelper;
+
 	@Nonnull
 	@Override
 	protected Dao<Chat> getDao() {
@@ -96,6 +101,45 @@ public class ChatDaoTest extends DefaultDaoTest<Chat> {
 		assertTrue(messageDao.readMessages(chat.getChat().getId()).isEmpty());
 	}
 
+	@Test
+	public void testShouldReadChatsWithPropertiesInBatch() throws Exception {
+		final AccountData ad = getAccountData3();
+
+		sqliteOpenHelper.resetDbRequestsCount();
+		final List<Chat> chats = dao.readChatsByUserId(ad.getAccount().getUser().getId());
+
+		// 1 query for chats + 1 query for all their properties
+		assertEquals(2, sqliteOpenHelper.getDbRequestsCount());
+		assertEquals(ad.getChats().size(), chats.size());
+		for (Chat chat : chats) {
+			assertEquals(dao.readPropertiesById(chat.getId()).size(), chat.getPropertiesCollection().size());
+		}
+	}
+
+	@Test
+	public void testShouldReadLastChatsWithLastMessagesAndUnreadCounts() throws Exception {
+		final AccountData ad = getAccountData3();
+
+		sqliteOpenHelper.resetDbRequestsCount();
+		final List<LastChat> lastChats = dao.readLastChats(ad.getAccount().getUser().getId(), false, Integer.MAX_VALUE);
+
+		// 1 query for chats + 1 query for all their properties
+		assertEquals(2, sqliteOpenHelper.getDbRequestsCount());
+		assertEquals(ad.getChats().size(), lastChats.size());
+
+		final Map<Entity, Integer> unreadChats = dao.getUnreadChats();
+		for (LastChat lastChat : lastChats) {
+			final Chat chat = lastChat.getChat();
+			final Message lastMessage = messageDao.readLastMessage(chat.getId());
+			assertNotNull(lastMessage);
+			assertEquals(lastMessage.getId(), lastChat.getLastMessageId());
+
+			final Integer unreadCount = unreadChats.get(chat.getEntity());
+			assertEquals(unreadCount == null ? 0 : unreadCount, lastChat.getUnreadMessagesCount());
+			assertEquals(dao.readPropertiesById(chat.getId()).size(), chat.getPropertiesCollection().size());
+		}
+	}
+
 	@Test
 	public void testPropertiesShouldBeRemovedIfChatRemoved() throws Exception {
 		final AccountChat chat = getAccountData1().getChats().get(0);
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.chats;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import com.google.inject.Inject;
+import org.junit.Test;
+import org.solovyev.android.messenger.DefaultMessengerTest;
+
+import javax.annotation.Nonnull;
+
+import static org.solovyev.android.messenger.accounts.AccountState.enabled;
+import static org.solovyev.android.messenger.chats.SqliteChatDao.*;
+import static org.solovyev.android.messenger.db.QueryPlans.assertNoFullScan;
+import static org.solovyev.android.messenger.messages.MessageState.removed;
+
+public class ChatQueryPlanTest extends DefaultMessengerTest {
+
+	@Inject
+	@Nonnull
+	private SQLiteOpenHelper sqliteOpenHelper;
+
+	@Test
+	public void testLastChatsQueriesShouldUseIndex() throws Exception {
+		final SQLiteDatabase db = sqliteOpenHelper.getReadableDatabase();
+		final String userId = getAccount1().getUser().getId();
+
+		for (boolean privateChat : new boolean[]{false, true}) {
+			assertNoFullScan(db, newLastChatsQuery(true, privateChat, 20), removed.name(), userId);
+			assertNoFullScan(db, newLastChatsQuery(false, privateChat, 20), removed.name(), enabled.name());
+			assertNoFullScan(db, newLastChatIdsQuery(true, privateChat, 20), userId);
+			assertNoFullScan(db, newLastChatIdsQuery(false, privateChat, 20), enabled.name());
+		}
+	}
+
+	@Test
+	public void testLinkedEntitiesQueriesShouldUseIndex() throws Exception {
+		final SQLiteDatabase db = sqliteOpenHelper.getReadableDatabase();
+		final String userId = getAccount1().getUser().getId();
+		final String chatId = getAccountData1().getChats().get(0).getChat().getId();
+
+		assertNoFullScan(db, SELECT_USER_CHATS, userId);
+		assertNoFullScan(db, SELECT_CHAT_PARTICIPANTS, chatId);
+	}
+}
@@ -22,6 +22,7 @@ import org.joda.time.DateTime;
 import org.junit.Test;
 import org.solovyev.android.messenger.DefaultMessengerTest;
 import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.accounts.AccountConnectionException;
 import org.solovyev.android.messenger.accounts.AccountException;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.messages.Message;
@@ -43,6 +44,7 @@ import static com.google.common.collect.Iterables.any;
 import static java.lang.Integer.MAX_VALUE;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 import static org.solovyev.android.messenger.chats.Chats.newPrivateAccountChat;
 import static org.solovyev.android.messenger.messages.Messages.newIncomingMessage;
 import static org.solovyev.android.messenger.messages.MessagesMock.newMockMessage;
@@ -203,4 +205,32 @@ public class ChatServiceTest extends DefaultMessengerTest {
 		assertEquals("test1", addedMessages.getObject().get(0).getBody());
 		assertEquals("test2", addedMessages.getObject().get(1).getBody());
 	}
+
+	@Test
+	public void testBackfillShouldContinueAfterFailedChat() throws Exception {
+		final AccountData ad = getAccountData1();
+		final User user = ad.getAccount().getUser();
+		final List<Chat> chats = userService.getChats(user.getEntity());
+		assertTrue(chats.size() > 1);
+
+		final AccountChatService accountChatService = mock(AccountChatService.class);
+		when(accountChatService.backfillMessagesForChat(anyString())).thenReturn(1);
+		when(accountChatService.backfillMessagesForChat(chats.get(0).getEntity().getAccountEntityId())).thenThrow(new AccountConnectionException("test"));
+
+		final Account account = mock(Account.class);
+		when(account.getUser()).thenReturn(user);
+		when(account.getAccountChatService()).thenReturn(accountChatService);
+
+		assertEquals(chats.size() - 1, chatService.backfillMessages(account));
+		verify(accountChatService, times(chats.size())).backfillMessagesForChat(anyString());
+
+		// all chats failed => error is reported
+		when(accountChatService.backfillMessagesForChat(anyString())).thenThrow(new AccountConnectionException("test"));
+		try {
+			chatService.backfillMessages(account);
+			fail();
+		} catch (AccountConnectionException e) {
+			// ok
+		}
+	}
 }
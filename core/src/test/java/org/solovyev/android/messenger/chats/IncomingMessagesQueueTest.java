@@ -0,0 +1,174 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.chats;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.MessageState;
+import org.solovyev.android.messenger.messages.MutableMessage;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
+import static org.solovyev.android.messenger.messages.Messages.newMessage;
+
+@RunWith(RobolectricTestRunner.class)
+public class IncomingMessagesQueueTest {
+
+	@Nonnull
+	private ChatService chatService;
+
+	@Nonnull
+	private Entity chat1;
+
+	@Nonnull
+	private Entity chat2;
+
+	@Before
+	public void setUp() throws Exception {
+		chatService = mock(ChatService.class);
+		chat1 = newEntityFromEntityId("test:chat1");
+		chat2 = newEntityFromEntityId("test:chat2");
+	}
+
+	@Test
+	public void testShouldSaveMessagesGroupedByChat() throws Exception {
+		// delay is long enough not to be flushed automatically during the test
+		final IncomingMessagesQueue queue = new IncomingMessagesQueue(chatService, 60L * 60L * 1000L);
+
+		final Message m1 = newTestMessage(chat1, 1);
+		final Message m2 = newTestMessage(chat2, 2);
+		final Message m3 = newTestMessage(chat1, 3);
+		queue.add(chat1, asList(m1));
+		queue.add(chat2, asList(m2));
+		queue.add(chat1, asList(m3));
+		assertEquals(3, queue.getPendingCount());
+		verify(chatService, never()).saveMessages(any(Entity.class), any(Collection.class));
+
+		queue.flush();
+
+		final ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+		verify(chatService, times(1)).saveMessages(eq(chat1), captor.capture());
+		assertEquals(asList(m1, m3), new ArrayList<Message>(captor.getValue()));
+		verify(chatService, times(1)).saveMessages(eq(chat2), captor.capture());
+		assertEquals(asList(m2), new ArrayList<Message>(captor.getValue()));
+
+		assertEquals(0, queue.getPendingCount());
+		assertEquals(3, queue.getReceivedCount());
+		assertEquals(3, queue.getSavedCount());
+		assertEquals(1, queue.getFlushesCount());
+		assertEquals(3, queue.getLatencies().getCount());
+
+		// nothing to flush
+		queue.flush();
+		assertEquals(1, queue.getFlushesCount());
+	}
+
+	@Test
+	public void testShouldFlushAutomatically() throws Exception {
+		final IncomingMessagesQueue queue = new IncomingMessagesQueue(chatService);
+		queue.add(chat1, asList(newTestMessage(chat1, 1)));
+
+		Thread.sleep(10 * IncomingMessagesQueue.FLUSH_DELAY);
+
+		verify(chatService, times(1)).saveMessages(eq(chat1), any(Collection.class));
+		assertEquals(0, queue.getPendingCount());
+	}
+
+	@Test
+	public void testShouldSaveOnProducerThreadIfQueueIsFull() throws Exception {
+		final IncomingMessagesQueue queue = new IncomingMessagesQueue(chatService, 60L * 60L * 1000L);
+
+		final List<Message> messages = new ArrayList<Message>();
+		for (int i = 0; i < IncomingMessagesQueue.CAPACITY; i++) {
+			messages.add(newTestMessage(chat1, i));
+		}
+		queue.add(chat1, messages);
+
+		verify(chatService, times(1)).saveMessages(eq(chat1), any(Collection.class));
+		assertEquals(1, queue.getBackpressureCount());
+		assertEquals(0, queue.getPendingCount());
+	}
+
+	@Test
+	public void testShutdownShouldSavePendingMessages() throws Exception {
+		final IncomingMessagesQueue queue = new IncomingMessagesQueue(chatService, 60L * 60L * 1000L);
+		queue.add(chat1, asList(newTestMessage(chat1, 1)));
+
+		queue.shutdown();
+		verify(chatService, times(1)).saveMessages(eq(chat1), any(Collection.class));
+		assertEquals(0, queue.getPendingCount());
+
+		// after shutdown messages are saved immediately
+		queue.add(chat2, asList(newTestMessage(chat2, 2)));
+		verify(chatService, times(1)).saveMessages(eq(chat2), any(Collection.class));
+		assertEquals(0, queue.getPendingCount());
+	}
+
+	@Test
+	public void testShouldSaveMessagesOneByOneIfGroupFails() throws Exception {
+		final IncomingMessagesQueue queue = new IncomingMessagesQueue(chatService, 60L * 60L * 1000L);
+
+		final Message m1 = newTestMessage(chat1, 1);
+		final Message m2 = newTestMessage(chat1, 2);
+		final Message m3 = newTestMessage(chat1, 3);
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				final Collection<?> messages = (Collection<?>) invocation.getArguments()[1];
+				if (messages.contains(m2)) {
+					throw new IllegalStateException("test");
+				}
+				return null;
+			}
+		}).when(chatService).saveMessages(any(Entity.class), any(Collection.class));
+
+		queue.add(chat1, asList(m1, m2, m3));
+		queue.flush();
+
+		// 1 failed group + 3 single messages
+		verify(chatService, times(4)).saveMessages(eq(chat1), any(Collection.class));
+		verify(chatService, times(1)).saveMessages(chat1, Collections.singletonList(m1));
+		verify(chatService, times(1)).saveMessages(chat1, Collections.singletonList(m3));
+		assertEquals(2, queue.getSavedCount());
+		assertEquals(1, queue.getFailedCount());
+		assertEquals(0, queue.getPendingCount());
+	}
+
+	@Nonnull
+	private static Message newTestMessage(@Nonnull Entity chat, int i) {
+		final MutableMessage message = newMessage(newEntityFromEntityId("test:message_" + i));
+		message.setChat(chat);
+		message.setAuthor(newEntityFromEntityId("test:author"));
+		message.setBody("body");
+		message.setState(MessageState.received);
+		return message;
+	}
+}
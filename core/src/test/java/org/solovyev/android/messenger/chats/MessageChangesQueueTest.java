@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.messenger.chats;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.solovyev.android.messenger.messages.ChangedMessageIds;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.MessageDao;
+import org.solovyev.android.messenger.messages.MessageState;
+import org.solovyev.android.messenger.messages.MutableMessage;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singleton;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.*;
+import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
+import static org.solovyev.android.messenger.messages.Messages.newMessage;
+
+public class MessageChangesQueueTest {
+
+	@Nonnull
+	private ChatService chatService;
+
+	@Nonnull
+	private MessageDao messageDao;
+
+	@Nonnull
+	private MessageChangesQueue queue;
+
+	@Nonnull
+	private Chat chat;
+
+	@Nonnull
+	private ScheduledExecutorService executor;
+
+	@Before
+	public void setUp() throws Exception {
+		chatService = mock(ChatService.class);
+		messageDao = mock(MessageDao.class);
+		executor = mock(ScheduledExecutorService.class);
+		when(executor.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenReturn(mock(ScheduledFuture.class));
+		queue = new MessageChangesQueue(chatService, messageDao, new Object(), executor);
+		chat = Chats.newPrivateChat(newEntityFromEntityId("test:chat"));
+	}
+
+	@Test
+	public void testShouldWriteAllChangesAtOnce() throws Exception {
+		final List<Message> messages = new ArrayList<Message>();
+		for (int i = 0; i < 300; i++) {
+			final Message message = newTestMessage(i);
+			messages.add(message);
+			queue.addReadChange(chat, message);
+		}
+		queue.addStateChange(chat, messages.get(0).cloneWithNewState(MessageState.removed));
+
+		final Set<String> readMessageIds = new HashSet<String>();
+		for (Message message : messages) {
+			readMessageIds.add(message.getId());
+		}
+		when(messageDao.changeReadStatusesAndStates(anyCollection(), anyMap())).thenReturn(new ChangedMessageIds(readMessageIds, singleton(messages.get(0).getId())));
+
+		queue.flush();
+
+		final ArgumentCaptor<Collection> readCaptor = ArgumentCaptor.forClass(Collection.class);
+		final ArgumentCaptor<Map> statesCaptor = ArgumentCaptor.forClass(Map.class);
+		verify(messageDao, times(1)).changeReadStatusesAndStates(readCaptor.capture(), statesCaptor.capture());
+		assertEquals(300, readCaptor.getValue().size());
+		assertEquals(Collections.singletonMap(messages.get(0).getId(), MessageState.removed), statesCaptor.getValue());
+
+		final ArgumentCaptor<Collection> eventsCaptor = ArgumentCaptor.forClass(Collection.class);
+		verify(chatService, times(1)).fireEvents(eventsCaptor.capture());
+		final Collection<ChatEvent> events = eventsCaptor.getValue();
+		// one messages_changed and one messages_read event for the chat
+		assertEquals(2, events.size());
+		for (ChatEvent event : events) {
+			assertEquals(300, event.getDataAsMessages().size());
+			for (Message message : event.getDataAsMessages()) {
+				assertTrue(message.isRead());
+			}
+		}
+
+		// nothing to flush
+		queue.flush();
+		verify(messageDao, times(1)).changeReadStatusesAndStates(anyCollection(), anyMap());
+	}
+
+	@Test
+	public void testShouldFlushAutomatically() throws Exception {
+		final Message message = newTestMessage(0).cloneWithNewState(MessageState.sent);
+		when(messageDao.changeReadStatusesAndStates(anyCollection(), anyMap())).thenReturn(new ChangedMessageIds(Collections.<String>emptySet(), singleton(message.getId())));
+		queue.addStateChange(chat, message);
+		queue.addStateChange(chat, message);
+
+		// flush is scheduled once
+		final ArgumentCaptor<Runnable> flushCaptor = ArgumentCaptor.forClass(Runnable.class);
+		verify(executor, times(1)).schedule(flushCaptor.capture(), eq(MessageChangesQueue.FLUSH_DELAY), eq(TimeUnit.MILLISECONDS));
+		verify(messageDao, never()).changeReadStatusesAndStates(anyCollection(), anyMap());
+
+		flushCaptor.getValue().run();
+
+		verify(messageDao, times(1)).changeReadStatusesAndStates(anyCollection(), anyMap());
+		verify(chatService, times(1)).fireEvents(any(Collection.class));
+	}
+
+	@Test
+	public void testShouldNotFireEventsIfNothingChanged() throws Exception {
+		when(messageDao.changeReadStatusesAndStates(anyCollection(), anyMap())).thenReturn(ChangedMessageIds.empty());
+		queue.addReadChange(chat, newTestMessage(0));
+		queue.addStateChange(chat, newTestMessage(1).cloneWithNewState(MessageState.sent));
+
+		queue.flush();
+
+		verify(messageDao, times(1)).changeReadStatusesAndStates(anyCollection(), anyMap());
+		verify(chatService, never()).fireEvents(any(Collection.class));
+	}
+
+	@Nonnull
+	private Message newTestMessage(int i) {
+		final MutableMessage message = newMessage(newEntityFromEntityId("test:message_" + i));
+		message.setChat(chat.getEntity());
+		message.setAuthor(newEntityFromEntityId("test:author"));
+		message.setBody("body");
+		message.setState(MessageState.received);
+		return message;
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import com.google.inject.Inject;
+import org.junit.Test;
+import org.solovyev.android.messenger.DefaultMessengerTest;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+import static org.solovyev.android.messenger.db.PropertiesListMapper.newPropertiesQuery;
+import static org.solovyev.android.messenger.db.QueryPlans.assertNoFullScan;
+
+/**
+ * Checks query plans of queries which are not issued by messenger DAOs directly (queries of DAOs are checked in
+ * MessageQueryPlanTest, ChatQueryPlanTest and UserQueryPlanTest)
+ */
+public class DbQueryPlanTest extends DefaultMessengerTest {
+
+	@Inject
+	@Nonnull
+	private SQLiteOpenHelper sqliteOpenHelper;
+
+	@Test
+	public void testPropertiesQueriesShouldUseIndex() throws Exception {
+		final SQLiteDatabase db = sqliteOpenHelper.getReadableDatabase();
+		final String userId = getAccount1().getUser().getId();
+		final String chatId = getAccountData1().getChats().get(0).getChat().getId();
+
+		// issued by PropertiesListMapper
+		assertNoFullScan(db, newPropertiesQuery("user_properties", "user_id", Arrays.asList(userId)), userId);
+		assertNoFullScan(db, newPropertiesQuery("chat_properties", "chat_id", Arrays.asList(chatId)), chatId);
+		assertNoFullScan(db, newPropertiesQuery("message_properties", "message_id", Arrays.asList("test", "test2")), "test", "test2");
+
+		// issued by PropertyByIdDbQuery of android-common, SQL of which can't be shared
+		assertNoFullScan(db, "select * from user_properties where user_id = ?", userId);
+		assertNoFullScan(db, "select * from chat_properties where chat_id = ?", chatId);
+		assertNoFullScan(db, "select * from message_properties where message_id = ?", "test");
+	}
+
+	@Test
+	public void testForeignKeyLookupsShouldUseIndex() throws Exception {
+		final SQLiteDatabase db = sqliteOpenHelper.getReadableDatabase();
+		final String userId = getAccount1().getUser().getId();
+		final String chatId = getAccountData1().getChats().get(0).getChat().getId();
+
+		// SQLite looks up child rows in the same way on "on delete cascade" of users and chats
+		assertNoFullScan(db, "select * from user_contacts where contact_id = ?", userId);
+		assertNoFullScan(db, "select * from user_chats where chat_id = ?", chatId);
+		assertNoFullScan(db, "select * from messages where chat_id = ?", chatId);
+	}
+}
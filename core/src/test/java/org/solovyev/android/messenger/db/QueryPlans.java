@@ -0,0 +1,75 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that queries are served by indices (see db_*_002.sql) and never fall back to a full scan of a hot table
+ */
+public final class QueryPlans {
+
+	@Nonnull
+	private static final List<String> HOT_TABLES = Arrays.asList("messages", "message_properties", "chats", "chat_properties", "user_chats", "users", "user_properties", "user_contacts", "chat_unread_counts", "user_digests");
+
+	@Nonnull
+	private static final Pattern SCAN_PATTERN = Pattern.compile("^SCAN (TABLE )?(\\w+)");
+
+	private QueryPlans() {
+		throw new AssertionError();
+	}
+
+	public static void assertNoFullScan(@Nonnull SQLiteDatabase db, @Nonnull String sql, @Nonnull String... args) {
+		final List<String> plan = explain(db, sql, args);
+		assertFalse("No query plan for " + sql, plan.isEmpty());
+
+		for (String step : plan) {
+			final Matcher matcher = SCAN_PATTERN.matcher(step);
+			if (matcher.find() && HOT_TABLES.contains(matcher.group(2))) {
+				fail("Full scan of " + matcher.group(2) + " in " + sql + ", plan: " + plan);
+			}
+		}
+	}
+
+	@Nonnull
+	private static List<String> explain(@Nonnull SQLiteDatabase db, @Nonnull String sql, @Nonnull String... args) {
+		final List<String> result = new ArrayList<String>();
+
+		final Cursor cursor = db.rawQuery("explain query plan " + sql, args);
+		try {
+			final int detailColumn = cursor.getColumnIndexOrThrow("detail");
+			while (cursor.moveToNext()) {
+				result.add(cursor.getString(detailColumn));
+			}
+		} finally {
+			cursor.close();
+		}
+
+		return result;
+	}
+}
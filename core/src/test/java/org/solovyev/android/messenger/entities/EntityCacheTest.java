@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.messenger.entities;
+
+import org.junit.Test;
+import org.solovyev.android.messenger.users.User;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.solovyev.android.messenger.users.Users.newEmptyUser;
+
+public class EntityCacheTest {
+
+	@Test
+	public void testShouldNotGrowOverMaxSize() throws Exception {
+		final EntityCache<User> cache = new EntityCache<User>(16);
+		for (int i = 0; i < 1000; i++) {
+			cache.put(newEmptyUser("test:test" + i));
+		}
+
+		assertTrue(cache.size() <= 16);
+		assertEquals(1000 - cache.size(), cache.getEvictionCount());
+	}
+
+	@Test
+	public void testShouldEvictLeastRecentlyUsedEntity() throws Exception {
+		final EntityCache<User> cache = new EntityCache<User>(16);
+		final User user = newEmptyUser("test:test");
+		cache.put(user);
+
+		for (int i = 0; i < 1000; i++) {
+			// user is used all the time => should not be evicted
+			assertSame(user, cache.get(user.getEntity()));
+			cache.put(newEmptyUser("test:test" + i));
+		}
+
+		assertSame(user, cache.get(user.getEntity()));
+	}
+
+	@Test
+	public void testShouldCountHitsAndMisses() throws Exception {
+		final EntityCache<User> cache = new EntityCache<User>(16);
+		final User user = newEmptyUser("test:test");
+
+		assertNull(cache.get(user.getEntity()));
+		cache.put(user);
+		assertSame(user, cache.get(user.getEntity()));
+		assertSame(user, cache.get(user.getEntity()));
+
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testPutIfAbsentShouldNotOverrideEntity() throws Exception {
+		final EntityCache<User> cache = new EntityCache<User>(16);
+		final User expected = newEmptyUser("test:test");
+		cache.put(expected);
+		cache.putIfAbsent(expected.clone());
+		assertSame(expected, cache.get(expected.getEntity()));
+
+		cache.remove(expected.getEntity());
+		assertNull(cache.get(expected.getEntity()));
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.http.AbstractHttpTransaction;
+import org.solovyev.android.http.HttpMethod;
+import org.solovyev.android.http.HttpRuntimeIoException;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs {@link DefaultHttpExecutor} against a local stub server
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DefaultHttpExecutorTest {
+
+	@Nonnull
+	private static final String BODY = "{\"response\":[1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20]}";
+
+	@Nonnull
+	private HttpServer server;
+
+	@Nonnull
+	private DefaultHttpExecutor executor;
+
+	@Nonnull
+	private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+	@Before
+	public void setUp() throws Exception {
+		Robolectric.getFakeHttpLayer().interceptHttpRequests(false);
+
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/method/test", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				clientPorts.add(exchange.getRemoteAddress().getPort());
+
+				final byte[] body;
+				final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+				if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+					body = gzip(BODY);
+					exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+				} else {
+					body = BODY.getBytes("UTF-8");
+				}
+
+				exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				final OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.createContext("/method/error", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(500, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+
+		executor = new DefaultHttpExecutor();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	@Test
+	public void testShouldDecompressGzippedResponse() throws Exception {
+		assertEquals(BODY, executor.execute(new TestTransaction(getUri("test"))));
+
+		final HttpMetrics.EndpointMetrics metrics = executor.getMetrics().getEndpointMetrics(getEndpoint("test"));
+		assertNotNull(metrics);
+		assertEquals(1, metrics.getCount());
+		assertEquals(0, metrics.getErrors());
+		// compressed bytes are counted
+		assertEquals(gzip(BODY).length, metrics.getBytes());
+	}
+
+	@Test
+	public void testShouldReuseConnection() throws Exception {
+		final List<TestTransaction> transactions = new ArrayList<TestTransaction>();
+		for (int i = 0; i < 5; i++) {
+			transactions.add(new TestTransaction(getUri("test")));
+		}
+
+		for (String response : executor.execute(transactions, HttpTimeouts.DEFAULT)) {
+			assertEquals(BODY, response);
+		}
+
+		assertEquals(1, clientPorts.size());
+		assertEquals(5, executor.getMetrics().getEndpointMetrics(getEndpoint("test")).getCount());
+	}
+
+	@Test
+	public void testShouldExecuteLongPollThroughSeparateConnections() throws Exception {
+		executor.execute(new TestTransaction(getUri("test")));
+		executor.executeLongPoll(new TestTransaction(getUri("test")), HttpTimeouts.DEFAULT);
+
+		assertEquals(2, clientPorts.size());
+	}
+
+	@Test
+	public void testShouldRecordErrors() throws Exception {
+		try {
+			executor.execute(new TestTransaction(getUri("error")));
+			fail();
+		} catch (IOException e) {
+			// ok
+		}
+
+		final HttpMetrics.EndpointMetrics metrics = executor.getMetrics().getEndpointMetrics(getEndpoint("error"));
+		assertNotNull(metrics);
+		assertEquals(1, metrics.getErrors());
+	}
+
+	@Nonnull
+	private String getUri(@Nonnull String method) {
+		return "http://" + getEndpoint(method);
+	}
+
+	@Nonnull
+	private String getEndpoint(@Nonnull String method) {
+		return "localhost:" + server.getAddress().getPort() + "/method/" + method;
+	}
+
+	@Nonnull
+	private static byte[] gzip(@Nonnull String s) throws IOException {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+		final GZIPOutputStream out = new GZIPOutputStream(result);
+		out.write(s.getBytes("UTF-8"));
+		out.close();
+		return result.toByteArray();
+	}
+
+	private static final class TestTransaction extends AbstractHttpTransaction<String> {
+
+		private TestTransaction(@Nonnull String uri) {
+			super(uri, HttpMethod.GET);
+		}
+
+		@Override
+		public String getResponse(@Nonnull HttpResponse response) {
+			if (response.getStatusLine().getStatusCode() != 200) {
+				throw new HttpRuntimeIoException(new IOException("Error status code: " + response.getStatusLine().getStatusCode()));
+			}
+
+			try {
+				return EntityUtils.toString(response.getEntity(), "UTF-8");
+			} catch (IOException e) {
+				throw new HttpRuntimeIoException(e);
+			}
+		}
+
+		@Nonnull
+		@Override
+		public List<NameValuePair> getRequestParameters() {
+			return Collections.emptyList();
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.messenger.messages;
+
+import com.google.inject.Inject;
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.solovyev.android.messenger.DefaultMessengerTest;
+import org.solovyev.android.messenger.MergeDaoResult;
+import org.solovyev.android.messenger.chats.Chat;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.System.nanoTime;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reports throughput (messages/sec) of {@link SqliteMessageDao#mergeMessages(String, java.util.Collection)} for new,
+ * unchanged and changed messages. Not a part of unit tests, run with <code>mvn test -P benchmarks</code>
+ */
+public class MergeMessagesBenchmark extends DefaultMessengerTest {
+
+	private static final int MESSAGES_COUNT = 10000;
+
+	@Inject
+	@Nonnull
+	private SqliteMessageDao dao;
+
+	@Test
+	public void testMergeMessagesThroughput() throws Exception {
+		final AccountData ad = getAccountData1();
+		final Chat chat = ad.getChats().get(0).getChat();
+
+		final DateTime now = DateTime.now();
+		final List<MutableMessage> messages = new ArrayList<MutableMessage>(MESSAGES_COUNT);
+		for (int i = 0; i < MESSAGES_COUNT; i++) {
+			messages.add(newMessage(ad, chat, now.plusSeconds(i), "body_" + i));
+		}
+
+		MergeDaoResult<Message, String> result = merge("new", chat, messages);
+		assertEquals(MESSAGES_COUNT, result.getAddedObjects().size());
+
+		result = merge("unchanged", chat, messages);
+		assertTrue(result.getAddedObjects().isEmpty());
+		assertTrue(result.getUpdatedObjects().isEmpty());
+
+		final List<Message> changedMessages = new ArrayList<Message>(MESSAGES_COUNT);
+		for (MutableMessage message : messages) {
+			final MutableMessage changedMessage = message.cloneRead();
+			changedMessage.setBody(message.getBody() + "_changed");
+			changedMessages.add(changedMessage);
+		}
+		result = merge("changed", chat, changedMessages);
+		assertEquals(MESSAGES_COUNT, result.getUpdatedObjects().size());
+		assertEquals("body_0_changed", dao.read(messages.get(0).getId()).getBody());
+	}
+
+	@Nonnull
+	private MergeDaoResult<Message, String> merge(@Nonnull String name, @Nonnull Chat chat, @Nonnull List<? extends Message> messages) {
+		final long start = nanoTime();
+		final MergeDaoResult<Message, String> result = dao.mergeMessages(chat.getId(), messages);
+		final long duration = nanoTime() - start;
+		System.out.println("Merge of " + messages.size() + " " + name + " messages: " + duration / 1000000 + "ms, " + (long) (messages.size() * 1e9 / duration) + " messages/sec");
+		return result;
+	}
+
+	@Nonnull
+	private static MutableMessage newMessage(@Nonnull AccountData ad, @Nonnull Chat chat, @Nonnull DateTime sendDate, @Nonnull String body) {
+		final MutableMessage result = Messages.newMessage(ad.getAccount().newMessageEntity(MessagesMock.getMessageId()));
+		result.getProperties().setProperty("property_1", "test");
+		result.setAuthor(ad.getContacts().get(0).getEntity());
+		result.setRecipient(ad.getAccount().getUser().getEntity());
+		result.setSendDate(sendDate);
+		result.setBody(body);
+		result.setChat(chat.getEntity());
+		result.setState(MessageState.received);
+		return result;
+	}
+}
@@ -16,11 +16,16 @@
 
 package org.solovyev.android.messenger.messages;
 
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 import org.joda.time.DateTime;
 import org.junit.Test;
 import org.solovyev.android.db.Dao;
 import org.solovyev.android.messenger.DefaultDaoTest;
+import org.solovyev.android.messenger.MergeDaoResult;
+import org.solovyev.android.messenger.TestSQLiteOpenHelper;
 import org.solovyev.android.messenger.PropertiesEqualizer;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.chats.AccountChat;
@@ -34,7 +39,11 @@ import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 import static org.solovyev.android.messenger.messages.MessagesMock.newMockMessage;
@@ -55,6 +64,10 @@ public class MessageDaoTest extends DefaultDaoTest<Message> {
 	@Nonnull
 	private ChatService chatService;
 
+	@Inject
+	@Nonnull
+	private TestSQLiteOpenHelper sqliteOpenHelper;
+
 	public MessageDaoTest() {
 		super(null, new MessageSameEqualizer());
 	}
@@ -113,6 +126,257 @@ public class MessageDaoTest extends DefaultDaoTest<Message> {
 		assertNotNull(actual.getProperties().getPropertyValue("property_2"));
 	}
 
+	@Test
+	public void testShouldReportOnlyActuallyChangedMessages() throws Exception {
+		final AccountData ad = getAccountData1();
+		final AccountChat chat = ad.getChats().get(0);
+
+		final MutableMessage message = newMessageWithProperties(ad);
+		message.setRead(false);
+		message.setState(MessageState.received);
+		dao.mergeMessages(chat.getChat().getId(), Arrays.<Message>asList(message));
+
+		ChangedMessageIds changed = dao.changeReadStatusesAndStates(Arrays.asList(message.getId()), Collections.singletonMap(message.getId(), MessageState.removed));
+		assertTrue(changed.isReadChanged(message.getId()));
+		assertTrue(changed.isStateChanged(message.getId()));
+
+		// same values => no changes
+		changed = dao.changeReadStatusesAndStates(Arrays.asList(message.getId()), Collections.singletonMap(message.getId(), MessageState.removed));
+		assertTrue(changed.isEmpty());
+
+		// unknown message => no changes
+		changed = dao.changeReadStatusesAndStates(Arrays.asList("test"), Collections.singletonMap("test", MessageState.removed));
+		assertTrue(changed.isEmpty());
+	}
+
+	@Test
+	public void testShouldSkipOnlyMessagesViolatingConstraints() throws Exception {
+		final AccountData ad = getAccountData1();
+		final AccountChat chat = ad.getChats().get(0);
+
+		final MutableMessage first = newMessageWithProperties(ad);
+		final MutableMessage broken = newMessageWithProperties(ad);
+		broken.setAuthor(ad.getAccount().newUserEntity("unknown_user"));
+		final MutableMessage last = newMessageWithProperties(ad);
+
+		final MergeDaoResult<Message, String> result = dao.mergeMessages(chat.getChat().getId(), Arrays.<Message>asList(first, broken, last));
+
+		// unknown author => foreign key is violated
+		final List<Message> added = result.getAddedObjects();
+		assertEquals(2, added.size());
+		assertEquals(first.getId(), added.get(0).getId());
+		assertEquals(last.getId(), added.get(1).getId());
+		assertNotNull(dao.read(first.getId()));
+		assertNull(dao.read(broken.getId()));
+		assertNotNull(dao.read(last.getId()));
+	}
+
+	@Test
+	public void testShouldReadMessagesWithPropertiesInBatch() throws Exception {
+		final AccountData ad = getAccountData1();
+		final AccountChat chat = ad.getChats().get(0);
+		final MutableMessage expected = newMessageWithProperties(ad);
+		dao.mergeMessages(chat.getChat().getId(), Arrays.asList(expected));
+
+		sqliteOpenHelper.resetDbRequestsCount();
+		final List<Message> messages = dao.readMessages(chat.getChat().getId());
+
+		// 1 query for messages + 1 query for all their properties
+		assertEquals(2, sqliteOpenHelper.getDbRequestsCount());
+		assertEquals(chat.getMessages().size() + 1, messages.size());
+		for (Message message : messages) {
+			if (message.getId().equals(expected.getId())) {
+				assertEquals("test", message.getProperties().getPropertyValue("property_1"));
+				assertEquals("42", message.getProperties().getPropertyValue("property_2"));
+			}
+		}
+	}
+
+	@Test
+	public void testShouldReadAllMessagesPageByPage() throws Exception {
+		final AccountChat chat = getAccountData1().getChats().get(0);
+		final String chatId = chat.getChat().getId();
+
+		final List<Message> olderPages = new ArrayList<Message>();
+		List<Message> page = dao.readMessagesBefore(chatId, null, 3);
+		while (!page.isEmpty()) {
+			assertTrue(page.size() <= 3);
+			olderPages.addAll(0, page);
+			page = dao.readMessagesBefore(chatId, page.get(0), 3);
+		}
+		checkChronologicalOrder(olderPages, chat.getMessages().size());
+
+		final List<Message> newerPages = new ArrayList<Message>();
+		page = dao.readMessagesAfter(chatId, null, 3);
+		while (!page.isEmpty()) {
+			assertTrue(page.size() <= 3);
+			newerPages.addAll(page);
+			page = dao.readMessagesAfter(chatId, page.get(page.size() - 1), 3);
+		}
+		checkChronologicalOrder(newerPages, chat.getMessages().size());
+
+		assertEquals(chat.getMessages().size(), dao.getMessagesCount(chatId));
+	}
+
+	@Test
+	public void testShouldNotLoseMessagesWithSameSendTimeOnPageBorder() throws Exception {
+		final Account account = getAccount1();
+		final org.solovyev.android.messenger.entities.Entity from = account.getUser().getEntity();
+		final org.solovyev.android.messenger.entities.Entity to = getContactForAccount(account, 0).getEntity();
+
+		final Chat chat = chatService.getOrCreatePrivateChat(from, to);
+		final DateTime sendDate = DateTime.now().plusDays(1);
+		final List<Message> messages = new ArrayList<Message>();
+		for (int i = 0; i < 5; i++) {
+			messages.add(newMockMessage(sendDate, from, to, account, chat.getId()));
+		}
+		dao.mergeMessages(chat.getId(), messages);
+
+		final List<Message> firstPage = dao.readMessagesBefore(chat.getId(), null, 2);
+		final List<Message> secondPage = dao.readMessagesBefore(chat.getId(), firstPage.get(0), 2);
+		final List<Message> thirdPage = dao.readMessagesBefore(chat.getId(), secondPage.get(0), 2);
+
+		final List<String> ids = new ArrayList<String>();
+		for (Message message : Iterables.concat(thirdPage, secondPage, firstPage)) {
+			assertFalse(ids.contains(message.getId()));
+			ids.add(message.getId());
+		}
+		for (Message message : messages) {
+			assertTrue(ids.contains(message.getId()));
+		}
+	}
+
+	@Test
+	public void testUnreadCountsShouldBeConsistentAfterRandomOperations() throws Exception {
+		final Random random = new Random(42);
+		final AccountData ad = getAccountData1();
+
+		final List<String> messageIds = new ArrayList<String>();
+		for (AccountChat accountChat : ad.getChats()) {
+			for (Message message : accountChat.getMessages()) {
+				messageIds.add(message.getId());
+			}
+		}
+
+		final MessageState[] states = MessageState.values();
+		for (int i = 0; i < 300; i++) {
+			switch (random.nextInt(5)) {
+				case 0:
+					final Chat chat = ad.getChats().get(random.nextInt(ad.getChats().size())).getChat();
+					final MutableMessage message = newMessageWithProperties(ad);
+					message.setChat(chat.getEntity());
+					message.setRead(random.nextBoolean());
+					message.setState(states[random.nextInt(states.length)]);
+					dao.mergeMessages(chat.getId(), Arrays.asList(message));
+					messageIds.add(message.getId());
+					break;
+				case 1:
+					dao.changeReadStatus(messageIds.get(random.nextInt(messageIds.size())), random.nextBoolean());
+					break;
+				case 2:
+					dao.changeMessageState(messageIds.get(random.nextInt(messageIds.size())), states[random.nextInt(states.length)]);
+					break;
+				case 3:
+					final Message messageFromDb = dao.read(messageIds.get(random.nextInt(messageIds.size())));
+					if (messageFromDb != null) {
+						Message updatedMessage = messageFromDb.cloneWithNewState(states[random.nextInt(states.length)]);
+						if (random.nextBoolean()) {
+							updatedMessage = updatedMessage.cloneRead();
+						}
+						dao.update(updatedMessage);
+					}
+					break;
+				case 4:
+					if (random.nextInt(4) == 0) {
+						dao.deleteById(messageIds.remove(random.nextInt(messageIds.size())));
+					}
+					break;
+			}
+		}
+
+		final Map<String, Integer> expected = recountUnreadMessages();
+		assertEquals(expected, readUnreadCounts());
+
+		int expectedTotal = 0;
+		for (Integer unreadCount : expected.values()) {
+			expectedTotal += unreadCount;
+		}
+		assertEquals(expectedTotal, dao.getUnreadMessagesCount());
+
+		// break the table and rebuild it
+		sqliteOpenHelper.getWritableDatabase().execSQL("delete from chat_unread_counts");
+		assertTrue(readUnreadCounts().isEmpty());
+		dao.rebuildUnreadCounts();
+		assertEquals(expected, readUnreadCounts());
+	}
+
+	@Test
+	public void testUnreadCountsShouldFollowCascadingDeletes() throws Exception {
+		final AccountData ad = getAccountData1();
+		for (AccountChat accountChat : ad.getChats()) {
+			for (Message message : accountChat.getMessages()) {
+				dao.changeMessageState(message.getId(), MessageState.received);
+				dao.changeReadStatus(message.getId(), false);
+			}
+		}
+		assertFalse(readUnreadCounts().isEmpty());
+		assertEquals(recountUnreadMessages(), readUnreadCounts());
+
+		final SQLiteDatabase db = sqliteOpenHelper.getWritableDatabase();
+
+		// messages of removed contact are removed by "on delete cascade" while chat stays
+		final AccountChat chat = ad.getChats().get(0);
+		final Message message = chat.getMessages().get(1);
+		final String chatId = chat.getChat().getId();
+		final int unreadCount = readUnreadCounts().get(chatId);
+		db.delete("users", "id = ?", new String[]{message.getAuthor().getEntityId()});
+		assertNull(dao.read(message.getId()));
+		assertEquals(recountUnreadMessages(), readUnreadCounts());
+		assertTrue(unreadCount > getOrZero(readUnreadCounts(), chatId));
+
+		// messages and counter of removed chat are removed by "on delete cascade"
+		final String removedChatId = ad.getChats().get(1).getChat().getId();
+		db.delete("chats", "id = ?", new String[]{removedChatId});
+		assertFalse(readUnreadCounts().containsKey(removedChatId));
+		assertEquals(recountUnreadMessages(), readUnreadCounts());
+	}
+
+	private static int getOrZero(@Nonnull Map<String, Integer> counts, @Nonnull String chatId) {
+		final Integer count = counts.get(chatId);
+		return count == null ? 0 : count;
+	}
+
+	@Nonnull
+	private Map<String, Integer> recountUnreadMessages() {
+		return readCounts("select chat_id, count(*) from messages where read = 0 and state = 'received' group by chat_id");
+	}
+
+	@Nonnull
+	private Map<String, Integer> readUnreadCounts() {
+		return readCounts("select chat_id, unread_count from chat_unread_counts where unread_count > 0");
+	}
+
+	@Nonnull
+	private Map<String, Integer> readCounts(@Nonnull String sql) {
+		final Map<String, Integer> result = new HashMap<String, Integer>();
+		final Cursor cursor = sqliteOpenHelper.getReadableDatabase().rawQuery(sql, null);
+		try {
+			while (cursor.moveToNext()) {
+				result.put(cursor.getString(0), cursor.getInt(1));
+			}
+		} finally {
+			cursor.close();
+		}
+		return result;
+	}
+
+	private static void checkChronologicalOrder(@Nonnull List<Message> messages, int expectedSize) {
+		assertEquals(expectedSize, messages.size());
+		for (int i = 1; i < messages.size(); i++) {
+			assertTrue(messages.get(i - 1).getSendDate().isBefore(messages.get(i).getSendDate()));
+		}
+	}
+
 	@Test
 	public void testShouldReturnSameMessageForExactMatch() throws Exception {
 		final AccountData ad = getAccountData1();
@@ -149,6 +413,87 @@ public class MessageDaoTest extends DefaultDaoTest<Message> {
 	}
 
 
+	@Test
+	public void testSearchIndexShouldFollowMessageChanges() throws Exception {
+		final AccountData ad = getAccountData1();
+		final Chat chat = ad.getChats().get(0).getChat();
+
+		final MutableMessage message = newMessageWithProperties(ad);
+		message.setBody("The quick brown fox");
+		dao.mergeMessages(chat.getId(), Arrays.asList(message));
+
+		List<MessageSearchResult> results = dao.searchMessages("bro*", null, 10, 0);
+		assertEquals(1, results.size());
+		assertEquals(message.getId(), results.get(0).getMessage().getId());
+		assertTrue(results.get(0).getSnippet().contains(MessageSearchResult.MATCH_START + "brown" + MessageSearchResult.MATCH_END));
+		assertEquals(1, dao.searchMessages("quick fox", chat.getId(), 10, 0).size());
+		assertTrue(dao.searchMessages("quick fox", ad.getChats().get(1).getChat().getId(), 10, 0).isEmpty());
+
+		final MutableMessage changedMessage = message.cloneRead();
+		changedMessage.setBody("The lazy dog");
+		dao.mergeMessages(chat.getId(), Arrays.asList(changedMessage));
+		assertTrue(dao.searchMessages("bro*", null, 10, 0).isEmpty());
+		assertEquals(1, dao.searchMessages("lazy", null, 10, 0).size());
+
+		dao.deleteById(message.getId());
+		assertTrue(dao.searchMessages("lazy", null, 10, 0).isEmpty());
+		assertEquals(readCount("select count(*) from messages"), readCount("select count(*) from messages_fts"));
+	}
+
+	@Test
+	public void testSearchResultsShouldBeRanked() throws Exception {
+		final AccountData ad = getAccountData1();
+		final Chat chat = ad.getChats().get(0).getChat();
+
+		final MutableMessage once = newMessageWithProperties(ad);
+		once.setBody("fox");
+		final MutableMessage twice = newMessageWithProperties(ad);
+		twice.setBody("fox and fox");
+		dao.mergeMessages(chat.getId(), Arrays.asList(once, twice));
+
+		final List<MessageSearchResult> results = dao.searchMessages("fox", null, 10, 0);
+		assertEquals(2, results.size());
+		assertEquals(twice.getId(), results.get(0).getMessage().getId());
+		assertEquals(2, results.get(0).getRank());
+
+		assertEquals(once.getId(), dao.searchMessages("fox", null, 10, 1).get(0).getMessage().getId());
+	}
+
+	@Test
+	public void testShouldIndexOldMessagesInChunks() throws Exception {
+		final AccountData ad = getAccountData1();
+		final Chat chat = ad.getChats().get(0).getChat();
+
+		final MutableMessage message = newMessageWithProperties(ad);
+		message.setBody("Message stored before search");
+		dao.mergeMessages(chat.getId(), Arrays.asList(message));
+
+		// emulate database upgraded from version without search index
+		sqliteOpenHelper.getWritableDatabase().execSQL("delete from messages_fts");
+		sqliteOpenHelper.getWritableDatabase().execSQL("insert into messages_fts_backfill (next_rowid, max_rowid) select 0, max(rowid) from messages");
+		assertTrue(dao.searchMessages("search", null, 10, 0).isEmpty());
+
+		int chunks = 1;
+		while (dao.indexMessagesForSearch(5)) {
+			chunks++;
+		}
+		assertTrue(chunks > 1);
+		assertFalse(dao.indexMessagesForSearch(5));
+
+		assertEquals(1, dao.searchMessages("search", null, 10, 0).size());
+		assertEquals(readCount("select count(*) from messages"), readCount("select count(*) from messages_fts"));
+	}
+
+	private int readCount(@Nonnull String sql) {
+		final Cursor cursor = sqliteOpenHelper.getReadableDatabase().rawQuery(sql, null);
+		try {
+			cursor.moveToFirst();
+			return cursor.getInt(0);
+		} finally {
+			cursor.close();
+		}
+	}
+
 	private MutableMessage newMessageWithProperties(AccountData ad) {
 		final MutableMessage expected = Messages.newMessage(ad.getAccount().newMessageEntity(MessagesMock.getMessageId()));
 		expected.getProperties().setProperty("property_1", "test");
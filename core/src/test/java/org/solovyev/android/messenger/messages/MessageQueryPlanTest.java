@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.messages;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import com.google.inject.Inject;
+import org.junit.Test;
+import org.solovyev.android.messenger.DefaultMessengerTest;
+
+import javax.annotation.Nonnull;
+
+import static org.solovyev.android.messenger.db.QueryPlans.assertNoFullScan;
+import static org.solovyev.android.messenger.messages.MessageState.removed;
+import static org.solovyev.android.messenger.messages.SqliteMessageDao.*;
+
+public class MessageQueryPlanTest extends DefaultMessengerTest {
+
+	@Inject
+	@Nonnull
+	private SQLiteOpenHelper sqliteOpenHelper;
+
+	@Test
+	public void testMessagesForChatQueriesShouldUseIndex() throws Exception {
+		final SQLiteDatabase db = sqliteOpenHelper.getReadableDatabase();
+		final String chatId = getAccountData1().getChats().get(0).getChat().getId();
+
+		assertNoFullScan(db, SELECT_CHAT_MESSAGES, chatId, removed.name());
+		assertNoFullScan(db, SELECT_ALL_CHAT_MESSAGES, chatId);
+		assertNoFullScan(db, SELECT_OLDEST_MESSAGE_ID, chatId, removed.name());
+		assertNoFullScan(db, SELECT_LAST_MESSAGE_ID, chatId, removed.name());
+		assertNoFullScan(db, SELECT_MESSAGES_COUNT, chatId, removed.name());
+	}
+
+	@Test
+	public void testMessagesPageQueriesShouldUseIndex() throws Exception {
+		final SQLiteDatabase db = sqliteOpenHelper.getReadableDatabase();
+		final String chatId = getAccountData1().getChats().get(0).getChat().getId();
+
+		assertNoFullScan(db, newMessagesPageQuery(false, false, 50), chatId, removed.name());
+		assertNoFullScan(db, newMessagesPageQuery(true, false, 50), chatId, removed.name(), "0", "0", "test");
+		assertNoFullScan(db, newMessagesPageQuery(true, true, 50), chatId, removed.name(), "0", "0", "test");
+	}
+
+	@Test
+	public void testSameMessageQueryShouldUseIndex() throws Exception {
+		final SQLiteDatabase db = sqliteOpenHelper.getReadableDatabase();
+		final String userId = getAccount1().getUser().getId();
+		final String contactId = getAccountData1().getContacts().get(0).getId();
+
+		assertNoFullScan(db, SELECT_SAME_MESSAGES, "test", userId, contactId, "0");
+	}
+}
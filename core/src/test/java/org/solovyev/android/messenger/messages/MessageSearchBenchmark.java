@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.messages;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import com.google.inject.Inject;
+import org.junit.Test;
+import org.solovyev.android.messenger.DefaultMessengerTest;
+import org.solovyev.android.messenger.TestSQLiteOpenHelper;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Random;
+
+import static java.lang.System.nanoTime;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reports time of full text search (see {@link SqliteMessageDao#searchMessages(String, String, int, int)}) on a
+ * synthetic database of {@link #MESSAGES_COUNT} messages and compares it with <code>LIKE</code> scan of message bodies.
+ * Not a part of unit tests, run with <code>mvn test -P benchmarks</code>
+ */
+public class MessageSearchBenchmark extends DefaultMessengerTest {
+
+	private static final int MESSAGES_COUNT = 500000;
+
+	private static final int WORDS_COUNT = 1000;
+
+	// every RARE_WORD_PERIOD-th message contains RARE_WORD
+	private static final int RARE_WORD_PERIOD = 10000;
+
+	@Nonnull
+	private static final String RARE_WORD = "zanzibar";
+
+	@Nonnull
+	private static final String BENCH_ID_PREFIX = "bench_";
+
+	@Inject
+	@Nonnull
+	private SqliteMessageDao dao;
+
+	@Inject
+	@Nonnull
+	private TestSQLiteOpenHelper sqliteOpenHelper;
+
+	@Test
+	public void testSearchOnLargeDatabase() throws Exception {
+		final SQLiteDatabase db = sqliteOpenHelper.getWritableDatabase();
+		final String[] words = newWords(new Random(42));
+
+		long start = nanoTime();
+		fillMessages(db, words);
+		report("Insert of " + MESSAGES_COUNT + " messages (with search index)", start);
+		assertTrue(readCount(db, "select count(*) from messages") >= MESSAGES_COUNT);
+
+		// rebuild index as it would be done after upgrade of existing database
+		db.execSQL("delete from messages_fts");
+		db.execSQL("insert into messages_fts_backfill (next_rowid, max_rowid) select 0, max(rowid) from messages");
+		start = nanoTime();
+		int chunks = 0;
+		while (dao.indexMessagesForSearch(DefaultMessageService.SEARCH_INDEX_CHUNK)) {
+			chunks++;
+		}
+		report("Backfill of search index in " + chunks + " chunks", start);
+		assertEquals(readCount(db, "select count(*) from messages"), readCount(db, "select count(*) from messages_fts"));
+
+		final int expectedRare = MESSAGES_COUNT / RARE_WORD_PERIOD;
+		List<MessageSearchResult> results = search(RARE_WORD + "*", null, 2 * expectedRare);
+		assertEquals(expectedRare, results.size());
+		assertTrue(results.get(0).getSnippet().contains(MessageSearchResult.MATCH_START + RARE_WORD + MessageSearchResult.MATCH_END));
+
+		results = search(words[0], null, 20);
+		assertEquals(20, results.size());
+
+		results = search(words[1].substring(0, 3) + "* " + words[2].substring(0, 3) + "*", null, 20);
+		assertFalse(results.isEmpty());
+
+		final String chatId = getAccountData1().getChats().get(0).getChat().getId();
+		results = search(words[0], chatId, 20);
+		for (MessageSearchResult result : results) {
+			assertEquals(chatId, result.getMessage().getChat().getEntityId());
+		}
+
+		start = nanoTime();
+		final int likeCount = readCount(db, "select count(*) from messages where body like '%" + RARE_WORD + "%'");
+		report("LIKE scan for '" + RARE_WORD + "': " + likeCount + " messages", start);
+		assertEquals(expectedRare, likeCount);
+	}
+
+	@Nonnull
+	private List<MessageSearchResult> search(@Nonnull String ftsQuery, String chatId, int limit) {
+		final long start = nanoTime();
+		final List<MessageSearchResult> result = dao.searchMessages(ftsQuery, chatId, limit, 0);
+		report("Search for '" + ftsQuery + "'" + (chatId != null ? " in chat" : "") + ": " + result.size() + " results", start);
+		return result;
+	}
+
+	/**
+	 * Generates messages in one statement: message number is built from cross join of digits, each body consists of
+	 * 3 words chosen from the vocabulary by message number
+	 */
+	private void fillMessages(@Nonnull SQLiteDatabase db, @Nonnull String[] words) {
+		final AccountData ad = getAccountData1();
+
+		db.beginTransaction();
+		try {
+			db.execSQL("create temp table bench_digits (d integer primary key)");
+			for (int i = 0; i < 10; i++) {
+				db.execSQL("insert into bench_digits (d) values (?)", new Object[]{i});
+			}
+
+			db.execSQL("create temp table bench_words (i integer primary key, w text not null)");
+			for (int i = 0; i < words.length; i++) {
+				db.execSQL("insert into bench_words (i, w) values (?, ?)", new Object[]{i, words[i]});
+			}
+
+			final int chatsCount = ad.getChats().size();
+			db.execSQL("create temp table bench_chats (i integer primary key, chat_id text not null, author_id text not null)");
+			for (int i = 0; i < chatsCount; i++) {
+				db.execSQL("insert into bench_chats (i, chat_id, author_id) values (?, ?, ?)", new Object[]{i, ad.getChats().get(i).getChat().getId(), ad.getContacts().get(i).getId()});
+			}
+
+			db.execSQL("insert into messages (id, account_id, account_message_id, chat_id, author_id, recipient_id, send_date, send_time, title, body, read, state) " +
+					"select '" + BENCH_ID_PREFIX + "' || n, ?, '" + BENCH_ID_PREFIX + "' || n, c.chat_id, c.author_id, ?, '2013-01-01T00:00:00.000Z', n, '', " +
+					"w1.w || ' ' || w2.w || ' ' || w3.w || case when n % " + RARE_WORD_PERIOD + " = 0 then ' " + RARE_WORD + "' else '' end, 1, ? " +
+					"from (select d1.d + 10 * d2.d + 100 * d3.d + 1000 * d4.d + 10000 * d5.d + 100000 * d6.d as n " +
+					"from bench_digits d1, bench_digits d2, bench_digits d3, bench_digits d4, bench_digits d5, bench_digits d6) " +
+					"join bench_chats c on c.i = n % " + chatsCount + " " +
+					"join bench_words w1 on w1.i = n % " + WORDS_COUNT + " " +
+					"join bench_words w2 on w2.i = (n * 7 + 3) % " + WORDS_COUNT + " " +
+					"join bench_words w3 on w3.i = (n / " + WORDS_COUNT + ") % " + WORDS_COUNT + " " +
+					"where n < " + MESSAGES_COUNT,
+					new Object[]{ad.getAccount().getId(), ad.getAccount().getUser().getId(), MessageState.received.name()});
+
+			db.execSQL("drop table bench_digits");
+			db.execSQL("drop table bench_words");
+			db.execSQL("drop table bench_chats");
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	@Nonnull
+	private static String[] newWords(@Nonnull Random random) {
+		final String[] result = new String[WORDS_COUNT];
+		for (int i = 0; i < result.length; i++) {
+			final StringBuilder word = new StringBuilder();
+			final int length = 4 + random.nextInt(6);
+			for (int j = 0; j < length; j++) {
+				word.append((char) ('a' + random.nextInt(26)));
+			}
+			// index suffix guarantees uniqueness of words
+			result[i] = word.append(i).toString();
+		}
+		return result;
+	}
+
+	private static int readCount(@Nonnull SQLiteDatabase db, @Nonnull String sql) {
+		final Cursor cursor = db.rawQuery(sql, null);
+		try {
+			cursor.moveToFirst();
+			return cursor.getInt(0);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private static void report(@Nonnull String name, long start) {
+		System.out.println(name + ": " + (nanoTime() - start) / 1000000 + "ms");
+	}
+}
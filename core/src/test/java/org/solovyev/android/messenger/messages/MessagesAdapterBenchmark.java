@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.messages;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.messenger.BaseListItemAdapter;
+import org.solovyev.android.messenger.DefaultMessengerTest;
+import org.solovyev.android.messenger.chats.AccountChat;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.lang.System.nanoTime;
+import static org.junit.Assert.assertEquals;
+import static org.solovyev.android.messenger.chats.ChatEventType.message_added;
+import static org.solovyev.android.messenger.chats.ChatEventType.message_state_changed;
+import static org.solovyev.android.messenger.messages.Messages.newOutgoingMessage;
+
+/**
+ * Reports costs of {@link MessagesAdapter} operations in a chat with {@link #MESSAGES_COUNT} shown messages: bulk load,
+ * insertion of realtime messages, state changes (with and without per list item notifications) and lookups by id.
+ * Not a part of unit tests, run with <code>mvn test -P benchmarks</code>
+ */
+public class MessagesAdapterBenchmark extends DefaultMessengerTest {
+
+	private static final int MESSAGES_COUNT = 20000;
+
+	private static final int CHANGES_COUNT = 2000;
+
+	@Nonnull
+	private MessagesAdapter adapter;
+
+	@Nonnull
+	private AccountData accountData;
+
+	@Nonnull
+	private AccountChat chat;
+
+	@Nonnull
+	private final Random r = new Random(42);
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		accountData = getAccountData1();
+		chat = accountData.getChats().get(0);
+		adapter = new MessagesAdapter(getApplication(), accountData.getAccount(), chat.getChat());
+	}
+
+	@Test
+	public void testMessageChangesOnManyListItems() throws Exception {
+		final DateTime now = DateTime.now();
+		final List<Message> messages = new ArrayList<Message>(MESSAGES_COUNT);
+		for (int i = 0; i < MESSAGES_COUNT; i++) {
+			final MutableMessage message = newOutgoingMessage(accountData.getAccount(), chat.getChat(), "message_" + i, "");
+			// leave gaps between messages for realtime messages
+			message.setSendDate(now.minusSeconds(2 * i));
+			messages.add(message);
+		}
+
+		long start = nanoTime();
+		adapter.addOlderMessages(messages);
+		report("Add of " + MESSAGES_COUNT + " messages", start, 1);
+		assertEquals(MESSAGES_COUNT, adapter.getCount());
+
+		start = nanoTime();
+		for (int i = 0; i < CHANGES_COUNT; i++) {
+			final MutableMessage message = newOutgoingMessage(accountData.getAccount(), chat.getChat(), "realtime_" + i, "");
+			message.setSendDate(now.minusSeconds(2 * r.nextInt(MESSAGES_COUNT) + 1));
+			adapter.onEvent(message_added.newEvent(chat.getChat(), message));
+		}
+		report("Average sorted insertion in " + MESSAGES_COUNT + " messages", start, CHANGES_COUNT);
+		assertEquals(MESSAGES_COUNT + CHANGES_COUNT, adapter.getCount());
+
+		start = nanoTime();
+		changeStates(messages, MessageState.delivered);
+		report("Average state change in " + MESSAGES_COUNT + " messages (data set notification)", start, CHANGES_COUNT);
+
+		adapter.setOnListItemChangedListener(new BaseListItemAdapter.OnListItemChangedListener<MessageListItem>() {
+			@Override
+			public void onListItemChanged(int position, @Nonnull MessageListItem listItem) {
+			}
+		});
+		start = nanoTime();
+		changeStates(messages, MessageState.sent);
+		report("Average state change in " + MESSAGES_COUNT + " messages (list item notification)", start, CHANGES_COUNT);
+
+		start = nanoTime();
+		for (int i = 0; i < CHANGES_COUNT; i++) {
+			final Message message = messages.get(r.nextInt(MESSAGES_COUNT));
+			final int position = adapter.getPositionById(message.getId());
+			assertEquals(message.getId(), adapter.getItem(position).getId());
+		}
+		report("Average position lookup in " + MESSAGES_COUNT + " messages", start, CHANGES_COUNT);
+
+		final Message first = messages.get(0);
+		adapter.onEvent(message_state_changed.newEvent(chat.getChat(), first.cloneWithNewState(MessageState.removed)));
+		assertEquals(MESSAGES_COUNT + CHANGES_COUNT - 1, adapter.getCount());
+		assertEquals(-1, adapter.getPositionById(first.getId()));
+	}
+
+	private void changeStates(@Nonnull List<Message> messages, @Nonnull MessageState state) {
+		for (int i = 0; i < CHANGES_COUNT; i++) {
+			final Message message = messages.get(r.nextInt(messages.size()));
+			adapter.onEvent(message_state_changed.newEvent(chat.getChat(), message.cloneWithNewState(state)));
+		}
+	}
+
+	private static void report(@Nonnull String operation, long start, int count) {
+		System.out.println(operation + ": " + (nanoTime() - start) / (1000 * count) + "us");
+	}
+}
@@ -16,9 +16,12 @@
 
 package org.solovyev.android.messenger.messages;
 
+import android.database.DataSetObserver;
 import org.junit.Assert;
 import org.junit.Before;
+import org.joda.time.DateTime;
 import org.junit.Test;
+import org.solovyev.android.messenger.BaseListItemAdapter;
 import org.solovyev.android.messenger.DefaultMessengerTest;
 import org.solovyev.android.messenger.chats.AccountChat;
 import org.solovyev.android.messenger.chats.ChatEvent;
@@ -26,13 +29,20 @@ import org.solovyev.android.messenger.users.User;
 import org.solovyev.common.text.Strings;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 import static java.lang.Math.max;
 import static java.lang.System.currentTimeMillis;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.solovyev.android.messenger.chats.ChatEventType.*;
 import static org.solovyev.android.messenger.messages.Messages.newOutgoingMessage;
 
@@ -88,6 +98,96 @@ public class MessagesAdapterTest extends DefaultMessengerTest {
 		assertSame(message, adapter.getItem(0).getMessage());
 	}
 
+	@Test
+	public void testMessageChangesShouldBeAppliedToShownListItems() throws Exception {
+		final MutableMessage first = newOutgoingMessage(accountData.getAccount(), chat.getChat(), "first", "");
+		final MutableMessage second = newOutgoingMessage(accountData.getAccount(), chat.getChat(), "second", "");
+		adapter.onEvent(messages_added.newEvent(chat.getChat(), Arrays.<Message>asList(first, second)));
+		assertEquals(2, adapter.getCount());
+
+		adapter.onEvent(message_state_changed.newEvent(chat.getChat(), first.cloneWithNewState(MessageState.delivered)));
+		final int position = adapter.getPositionById(first.getId());
+		assertEquals(first.getId(), adapter.getItem(position).getId());
+		assertEquals(MessageState.delivered, adapter.getItem(position).getMessage().getState());
+
+		// same message should not be shown twice
+		adapter.onEvent(message_added.newEvent(chat.getChat(), second.cloneWithNewState(MessageState.sent)));
+		assertEquals(2, adapter.getCount());
+		assertEquals(MessageState.sent, adapter.getItem(adapter.getPositionById(second.getId())).getMessage().getState());
+
+		adapter.onEvent(message_state_changed.newEvent(chat.getChat(), first.cloneWithNewState(MessageState.removed)));
+		assertEquals(1, adapter.getCount());
+		assertEquals(-1, adapter.getPositionById(first.getId()));
+		assertEquals(0, adapter.getPositionById(second.getId()));
+	}
+
+	@Test
+	public void testOldestMessageShouldSkipTypingAndSendingMessages() throws Exception {
+		final MutableMessage sending = newOutgoingMessage(accountData.getAccount(), chat.getChat(), "sending", "");
+		sending.setSendDate(DateTime.now().minusHours(2));
+		adapter.addSendingMessage(sending);
+		adapter.onEvent(user_is_typing.newEvent(chat.getChat(), contact.getEntity()));
+		assertNull(adapter.getOldestMessage());
+
+		final MutableMessage older = newOutgoingMessage(accountData.getAccount(), chat.getChat(), "older", "");
+		older.setSendDate(DateTime.now().minusHours(1));
+		final MutableMessage newer = newOutgoingMessage(accountData.getAccount(), chat.getChat(), "newer", "");
+		adapter.addOlderMessages(Arrays.<Message>asList(newer, older));
+		assertEquals(older.getId(), adapter.getOldestMessage().getId());
+	}
+
+	@Test
+	public void testRealtimeMessageShouldBeInsertedInSortedPosition() throws Exception {
+		final DateTime now = DateTime.now();
+		final List<Message> messages = new ArrayList<Message>();
+		for (int i = 0; i < 10; i++) {
+			final MutableMessage message = newOutgoingMessage(accountData.getAccount(), chat.getChat(), "message_" + i, "");
+			message.setSendDate(now.minusMinutes(2 * i));
+			messages.add(message);
+		}
+		adapter.addOlderMessages(messages);
+
+		final MutableMessage message = newOutgoingMessage(accountData.getAccount(), chat.getChat(), "realtime", "");
+		message.setSendDate(now.minusMinutes(5));
+		adapter.onEvent(message_added.newEvent(chat.getChat(), message));
+
+		assertEquals(11, adapter.getCount());
+		assertEquals(7, adapter.getPositionById(message.getId()));
+		for (int i = 1; i < adapter.getCount(); i++) {
+			assertFalse(adapter.getItem(i - 1).getMessage().getSendDate().isAfter(adapter.getItem(i).getMessage().getSendDate()));
+		}
+	}
+
+	@Test
+	public void testStateChangeShouldUpdateOnlyChangedListItem() throws Exception {
+		final DateTime now = DateTime.now();
+		final List<Message> messages = new ArrayList<Message>();
+		for (int i = 0; i < 10; i++) {
+			final MutableMessage message = newOutgoingMessage(accountData.getAccount(), chat.getChat(), "message_" + i, "");
+			message.setSendDate(now.minusMinutes(i));
+			messages.add(message);
+		}
+		adapter.addOlderMessages(messages);
+
+		final List<Integer> positions = new ArrayList<Integer>();
+		adapter.setOnListItemChangedListener(new BaseListItemAdapter.OnListItemChangedListener<MessageListItem>() {
+			@Override
+			public void onListItemChanged(int position, @Nonnull MessageListItem listItem) {
+				positions.add(position);
+			}
+		});
+		final DataSetObserver observer = mock(DataSetObserver.class);
+		adapter.registerDataSetObserver(observer);
+
+		final Message message = adapter.getItem(3).getMessage();
+		adapter.onEvent(message_state_changed.newEvent(chat.getChat(), message.cloneWithNewState(MessageState.delivered)));
+
+		assertEquals(Arrays.asList(3), positions);
+		assertEquals(MessageState.delivered, adapter.getItem(3).getMessage().getState());
+		verify(observer, never()).onChanged();
+		verify(observer, never()).onInvalidated();
+	}
+
 	private void fireRandomEventsAndCheck(boolean sendStopTypingEvent, @Nonnull Runnable checker) throws InterruptedException {
 		for (int i = 0; i < 100; i++) {
 			Thread.sleep(r.nextInt(10));
@@ -24,6 +24,7 @@ import java.util.Comparator;
 import java.util.List;
 
 import static java.util.Collections.sort;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.solovyev.android.messenger.messages.Messages.compareSendDatesLatestFirst;
@@ -95,4 +96,12 @@ public class MessagesTest {
 		assertTrue(compareSendDatesLatestFirst(lm, rm) < 0);
 	}
 
+	@Test
+	public void testUserQueryShouldBeConvertedToPrefixSearch() throws Exception {
+		assertEquals("hello*", DefaultMessageService.toFtsQuery("hello"));
+		assertEquals("hello* wor* ld*", DefaultMessageService.toFtsQuery("  hello, wor-ld"));
+		assertEquals("near* test*", DefaultMessageService.toFtsQuery("NEAR\"test*\""));
+		assertNull(DefaultMessageService.toFtsQuery(""));
+		assertNull(DefaultMessageService.toFtsQuery(" * !! \" "));
+	}
 }
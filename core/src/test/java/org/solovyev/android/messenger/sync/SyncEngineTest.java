@@ -0,0 +1,206 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.sync;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.realms.Realm;
+import org.solovyev.android.messenger.realms.RealmRateLimiter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class SyncEngineTest {
+
+	@Test
+	public void testShouldNotSyncMoreAccountsThanAllowed() throws Exception {
+		final CountDownLatch started = new CountDownLatch(2);
+		final CountDownLatch finish = new CountDownLatch(1);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+
+		final SyncEngine engine = new SyncEngine(2) {
+			@Override
+			void doTask(@Nonnull SyncTask syncTask, @Nonnull SyncData syncData) {
+				final int nowRunning = running.incrementAndGet();
+				int max = maxRunning.get();
+				while (nowRunning > max && !maxRunning.compareAndSet(max, nowRunning)) {
+					max = maxRunning.get();
+				}
+				started.countDown();
+				try {
+					finish.await(10, SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				running.decrementAndGet();
+			}
+		};
+
+		final Realm realm = newRealm(null);
+		final List<Account> accounts = new ArrayList<Account>();
+		for (int i = 0; i < 5; i++) {
+			accounts.add(newAccount("test~" + i, realm));
+		}
+
+		final List<SyncTask> syncTasks = Arrays.asList(SyncTask.values());
+		final Future<?> future = engine.submit(accounts, syncTasks, true);
+		assertTrue(started.await(10, SECONDS));
+		finish.countDown();
+		future.get(10, SECONDS);
+
+		assertEquals(2, maxRunning.get());
+		assertEquals(0, running.get());
+	}
+
+	@Test
+	public void testShouldRunTasksOfOneAccountOneByOne() throws Exception {
+		final List<SyncTask> executedTasks = Collections.synchronizedList(new ArrayList<SyncTask>());
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+
+		final SyncEngine engine = new SyncEngine(3) {
+			@Override
+			void doTask(@Nonnull SyncTask syncTask, @Nonnull SyncData syncData) {
+				maxRunning.set(Math.max(maxRunning.get(), running.incrementAndGet()));
+				executedTasks.add(syncTask);
+				running.decrementAndGet();
+			}
+		};
+
+		final List<SyncTask> syncTasks = Arrays.asList(SyncTask.values());
+		engine.submit(Arrays.asList(newAccount("test~1", newRealm(null))), syncTasks, true).get(10, SECONDS);
+
+		assertEquals(syncTasks, executedTasks);
+		assertEquals(1, maxRunning.get());
+	}
+
+	@Test
+	public void testShouldSpaceTasksOfRealm() throws Exception {
+		final long interval = 100;
+		final List<Long> startTimes = Collections.synchronizedList(new ArrayList<Long>());
+
+		final SyncEngine engine = new SyncEngine(3) {
+			@Override
+			void doTask(@Nonnull SyncTask syncTask, @Nonnull SyncData syncData) {
+				startTimes.add(System.currentTimeMillis());
+			}
+		};
+
+		final Realm realm = newRealm(new RealmRateLimiter(interval));
+		final List<Account> accounts = Arrays.asList(newAccount("test~1", realm), newAccount("test~2", realm), newAccount("test~3", realm));
+		engine.submit(accounts, Arrays.asList(SyncTask.user_contacts), true).get(10, SECONDS);
+
+		assertEquals(3, startTimes.size());
+		final List<Long> sortedStartTimes = new ArrayList<Long>(startTimes);
+		Collections.sort(sortedStartTimes);
+		for (int i = 1; i < sortedStartTimes.size(); i++) {
+			final long delay = sortedStartTimes.get(i) - sortedStartTimes.get(i - 1);
+			// currentTimeMillis might have coarse granularity on some platforms
+			assertTrue("Tasks are started too often: " + sortedStartTimes, delay >= interval - 10);
+		}
+	}
+
+	@Test
+	public void testShouldRecordMetricsOfExecutedTasks() throws Exception {
+		final SyncEngine engine = new SyncEngine(3) {
+			@Override
+			void doTask(@Nonnull SyncTask syncTask, @Nonnull SyncData syncData) {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		final Realm realm = newRealm(null);
+		final List<Account> accounts = Arrays.asList(newAccount("test~1", realm), newAccount("test~2", realm));
+		engine.submit(accounts, Arrays.asList(SyncTask.user_contacts), true).get(10, SECONDS);
+
+		final SyncTaskMetrics metrics = engine.getMetrics(SyncTask.user_contacts);
+		assertEquals(2, metrics.getCount());
+		assertEquals(0, metrics.getErrors());
+		assertTrue(metrics.getMaxTime() >= 20 - 10);
+		assertTrue(metrics.getTotalTime() >= metrics.getMaxTime());
+		assertEquals(0, engine.getMetrics(SyncTask.user_chats).getCount());
+	}
+
+	@Test
+	public void testShouldSkipTaskIfInterruptedWhileWaitingForRateLimiter() throws Exception {
+		final AtomicReference<Thread> syncThread = new AtomicReference<Thread>();
+		final List<String> executedAccounts = Collections.synchronizedList(new ArrayList<String>());
+		final SyncEngine engine = new SyncEngine(1) {
+			@Override
+			void doTask(@Nonnull SyncTask syncTask, @Nonnull SyncData syncData) {
+				syncThread.set(Thread.currentThread());
+				executedAccounts.add(syncData.getAccountId());
+			}
+		};
+
+		// second task has to wait for a minute
+		final Realm realm = newRealm(new RealmRateLimiter(60L * 1000L));
+		final List<Account> accounts = Arrays.asList(newAccount("test~1", realm), newAccount("test~2", realm));
+		final Future<?> future = engine.submit(accounts, Arrays.asList(SyncTask.user_contacts), true);
+
+		// executor clears interrupted status between tasks => interrupt until the second task is skipped
+		final long start = System.currentTimeMillis();
+		while (!future.isDone() && System.currentTimeMillis() - start < 10000L) {
+			final Thread thread = syncThread.get();
+			if (thread != null) {
+				thread.interrupt();
+			}
+			Thread.sleep(10);
+		}
+		future.get(10, SECONDS);
+
+		assertEquals(Arrays.asList("test~1"), executedAccounts);
+		assertEquals(1, engine.getMetrics(SyncTask.user_contacts).getCount());
+	}
+
+	@Nonnull
+	private static Realm newRealm(@Nullable RealmRateLimiter rateLimiter) {
+		final Realm realm = mock(Realm.class);
+		when(realm.getRateLimiter()).thenReturn(rateLimiter);
+		return realm;
+	}
+
+	@Nonnull
+	private static Account newAccount(@Nonnull String id, @Nonnull Realm realm) {
+		final Account account = mock(Account.class);
+		when(account.getId()).thenReturn(id);
+		when(account.getRealm()).thenReturn(realm);
+		return account;
+	}
+}
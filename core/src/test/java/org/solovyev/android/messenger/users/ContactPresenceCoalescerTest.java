@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.solovyev.android.messenger.users.Users.newEmptyUser;
+
+public class ContactPresenceCoalescerTest {
+
+	@Nonnull
+	private final List<Batch> batches = new ArrayList<Batch>();
+
+	@Nonnull
+	private ContactPresenceCoalescer coalescer;
+
+	@Before
+	public void setUp() throws Exception {
+		// window is long enough not to be flushed by timer during the test
+		coalescer = new ContactPresenceCoalescer(60L * 60L * 1000L, new ContactPresenceCoalescer.Consumer() {
+			@Override
+			public void onContactsPresenceChanged(@Nonnull User user, @Nonnull List<User> contacts) {
+				batches.add(new Batch(user, contacts));
+			}
+		});
+	}
+
+	@Test
+	public void testShouldCollapseFlipFlops() throws Exception {
+		final User user = newEmptyUser("test:user");
+		final User contact = newEmptyUser("test:contact").cloneWithNewStatus(false);
+
+		coalescer.add(user, contact, true);
+		coalescer.add(user, contact, false);
+		coalescer.add(user, contact, true);
+		assertTrue(batches.isEmpty());
+
+		coalescer.flush();
+		assertEquals(1, batches.size());
+		assertEquals(1, batches.get(0).contacts.size());
+		assertTrue(batches.get(0).contacts.get(0).isOnline());
+
+		coalescer.add(user, contact, true);
+		coalescer.add(user, contact, false);
+		coalescer.flush();
+		assertEquals(2, batches.size());
+		assertFalse(batches.get(1).contacts.get(0).isOnline());
+	}
+
+	@Test
+	public void testShouldFlushOneBatchPerUser() throws Exception {
+		final User user1 = newEmptyUser("test:user1");
+		final User user2 = newEmptyUser("test:user2");
+
+		for (int i = 0; i < 10; i++) {
+			coalescer.add(user1, newEmptyUser("test:contact" + i), true);
+			coalescer.add(user2, newEmptyUser("test:contact" + i), false);
+		}
+
+		coalescer.flush();
+		assertEquals(2, batches.size());
+		assertEquals(user1, batches.get(0).user);
+		assertEquals(10, batches.get(0).contacts.size());
+		assertEquals(user2, batches.get(1).user);
+		assertEquals(10, batches.get(1).contacts.size());
+
+		coalescer.flush();
+		assertEquals(2, batches.size());
+	}
+
+	private static final class Batch {
+
+		@Nonnull
+		private final User user;
+
+		@Nonnull
+		private final List<User> contacts;
+
+		private Batch(@Nonnull User user, @Nonnull List<User> contacts) {
+			this.user = user;
+			this.contacts = contacts;
+		}
+	}
+}
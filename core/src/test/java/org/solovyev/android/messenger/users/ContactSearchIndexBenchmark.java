@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static java.lang.System.nanoTime;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.solovyev.android.messenger.users.ContactSearchIndexTest.newContact;
+
+/**
+ * Reports time of indexing, prefix search and presence update in {@link ContactSearchIndex} for
+ * {@link #CONTACTS_COUNT} contacts. Not a part of unit tests, run with <code>mvn test -P benchmarks</code>
+ */
+public class ContactSearchIndexBenchmark {
+
+	private static final int CONTACTS_COUNT = 5000;
+
+	private static final int RUNS = 100;
+
+	@Nonnull
+	private static final Set<String> NO_EXCEPTIONS = Collections.emptySet();
+
+	@Nonnull
+	private final User user = Users.newEmptyUser("test:user");
+
+	@Test
+	public void testSearchOnManyContacts() throws Exception {
+		final ContactSearchIndex index = new ContactSearchIndex();
+		final Random random = new Random(42);
+		final List<User> contacts = new ArrayList<User>(CONTACTS_COUNT);
+		for (int i = 0; i < CONTACTS_COUNT; i++) {
+			contacts.add(newContact("login" + i, newWord(random), newWord(random), String.valueOf(1000000 + random.nextInt(9000000))));
+		}
+
+		long start = nanoTime();
+		index.put(user.getEntity(), contacts, index.getVersion());
+		System.out.println("Index of " + contacts.size() + " contacts: " + (nanoTime() - start) / 1000 + "us");
+
+		final List<String> queries = asList("a", "b", "ka", "mo", "ste", "login1", "5", "zzz");
+		start = nanoTime();
+		for (int i = 0; i < RUNS; i++) {
+			for (String query : queries) {
+				index.get(user.getEntity()).find(query, 20, NO_EXCEPTIONS);
+			}
+		}
+		System.out.println("Average prefix search in " + contacts.size() + " contacts: " + (nanoTime() - start) / (1000 * RUNS * queries.size()) + "us");
+
+		start = nanoTime();
+		for (int i = 0; i < RUNS; i++) {
+			index.onEvent(UserEventType.contacts_presence_changed.newEvent(user, asList(contacts.get(random.nextInt(contacts.size())).cloneWithNewStatus(true))));
+		}
+		System.out.println("Average presence update: " + (nanoTime() - start) / (1000 * RUNS) + "us");
+
+		assertEquals(CONTACTS_COUNT, index.get(user.getEntity()).size());
+	}
+
+	@Nonnull
+	private static String newWord(@Nonnull Random random) {
+		final StringBuilder result = new StringBuilder();
+		final int length = 3 + random.nextInt(7);
+		for (int i = 0; i < length; i++) {
+			result.append((char) ('a' + random.nextInt(26)));
+		}
+		return result.toString();
+	}
+}
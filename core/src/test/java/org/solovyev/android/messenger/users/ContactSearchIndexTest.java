@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.properties.AProperty;
+import org.solovyev.android.properties.Properties;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ContactSearchIndexTest {
+
+	@Nonnull
+	private static final Set<String> NO_EXCEPTIONS = Collections.emptySet();
+
+	@Nonnull
+	private final User user = Users.newEmptyUser("test:user");
+
+	@Nonnull
+	private ContactSearchIndex index;
+
+	@Before
+	public void setUp() throws Exception {
+		index = new ContactSearchIndex();
+	}
+
+	@Test
+	public void testShouldFindContactsByPrefixOfAnyWord() throws Exception {
+		final User john = newContact("john", "John", "Smith", null);
+		final User jane = newContact("jane_d", "Jane", "Doe", "+7 (912) 345-67-89");
+		final User bob = newContact("bob", null, null, null);
+		final ContactSearchIndex.Snapshot snapshot = index.put(user.getEntity(), asList(john, jane, bob), index.getVersion());
+
+		assertEquals(asList(jane, john), snapshot.find("j", 10, NO_EXCEPTIONS));
+		assertEquals(asList(john), snapshot.find("SMI", 10, NO_EXCEPTIONS));
+		assertEquals(asList(john), snapshot.find("smith jo", 10, NO_EXCEPTIONS));
+		assertTrue(snapshot.find("smith ja", 10, NO_EXCEPTIONS).isEmpty());
+		assertEquals(asList(bob), snapshot.find("bo", 10, NO_EXCEPTIONS));
+		assertEquals(asList(jane), snapshot.find("jane_", 10, NO_EXCEPTIONS));
+		assertEquals(asList(jane), snapshot.find("+7 912", 10, NO_EXCEPTIONS));
+		assertTrue(snapshot.find("912", 10, NO_EXCEPTIONS).isEmpty());
+		assertTrue(snapshot.find("x", 10, NO_EXCEPTIONS).isEmpty());
+
+		assertEquals(asList(john, jane, bob), snapshot.find(null, 10, NO_EXCEPTIONS));
+		assertEquals(asList(john, jane, bob), snapshot.find("  ", 10, NO_EXCEPTIONS));
+		assertEquals(asList(john), snapshot.find("", 1, NO_EXCEPTIONS));
+	}
+
+	@Test
+	public void testShouldSkipExceptedContacts() throws Exception {
+		final User john = newContact("john", "John", "Smith", null);
+		final User jane = newContact("jane", "Jane", "Doe", null);
+		final ContactSearchIndex.Snapshot snapshot = index.put(user.getEntity(), asList(john, jane), index.getVersion());
+
+		final Set<String> except = Collections.singleton(jane.getId());
+		assertEquals(asList(john), snapshot.find("j", 1, except));
+		assertEquals(asList(john), snapshot.find(null, 10, except));
+	}
+
+	@Test
+	public void testShouldBeUpdatedFromEvents() throws Exception {
+		final User john = newContact("u1", "John", "Smith", null);
+		final User jane = newContact("u2", "Jane", "Doe", null);
+		index.put(user.getEntity(), asList(john), index.getVersion());
+
+		index.onEvent(UserEventType.contacts_added.newEvent(user, asList(jane)));
+		assertEquals(asList(jane, john), find("j"));
+
+		final User renamedJohn = newContact("u1", "Jack", "Smith", null);
+		index.onEvent(UserEventType.changed.newEvent(renamedJohn));
+		assertTrue(find("jo").isEmpty());
+		assertEquals(asList(renamedJohn), find("jac"));
+
+		index.onEvent(UserEventType.contacts_presence_changed.newEvent(user, asList(jane.cloneWithNewStatus(true))));
+		final List<User> found = find("jane");
+		assertEquals(asList(jane), found);
+		assertTrue(found.get(0).isOnline());
+		assertEquals("Doe", found.get(0).getLastName());
+
+		index.onEvent(UserEventType.contact_removed.newEvent(user, jane.getId()));
+		assertTrue(find("jane").isEmpty());
+		assertEquals(1, index.get(user.getEntity()).size());
+	}
+
+	@Test
+	public void testOutdatedContactsShouldNotBeStored() throws Exception {
+		final long version = index.getVersion();
+		index.onEvent(UserEventType.contacts_added.newEvent(user, asList(newContact("jane", "Jane", "Doe", null))));
+
+		final ContactSearchIndex.Snapshot snapshot = index.put(user.getEntity(), asList(newContact("john", "John", "Smith", null)), version);
+		assertEquals(1, snapshot.size());
+		assertNull(index.get(user.getEntity()));
+
+		index.put(user.getEntity(), Collections.<User>emptyList(), index.getVersion());
+		assertNotNull(index.get(user.getEntity()));
+	}
+
+	@Test
+	public void testPresenceChangeShouldNotRebuildTokens() throws Exception {
+		final User john = newContact("john", "John", "Smith", null);
+		index.put(user.getEntity(), asList(john), index.getVersion());
+		final ContactSearchIndex.Snapshot before = index.get(user.getEntity());
+
+		index.onEvent(UserEventType.contacts_presence_changed.newEvent(user, asList(newContact("unknown", null, null, null))));
+		assertSame(before, index.get(user.getEntity()));
+
+		index.onEvent(UserEventType.contacts_presence_changed.newEvent(user, asList(john.cloneWithNewStatus(true))));
+		assertFalse(before == index.get(user.getEntity()));
+		assertTrue(find("john").get(0).isOnline());
+	}
+
+	@Nonnull
+	private List<User> find(@Nonnull String query) {
+		return index.get(user.getEntity()).find(query, Integer.MAX_VALUE, NO_EXCEPTIONS);
+	}
+
+	@Nonnull
+	static User newContact(@Nonnull String login, @Nullable String firstName, @Nullable String lastName, @Nullable String phone) {
+		final List<AProperty> properties = new ArrayList<AProperty>();
+		if (firstName != null) {
+			properties.add(Properties.newProperty(User.PROPERTY_FIRST_NAME, firstName));
+		}
+		if (lastName != null) {
+			properties.add(Properties.newProperty(User.PROPERTY_LAST_NAME, lastName));
+		}
+		if (phone != null) {
+			properties.add(Properties.newProperty(User.PROPERTY_PHONE, phone));
+		}
+		return Users.newUser("test", login, properties);
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.messenger.users;
+
+import com.google.inject.Inject;
+import org.junit.Test;
+import org.solovyev.android.messenger.DefaultMessengerTest;
+import org.solovyev.android.messenger.realms.test.TestAccount;
+import org.solovyev.android.properties.AProperty;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.solovyev.android.messenger.users.Users.newUser;
+import static org.solovyev.android.properties.Properties.newProperty;
+
+public class DefaultUserServiceTest extends DefaultMessengerTest {
+
+	@Inject
+	@Nonnull
+	private UserService userService;
+
+	@Inject
+	@Nonnull
+	private UserDao userDao;
+
+	@Test
+	public void testShouldReloadAllContactsPeriodically() throws Exception {
+		final TestAccount account = spy(getAccount1());
+		final IncrementalAccountUserService accountUserService = mock(IncrementalAccountUserService.class);
+		doReturn(accountUserService).when(account).getAccountUserService();
+
+		// digest doesn't depend on sex of the contact
+		when(accountUserService.getContactDigests()).thenReturn(Collections.singletonMap("test_contact", "digest"));
+		when(accountUserService.getContacts()).thenReturn(Arrays.<User>asList(newContact(account, "male")));
+
+		// first synchronization => all contacts are loaded
+		userService.syncContacts(account);
+		verify(accountUserService, times(1)).getContacts();
+		assertEquals("male", readSex(account));
+
+		// digest is the same => contact is not reloaded
+		when(accountUserService.getContacts()).thenReturn(Arrays.<User>asList(newContact(account, "female")));
+		userService.syncContacts(account);
+		verify(accountUserService, times(1)).getContacts();
+		verify(accountUserService, times(0)).getUsersByIds(anyCollection());
+		assertEquals("male", readSex(account));
+
+		// time for full synchronization
+		((DefaultUserService) userService).setFullContactsSyncPeriod(0);
+		userService.syncContacts(account);
+		verify(accountUserService, times(2)).getContacts();
+		assertEquals("female", readSex(account));
+	}
+
+	@Nonnull
+	private static User newContact(@Nonnull TestAccount account, @Nonnull String sex) {
+		final List<AProperty> properties = new ArrayList<AProperty>();
+		properties.add(newProperty(User.PROPERTY_FIRST_NAME, "Test"));
+		properties.add(newProperty(User.PROPERTY_SEX, sex));
+		return newUser(account.newUserEntity("test_contact"), properties);
+	}
+
+	private String readSex(@Nonnull TestAccount account) {
+		return userDao.read(account.newUserEntity("test_contact").getEntityId()).getPropertyValueByName(User.PROPERTY_SEX);
+	}
+}
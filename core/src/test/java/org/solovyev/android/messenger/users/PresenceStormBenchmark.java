@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import com.google.inject.Inject;
+import org.junit.Test;
+import org.solovyev.android.messenger.DefaultMessengerTest;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.common.listeners.AbstractJEventListener;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.System.nanoTime;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays a burst of presences (as sent by a big roster after reconnection) through
+ * {@link UserService#onContactPresenceChanged(User, User, boolean)} and reports wall time and number of emitted events.
+ * Not a part of unit tests, run with <code>mvn test -P benchmarks</code>
+ */
+public class PresenceStormBenchmark extends DefaultMessengerTest {
+
+	private static final int CONTACTS_COUNT = 500;
+
+	private static final int PRESENCES_COUNT = 3000;
+
+	@Inject
+	@Nonnull
+	private UserService userService;
+
+	@Inject
+	@Nonnull
+	private UserDao userDao;
+
+	@Test
+	public void testPresenceBurst() throws Exception {
+		final Account account = getAccount1();
+		final User user = account.getUser();
+
+		final List<User> contacts = new ArrayList<User>(CONTACTS_COUNT);
+		for (int i = 0; i < CONTACTS_COUNT; i++) {
+			contacts.add(getContactForAccount(account, 1000 + i));
+		}
+		userService.mergeContacts(account, contacts, false, false);
+
+		final AtomicInteger events = new AtomicInteger();
+		final AtomicInteger reportedContacts = new AtomicInteger();
+		userService.addListener(new AbstractJEventListener<UserEvent>(UserEvent.class) {
+			@Override
+			public void onEvent(@Nonnull UserEvent event) {
+				if (event.getType() == UserEventType.contacts_presence_changed) {
+					events.incrementAndGet();
+					reportedContacts.addAndGet(event.getDataAsUsers().size());
+				}
+			}
+		});
+
+		final long start = nanoTime();
+		for (int i = 0; i < PRESENCES_COUNT; i++) {
+			final User contact = userService.getUserById(contacts.get(i % CONTACTS_COUNT).getEntity());
+			userService.onContactPresenceChanged(user, contact, isOnline(i));
+		}
+		((DefaultUserService) userService).flushContactPresences();
+		final long duration = nanoTime() - start;
+
+		// let scheduled flush (if any) finish
+		Thread.sleep(4 * ContactPresenceCoalescer.DEFAULT_WINDOW);
+		((DefaultUserService) userService).flushContactPresences();
+
+		System.out.println("Burst of " + PRESENCES_COUNT + " presences for " + CONTACTS_COUNT + " contacts: " + duration / 1000000 + "ms, " + events.get() + " events, " + reportedContacts.get() + " contacts in events");
+
+		assertTrue(events.get() < PRESENCES_COUNT / 10);
+		for (int i = PRESENCES_COUNT - CONTACTS_COUNT; i < PRESENCES_COUNT; i++) {
+			final User contact = contacts.get(i % CONTACTS_COUNT);
+			assertEquals(isOnline(i), userDao.read(contact.getId()).isOnline());
+		}
+	}
+
+	private static boolean isOnline(int presence) {
+		// each contact flip-flops: online, offline, online...
+		return (presence / CONTACTS_COUNT) % 2 == 0;
+	}
+}
@@ -20,8 +20,10 @@ import org.junit.Test;
 
 import java.util.Arrays;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.solovyev.android.messenger.users.Users.newEmptyUser;
 
 public class UserCacheTest {
@@ -63,4 +65,30 @@ public class UserCacheTest {
 		assertSame(expected, cache.get(expected.getEntity()));
 
 	}
+
+	@Test
+	public void testShouldRemoveUserOnContactRemovedEvent() throws Exception {
+		final UserCache cache = new UserCache();
+		final User user = newEmptyUser("test:user");
+		final User contact = newEmptyUser("test:contact");
+		cache.put(contact);
+
+		cache.onEvent(UserEventType.contact_removed.newEvent(user, contact.getId()));
+
+		assertNull(cache.get(contact.getEntity()));
+	}
+
+	@Test
+	public void testShouldGrowWithNumberOfContacts() throws Exception {
+		final UserCache cache = new UserCache();
+		cache.onContactsLoaded(newEmptyUser("test:user1").getEntity(), 3000);
+		cache.onContactsLoaded(newEmptyUser("test:user2").getEntity(), 2000);
+		assertTrue(cache.getMaxSize() >= UserCache.MIN_SIZE + 5000);
+
+		for (int i = 0; i < 5000; i++) {
+			cache.put(newEmptyUser("test:contact" + i));
+		}
+		assertEquals(5000, cache.size());
+		assertEquals(0, cache.getEvictionCount());
+	}
 }
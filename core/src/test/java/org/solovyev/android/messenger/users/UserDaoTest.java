@@ -21,10 +21,12 @@ import com.google.inject.Inject;
 import org.junit.Test;
 import org.solovyev.android.db.Dao;
 import org.solovyev.android.messenger.DefaultDaoTest;
+import org.solovyev.android.messenger.TestSQLiteOpenHelper;
 import org.solovyev.android.messenger.chats.ChatDao;
 import org.solovyev.android.messenger.realms.test.TestAccount;
 import org.solovyev.android.properties.AProperty;
 import org.solovyev.android.properties.MutableAProperties;
+import org.solovyev.android.properties.Properties;
 import org.solovyev.common.Objects;
 import org.solovyev.common.equals.CollectionEqualizer;
 
@@ -33,7 +35,9 @@ import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.google.common.collect.Iterables.getFirst;
 import static com.google.common.collect.Iterables.transform;
@@ -52,6 +56,10 @@ public class UserDaoTest extends DefaultDaoTest<User> {
 	@Nonnull
 	private ChatDao chatDao;
 
+	@Inject
+	@Nonnull
+	private TestSQLiteOpenHelper sqliteOpenHelper;
+
 	public UserDaoTest() {
 		super(new UserSameEqualizer());
 	}
@@ -137,6 +145,18 @@ public class UserDaoTest extends DefaultDaoTest<User> {
 		}
 	}
 
+	@Test
+	public void testShouldReadContactsWithPropertiesInBatch() throws Exception {
+		final AccountData accountData = getAccountData3();
+		final String userId = accountData.getAccount().getUser().getId();
+
+		sqliteOpenHelper.resetDbRequestsCount();
+		final List<User> contactsFromDao = dao.readContacts(userId);
+
+		// 1 query for users + 1 query for all their properties
+		assertEquals(2, sqliteOpenHelper.getDbRequestsCount());
+		assertEntitiesSame(contactsFromDao, accountData.getContacts());
+	}
 
 	@Test
 	public void testShouldReadAllContactIdsForUser() throws Exception {
@@ -163,6 +183,44 @@ public class UserDaoTest extends DefaultDaoTest<User> {
 		}
 	}
 
+	@Test
+	public void testShouldStoreDigestsOfContacts() throws Exception {
+		final String userId = getAccount1().getUser().getId();
+		assertTrue(dao.readContactDigests(userId).isEmpty());
+
+		final Map<String, String> digests = new HashMap<String, String>();
+		for (User contact : getAccountData1().getContacts()) {
+			digests.put(contact.getId(), Users.getDigest(contact));
+		}
+		// not a contact of the user => should not be returned
+		digests.put(getAccount2().getUser().getId(), "test");
+		dao.updateDigests(digests);
+
+		final Map<String, String> expected = new HashMap<String, String>(digests);
+		expected.remove(getAccount2().getUser().getId());
+		assertEquals(expected, dao.readContactDigests(userId));
+
+		final User contact = getAccountData1().getContacts().get(0);
+		dao.updateDigests(Collections.singletonMap(contact.getId(), "changed"));
+		assertEquals("changed", dao.readContactDigests(userId).get(contact.getId()));
+		assertEquals(expected.size(), dao.readContactDigests(userId).size());
+	}
+
+	@Test
+	public void testDigestShouldNotDependOnOnlineStatusAndPropertiesOrder() throws Exception {
+		final User contact = getAccountData1().getContacts().get(0);
+		final String digest = Users.getDigest(contact);
+
+		assertEquals(digest, Users.getDigest(contact.cloneWithNewStatus(!contact.isOnline())));
+
+		final List<AProperty> properties = new ArrayList<AProperty>(contact.getPropertiesCollection());
+		Collections.reverse(properties);
+		assertEquals(digest, Users.getDigest(newUser(contact.getEntity(), properties)));
+
+		properties.add(Properties.newProperty(User.PROPERTY_NICKNAME, "new nickname"));
+		assertFalse(digest.equals(Users.getDigest(newUser(contact.getEntity(), properties))));
+	}
+
 	@Nonnull
 	@Override
 	protected Collection<User> populateEntities(@Nonnull Dao<User> dao) {
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import com.google.inject.Inject;
+import org.junit.Test;
+import org.solovyev.android.messenger.DefaultMessengerTest;
+
+import javax.annotation.Nonnull;
+
+import static org.solovyev.android.messenger.db.QueryPlans.assertNoFullScan;
+import static org.solovyev.android.messenger.users.SqliteUserDao.SELECT_CONTACTS;
+import static org.solovyev.android.messenger.users.SqliteUserDao.SELECT_CONTACT_DIGESTS;
+
+public class UserQueryPlanTest extends DefaultMessengerTest {
+
+	@Inject
+	@Nonnull
+	private SQLiteOpenHelper sqliteOpenHelper;
+
+	@Test
+	public void testContactsQueriesShouldUseIndex() throws Exception {
+		final SQLiteDatabase db = sqliteOpenHelper.getReadableDatabase();
+		final String userId = getAccount1().getUser().getId();
+
+		assertNoFullScan(db, SELECT_CONTACTS, userId);
+		assertNoFullScan(db, SELECT_CONTACT_DIGESTS, userId);
+	}
+}
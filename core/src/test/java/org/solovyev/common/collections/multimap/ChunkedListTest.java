@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.common.collections.multimap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkedListTest {
+
+	@Test
+	public void testShouldBehaveAsArrayList() throws Exception {
+		final Random random = new Random(0);
+		final List<Integer> expected = new ArrayList<Integer>();
+		ChunkedList<Integer> actual = ChunkedList.newFrozenList(expected);
+
+		for (int i = 0; i < 10000; i++) {
+			final ChunkedList<Integer> copy = actual.newMutableCopy();
+			final int operation = random.nextInt(4);
+			if (operation == 0 || expected.isEmpty()) {
+				final int index = random.nextInt(expected.size() + 1);
+				expected.add(index, i);
+				copy.add(index, i);
+			} else if (operation == 1) {
+				expected.add(i);
+				copy.add(i);
+			} else if (operation == 2) {
+				final int index = random.nextInt(expected.size());
+				assertEquals(expected.set(index, i), copy.set(index, i));
+			} else {
+				final int index = random.nextInt(expected.size());
+				assertEquals(expected.remove(index), copy.remove(index));
+			}
+
+			assertEquals(expected, copy);
+			actual = copy.freeze();
+			assertEquals(expected, new ArrayList<Integer>(actual));
+		}
+	}
+
+	@Test
+	public void testCopyShouldNotChangeOriginalList() throws Exception {
+		final List<Integer> values = new ArrayList<Integer>();
+		for (int i = 0; i < 3 * ChunkedList.CHUNK_SIZE; i++) {
+			values.add(i);
+		}
+
+		final ChunkedList<Integer> original = ChunkedList.newFrozenList(values);
+		final ChunkedList<Integer> copy = original.newMutableCopy();
+		copy.set(0, -1);
+		copy.add(ChunkedList.CHUNK_SIZE, -2);
+		copy.remove(copy.size() - 1);
+
+		assertEquals(values, original);
+		assertEquals(values.size(), copy.size());
+		assertEquals(Integer.valueOf(-1), copy.get(0));
+		assertEquals(Integer.valueOf(-2), copy.get(ChunkedList.CHUNK_SIZE));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testFrozenListShouldNotBeModifiable() throws Exception {
+		final ChunkedList<Integer> list = ChunkedList.newFrozenList(new ArrayList<Integer>());
+		assertTrue(list.isFrozen());
+		list.add(1);
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.common.collections.multimap;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mixed read/update workload: readers iterate over the values of random keys while writers add/change objects.
+ * Compares {@link ThreadSafeMultimap} with the previous copy-on-write implementation ({@link CopyOnWriteMultimap}).
+ * Run via {@link #main(String[])}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ThreadSafeMultimapBenchmark {
+
+	private static final int KEYS_COUNT = 100;
+
+	@Param({"100", "1000"})
+	public int valuesCount;
+
+	@Nonnull
+	private ThreadSafeMultimap<Integer, Integer> multimap;
+
+	@Nonnull
+	private CopyOnWriteMultimap<Integer, Integer> copyOnWriteMultimap;
+
+	@Nonnull
+	private final AtomicInteger counter = new AtomicInteger();
+
+	@Setup
+	public void setUp() {
+		final Map<Integer, List<Integer>> map = new HashMap<Integer, List<Integer>>();
+		for (int key = 0; key < KEYS_COUNT; key++) {
+			final List<Integer> values = new ArrayList<Integer>(valuesCount);
+			for (int i = 0; i < valuesCount; i++) {
+				values.add(i);
+			}
+			map.put(key, values);
+		}
+
+		multimap = ThreadSafeMultimap.newThreadSafeMultimap(map);
+		copyOnWriteMultimap = new CopyOnWriteMultimap<Integer, Integer>(map);
+	}
+
+	@Benchmark
+	@Group("threadSafeMultimap")
+	@GroupThreads(3)
+	public int readThreadSafeMultimap() {
+		return sum(multimap.get(nextKey()));
+	}
+
+	@Benchmark
+	@Group("threadSafeMultimap")
+	@GroupThreads(1)
+	public boolean updateThreadSafeMultimap() {
+		return multimap.update(nextKey(), new ValueChangedUpdater(nextValue()));
+	}
+
+	@Benchmark
+	@Group("copyOnWriteMultimap")
+	@GroupThreads(3)
+	public int readCopyOnWriteMultimap() {
+		return sum(copyOnWriteMultimap.get(nextKey()));
+	}
+
+	@Benchmark
+	@Group("copyOnWriteMultimap")
+	@GroupThreads(1)
+	public boolean updateCopyOnWriteMultimap() {
+		return copyOnWriteMultimap.update(nextKey(), new ValueChangedUpdater(nextValue()));
+	}
+
+	private int nextKey() {
+		return (counter.incrementAndGet() & 0x7FFFFFFF) % KEYS_COUNT;
+	}
+
+	private int nextValue() {
+		return (counter.incrementAndGet() & 0x7FFFFFFF) % valuesCount;
+	}
+
+	private static int sum(@Nonnull List<Integer> values) {
+		int result = 0;
+		for (Integer value : values) {
+			result += value;
+		}
+		return result;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		final Options options = new OptionsBuilder()
+				.include(ThreadSafeMultimapBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	/*
+	**********************************************************************
+    *
+    *                           STATIC/INNER CLASSES
+    *
+    **********************************************************************
+    */
+
+	private static final class ValueChangedUpdater implements ThreadSafeMultimap.ListUpdater<Integer> {
+
+		private final int index;
+
+		private ValueChangedUpdater(int index) {
+			this.index = index;
+		}
+
+		@Nullable
+		@Override
+		public List<Integer> update(@Nonnull List<Integer> values) {
+			final List<Integer> result = ThreadSafeMultimap.copy(values);
+			result.set(index, values.get(index) + 1);
+			return result;
+		}
+	}
+
+	/**
+	 * Previous implementation of {@link ThreadSafeMultimap}: each update copies the whole list under the global lock,
+	 * reads take no lock and go directly to the (non-concurrent) map referenced by volatile field
+	 */
+	private static final class CopyOnWriteMultimap<K, V> {
+
+		@Nonnull
+		private volatile Map<K, List<V>> map;
+
+		private CopyOnWriteMultimap(@Nonnull Map<K, List<V>> map) {
+			this.map = new HashMap<K, List<V>>(map);
+		}
+
+		@Nonnull
+		public List<V> get(@Nonnull K key) {
+			final List<V> values = map.get(key);
+			if (values == null) {
+				return (List<V>) ThreadSafeMultimap.NO_VALUE;
+			} else {
+				return java.util.Collections.unmodifiableList(values);
+			}
+		}
+
+		public synchronized boolean update(@Nonnull K key, @Nonnull ThreadSafeMultimap.ListUpdater<V> updater) {
+			final List<V> newValue = updater.update(get(key));
+			if (newValue != null) {
+				map.put(key, newValue);
+				return true;
+			} else {
+				return false;
+			}
+		}
+	}
+}
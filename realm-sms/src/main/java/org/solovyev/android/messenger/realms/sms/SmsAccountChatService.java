@@ -82,6 +82,11 @@ final class SmsAccountChatService implements AccountChatService {
 		return emptyList();
 	}
 
+	@Override
+	public int backfillMessagesForChat(@Nonnull String accountChatId) {
+		return 0;
+	}
+
 	@Nonnull
 	@Override
 	public List<AccountChat> getChats() throws AccountConnectionException {
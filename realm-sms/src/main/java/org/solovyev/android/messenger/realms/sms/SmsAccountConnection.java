@@ -191,7 +191,7 @@ final class SmsAccountConnection extends BaseAccountConnection<SmsAccount> {
 					}
 				}
 
-				chatService.saveMessages(chat.getEntity(), messages);
+				chatService.receiveMessages(chat.getEntity(), messages);
 			}
 		}
 
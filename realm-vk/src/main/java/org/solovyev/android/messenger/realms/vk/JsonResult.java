@@ -25,6 +25,9 @@ import static org.solovyev.common.Objects.areEqual;
 
 public class JsonResult {
 
+	@Nonnull
+	private static final Gson gson = new Gson();
+
 	@Nullable
 	private String response;
 
@@ -35,7 +38,7 @@ public class JsonResult {
 
 	@Nullable
 	public static String asString(@Nonnull String json) {
-		final JsonResult result = new Gson().fromJson(json, JsonResult.class);
+		final JsonResult result = gson.fromJson(json, JsonResult.class);
 		return result.response;
 	}
 }
@@ -25,6 +25,7 @@ import org.solovyev.android.messenger.chats.AccountChatService;
 import org.solovyev.android.messenger.realms.Realm;
 import org.solovyev.android.messenger.realms.vk.chats.VkAccountChatService;
 import org.solovyev.android.messenger.realms.vk.users.VkAccountUserService;
+import org.solovyev.android.messenger.realms.vk.users.VkUsersResolver;
 import org.solovyev.android.messenger.users.AccountUserService;
 import org.solovyev.android.messenger.users.User;
 
@@ -32,6 +33,9 @@ import javax.annotation.Nonnull;
 
 public final class VkAccount extends AbstractAccount<VkAccountConfiguration> {
 
+	@Nonnull
+	private final VkUsersResolver usersResolver = new VkUsersResolver(this);
+
 	public VkAccount(@Nonnull String id, @Nonnull Realm realm, @Nonnull User user, @Nonnull VkAccountConfiguration configuration, @Nonnull AccountState state, @Nonnull AccountSyncData syncData) {
 		super(id, realm, user, configuration, state, syncData);
 	}
@@ -63,4 +67,9 @@ public final class VkAccount extends AbstractAccount<VkAccountConfiguration> {
 	public AccountChatService getAccountChatService() {
 		return new VkAccountChatService(this);
 	}
+
+	@Nonnull
+	public VkUsersResolver getUsersResolver() {
+		return usersResolver;
+	}
 }
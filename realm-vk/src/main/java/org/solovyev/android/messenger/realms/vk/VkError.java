@@ -17,11 +17,13 @@
 package org.solovyev.android.messenger.realms.vk;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 import org.solovyev.android.captcha.Captcha;
 import org.solovyev.android.messenger.http.IllegalJsonException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 
 /**
  * User: serso
@@ -30,6 +32,9 @@ import javax.annotation.Nullable;
  */
 public class VkError {
 
+	@Nonnull
+	private static final Gson gson = new Gson();
+
 	@Nonnull
 	private String errorId;
 
@@ -51,7 +56,6 @@ public class VkError {
 
 	@Nonnull
 	public static VkError fromJson(@Nonnull String json) throws IllegalJsonException {
-		final Gson gson = new Gson();
 		final VkErrorJsonWrapper vkErrorJsonWrapper = gson.fromJson(json, VkErrorJsonWrapper.class);
 		if (vkErrorJsonWrapper.error == null) {
 			throw new IllegalJsonException();
@@ -61,6 +65,21 @@ public class VkError {
 		return fromJson(vkErrorJsonWrapper.error);
 	}
 
+	/**
+	 * Method reads value of "error" field of VK response
+	 *
+	 * @param reader reader positioned at the beginning of error object
+	 * @return error
+	 */
+	@Nonnull
+	public static VkError readJson(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		final VkErrorJson error = gson.getAdapter(VkErrorJson.class).read(reader);
+		if (error == null || error.error_code == null) {
+			throw new IllegalJsonException();
+		}
+		return fromJson(error);
+	}
+
 	@Nonnull
 	private static VkError fromJson(@Nonnull VkErrorJson json) throws IllegalJsonException {
 		final VkError result = new VkError();
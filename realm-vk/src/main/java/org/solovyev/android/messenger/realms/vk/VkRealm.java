@@ -32,6 +32,7 @@ import org.solovyev.android.messenger.notifications.Notification;
 import org.solovyev.android.messenger.notifications.NotificationService;
 import org.solovyev.android.messenger.notifications.Notifications;
 import org.solovyev.android.messenger.realms.AbstractRealm;
+import org.solovyev.android.messenger.realms.RealmRateLimiter;
 import org.solovyev.android.messenger.realms.vk.http.VkResponseErrorException;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.android.properties.AProperty;
@@ -69,6 +70,9 @@ public class VkRealm extends AbstractRealm<VkAccountConfiguration> {
 	@Nonnull
 	public static final String TAG = App.newTag("VK");
 
+	// VK API allows not more than 3 requests per second
+	private static final long REQUEST_INTERVAL_MILLIS = 350L;
+
     /*
 	**********************************************************************
     *
@@ -106,6 +110,9 @@ public class VkRealm extends AbstractRealm<VkAccountConfiguration> {
 	/*@Nonnull*/
 	private volatile HttpRealmIconService iconService;
 
+	@Nonnull
+	private final RealmRateLimiter rateLimiter = new RealmRateLimiter(REQUEST_INTERVAL_MILLIS);
+
     /*
     **********************************************************************
     *
@@ -235,6 +242,12 @@ public class VkRealm extends AbstractRealm<VkAccountConfiguration> {
 		return true;
 	}
 
+	@Nonnull
+	@Override
+	public RealmRateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
 	/*
     **********************************************************************
     *
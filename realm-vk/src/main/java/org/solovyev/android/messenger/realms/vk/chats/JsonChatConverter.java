@@ -20,8 +20,6 @@ import android.util.Log;
 import com.google.common.base.Function;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.chats.AccountChat;
@@ -31,20 +29,21 @@ import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.http.IllegalJsonRuntimeException;
 import org.solovyev.android.messenger.messages.MutableMessage;
 import org.solovyev.android.messenger.realms.vk.messages.JsonMessage;
-import org.solovyev.android.messenger.realms.vk.messages.JsonMessageTypedAttachment;
 import org.solovyev.android.messenger.realms.vk.messages.JsonMessages;
+import org.solovyev.android.messenger.realms.vk.users.VkUsersResolver;
 import org.solovyev.android.messenger.users.User;
-import org.solovyev.android.messenger.users.UserService;
 import org.solovyev.common.Converter;
-import org.solovyev.common.collections.Collections;
 import org.solovyev.common.text.Strings;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.solovyev.android.messenger.chats.Chats.newAccountChat;
 import static org.solovyev.common.text.Strings.isEmpty;
@@ -66,7 +65,7 @@ public class JsonChatConverter implements Converter<String, List<AccountChat>> {
 	private final String explicitUserId;
 
 	@Nonnull
-	private final UserService userService;
+	private final VkUsersResolver usersResolver;
 
 	@Nonnull
 	private final Account account;
@@ -74,27 +73,58 @@ public class JsonChatConverter implements Converter<String, List<AccountChat>> {
 	public JsonChatConverter(@Nonnull User user,
 							 @Nullable String explicitChatId,
 							 @Nullable String explicitUserId,
-							 @Nonnull UserService userService,
+							 @Nonnull VkUsersResolver usersResolver,
 							 @Nonnull Account account) {
 		this.user = user;
 		this.explicitChatId = explicitChatId;
 		this.explicitUserId = explicitUserId;
-		this.userService = userService;
+		this.usersResolver = usersResolver;
 		this.account = account;
 	}
 
 	@Nonnull
 	@Override
 	public List<AccountChat> convert(@Nonnull String json) {
+		final List<JsonMessage> jsonMessages = JsonMessages.newFromJson(json).getResponse();
+		return convertMessages(jsonMessages == null ? Collections.<JsonMessage>emptyList() : jsonMessages);
+	}
+
+	@Nonnull
+	public List<AccountChat> convertMessages(@Nonnull List<JsonMessage> jsonMessages) {
 		// todo serso: we need to save title for chat somewhere
-		final Gson gson = new GsonBuilder()
-				.registerTypeAdapter(JsonMessages.class, new JsonMessages.Adapter())
-				.registerTypeAdapter(JsonMessageTypedAttachment.class, new JsonMessageTypedAttachment.Adapter())
-				.create();
 
-		final JsonMessages jsonMessagesResult = gson.fromJson(json, JsonMessages.class);
+		final List<MutableMessage> messages = new ArrayList<MutableMessage>(jsonMessages.size());
+
+		// all users which might be unknown are collected first and then loaded at once
+		final Set<String> participantIds = new HashSet<String>();
+		final Set<String> chatIds = new HashSet<String>();
+
+		try {
+			for (JsonMessage jsonMessage : jsonMessages) {
+				final MutableMessage message = jsonMessage.toMessage(user, explicitUserId, account);
+				messages.add(message);
+
+				final Integer apiChatId = jsonMessage.getChat_id();
+				if (apiChatId == null && explicitChatId == null) {
+					final Entity secondUser = message.getSecondUser(user.getEntity());
+					if (secondUser != null) {
+						participantIds.add(secondUser.getAccountEntityId());
+					}
+				} else {
+					final String accountChatId = apiChatId == null ? explicitChatId : String.valueOf(apiChatId);
+					if (chatIds.add(accountChatId)) {
+						for (Integer participantId : jsonMessage.getParticipantIds()) {
+							participantIds.add(String.valueOf(participantId));
+						}
+					}
+				}
+			}
+		} catch (IllegalJsonException e) {
+			throw new IllegalJsonRuntimeException(e);
+		}
 
-		final List<JsonMessage> jsonMessages = jsonMessagesResult.getResponse();
+		participantIds.remove(user.getEntity().getAccountEntityId());
+		final Map<String, User> participants = participantIds.isEmpty() ? Collections.<String, User>emptyMap() : usersResolver.resolve(participantIds);
 
 		// key: chat id, value: chat
 		final Map<String, MutableAccountChat> chats = new HashMap<String, MutableAccountChat>();
@@ -102,68 +132,66 @@ public class JsonChatConverter implements Converter<String, List<AccountChat>> {
 		// key: id of second user, value: chat
 		final Map<String, MutableAccountChat> fakeChats = new HashMap<String, MutableAccountChat>();
 
-		try {
-			if (!Collections.isEmpty(jsonMessages)) {
-				for (JsonMessage jsonMessage : jsonMessages) {
-					final MutableMessage message = jsonMessage.toMessage(user, explicitUserId, account);
-
-					final Integer apiChatId = jsonMessage.getChat_id();
-					if (apiChatId == null && explicitChatId == null) {
+		for (int i = 0; i < messages.size(); i++) {
+			final JsonMessage jsonMessage = jsonMessages.get(i);
+			final MutableMessage message = messages.get(i);
 
-						// fake chat (message from user to another without explicitly created chat)
-						final Entity secondUser = message.getSecondUser(user.getEntity());
+			final Integer apiChatId = jsonMessage.getChat_id();
+			if (apiChatId == null && explicitChatId == null) {
 
-						if (secondUser != null) {
-							// vk allows to have messages sent to person self himself - we don't
-							if (!secondUser.getAccountEntityId().equals(user.getEntity().getAccountEntityId())) {
-								final Entity userId = user.getEntity();
-								final Entity chatId = App.getChatService().getPrivateChatId(userId, secondUser);
+				// fake chat (message from user to another without explicitly created chat)
+				final Entity secondUser = message.getSecondUser(user.getEntity());
 
-								MutableAccountChat chat = fakeChats.get(chatId.getEntityId());
-								if (chat == null) {
-									chat = newAccountChat(chatId, true);
+				if (secondUser != null) {
+					// vk allows to have messages sent to person self himself - we don't
+					if (!secondUser.getAccountEntityId().equals(user.getEntity().getAccountEntityId())) {
+						final Entity userId = user.getEntity();
+						final Entity chatId = App.getChatService().getPrivateChatId(userId, secondUser);
 
-									chat.addParticipant(user);
-									chat.addParticipant(userService.getUserById(secondUser, true));
+						MutableAccountChat chat = fakeChats.get(chatId.getEntityId());
+						if (chat == null) {
+							chat = newAccountChat(chatId, true);
 
-									fakeChats.put(chatId.getEntityId(), chat);
-								}
+							chat.addParticipant(user);
+							chat.addParticipant(participants.get(secondUser.getAccountEntityId()));
 
-								chat.addMessage(message);
-							}
-						} else {
-							Log.e(this.getClass().getSimpleName(), "Recipient is null for message " + message);
+							fakeChats.put(chatId.getEntityId(), chat);
 						}
 
-					} else {
-						// real chat
-						final String accountChatId = apiChatId == null ? explicitChatId : String.valueOf(apiChatId);
-
-						MutableAccountChat chat = chats.get(accountChatId);
-						if (chat == null) {
-							// create new chat object
-							chat = newAccountChat(account.newChatEntity(accountChatId), false);
+						chat.addMessage(message);
+					}
+				} else {
+					Log.e(this.getClass().getSimpleName(), "Recipient is null for message " + message);
+				}
 
-							final String title = jsonMessage.getTitle();
-							if (!isEmpty(title)) {
-								chat.getChat().setTitle(title);
-							}
+			} else {
+				// real chat
+				final String accountChatId = apiChatId == null ? explicitChatId : String.valueOf(apiChatId);
 
-							for (Integer participantId : jsonMessage.getParticipantIds()) {
-								chat.addParticipant(userService.getUserById(account.newUserEntity(String.valueOf(participantId)), true));
-							}
+				MutableAccountChat chat = chats.get(accountChatId);
+				if (chat == null) {
+					// create new chat object
+					chat = newAccountChat(account.newChatEntity(accountChatId), false);
 
-							chat.addParticipant(user);
+					final String title = jsonMessage.getTitle();
+					if (!isEmpty(title)) {
+						chat.getChat().setTitle(title);
+					}
 
-							chats.put(accountChatId, chat);
+					for (Integer participantId : jsonMessage.getParticipantIds()) {
+						final User participant = participants.get(String.valueOf(participantId));
+						if (participant != null) {
+							chat.addParticipant(participant);
 						}
-
-						chat.addMessage(message);
 					}
+
+					chat.addParticipant(user);
+
+					chats.put(accountChatId, chat);
 				}
+
+				chat.addMessage(message);
 			}
-		} catch (IllegalJsonException e) {
-			throw new IllegalJsonRuntimeException(e);
 		}
 
 		final List<AccountChat> result = new ArrayList<AccountChat>(chats.size() + fakeChats.size());
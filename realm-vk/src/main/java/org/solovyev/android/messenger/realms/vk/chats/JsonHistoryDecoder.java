@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.chats;
+
+import android.util.Log;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.http.IllegalJsonException;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.MutableMessage;
+import org.solovyev.android.messenger.realms.vk.messages.JsonMessage;
+import org.solovyev.android.messenger.realms.vk.messages.JsonMessages;
+import org.solovyev.android.messenger.users.User;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes response of messages.getHistory straight to {@link Message}s: unlike {@link JsonChatConverter} no chats
+ * are built and no participants are loaded. One decoder can be used for several pages of the same history.
+ */
+public class JsonHistoryDecoder {
+
+	@Nonnull
+	private final User user;
+
+	@Nullable
+	private final String explicitChatId;
+
+	@Nullable
+	private final String explicitUserId;
+
+	@Nonnull
+	private final Account account;
+
+	/**
+	 * Chat entities by account chat id (or by account id of second user for private chats)
+	 */
+	@Nonnull
+	private final Map<String, Entity> chats = new HashMap<String, Entity>();
+
+	public JsonHistoryDecoder(@Nonnull User user,
+							  @Nullable String explicitChatId,
+							  @Nullable String explicitUserId,
+							  @Nonnull Account account) {
+		this.user = user;
+		this.explicitChatId = explicitChatId;
+		this.explicitUserId = explicitUserId;
+		this.account = account;
+	}
+
+	@Nonnull
+	public List<Message> decode(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		final List<Message> result = new ArrayList<Message>();
+		decode(reader, result);
+		return result;
+	}
+
+	/**
+	 * Method decodes one page of history and adds decoded messages to <var>result</var>
+	 *
+	 * @param reader reader positioned at the beginning of messages array (first element of which is total count)
+	 * @param result list to which messages are added
+	 * @return total count of messages in history as returned by server
+	 */
+	public int decode(@Nonnull JsonReader reader, @Nonnull List<? super Message> result) throws IOException, IllegalJsonException {
+		int count = 0;
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+			if (reader.peek() == JsonToken.NUMBER) {
+				count = reader.nextInt();
+			} else {
+				final MutableMessage message = decode(JsonMessages.readMessage(reader));
+				if (message != null) {
+					result.add(message);
+				}
+			}
+		}
+		reader.endArray();
+
+		return count;
+	}
+
+	@Nullable
+	private MutableMessage decode(@Nonnull JsonMessage jsonMessage) throws IllegalJsonException {
+		final MutableMessage message = jsonMessage.toMessage(user, explicitUserId, account);
+
+		final Entity chat;
+
+		final Integer apiChatId = jsonMessage.getChat_id();
+		if (apiChatId == null && explicitChatId == null) {
+			// private chat
+			final Entity secondUser = message.getSecondUser(user.getEntity());
+			if (secondUser == null) {
+				Log.e(getClass().getSimpleName(), "Recipient is null for message " + message);
+				return null;
+			}
+
+			final String secondUserId = secondUser.getAccountEntityId();
+			if (secondUserId.equals(user.getEntity().getAccountEntityId())) {
+				// vk allows to have messages sent to person self himself - we don't
+				return null;
+			}
+
+			chat = getPrivateChat(secondUser);
+		} else {
+			chat = getChat(apiChatId == null ? explicitChatId : String.valueOf(apiChatId));
+		}
+
+		message.setChat(chat);
+		return message;
+	}
+
+	@Nonnull
+	private Entity getChat(@Nonnull String accountChatId) {
+		Entity chat = chats.get(accountChatId);
+		if (chat == null) {
+			chat = account.newChatEntity(accountChatId);
+			chats.put(accountChatId, chat);
+		}
+		return chat;
+	}
+
+	@Nonnull
+	private Entity getPrivateChat(@Nonnull Entity secondUser) {
+		final String key = "private:" + secondUser.getAccountEntityId();
+		Entity chat = chats.get(key);
+		if (chat == null) {
+			chat = App.getChatService().getPrivateChatId(user.getEntity(), secondUser);
+			chats.put(key, chat);
+		}
+		return chat;
+	}
+}
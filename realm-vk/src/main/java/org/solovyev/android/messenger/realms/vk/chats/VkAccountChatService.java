@@ -19,7 +19,7 @@ package org.solovyev.android.messenger.realms.vk.chats;
 import android.util.Log;
 import org.solovyev.android.http.HttpRuntimeIoException;
 import org.solovyev.android.http.HttpTransaction;
-import org.solovyev.android.http.HttpTransactions;
+import org.solovyev.android.messenger.realms.vk.http.VkHttp;
 import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
 import org.solovyev.android.messenger.chats.*;
@@ -89,7 +89,7 @@ public class VkAccountChatService implements AccountChatService {
 
 						final String secondUserId = accountChatId.substring(index + 1, accountChatId.length());
 						final List<Message> result = new ArrayList<Message>(100);
-						for (List<Message> messages : HttpTransactions.execute(p.getForPrivateChat(account.getUser(), secondUserId))) {
+						for (List<Message> messages : VkHttp.execute(p.getForPrivateChat(account.getUser(), secondUserId))) {
 							result.addAll(messages);
 						}
 						return result;
@@ -101,7 +101,7 @@ public class VkAccountChatService implements AccountChatService {
 
 				} else {
 					final List<Message> result = new ArrayList<Message>(100);
-					for (List<Message> messages : HttpTransactions.execute(p.getForChat(account.getUser(), accountChatId))) {
+					for (List<Message> messages : VkHttp.execute(p.getForChat(account.getUser(), accountChatId))) {
 						result.addAll(messages);
 					}
 					return result;
@@ -135,6 +135,14 @@ public class VkAccountChatService implements AccountChatService {
 		});
 	}
 
+	/**
+	 * Method imports the whole history of the chat, see {@link VkHistoryBackfill}
+	 */
+	@Override
+	public int backfillMessagesForChat(@Nonnull String accountChatId) throws AccountConnectionException {
+		return new VkHistoryBackfill(account, accountChatId).run();
+	}
+
 	private static interface VkHttpTransactionForMessagesForChatProvider {
 		@Nonnull
 		List<? extends HttpTransaction<List<Message>>> getForPrivateChat(@Nonnull User user, @Nonnull String secondUserId);
@@ -168,7 +176,7 @@ public class VkAccountChatService implements AccountChatService {
 
 	private <R> R executeHttpRequest(HttpTransaction<R> transaction) throws AccountConnectionException {
 		try {
-			return HttpTransactions.execute(transaction);
+			return VkHttp.execute(transaction);
 		} catch (Exception e) {
 			throw new AccountConnectionException(account.getId(), e);
 		}
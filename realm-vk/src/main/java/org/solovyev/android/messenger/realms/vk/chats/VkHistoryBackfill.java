@@ -0,0 +1,281 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.chats;
+
+import android.util.Log;
+import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.accounts.AccountConnectionException;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.http.HttpExecutor;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.realms.RealmRateLimiter;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.http.VkHttp;
+import org.solovyev.android.messenger.users.User;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.solovyev.android.messenger.realms.vk.chats.VkMessagesGetHistoryPageHttpTransaction.PAGE_SIZE;
+import static org.solovyev.android.properties.Properties.newProperty;
+
+/**
+ * Imports full history of one VK chat. Several offset windows of messages.getHistory are loaded concurrently (each
+ * request is started within realm's request rate budget, see {@link org.solovyev.android.messenger.realms.Realm#getRateLimiter()}), loaded
+ * pages are saved in batches and offset up to which history is saved is stored in chat's properties => interrupted
+ * import continues from the last saved page.
+ * <p/>
+ * Note that offsets are counted from the newest message: if new messages arrive between two runs some pages are
+ * loaded twice (and merged), but no message is skipped.
+ */
+public final class VkHistoryBackfill {
+
+	@Nonnull
+	private static final String TAG = VkHistoryBackfill.class.getSimpleName();
+
+	@Nonnull
+	static final String PROPERTY_OFFSET = "vk_history_backfill_offset";
+
+	@Nonnull
+	static final String PROPERTY_DONE = "vk_history_backfill_done";
+
+	/**
+	 * Max number of offset windows loaded at the same time
+	 */
+	private static final int WINDOWS = 3;
+
+	/**
+	 * Loaded messages are saved when at least this number of messages is collected
+	 */
+	private static final int SAVE_BATCH_SIZE = 5 * PAGE_SIZE;
+
+	@Nonnull
+	private static final ExecutorService sharedExecutor = newFixedThreadPool(WINDOWS, new BackfillThreadFactory());
+
+	@Nonnull
+	private final VkAccount account;
+
+	@Nonnull
+	private final String accountChatId;
+
+	@Nonnull
+	private final Entity chatEntity;
+
+	@Nonnull
+	private final ChatService chatService;
+
+	@Nonnull
+	private final HttpExecutor httpExecutor;
+
+	@Nullable
+	private final RealmRateLimiter rateLimiter;
+
+	public VkHistoryBackfill(@Nonnull VkAccount account, @Nonnull String accountChatId) {
+		this(account, accountChatId, App.getChatService(), App.getHttpExecutor(), account.getRealm().getRateLimiter());
+	}
+
+	// for tests
+	VkHistoryBackfill(@Nonnull VkAccount account,
+					  @Nonnull String accountChatId,
+					  @Nonnull ChatService chatService,
+					  @Nonnull HttpExecutor httpExecutor,
+					  @Nullable RealmRateLimiter rateLimiter) {
+		this.account = account;
+		this.accountChatId = accountChatId;
+		this.chatEntity = account.newChatEntity(accountChatId);
+		this.chatService = chatService;
+		this.httpExecutor = httpExecutor;
+		this.rateLimiter = rateLimiter;
+	}
+
+	/**
+	 * Method loads and saves history of the chat starting from the stored offset
+	 *
+	 * @return number of saved messages
+	 * @throws AccountConnectionException if some page can't be loaded (all pages loaded before are saved and stored
+	 *                                    offset is updated)
+	 */
+	public int run() throws AccountConnectionException {
+		final Chat chat = chatService.getChatById(chatEntity);
+		if (chat == null) {
+			Log.e(TAG, "Chat is not found for chat id: " + accountChatId);
+			return 0;
+		}
+
+		if (Boolean.valueOf(chat.getPropertyValueByName(PROPERTY_DONE))) {
+			return 0;
+		}
+
+		final String secondUserId;
+		if (chat.isPrivate()) {
+			final int index = accountChatId.indexOf(":");
+			if (index < 0) {
+				Log.e(TAG, "Chat is private but don't have ':', chat id: " + accountChatId);
+				return 0;
+			}
+			secondUserId = accountChatId.substring(index + 1);
+		} else {
+			secondUserId = null;
+		}
+
+		final CompletionService<VkHistoryPage> pages = new ExecutorCompletionService<VkHistoryPage>(sharedExecutor);
+		final SortedMap<Integer, VkHistoryPage> loadedPages = new TreeMap<Integer, VkHistoryPage>();
+		final List<Message> batch = new ArrayList<Message>(SAVE_BATCH_SIZE + PAGE_SIZE);
+
+		// all messages before savedOffset are saved (or are in batch)
+		int savedOffset = getOffset(chat);
+		int nextOffset = savedOffset;
+		int totalCount = Integer.MAX_VALUE;
+		int windows = 0;
+		int savedCount = 0;
+		Throwable failure = null;
+
+		while (true) {
+			while (failure == null && windows < WINDOWS && nextOffset < totalCount) {
+				pages.submit(newPageLoader(secondUserId, nextOffset));
+				nextOffset += PAGE_SIZE;
+				windows++;
+			}
+
+			if (windows == 0) {
+				break;
+			}
+
+			try {
+				final VkHistoryPage page = pages.take().get();
+				windows--;
+
+				// total count grows if new messages arrive => use the latest value
+				totalCount = page.getTotalCount();
+				loadedPages.put(page.getOffset(), page);
+
+				for (VkHistoryPage p = loadedPages.remove(savedOffset); p != null; p = loadedPages.remove(savedOffset)) {
+					batch.addAll(p.getMessages());
+					savedOffset += PAGE_SIZE;
+				}
+
+				if (batch.size() >= SAVE_BATCH_SIZE) {
+					savedCount += save(batch, savedOffset, false);
+				}
+			} catch (ExecutionException e) {
+				windows--;
+				if (failure == null) {
+					failure = e.getCause();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure = e;
+				// windows which are in progress are not waited for => they will be loaded again on next run
+				break;
+			}
+		}
+
+		savedCount += save(batch, savedOffset, failure == null && savedOffset >= totalCount);
+
+		Log.d(TAG, "History of " + accountChatId + ": saved " + savedCount + " messages, offset " + savedOffset + "/" + totalCount);
+
+		if (failure != null) {
+			throw new AccountConnectionException(account.getId(), failure);
+		}
+
+		return savedCount;
+	}
+
+	@Nonnull
+	private Callable<VkHistoryPage> newPageLoader(final String secondUserId, final int offset) {
+		final User user = account.getUser();
+		final VkMessagesGetHistoryPageHttpTransaction transaction;
+		if (secondUserId != null) {
+			transaction = VkMessagesGetHistoryPageHttpTransaction.forUser(account, user, secondUserId, offset);
+		} else {
+			transaction = VkMessagesGetHistoryPageHttpTransaction.forChat(account, user, accountChatId, offset);
+		}
+
+		return new Callable<VkHistoryPage>() {
+			@Override
+			public VkHistoryPage call() throws Exception {
+				if (rateLimiter != null) {
+					rateLimiter.acquire();
+				}
+				return VkHttp.execute(httpExecutor, transaction);
+			}
+		};
+	}
+
+	private int save(@Nonnull List<Message> batch, int offset, boolean done) {
+		final int result = batch.size();
+		if (!batch.isEmpty()) {
+			chatService.saveMessages(chatEntity, batch);
+			batch.clear();
+		}
+
+		final Chat chat = chatService.getChatById(chatEntity);
+		if (chat != null) {
+			chatService.updateChat(chat.cloneWithNewProperty(newProperty(PROPERTY_OFFSET, String.valueOf(offset)))
+					.cloneWithNewProperty(newProperty(PROPERTY_DONE, String.valueOf(done))));
+		}
+
+		return result;
+	}
+
+	private static int getOffset(@Nonnull Chat chat) {
+		final String offset = chat.getPropertyValueByName(PROPERTY_OFFSET);
+		if (offset != null) {
+			try {
+				return Integer.valueOf(offset);
+			} catch (NumberFormatException e) {
+				Log.e(TAG, "Invalid offset: " + offset);
+			}
+		}
+		return 0;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	private static final class BackfillThreadFactory implements ThreadFactory {
+
+		@Nonnull
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(@Nonnull Runnable r) {
+			final Thread thread = new Thread(r, "Vk history backfill #" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.chats;
+
+import org.solovyev.android.messenger.messages.Message;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * One offset window of chat history loaded by {@link VkMessagesGetHistoryPageHttpTransaction}
+ */
+final class VkHistoryPage {
+
+	private final int offset;
+
+	/**
+	 * Total count of messages in history as returned by server
+	 */
+	private final int totalCount;
+
+	@Nonnull
+	private final List<Message> messages;
+
+	VkHistoryPage(int offset, int totalCount, @Nonnull List<Message> messages) {
+		this.offset = offset;
+		this.totalCount = totalCount;
+		this.messages = messages;
+	}
+
+	int getOffset() {
+		return offset;
+	}
+
+	int getTotalCount() {
+		return totalCount;
+	}
+
+	@Nonnull
+	List<Message> getMessages() {
+		return messages;
+	}
+}
@@ -16,20 +16,22 @@
 
 package org.solovyev.android.messenger.realms.vk.chats;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
-import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.chats.AccountChat;
 import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
-import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.messages.JsonMessages;
 import org.solovyev.android.messenger.users.User;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-public class VkMessagesGetDialogsHttpTransaction extends AbstractVkHttpTransaction<List<AccountChat>> {
+public class VkMessagesGetDialogsHttpTransaction extends AbstractVkStreamingHttpTransaction<List<AccountChat>> {
 
 	@Nonnull
 	private static final Integer MAX_COUNT = 100;
@@ -73,7 +75,7 @@ public class VkMessagesGetDialogsHttpTransaction extends AbstractVkHttpTransacti
 	}
 
 	@Override
-	protected List<AccountChat> getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		return new JsonChatConverter(getAccount().getUser(), null, null, App.getUserService(), getAccount()).convert(json);
+	protected List<AccountChat> readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		return new JsonChatConverter(getAccount().getUser(), null, null, getAccount().getUsersResolver(), getAccount()).convertMessages(JsonMessages.readMessages(reader));
 	}
 }
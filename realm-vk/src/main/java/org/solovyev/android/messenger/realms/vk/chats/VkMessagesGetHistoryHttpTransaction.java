@@ -16,22 +16,21 @@
 
 package org.solovyev.android.messenger.realms.vk.chats;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.solovyev.android.http.HttpTransaction;
-import org.solovyev.android.messenger.App;
-import org.solovyev.android.messenger.chats.AccountChat;
 import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.messages.Message;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
-import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
 import org.solovyev.android.messenger.realms.vk.users.ApiUserField;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.common.text.Strings;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -41,7 +40,7 @@ import java.util.List;
  * Time: 10:15 PM
  */
 
-public class VkMessagesGetHistoryHttpTransaction extends AbstractVkHttpTransaction<List<Message>> {
+public class VkMessagesGetHistoryHttpTransaction extends AbstractVkStreamingHttpTransaction<List<Message>> {
 
 	@Nonnull
 	private static final Integer MAX_COUNT = 100;
@@ -134,15 +133,7 @@ public class VkMessagesGetHistoryHttpTransaction extends AbstractVkHttpTransacti
 	}
 
 	@Override
-	protected List<Message> getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		final List<AccountChat> chats = new JsonChatConverter(user, chatId, userId, App.getUserService(), getAccount()).convert(json);
-
-		// todo serso: optimize - convert json to the messages directly
-		final List<Message> messages = new ArrayList<Message>(chats.size() * 10);
-		for (AccountChat chat : chats) {
-			messages.addAll(chat.getMessages());
-		}
-
-		return messages;
+	protected List<Message> readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		return new JsonHistoryDecoder(user, chatId, userId, getAccount()).decode(reader);
 	}
 }
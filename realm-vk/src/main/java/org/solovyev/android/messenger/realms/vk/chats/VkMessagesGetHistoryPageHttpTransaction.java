@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.chats;
+
+import com.google.gson.stream.JsonReader;
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.solovyev.android.messenger.http.IllegalJsonException;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.users.ApiUserField;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.common.text.Strings;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Same as {@link VkMessagesGetHistoryHttpTransaction} but returns total count of messages in history together with
+ * messages of the requested window. Used by {@link VkHistoryBackfill}.
+ */
+final class VkMessagesGetHistoryPageHttpTransaction extends AbstractVkStreamingHttpTransaction<VkHistoryPage> {
+
+	static final int PAGE_SIZE = 100;
+
+	@Nonnull
+	private final User user;
+
+	@Nullable
+	private final String chatId;
+
+	@Nullable
+	private final String userId;
+
+	private final int offset;
+
+	private VkMessagesGetHistoryPageHttpTransaction(@Nonnull VkAccount account,
+													@Nonnull User user,
+													@Nullable String chatId,
+													@Nullable String userId,
+													int offset) {
+		super(account, "messages.getHistory");
+		this.user = user;
+		this.chatId = chatId;
+		this.userId = userId;
+		this.offset = offset;
+	}
+
+	@Nonnull
+	static VkMessagesGetHistoryPageHttpTransaction forChat(@Nonnull VkAccount account, @Nonnull User user, @Nonnull String chatId, int offset) {
+		return new VkMessagesGetHistoryPageHttpTransaction(account, user, chatId, null, offset);
+	}
+
+	@Nonnull
+	static VkMessagesGetHistoryPageHttpTransaction forUser(@Nonnull VkAccount account, @Nonnull User user, @Nonnull String userId, int offset) {
+		return new VkMessagesGetHistoryPageHttpTransaction(account, user, null, userId, offset);
+	}
+
+	@Nonnull
+	@Override
+	public List<NameValuePair> getRequestParameters() {
+		final List<NameValuePair> requestParameters = super.getRequestParameters();
+
+		requestParameters.add(new BasicNameValuePair("count", String.valueOf(PAGE_SIZE)));
+
+		if (userId != null) {
+			requestParameters.add(new BasicNameValuePair("uid", userId));
+		}
+
+		if (chatId != null) {
+			requestParameters.add(new BasicNameValuePair("chat_id", chatId));
+		}
+
+		requestParameters.add(new BasicNameValuePair("offset", String.valueOf(offset)));
+		requestParameters.add(new BasicNameValuePair("fields", Strings.getAllValues(Arrays.asList(ApiUserField.uid, ApiUserField.last_name))));
+
+		return requestParameters;
+	}
+
+	@Override
+	protected VkHistoryPage readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		final List<Message> messages = new ArrayList<Message>(PAGE_SIZE);
+		// decoder is not thread safe => new instance for each page (pages are loaded concurrently)
+		final JsonHistoryDecoder decoder = new JsonHistoryDecoder(user, chatId, userId, getAccount());
+		final int totalCount = decoder.decode(reader, messages);
+		return new VkHistoryPage(offset, totalCount, messages);
+	}
+}
@@ -16,21 +16,23 @@
 
 package org.solovyev.android.messenger.realms.vk.chats;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
-import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.chats.AccountChat;
 import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.messages.Message;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
-import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.messages.JsonMessages;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-public class VkMessagesGetHttpTransaction extends AbstractVkHttpTransaction<List<Message>> {
+public class VkMessagesGetHttpTransaction extends AbstractVkStreamingHttpTransaction<List<Message>> {
 
 	@Nullable
 	private Integer count;
@@ -52,8 +54,8 @@ public class VkMessagesGetHttpTransaction extends AbstractVkHttpTransaction<List
 	}
 
 	@Override
-	protected List<Message> getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		final List<AccountChat> chats = new JsonChatConverter(getAccount().getUser(), null, null, App.getUserService(), getAccount()).convert(json);
+	protected List<Message> readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		final List<AccountChat> chats = new JsonChatConverter(getAccount().getUser(), null, null, getAccount().getUsersResolver(), getAccount()).convertMessages(JsonMessages.readMessages(reader));
 
 		// todo serso: optimize - convert json to the messages directly
 		final List<Message> messages = new ArrayList<Message>(chats.size() * 10);
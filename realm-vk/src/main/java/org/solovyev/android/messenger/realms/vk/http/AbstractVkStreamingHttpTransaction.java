@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.http;
+
+import android.util.Log;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.util.EntityUtils;
+import org.solovyev.android.http.HttpMethod;
+import org.solovyev.android.http.HttpRuntimeIoException;
+import org.solovyev.android.messenger.accounts.AccountRuntimeException;
+import org.solovyev.android.messenger.http.IllegalJsonException;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.VkError;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+
+/**
+ * VK transaction which decodes response directly from the entity's stream: response body is never buffered into
+ * {@link String} and no intermediate JSON tree is built. Subclasses read value of "response" field with
+ * {@link #readResponse(JsonReader)}, "error" field is converted to {@link VkResponseErrorException}.
+ */
+public abstract class AbstractVkStreamingHttpTransaction<R> extends AbstractVkHttpTransaction<R> {
+
+	@Nonnull
+	private static final String DEFAULT_CHARSET = "UTF-8";
+
+	protected AbstractVkStreamingHttpTransaction(@Nonnull VkAccount account, @Nonnull String method) {
+		super(account, method);
+	}
+
+	protected AbstractVkStreamingHttpTransaction(@Nonnull VkAccount account, @Nonnull String method, @Nonnull HttpMethod httpMethod) {
+		super(account, method, httpMethod);
+	}
+
+	@Override
+	public R getResponse(@Nonnull HttpResponse response) {
+		if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+			// error responses are small => let parent read the whole body, log it and throw an exception
+			return super.getResponse(response);
+		}
+
+		try {
+			final HttpEntity httpEntity = response.getEntity();
+
+			String charset = EntityUtils.getContentCharSet(httpEntity);
+			if (charset == null) {
+				charset = DEFAULT_CHARSET;
+			}
+
+			final JsonReader reader = new JsonReader(new InputStreamReader(httpEntity.getContent(), charset));
+			try {
+				return read(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			throw new HttpRuntimeIoException(e);
+		}
+	}
+
+	@Override
+	protected final R getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
+		try {
+			return read(new JsonReader(new StringReader(json)));
+		} catch (IOException e) {
+			throw new IllegalJsonException();
+		}
+	}
+
+	private R read(@Nonnull JsonReader reader) throws IOException {
+		final String accountId = getAccount().getId();
+		try {
+			boolean hasResponse = false;
+			R result = null;
+
+			reader.beginObject();
+			while (reader.hasNext()) {
+				final String name = reader.nextName();
+				if ("response".equals(name)) {
+					result = readResponse(reader);
+					hasResponse = true;
+				} else if ("error".equals(name)) {
+					throw new AccountRuntimeException(accountId, new VkResponseErrorException(VkError.readJson(reader), this));
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+
+			if (!hasResponse) {
+				throw new IllegalJsonException();
+			}
+
+			return result;
+		} catch (MalformedJsonException e) {
+			throw newParseException(e);
+		} catch (IllegalStateException e) {
+			// unexpected token
+			throw newParseException(e);
+		} catch (JsonParseException e) {
+			throw newParseException(e);
+		} catch (IllegalJsonException e) {
+			throw newParseException(e);
+		}
+	}
+
+	@Nonnull
+	private AccountRuntimeException newParseException(@Nonnull Exception e) {
+		Log.e(getClass().getSimpleName(), "Unable to parse response", e);
+		return new AccountRuntimeException(getAccount().getId(), VkResponseErrorException.newParseErrorInstance(this));
+	}
+
+	/**
+	 * Method reads value of "response" field of VK response. Implementations should convert JSON objects one by one
+	 * and should not keep intermediate JSON representations.
+	 *
+	 * @param reader reader positioned at the beginning of response value
+	 * @return converted response
+	 */
+	protected abstract R readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException;
+}
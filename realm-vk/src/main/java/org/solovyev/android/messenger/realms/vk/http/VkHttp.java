@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.http;
+
+import org.solovyev.android.http.HttpTransaction;
+import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.http.HttpExecutor;
+import org.solovyev.android.messenger.http.HttpTimeouts;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.solovyev.android.messenger.http.HttpTimeouts.newHttpTimeouts;
+
+/**
+ * Executes VK transactions through application's {@link org.solovyev.android.messenger.http.HttpExecutor} with VK
+ * timeouts
+ */
+public final class VkHttp {
+
+	@Nonnull
+	private static final HttpTimeouts TIMEOUTS = newHttpTimeouts(TimeUnit.SECONDS.toMillis(10), TimeUnit.SECONDS.toMillis(30));
+
+	/**
+	 * Long poll server holds request for 20 seconds (see "wait" parameter)
+	 */
+	@Nonnull
+	private static final HttpTimeouts LONG_POLL_TIMEOUTS = newHttpTimeouts(TimeUnit.SECONDS.toMillis(10), TimeUnit.SECONDS.toMillis(35));
+
+	private VkHttp() {
+		throw new AssertionError();
+	}
+
+	public static <R> R execute(@Nonnull HttpTransaction<R> transaction) throws IOException {
+		return execute(App.getHttpExecutor(), transaction);
+	}
+
+	public static <R> R execute(@Nonnull HttpExecutor executor, @Nonnull HttpTransaction<R> transaction) throws IOException {
+		return executor.execute(transaction, TIMEOUTS);
+	}
+
+	@Nonnull
+	public static <R> List<R> execute(@Nonnull List<? extends HttpTransaction<R>> transactions) throws IOException {
+		return App.getHttpExecutor().execute(transactions, TIMEOUTS);
+	}
+
+	public static <R> R executeLongPoll(@Nonnull HttpTransaction<R> transaction) throws IOException {
+		return App.getHttpExecutor().executeLongPoll(transaction, LONG_POLL_TIMEOUTS);
+	}
+}
@@ -37,11 +37,11 @@ public class JsonLongPollData {
 	private List<LongPollUpdate> updates;
 
 	@Nonnull
-	public VkLongPollResult toResult() throws IllegalJsonException {
+	public VkLongPollResult toResult(@Nonnull VkLongPollUpdatesDispatcher dispatcher) throws IllegalJsonException {
 		if (ts == null) {
 			throw new IllegalJsonException();
 		}
 
-		return new VkLongPollResult(ts, updates == null ? Collections.<LongPollUpdate>emptyList() : updates);
+		return new VkLongPollResult(ts, updates == null ? Collections.<LongPollUpdate>emptyList() : updates, dispatcher);
 	}
 }
@@ -44,6 +44,15 @@ public interface LongPollUpdate {
 
 	void doUpdate(@Nonnull Account account) throws AccountException;
 
+	/**
+	 * Updates with the same key are coalesced within one long poll batch (only the latest one is executed) and are not
+	 * queued twice while the previous one is still waiting for execution, see {@link VkLongPollUpdatesDispatcher}
+	 *
+	 * @return key of the entity affected by this update
+	 */
+	@Nonnull
+	String getKey();
+
 	public static class Adapter implements JsonDeserializer<LongPollUpdate> {
 
 		@Override
@@ -131,6 +140,12 @@ public interface LongPollUpdate {
 			}
 		}
 
+		@Nonnull
+		@Override
+		public String getKey() {
+			return "typing:" + accountChatId + ":" + accountUserId;
+		}
+
 
 		@Nonnull
 		private static ChatService getChatService() {
@@ -162,6 +177,12 @@ public interface LongPollUpdate {
 			}
 		}
 
+		@Nonnull
+		@Override
+		public String getKey() {
+			return "typing:" + accountUserId;
+		}
+
 
 		@Nonnull
 		private static ChatService getChatService() {
@@ -183,6 +204,12 @@ public interface LongPollUpdate {
 			getChatService().syncChat(account.newChatEntity(accountChatId), account.getUser().getEntity());
 		}
 
+		@Nonnull
+		@Override
+		public String getKey() {
+			return "chat_changed:" + accountChatId;
+		}
+
 
 		@Nonnull
 		private ChatService getChatService() {
@@ -197,6 +224,11 @@ public interface LongPollUpdate {
 			// do nothing
 		}
 
+		@Nonnull
+		@Override
+		public String getKey() {
+			return "empty";
+		}
 
 	}
 
@@ -252,6 +284,17 @@ public interface LongPollUpdate {
 			}
 		}
 
+		@Nonnull
+		@Override
+		public String getKey() {
+			// all messages added to the same chat are loaded by one sync
+			if (accountChatId != null) {
+				return "messages:chat:" + accountChatId;
+			} else {
+				return "messages:friend:" + accountFriendId;
+			}
+		}
+
 		@Nonnull
 		private ChatService getChatService() {
 			return App.getChatService();
@@ -276,6 +319,13 @@ public interface LongPollUpdate {
 			getUserService().onContactPresenceChanged(account.getUser(), contact, online);
 		}
 
+		@Nonnull
+		@Override
+		public String getKey() {
+			// only the latest presence matters
+			return "presence:" + accountFriendId;
+		}
+
 		private UserService getUserService() {
 			return App.getUserService();
 		}
@@ -294,6 +344,12 @@ public interface LongPollUpdate {
 		public void doUpdate(@Nonnull Account account) {
 			// todo serso: implement
 		}
+
+		@Nonnull
+		@Override
+		public String getKey() {
+			return "remove_message:" + messageId;
+		}
 	}
 
 }
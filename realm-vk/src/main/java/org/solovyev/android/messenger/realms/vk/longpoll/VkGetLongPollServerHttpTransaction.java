@@ -30,13 +30,15 @@ import javax.annotation.Nonnull;
  */
 public class VkGetLongPollServerHttpTransaction extends AbstractVkHttpTransaction<LongPollServerData> {
 
+	@Nonnull
+	private static final Gson gson = new Gson();
+
 	public VkGetLongPollServerHttpTransaction(@Nonnull VkAccount realm) {
 		super(realm, "messages.getLongPollServer");
 	}
 
 	@Override
 	protected LongPollServerData getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		final Gson gson = new Gson();
 		final JsonLongPollResponse jsonLongPollResponse = gson.fromJson(json, JsonLongPollResponse.class);
 		return jsonLongPollResponse.toLongPollServerData();
 	}
@@ -19,6 +19,8 @@ package org.solovyev.android.messenger.realms.vk.longpoll;
 import android.util.Log;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
@@ -34,6 +36,7 @@ import org.solovyev.android.messenger.longpoll.LongPollResult;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -44,28 +47,53 @@ import java.util.List;
  */
 public class VkGetLongPollingDataHttpTransaction extends AbstractHttpTransaction<LongPollResult> {
 
+	@Nonnull
+	private static final String DEFAULT_CHARSET = "UTF-8";
+
+	@Nonnull
+	private static final Gson gson = new GsonBuilder()
+			.registerTypeAdapter(LongPollUpdate.class, new LongPollUpdate.Adapter())
+			.create();
+
 	@Nonnull
 	private final LongPollServerData longPollServerData;
 
-	VkGetLongPollingDataHttpTransaction(@Nonnull LongPollServerData longPollServerData) {
+	@Nonnull
+	private final VkLongPollUpdatesDispatcher dispatcher;
+
+	VkGetLongPollingDataHttpTransaction(@Nonnull LongPollServerData longPollServerData, @Nonnull VkLongPollUpdatesDispatcher dispatcher) {
 		super("http://" + longPollServerData.getServerUri(), HttpMethod.GET);
 		this.longPollServerData = longPollServerData;
+		this.dispatcher = dispatcher;
 	}
 
 	@Override
 	public LongPollResult getResponse(@Nonnull HttpResponse response) {
 		try {
 			final HttpEntity httpEntity = response.getEntity();
-			final String json = EntityUtils.toString(httpEntity);
-			Log.i("LongPolling", json);
 
-			// prepare builder
-			final GsonBuilder builder = new GsonBuilder();
-			builder.registerTypeAdapter(LongPollUpdate.class, new LongPollUpdate.Adapter());
-			final Gson gson = builder.create();
+			String charset = EntityUtils.getContentCharSet(httpEntity);
+			if (charset == null) {
+				charset = DEFAULT_CHARSET;
+			}
+
+			final JsonLongPollData jsonLongPollData;
+			final JsonReader reader = new JsonReader(new InputStreamReader(httpEntity.getContent(), charset));
+			try {
+				jsonLongPollData = gson.fromJson(reader, JsonLongPollData.class);
+			} finally {
+				reader.close();
+			}
+
+			if (jsonLongPollData == null) {
+				throw new IllegalJsonException();
+			}
 
-			final JsonLongPollData jsonLongPollData = gson.fromJson(json, JsonLongPollData.class);
-			return jsonLongPollData.toResult();
+			final VkLongPollResult result = jsonLongPollData.toResult(dispatcher);
+			Log.i("LongPolling", "Updates received: " + result.getUpdatesCount());
+			return result;
+		} catch (JsonParseException e) {
+			throw new IllegalJsonRuntimeException(new IllegalJsonException());
 		} catch (IOException e) {
 			throw new HttpRuntimeIoException(e);
 		} catch (IllegalJsonException e) {
@@ -16,9 +16,7 @@
 
 package org.solovyev.android.messenger.realms.vk.longpoll;
 
-import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.Account;
-import org.solovyev.android.messenger.accounts.AccountException;
 import org.solovyev.android.messenger.longpoll.LongPollResult;
 
 import javax.annotation.Nonnull;
@@ -38,9 +36,13 @@ public class VkLongPollResult implements LongPollResult {
 	@Nonnull
 	private List<LongPollUpdate> updates;
 
-	public VkLongPollResult(@Nonnull Long lastUpdate, @Nonnull List<LongPollUpdate> updates) {
+	@Nonnull
+	private final VkLongPollUpdatesDispatcher dispatcher;
+
+	VkLongPollResult(@Nonnull Long lastUpdate, @Nonnull List<LongPollUpdate> updates, @Nonnull VkLongPollUpdatesDispatcher dispatcher) {
 		this.lastUpdate = lastUpdate;
 		this.updates = updates;
+		this.dispatcher = dispatcher;
 	}
 
 	@Override
@@ -54,14 +56,13 @@ public class VkLongPollResult implements LongPollResult {
 		return longPollServerData;
 	}
 
+	int getUpdatesCount() {
+		return updates.size();
+	}
+
 	@Override
 	public void doUpdates(@Nonnull Account account) {
-		for (LongPollUpdate update : updates) {
-			try {
-				update.doUpdate(account);
-			} catch (AccountException e) {
-				App.getExceptionHandler().handleException(e);
-			}
-		}
+		// NOTE: updates are executed asynchronously => long poll thread can issue next request right away
+		dispatcher.dispatch(updates);
 	}
 }
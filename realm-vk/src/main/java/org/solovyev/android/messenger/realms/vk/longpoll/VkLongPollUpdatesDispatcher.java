@@ -0,0 +1,183 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.longpoll;
+
+import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.accounts.AccountException;
+
+import javax.annotation.Nonnull;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+
+/**
+ * Executes long poll updates off the long poll thread so the next long poll request can be issued immediately.
+ * Updates are coalesced by {@link LongPollUpdate#getKey()}: within one batch only the latest update for each key is
+ * kept and an update is not queued again while the previous update with the same key is still waiting for execution.
+ * Updates with the same key are never executed concurrently (updates are executed under one of {@link #LOCKS_COUNT}
+ * striped locks => memory used for locking doesn't grow with the number of keys).
+ */
+final class VkLongPollUpdatesDispatcher {
+
+	private static final int POOL_SIZE = 2;
+
+	private static final int LOCKS_COUNT = 16;
+
+	@Nonnull
+	private static final Executor sharedExecutor = newFixedThreadPool(POOL_SIZE, new UpdatesThreadFactory());
+
+	@Nonnull
+	private final Account account;
+
+	@Nonnull
+	private final Executor executor;
+
+	/**
+	 * Updates waiting for execution: key => latest update
+	 */
+	@Nonnull
+	private final ConcurrentMap<String, LongPollUpdate> pendingUpdates = new ConcurrentHashMap<String, LongPollUpdate>();
+
+	@Nonnull
+	private final Object[] locks = new Object[LOCKS_COUNT];
+
+	@Nonnull
+	private final AtomicLong receivedCount = new AtomicLong();
+
+	@Nonnull
+	private final AtomicLong executedCount = new AtomicLong();
+
+	VkLongPollUpdatesDispatcher(@Nonnull Account account) {
+		this(account, sharedExecutor);
+	}
+
+	VkLongPollUpdatesDispatcher(@Nonnull Account account, @Nonnull Executor executor) {
+		this.account = account;
+		this.executor = executor;
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Method queues updates for execution and returns immediately
+	 *
+	 * @param updates updates received in one long poll response
+	 */
+	void dispatch(@Nonnull List<LongPollUpdate> updates) {
+		if (updates.isEmpty()) {
+			return;
+		}
+
+		receivedCount.addAndGet(updates.size());
+
+		// NOTE: LinkedHashMap keeps the position of the first update for the key but the latest update is stored
+		final Map<String, LongPollUpdate> batch = new LinkedHashMap<String, LongPollUpdate>(updates.size());
+		for (LongPollUpdate update : updates) {
+			batch.put(update.getKey(), update);
+		}
+
+		for (Map.Entry<String, LongPollUpdate> entry : batch.entrySet()) {
+			final String key = entry.getKey();
+			if (pendingUpdates.put(key, entry.getValue()) == null) {
+				// nothing was waiting for this key => schedule new execution
+				executor.execute(new UpdateRunnable(key));
+			}
+		}
+	}
+
+	long getReceivedCount() {
+		return receivedCount.get();
+	}
+
+	long getExecutedCount() {
+		return executedCount.get();
+	}
+
+	@Nonnull
+	private Object getLock(@Nonnull String key) {
+		return locks[(key.hashCode() & 0x7FFFFFFF) % LOCKS_COUNT];
+	}
+
+	@Override
+	public String toString() {
+		return "VkLongPollUpdatesDispatcher{" +
+				"account=" + account.getId() +
+				", received=" + receivedCount +
+				", executed=" + executedCount +
+				", pending=" + pendingUpdates.size() +
+				'}';
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	private final class UpdateRunnable implements Runnable {
+
+		@Nonnull
+		private final String key;
+
+		private UpdateRunnable(@Nonnull String key) {
+			this.key = key;
+		}
+
+		@Override
+		public void run() {
+			synchronized (getLock(key)) {
+				// NOTE: update is removed only when execution starts => updates received meanwhile will be coalesced
+				final LongPollUpdate update = pendingUpdates.remove(key);
+				if (update != null) {
+					executedCount.incrementAndGet();
+					try {
+						update.doUpdate(account);
+					} catch (AccountException e) {
+						App.getExceptionHandler().handleException(e);
+					} catch (RuntimeException e) {
+						App.getExceptionHandler().handleException(e);
+					}
+				}
+			}
+		}
+	}
+
+	private static final class UpdatesThreadFactory implements ThreadFactory {
+
+		@Nonnull
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(@Nonnull Runnable r) {
+			final Thread thread = new Thread(r, "Vk long poll updates #" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -16,7 +16,7 @@
 
 package org.solovyev.android.messenger.realms.vk.longpoll;
 
-import org.solovyev.android.http.HttpTransactions;
+import org.solovyev.android.messenger.realms.vk.http.VkHttp;
 import org.solovyev.android.messenger.accounts.AccountException;
 import org.solovyev.android.messenger.longpoll.LongPollResult;
 import org.solovyev.android.messenger.longpoll.RealmLongPollService;
@@ -35,14 +35,18 @@ public class VkRealmLongPollService implements RealmLongPollService {
 	@Nonnull
 	private final VkAccount account;
 
+	@Nonnull
+	private final VkLongPollUpdatesDispatcher dispatcher;
+
 	public VkRealmLongPollService(@Nonnull VkAccount account) {
 		this.account = account;
+		this.dispatcher = new VkLongPollUpdatesDispatcher(account);
 	}
 
 	@Override
 	public Object startLongPolling() throws AccountException {
 		try {
-			return HttpTransactions.execute(new VkGetLongPollServerHttpTransaction(account));
+			return VkHttp.execute(new VkGetLongPollServerHttpTransaction(account));
 		} catch (Exception e) {
 			throw new AccountException(account.getId(), e);
 		}
@@ -52,7 +56,7 @@ public class VkRealmLongPollService implements RealmLongPollService {
 	public LongPollResult waitForResult(@Nullable Object longPollingData) throws AccountException {
 		try {
 			if (longPollingData instanceof LongPollServerData) {
-				return HttpTransactions.execute(new VkGetLongPollingDataHttpTransaction((LongPollServerData) longPollingData));
+				return VkHttp.executeLongPoll(new VkGetLongPollingDataHttpTransaction((LongPollServerData) longPollingData, dispatcher));
 			} else {
 				return null;
 			}
@@ -17,9 +17,13 @@
 package org.solovyev.android.messenger.realms.vk.messages;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.solovyev.android.messenger.http.IllegalJsonException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
@@ -31,6 +35,15 @@ import java.util.List;
  */
 public class JsonMessages {
 
+	@Nonnull
+	private static final Gson gson = new GsonBuilder()
+			.registerTypeAdapter(JsonMessages.class, new JsonMessages.Adapter())
+			.registerTypeAdapter(JsonMessageTypedAttachment.class, new JsonMessageTypedAttachment.Adapter())
+			.create();
+
+	@Nonnull
+	private static final TypeAdapter<JsonMessage> messageAdapter = gson.getAdapter(JsonMessage.class);
+
 	@Nullable
 	private Integer count;
 
@@ -42,6 +55,49 @@ public class JsonMessages {
 		return response;
 	}
 
+	@Nonnull
+	public static JsonMessages newFromJson(@Nonnull String json) {
+		return gson.fromJson(json, JsonMessages.class);
+	}
+
+	/**
+	 * Method reads VK messages array (first element of which is total count of messages) without building
+	 * intermediate JSON tree
+	 *
+	 * @param reader reader positioned at the beginning of messages array
+	 * @return list of messages
+	 */
+	@Nonnull
+	public static List<JsonMessage> readMessages(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		final List<JsonMessage> result = new ArrayList<JsonMessage>();
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+			if (reader.peek() == JsonToken.NUMBER) {
+				// total count
+				reader.skipValue();
+			} else {
+				result.add(readMessage(reader));
+			}
+		}
+		reader.endArray();
+
+		return result;
+	}
+
+	/**
+	 * @param reader reader positioned at the beginning of message object
+	 * @return message
+	 */
+	@Nonnull
+	public static JsonMessage readMessage(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		final JsonMessage message = messageAdapter.read(reader);
+		if (message == null) {
+			throw new IllegalJsonException();
+		}
+		return message;
+	}
+
 	public static class Adapter implements JsonDeserializer<JsonMessages> {
 
 		@Override
@@ -25,6 +25,9 @@ import java.util.List;
 
 class JsonUserIds {
 
+	@Nonnull
+	private static final Gson gson = new Gson();
+
 	@Nullable
 	private List<String> response;
 
@@ -35,7 +38,6 @@ class JsonUserIds {
 
 	@Nonnull
 	static JsonUserIds newFromJson(@Nonnull String json) {
-		final Gson gson = new Gson();
 		return gson.fromJson(json, JsonUserIds.class);
 	}
 }
@@ -17,14 +17,28 @@
 package org.solovyev.android.messenger.realms.vk.users;
 
 import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.http.IllegalJsonException;
+import org.solovyev.android.messenger.users.User;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 class JsonUsers {
 
+	@Nonnull
+	private static final Gson gson = new Gson();
+
+	@Nonnull
+	private static final TypeAdapter<JsonUser> userAdapter = gson.getAdapter(JsonUser.class);
+
 	@Nullable
 	private List<JsonUser> response;
 
@@ -35,7 +49,35 @@ class JsonUsers {
 
 	@Nonnull
 	static JsonUsers newFromJson(@Nonnull String json) {
-		final Gson gson = new Gson();
 		return gson.fromJson(json, JsonUsers.class);
 	}
+
+	/**
+	 * Method reads array of VK users and converts each of them to {@link User} as soon as it is read
+	 *
+	 * @param reader  reader positioned at the beginning of users array
+	 * @param account account to which users belong
+	 * @return list of users
+	 */
+	@Nonnull
+	static List<User> readUsers(@Nonnull JsonReader reader, @Nonnull Account account) throws IOException, IllegalJsonException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return Collections.emptyList();
+		}
+
+		final List<User> result = new ArrayList<User>();
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+			final JsonUser jsonUser = userAdapter.read(reader);
+			if (jsonUser == null) {
+				throw new IllegalJsonException();
+			}
+			result.add(jsonUser.toUser(account));
+		}
+		reader.endArray();
+
+		return result;
+	}
 }
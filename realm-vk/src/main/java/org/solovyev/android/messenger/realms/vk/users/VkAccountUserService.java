@@ -17,21 +17,32 @@
 package org.solovyev.android.messenger.realms.vk.users;
 
 import org.solovyev.android.http.HttpTransaction;
-import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
-import org.solovyev.android.messenger.users.AccountUserService;
+import org.solovyev.android.messenger.users.IncrementalAccountUserService;
 import org.solovyev.android.messenger.users.User;
-import org.solovyev.android.messenger.users.UserService;
+import org.solovyev.android.messenger.users.Users;
 import org.solovyev.common.collections.Collections;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import static org.solovyev.android.http.HttpTransactions.execute;
+import static org.solovyev.android.messenger.realms.vk.http.VkHttp.execute;
 
-public class VkAccountUserService implements AccountUserService {
+public class VkAccountUserService implements IncrementalAccountUserService {
+
+	/**
+	 * Fields which are loaded for contact digests: profile fields shown in contacts list (avatar change changes the
+	 * url of the photo). Changes of other fields are picked up by periodic full synchronization of contacts (see
+	 * {@link org.solovyev.android.messenger.users.UserService#syncContacts(org.solovyev.android.messenger.accounts.Account)})
+	 */
+	@Nonnull
+	private static final List<ApiUserField> DIGEST_FIELDS = Arrays.asList(ApiUserField.uid, ApiUserField.first_name, ApiUserField.last_name, ApiUserField.nickname, ApiUserField.photo, ApiUserField.domain);
 
 	@Nonnull
 	private final VkAccount account;
@@ -52,6 +63,34 @@ public class VkAccountUserService implements AccountUserService {
 		return executeHttpTransaction(VkFriendsGetHttpTransaction.newInstance(account, account.getUser().getEntity().getAccountEntityId()));
 	}
 
+	@Nonnull
+	@Override
+	public Map<String, String> getContactDigests() throws AccountConnectionException {
+		final List<User> contacts = executeHttpTransaction(VkFriendsGetHttpTransaction.newInstance(account, account.getUser().getEntity().getAccountEntityId(), DIGEST_FIELDS));
+
+		final Map<String, String> result = new HashMap<String, String>(contacts.size());
+		for (User contact : contacts) {
+			result.put(contact.getEntity().getAccountEntityId(), Users.getDigest(contact));
+		}
+		return result;
+	}
+
+	@Nonnull
+	@Override
+	public List<User> getUsersByIds(@Nonnull Collection<String> accountUserIds) throws AccountConnectionException {
+		final List<User> result = new ArrayList<User>(accountUserIds.size());
+		if (!accountUserIds.isEmpty()) {
+			try {
+				for (List<User> users : execute(VkUsersGetHttpTransaction.newInstancesForUserIds(account, new ArrayList<String>(accountUserIds), null))) {
+					result.addAll(users);
+				}
+			} catch (Exception e) {
+				throw new AccountConnectionException(account.getId(), e);
+			}
+		}
+		return result;
+	}
+
 	@Nonnull
 	private <R> R executeHttpTransaction(@Nonnull HttpTransaction<R> transaction) throws AccountConnectionException {
 		try {
@@ -65,11 +104,14 @@ public class VkAccountUserService implements AccountUserService {
 	@Nonnull
 	@Override
 	public List<User> getOnlineUsers() throws AccountConnectionException {
-		final List<User> result = new ArrayList<User>();
+		final List<String> accountUserIds = executeHttpTransaction(new VkFriendsGetOnlineHttpTransaction(account));
+		final List<User> result = new ArrayList<User>(accountUserIds.size());
 
-		final UserService userService = App.getUserService();
-		for (String accountUserId : executeHttpTransaction(new VkFriendsGetOnlineHttpTransaction(account))) {
-			result.add(userService.getUserById(account.newUserEntity(accountUserId)).cloneWithNewStatus(true));
+		if (!accountUserIds.isEmpty()) {
+			final Map<String, User> users = account.getUsersResolver().resolve(accountUserIds);
+			for (String accountUserId : accountUserIds) {
+				result.add(users.get(accountUserId).cloneWithNewStatus(true));
+			}
 		}
 
 		return result;
@@ -16,39 +16,48 @@
 
 package org.solovyev.android.messenger.realms.vk.users;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.solovyev.android.messenger.http.IllegalJsonException;
-import org.solovyev.android.messenger.http.IllegalJsonRuntimeException;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
-import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
 import org.solovyev.android.messenger.users.User;
+import org.solovyev.common.collections.Collections;
+import org.solovyev.common.text.Strings;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.List;
 
-public class VkFriendsGetHttpTransaction extends AbstractVkHttpTransaction<List<User>> {
+public class VkFriendsGetHttpTransaction extends AbstractVkStreamingHttpTransaction<List<User>> {
 
 	@Nonnull
 	private final String userId;
 
-	private VkFriendsGetHttpTransaction(@Nonnull VkAccount realm, @Nonnull String userId) {
+	@Nullable
+	private final List<ApiUserField> apiUserFields;
+
+	private VkFriendsGetHttpTransaction(@Nonnull VkAccount realm, @Nonnull String userId, @Nullable List<ApiUserField> apiUserFields) {
 		super(realm, "friends.get");
 		this.userId = userId;
+		this.apiUserFields = apiUserFields;
 	}
 
 	@Nonnull
 	public static VkFriendsGetHttpTransaction newInstance(@Nonnull VkAccount realm, @Nonnull String userId) {
-		return new VkFriendsGetHttpTransaction(realm, userId);
+		return new VkFriendsGetHttpTransaction(realm, userId, null);
+	}
+
+	@Nonnull
+	public static VkFriendsGetHttpTransaction newInstance(@Nonnull VkAccount realm, @Nonnull String userId, @Nullable List<ApiUserField> apiUserFields) {
+		return new VkFriendsGetHttpTransaction(realm, userId, apiUserFields);
 	}
 
 	@Override
-	protected List<User> getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		try {
-			return JsonUserConverter.newInstance(getAccount()).convert(json);
-		} catch (IllegalJsonRuntimeException e) {
-			throw e.getIllegalJsonException();
-		}
+	protected List<User> readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		return JsonUsers.readUsers(reader, getAccount());
 	}
 
 	@Nonnull
@@ -57,8 +66,11 @@ public class VkFriendsGetHttpTransaction extends AbstractVkHttpTransaction<List<
 		final List<NameValuePair> result = super.getRequestParameters();
 
 		result.add(new BasicNameValuePair("uid", userId));
-		result.add(new BasicNameValuePair("fields", ApiUserField.getAllFieldsRequestParameter()));
-		//result.add(new BasicNameValuePair("fields", ApiUserField.uid + "," + ApiUserField.first_name + "," + ApiUserField.last_name));
+		if (Collections.isEmpty(apiUserFields)) {
+			result.add(new BasicNameValuePair("fields", ApiUserField.getAllFieldsRequestParameter()));
+		} else {
+			result.add(new BasicNameValuePair("fields", Strings.getAllValues(apiUserFields)));
+		}
 
 		return result;
 	}
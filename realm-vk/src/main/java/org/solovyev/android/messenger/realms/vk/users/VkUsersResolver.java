@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.users;
+
+import android.util.Log;
+import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.http.HttpExecutor;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.messenger.users.UserService;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.solovyev.android.messenger.realms.vk.http.VkHttp.execute;
+
+/**
+ * Resolves VK users in bulk: users which are not stored locally are loaded with as few users.get requests as possible
+ * (up to 1000 ids per request, see {@link VkUsersGetHttpTransaction}). Ids which VK doesn't know about are remembered
+ * for {@link #NOT_FOUND_TTL} ms and are not requested again.
+ */
+public final class VkUsersResolver {
+
+	@Nonnull
+	private static final String TAG = "VkUsersResolver";
+
+	private static final long NOT_FOUND_TTL = TimeUnit.HOURS.toMillis(1);
+
+	@Nonnull
+	private final VkAccount account;
+
+	/**
+	 * Account user id => time when user was not found in VK
+	 */
+	@Nonnull
+	private final ConcurrentMap<String, Long> notFoundUsers = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * Services to be used instead of application's ones, null => application's service is used
+	 */
+	@Nullable
+	private final UserService userService;
+
+	@Nullable
+	private final HttpExecutor httpExecutor;
+
+	public VkUsersResolver(@Nonnull VkAccount account) {
+		this(account, null, null);
+	}
+
+	// for tests
+	VkUsersResolver(@Nonnull VkAccount account, @Nullable UserService userService, @Nullable HttpExecutor httpExecutor) {
+		this.account = account;
+		this.userService = userService;
+		this.httpExecutor = httpExecutor;
+	}
+
+	/**
+	 * NOTE: method might do network requests => must not be called from UI thread
+	 *
+	 * @param accountUserIds ids of users in VK
+	 * @return map of account user id => user. Map contains all requested ids: if user can't be loaded dummy user object
+	 * is returned (as in {@link UserService#getUserById(org.solovyev.android.messenger.entities.Entity, boolean)})
+	 */
+	@Nonnull
+	public Map<String, User> resolve(@Nonnull Collection<String> accountUserIds) {
+		final UserService userService = this.userService != null ? this.userService : App.getUserService();
+		final HttpExecutor httpExecutor = this.httpExecutor != null ? this.httpExecutor : App.getHttpExecutor();
+
+		final Map<String, User> result = new HashMap<String, User>(accountUserIds.size());
+		final List<String> unknownIds = new ArrayList<String>();
+
+		final long now = System.currentTimeMillis();
+		for (String accountUserId : new LinkedHashSet<String>(accountUserIds)) {
+			try {
+				result.put(accountUserId, userService.getUserById(account.newUserEntity(accountUserId), false, false));
+			} catch (NoSuchElementException e) {
+				if (!isNotFound(accountUserId, now)) {
+					unknownIds.add(accountUserId);
+				}
+			}
+		}
+
+		if (!unknownIds.isEmpty()) {
+			boolean loaded = true;
+			int loadedCount = 0;
+			for (VkUsersGetHttpTransaction transaction : VkUsersGetHttpTransaction.newInstancesForUserIds(account, unknownIds, null)) {
+				try {
+					for (User user : execute(httpExecutor, transaction)) {
+						userService.saveUser(user);
+						result.put(user.getEntity().getAccountEntityId(), user);
+						loadedCount++;
+					}
+				} catch (Exception e) {
+					// unable to load from VK => dummy users will be returned
+					loaded = false;
+					Log.e(TAG, e.getMessage(), e);
+				}
+			}
+
+			if (loaded) {
+				for (String unknownId : unknownIds) {
+					if (!result.containsKey(unknownId)) {
+						notFoundUsers.put(unknownId, now);
+					}
+				}
+			}
+
+			Log.d(TAG, "Users requested: " + unknownIds.size() + ", loaded: " + loadedCount);
+		}
+
+		for (String accountUserId : accountUserIds) {
+			if (!result.containsKey(accountUserId)) {
+				result.put(accountUserId, userService.getUserById(account.newUserEntity(accountUserId), false, true));
+			}
+		}
+
+		return result;
+	}
+
+	private boolean isNotFound(@Nonnull String accountUserId, long now) {
+		final Long notFoundTime = notFoundUsers.get(accountUserId);
+		if (notFoundTime == null) {
+			return false;
+		} else if (now - notFoundTime > NOT_FOUND_TTL) {
+			notFoundUsers.remove(accountUserId, notFoundTime);
+			return false;
+		} else {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.chats;
+
+import com.google.gson.stream.JsonReader;
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.messenger.accounts.AccountState;
+import org.solovyev.android.messenger.chats.AccountChat;
+import org.solovyev.android.messenger.entities.Entities;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.realms.test.TestRealm;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.VkAccountConfiguration;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.solovyev.android.messenger.accounts.Accounts.newNeverSyncedData;
+import static org.solovyev.android.messenger.users.Users.newEmptyUser;
+
+/**
+ * Compares throughput and allocations of decoding messages.getHistory through {@link JsonChatConverter} and through
+ * {@link JsonHistoryDecoder}. Not a part of unit tests, run with <code>mvn test -P benchmarks</code>
+ */
+public class JsonHistoryDecoderBenchmark {
+
+	private static final int MESSAGES_COUNT = 10000;
+	private static final int ITERATIONS = 10;
+
+	@Nonnull
+	private static final String CHAT_ID = "18";
+
+	@Nonnull
+	private VkAccount account;
+
+	@Nonnull
+	private byte[] payload;
+
+	@Before
+	public void setUp() throws Exception {
+		final TestRealm realm = new TestRealm();
+		final String accountId = realm.getId() + "~1";
+		account = new VkAccount(accountId, realm, newEmptyUser(Entities.newEntity(accountId, "140015")), new VkAccountConfiguration(), AccountState.enabled, newNeverSyncedData());
+		payload = newHistoryPayload(MESSAGES_COUNT);
+	}
+
+	@Test
+	public void testShouldDecodeSameMessages() throws Exception {
+		final List<Message> expected = convert(payload);
+		final List<Message> actual = decode(payload);
+
+		assertEquals(MESSAGES_COUNT, actual.size());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			final Message e = expected.get(i);
+			final Message a = actual.get(i);
+			assertEquals(e.getEntity(), a.getEntity());
+			assertEquals(e.getChat(), a.getChat());
+			assertEquals(e.getAuthor(), a.getAuthor());
+			assertEquals(e.getBody(), a.getBody());
+			assertEquals(e.getSendDate(), a.getSendDate());
+			assertEquals(e.isRead(), a.isRead());
+			assertEquals(e.getState(), a.getState());
+		}
+	}
+
+	@Test
+	public void testDecodingThroughput() throws Exception {
+		run("JsonChatConverter", new Runnable() {
+			@Override
+			public void run() {
+				convert(payload);
+			}
+		});
+
+		run("JsonHistoryDecoder", new Runnable() {
+			@Override
+			public void run() {
+				decode(payload);
+			}
+		});
+	}
+
+	private void run(@Nonnull String name, @Nonnull Runnable runnable) {
+		// warm up
+		for (int i = 0; i < ITERATIONS; i++) {
+			runnable.run();
+		}
+
+		final long startBytes = getAllocatedBytes();
+		final long startTime = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			runnable.run();
+		}
+		final long time = (System.nanoTime() - startTime) / ITERATIONS;
+		final long bytes = (getAllocatedBytes() - startBytes) / ITERATIONS;
+
+		System.out.println(name + ": " + MESSAGES_COUNT * 1000000000L / time + " messages/sec, allocated=" + (startBytes < 0 ? "n/a" : bytes / 1024 + "KB"));
+	}
+
+	@Nonnull
+	private List<Message> convert(@Nonnull byte[] payload) {
+		try {
+			final List<AccountChat> chats = new JsonChatConverter(account.getUser(), CHAT_ID, null, account.getUsersResolver(), account).convert(new String(payload, "UTF-8"));
+			final List<Message> result = new ArrayList<Message>();
+			for (AccountChat chat : chats) {
+				result.addAll(chat.getMessages());
+			}
+			return result;
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	@Nonnull
+	private List<Message> decode(@Nonnull byte[] payload) {
+		try {
+			final JsonReader reader = newReader(payload);
+			try {
+				reader.beginObject();
+				reader.nextName();
+				final List<Message> result = new JsonHistoryDecoder(account.getUser(), CHAT_ID, null, account).decode(reader);
+				reader.endObject();
+				return result;
+			} finally {
+				reader.close();
+			}
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	@Nonnull
+	private static JsonReader newReader(@Nonnull byte[] payload) throws Exception {
+		return new JsonReader(new InputStreamReader(new ByteArrayInputStream(payload), "UTF-8"));
+	}
+
+	private static long getAllocatedBytes() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		} else {
+			return -1;
+		}
+	}
+
+	@Nonnull
+	private static byte[] newHistoryPayload(int count) throws Exception {
+		final List<String> authors = Arrays.asList("6492", "5213", "140015");
+		final long date = 1371397834L;
+
+		final StringBuilder result = new StringBuilder(count * 160);
+		result.append("{\"response\":[").append(count);
+		for (int i = 0; i < count; i++) {
+			final String author = authors.get(i % authors.size());
+			final boolean out = author.equals("140015");
+			result.append(",{\"mid\":").append(1000 + i)
+					.append(",\"uid\":").append(author)
+					.append(",\"from_id\":").append(author)
+					.append(",\"date\":").append(date + i * 17)
+					.append(",\"read_state\":").append(i % 5 == 0 ? 0 : 1)
+					.append(",\"out\":").append(out ? 1 : 0)
+					.append(",\"body\":\"Сообщение #").append(i).append(", see you tomorrow at 10:00\"")
+					.append(",\"chat_id\":").append(CHAT_ID)
+					.append('}');
+		}
+		result.append("]}");
+		return result.toString().getBytes("UTF-8");
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.messenger.realms.vk.chats;
+
+import org.apache.http.NameValuePair;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.http.HttpTransaction;
+import org.solovyev.android.messenger.accounts.AccountConnectionException;
+import org.solovyev.android.messenger.accounts.AccountState;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.http.HttpExecutor;
+import org.solovyev.android.messenger.http.HttpMetrics;
+import org.solovyev.android.messenger.http.HttpTimeouts;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.realms.RealmRateLimiter;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.VkAccountConfiguration;
+import org.solovyev.android.messenger.realms.vk.VkRealm;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.System.currentTimeMillis;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.solovyev.android.messenger.accounts.Accounts.newNeverSyncedData;
+import static org.solovyev.android.messenger.chats.Chats.newPrivateChat;
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+import static org.solovyev.android.messenger.messages.Messages.newMessage;
+import static org.solovyev.android.messenger.realms.vk.chats.VkHistoryBackfill.PROPERTY_DONE;
+import static org.solovyev.android.messenger.realms.vk.chats.VkHistoryBackfill.PROPERTY_OFFSET;
+import static org.solovyev.android.messenger.realms.vk.chats.VkMessagesGetHistoryPageHttpTransaction.PAGE_SIZE;
+import static org.solovyev.android.messenger.users.Users.newEmptyUser;
+
+@RunWith(RobolectricTestRunner.class)
+public class VkHistoryBackfillTest {
+
+	private static final int TOTAL_COUNT = 5 * PAGE_SIZE + PAGE_SIZE / 2;
+
+	@Nonnull
+	private static final String CHAT_ID = "0:1";
+
+	@Nonnull
+	private VkAccount account;
+
+	@Nonnull
+	private HistoryHttpExecutor httpExecutor;
+
+	@Nonnull
+	private ChatService chatService;
+
+	@Nonnull
+	private volatile Chat chat;
+
+	/**
+	 * Saved messages in order of saving
+	 */
+	@Nonnull
+	private List<Message> savedMessages;
+
+	@Before
+	public void setUp() throws Exception {
+		account = new VkAccount("vk~test", new VkRealm(), newEmptyUser(newEntity("vk~test", "0")), new VkAccountConfiguration("login", "password"), AccountState.enabled, newNeverSyncedData());
+		httpExecutor = new HistoryHttpExecutor();
+		chat = newPrivateChat(account.newChatEntity(CHAT_ID));
+		savedMessages = new ArrayList<Message>();
+		chatService = newChatService();
+	}
+
+	@Nonnull
+	private ChatService newChatService() {
+		final ChatService chatService = mock(ChatService.class);
+		when(chatService.getChatById(any(Entity.class))).thenAnswer(new Answer<Chat>() {
+			@Override
+			public Chat answer(InvocationOnMock invocation) throws Throwable {
+				return chat;
+			}
+		});
+		when(chatService.updateChat(any(Chat.class))).thenAnswer(new Answer<Chat>() {
+			@Override
+			public Chat answer(InvocationOnMock invocation) throws Throwable {
+				chat = (Chat) invocation.getArguments()[0];
+				return chat;
+			}
+		});
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				//noinspection unchecked
+				savedMessages.addAll((Collection<? extends Message>) invocation.getArguments()[1]);
+				return null;
+			}
+		}).when(chatService).saveMessages(any(Entity.class), anyCollection());
+		return chatService;
+	}
+
+	@Nonnull
+	private VkHistoryBackfill newBackfill(@Nullable RealmRateLimiter rateLimiter) {
+		return new VkHistoryBackfill(account, CHAT_ID, chatService, httpExecutor, rateLimiter);
+	}
+
+	@Test
+	public void testShouldSaveWholeHistoryInOrder() throws Exception {
+		assertEquals(TOTAL_COUNT, newBackfill(null).run());
+
+		assertSavedInOrder(TOTAL_COUNT);
+		assertEquals(String.valueOf(TOTAL_COUNT), chat.getPropertyValueByName(PROPERTY_OFFSET));
+		assertEquals("true", chat.getPropertyValueByName(PROPERTY_DONE));
+
+		// history is imported => nothing to do
+		final int requests = httpExecutor.requestedOffsets.size();
+		assertEquals(0, newBackfill(null).run());
+		assertEquals(requests, httpExecutor.requestedOffsets.size());
+	}
+
+	@Test
+	public void testShouldResumeAfterInterruptedRun() throws Exception {
+		final int failedOffset = 3 * PAGE_SIZE;
+		httpExecutor.failedOffset = failedOffset;
+		try {
+			newBackfill(null).run();
+			fail();
+		} catch (AccountConnectionException e) {
+			// ok
+		}
+
+		// pages before failed one are saved, pages after it are not
+		assertSavedInOrder(failedOffset);
+		assertEquals(String.valueOf(failedOffset), chat.getPropertyValueByName(PROPERTY_OFFSET));
+		assertEquals("false", chat.getPropertyValueByName(PROPERTY_DONE));
+
+		httpExecutor.failedOffset = -1;
+		httpExecutor.requestedOffsets.clear();
+		assertEquals(TOTAL_COUNT - failedOffset, newBackfill(null).run());
+
+		// loading continues from the failed page
+		for (Integer offset : httpExecutor.requestedOffsets) {
+			assertTrue(offset >= failedOffset);
+		}
+		assertSavedInOrder(TOTAL_COUNT);
+		assertEquals("true", chat.getPropertyValueByName(PROPERTY_DONE));
+	}
+
+	@Test
+	public void testShouldStayWithinRequestBudget() throws Exception {
+		final RealmRateLimiter rateLimiter = new RealmRateLimiter(30L);
+
+		final long start = currentTimeMillis();
+		newBackfill(rateLimiter).run();
+		final int requests = httpExecutor.requestedOffsets.size();
+
+		assertEquals(6, requests);
+		assertTrue(currentTimeMillis() - start >= (requests - 1) * rateLimiter.getInterval());
+		assertTrue(httpExecutor.maxRunning.get() <= 3);
+		assertSavedInOrder(TOTAL_COUNT);
+	}
+
+	private void assertSavedInOrder(int count) {
+		assertEquals(count, savedMessages.size());
+		for (int i = 0; i < count; i++) {
+			assertEquals(String.valueOf(i), savedMessages.get(i).getEntity().getAccountEntityId());
+		}
+	}
+
+	/**
+	 * Emulates messages.getHistory: returns page of {@link #TOTAL_COUNT} messages (message id = offset in history)
+	 */
+	private final class HistoryHttpExecutor implements HttpExecutor {
+
+		@Nonnull
+		private final List<Integer> requestedOffsets = new ArrayList<Integer>();
+
+		@Nonnull
+		private final AtomicInteger running = new AtomicInteger();
+
+		@Nonnull
+		private final AtomicInteger maxRunning = new AtomicInteger();
+
+		private volatile int failedOffset = -1;
+
+		@Override
+		public <R> R execute(@Nonnull HttpTransaction<R> transaction) throws IOException {
+			final int running = this.running.incrementAndGet();
+			try {
+				if (running > maxRunning.get()) {
+					maxRunning.set(running);
+				}
+
+				int offset = -1;
+				for (NameValuePair parameter : transaction.getRequestParameters()) {
+					if (parameter.getName().equals("offset")) {
+						offset = Integer.valueOf(parameter.getValue());
+					}
+				}
+
+				synchronized (requestedOffsets) {
+					requestedOffsets.add(offset);
+				}
+
+				if (offset == failedOffset) {
+					throw new IOException("Test");
+				}
+
+				final List<Message> messages = new ArrayList<Message>(PAGE_SIZE);
+				for (int i = offset; i < Math.min(offset + PAGE_SIZE, TOTAL_COUNT); i++) {
+					messages.add(newMessage(account.newMessageEntity(String.valueOf(i))));
+				}
+				//noinspection unchecked
+				return (R) new VkHistoryPage(offset, TOTAL_COUNT, messages);
+			} finally {
+				this.running.decrementAndGet();
+			}
+		}
+
+		@Override
+		public <R> R execute(@Nonnull HttpTransaction<R> transaction, @Nonnull HttpTimeouts timeouts) throws IOException {
+			return execute(transaction);
+		}
+
+		@Nonnull
+		@Override
+		public <R> List<R> execute(@Nonnull List<? extends HttpTransaction<R>> transactions, @Nonnull HttpTimeouts timeouts) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public <R> R executeLongPoll(@Nonnull HttpTransaction<R> transaction, @Nonnull HttpTimeouts timeouts) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Nonnull
+		@Override
+		public HttpMetrics getMetrics() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.longpoll;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.realms.test.TestAccount;
+import org.solovyev.android.messenger.realms.test.TestRealm;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VkLongPollUpdatesDispatcherTest {
+
+	@Nonnull
+	private QueueExecutor executor;
+
+	@Nonnull
+	private VkLongPollUpdatesDispatcher dispatcher;
+
+	@Nonnull
+	private List<String> executed;
+
+	@Before
+	public void setUp() throws Exception {
+		executor = new QueueExecutor();
+		executed = new ArrayList<String>();
+		dispatcher = new VkLongPollUpdatesDispatcher(new TestAccount(new TestRealm()), executor);
+	}
+
+	@Test
+	public void testShouldCoalesceUpdatesInBatch() throws Exception {
+		final List<LongPollUpdate> updates = new ArrayList<LongPollUpdate>();
+		for (int i = 0; i < 40; i++) {
+			updates.add(new TestUpdate("chat1", "message" + i));
+		}
+		updates.add(new TestUpdate("chat2", "message"));
+		dispatcher.dispatch(updates);
+
+		assertEquals(2, executor.runnables.size());
+		executor.runAll();
+
+		assertEquals(Arrays.asList("chat1: message39", "chat2: message"), executed);
+		assertEquals(41, dispatcher.getReceivedCount());
+		assertEquals(2, dispatcher.getExecutedCount());
+	}
+
+	@Test
+	public void testShouldCoalesceWithPendingUpdates() throws Exception {
+		dispatcher.dispatch(Arrays.<LongPollUpdate>asList(new TestUpdate("presence", "online")));
+		dispatcher.dispatch(Arrays.<LongPollUpdate>asList(new TestUpdate("presence", "offline")));
+
+		assertEquals(1, executor.runnables.size());
+		executor.runAll();
+
+		// the latest update wins
+		assertEquals(Arrays.asList("presence: offline"), executed);
+	}
+
+	@Test
+	public void testShouldScheduleNewExecutionAfterPreviousStarted() throws Exception {
+		dispatcher.dispatch(Arrays.<LongPollUpdate>asList(new TestUpdate("chat", "first")));
+		executor.runAll();
+		dispatcher.dispatch(Arrays.<LongPollUpdate>asList(new TestUpdate("chat", "second")));
+		executor.runAll();
+
+		assertEquals(Arrays.asList("chat: first", "chat: second"), executed);
+		assertEquals(2, dispatcher.getExecutedCount());
+	}
+
+	@Test
+	public void testShouldNotScheduleEmptyBatch() throws Exception {
+		dispatcher.dispatch(new ArrayList<LongPollUpdate>());
+		assertTrue(executor.runnables.isEmpty());
+		assertEquals(0, dispatcher.getReceivedCount());
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	private static final class QueueExecutor implements Executor {
+
+		@Nonnull
+		private final List<Runnable> runnables = new ArrayList<Runnable>();
+
+		@Override
+		public void execute(@Nonnull Runnable command) {
+			runnables.add(command);
+		}
+
+		void runAll() {
+			while (!runnables.isEmpty()) {
+				runnables.remove(0).run();
+			}
+		}
+	}
+
+	private final class TestUpdate implements LongPollUpdate {
+
+		@Nonnull
+		private final String key;
+
+		@Nonnull
+		private final String value;
+
+		private TestUpdate(@Nonnull String key, @Nonnull String value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public void doUpdate(@Nonnull Account account) {
+			executed.add(key + ": " + value);
+		}
+
+		@Nonnull
+		@Override
+		public String getKey() {
+			return key;
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.users;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.stream.JsonReader;
+import org.junit.Test;
+import org.solovyev.android.messenger.realms.test.TestAccount;
+import org.solovyev.android.messenger.realms.test.TestRealm;
+import org.solovyev.android.messenger.realms.vk.messages.JsonMessage;
+import org.solovyev.android.messenger.realms.vk.messages.JsonMessages;
+import org.solovyev.android.messenger.users.User;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares allocations and time of decoding recorded VK payloads (scaled up to realistic sizes) through
+ * {@link String} + Gson tree and directly from the stream with {@link JsonReader}.
+ * Not a part of unit tests, run with <code>mvn test -P benchmarks</code>
+ */
+public class JsonDecodingBenchmark {
+
+	private static final int USERS_COUNT = 5000;
+	private static final int MESSAGES_COUNT = 200;
+	private static final int ITERATIONS = 20;
+
+	@Nonnull
+	private final TestAccount account = new TestAccount(new TestRealm());
+
+	@Test
+	public void testFriendsDecoding() throws Exception {
+		final byte[] payload = scale(readFixture("friends_get.json"), USERS_COUNT, false);
+
+		final Decoder stringDecoder = new Decoder() {
+			@Override
+			public int decode(@Nonnull byte[] payload) throws Exception {
+				final List<JsonUser> jsonUsers = JsonUsers.newFromJson(new String(payload, "UTF-8")).getUsers();
+				for (JsonUser jsonUser : jsonUsers) {
+					jsonUser.toUser(account);
+				}
+				return jsonUsers.size();
+			}
+		};
+
+		final Decoder streamDecoder = new Decoder() {
+			@Override
+			public int decode(@Nonnull byte[] payload) throws Exception {
+				final JsonReader reader = newReader(payload);
+				try {
+					reader.beginObject();
+					reader.nextName();
+					final List<User> users = JsonUsers.readUsers(reader, account);
+					reader.endObject();
+					return users.size();
+				} finally {
+					reader.close();
+				}
+			}
+		};
+
+		assertEquals(USERS_COUNT, stringDecoder.decode(payload));
+		assertEquals(USERS_COUNT, streamDecoder.decode(payload));
+
+		run("friends.get, string", stringDecoder, payload);
+		run("friends.get, stream", streamDecoder, payload);
+	}
+
+	@Test
+	public void testHistoryDecoding() throws Exception {
+		final byte[] payload = scale(readFixture("messages_get_history.json"), MESSAGES_COUNT, true);
+
+		final Decoder stringDecoder = new Decoder() {
+			@Override
+			public int decode(@Nonnull byte[] payload) throws Exception {
+				final List<JsonMessage> messages = JsonMessages.newFromJson(new String(payload, "UTF-8")).getResponse();
+				return messages == null ? 0 : messages.size();
+			}
+		};
+
+		final Decoder streamDecoder = new Decoder() {
+			@Override
+			public int decode(@Nonnull byte[] payload) throws Exception {
+				final JsonReader reader = newReader(payload);
+				try {
+					reader.beginObject();
+					reader.nextName();
+					final List<JsonMessage> messages = JsonMessages.readMessages(reader);
+					reader.endObject();
+					return messages.size();
+				} finally {
+					reader.close();
+				}
+			}
+		};
+
+		assertEquals(MESSAGES_COUNT, stringDecoder.decode(payload));
+		assertEquals(MESSAGES_COUNT, streamDecoder.decode(payload));
+
+		run("messages.getHistory, string", stringDecoder, payload);
+		run("messages.getHistory, stream", streamDecoder, payload);
+	}
+
+	private static void run(@Nonnull String name, @Nonnull Decoder decoder, @Nonnull byte[] payload) throws Exception {
+		// warm up
+		for (int i = 0; i < ITERATIONS; i++) {
+			decoder.decode(payload);
+		}
+
+		final long startBytes = getAllocatedBytes();
+		final long startTime = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			decoder.decode(payload);
+		}
+		final long time = (System.nanoTime() - startTime) / ITERATIONS;
+		final long bytes = (getAllocatedBytes() - startBytes) / ITERATIONS;
+
+		System.out.println(name + ": payload=" + payload.length / 1024 + "KB, time=" + time / 1000 + "us, allocated=" + (startBytes < 0 ? "n/a" : bytes / 1024 + "KB"));
+	}
+
+	private static long getAllocatedBytes() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		} else {
+			return -1;
+		}
+	}
+
+	@Nonnull
+	private static JsonReader newReader(@Nonnull byte[] payload) throws IOException {
+		return new JsonReader(new InputStreamReader(new ByteArrayInputStream(payload), "UTF-8"));
+	}
+
+	@Nonnull
+	private String readFixture(@Nonnull String name) throws IOException {
+		final InputStream in = getClass().getResourceAsStream(name);
+		try {
+			return new String(ByteStreams.toByteArray(in), "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Method repeats elements of "response" array of recorded payload until <var>count</var> elements are in it
+	 */
+	@Nonnull
+	private static byte[] scale(@Nonnull String fixture, int count, boolean withCount) throws IOException {
+		String elements = fixture.substring(fixture.indexOf('[') + 1, fixture.lastIndexOf(']')).trim();
+		if (withCount) {
+			// first element is total count
+			elements = elements.substring(elements.indexOf(',') + 1).trim();
+		}
+
+		final String[] records = elements.split(",\\s*\\n");
+		final StringBuilder result = new StringBuilder(fixture.length() * (count / records.length + 1));
+		result.append("{\"response\":[");
+		if (withCount) {
+			result.append(count).append(',');
+		}
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				result.append(',');
+			}
+			result.append(records[i % records.length]);
+		}
+		result.append("]}");
+		return result.toString().getBytes("UTF-8");
+	}
+
+	private static interface Decoder {
+		int decode(@Nonnull byte[] payload) throws Exception;
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.messenger.realms.vk.users;
+
+import org.apache.http.NameValuePair;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.http.HttpTransaction;
+import org.solovyev.android.messenger.accounts.AccountState;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.http.HttpExecutor;
+import org.solovyev.android.messenger.http.HttpMetrics;
+import org.solovyev.android.messenger.http.HttpTimeouts;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.VkAccountConfiguration;
+import org.solovyev.android.messenger.realms.vk.VkRealm;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.messenger.users.UserService;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.solovyev.android.messenger.accounts.Accounts.newNeverSyncedData;
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+import static org.solovyev.android.messenger.users.Users.newEmptyUser;
+
+@RunWith(RobolectricTestRunner.class)
+public class VkUsersResolverTest {
+
+	@Nonnull
+	private VkAccount account;
+
+	@Nonnull
+	private CountingHttpExecutor httpExecutor;
+
+	/**
+	 * Users stored locally
+	 */
+	@Nonnull
+	private Map<Entity, User> users;
+
+	@Nonnull
+	private VkUsersResolver resolver;
+
+	@Before
+	public void setUp() throws Exception {
+		final VkRealm realm = new VkRealm();
+		account = new VkAccount("vk~test", realm, newEmptyUser(newEntity("vk~test", "0")), new VkAccountConfiguration("login", "password"), AccountState.enabled, newNeverSyncedData());
+		httpExecutor = new CountingHttpExecutor();
+		users = new HashMap<Entity, User>();
+		resolver = new VkUsersResolver(account, newUserService(), httpExecutor);
+	}
+
+	@Nonnull
+	private UserService newUserService() {
+		final UserService userService = mock(UserService.class);
+		when(userService.getUserById(any(Entity.class), anyBoolean(), anyBoolean())).thenAnswer(new Answer<User>() {
+			@Override
+			public User answer(InvocationOnMock invocation) throws Throwable {
+				final Entity entity = (Entity) invocation.getArguments()[0];
+				final boolean createFakeUser = (Boolean) invocation.getArguments()[2];
+				final User user = users.get(entity);
+				if (user != null) {
+					return user;
+				} else if (createFakeUser) {
+					return newEmptyUser(entity);
+				} else {
+					throw new NoSuchElementException();
+				}
+			}
+		});
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				final User user = (User) invocation.getArguments()[0];
+				users.put(user.getEntity(), user);
+				return null;
+			}
+		}).when(userService).saveUser(any(User.class));
+		return userService;
+	}
+
+	@Test
+	public void testShouldLoadUnknownUsersInOneRequest() throws Exception {
+		final List<String> userIds = new ArrayList<String>();
+		for (int i = 0; i < 100; i++) {
+			final String userId = String.valueOf(i);
+			if (i % 2 == 0) {
+				users.put(account.newUserEntity(userId), newEmptyUser(account.newUserEntity(userId)));
+			} else {
+				httpExecutor.vkUserIds.add(userId);
+			}
+			userIds.add(userId);
+		}
+
+		final Map<String, User> result = resolver.resolve(userIds);
+		assertEquals(100, result.size());
+		assertEquals(1, httpExecutor.requests);
+		assertEquals(50, httpExecutor.requestedUserIds);
+		assertEquals(100, users.size());
+
+		// all users are stored now
+		resolver.resolve(userIds);
+		assertEquals(1, httpExecutor.requests);
+	}
+
+	@Test
+	public void testShouldNotRequestNotFoundUsersAgain() throws Exception {
+		final List<String> userIds = new ArrayList<String>();
+		for (int i = 0; i < 50; i++) {
+			userIds.add(String.valueOf(i));
+		}
+
+		Map<String, User> result = resolver.resolve(userIds);
+		assertEquals(50, result.size());
+		assertEquals(1, httpExecutor.requests);
+		assertEquals(0, users.size());
+
+		result = resolver.resolve(userIds);
+		assertEquals(50, result.size());
+		assertEquals(1, httpExecutor.requests);
+	}
+
+	@Test
+	public void testShouldRequestUsersAgainIfRequestFailed() throws Exception {
+		final List<String> userIds = new ArrayList<String>();
+		for (int i = 0; i < 50; i++) {
+			userIds.add(String.valueOf(i));
+		}
+
+		httpExecutor.fail = true;
+		Map<String, User> result = resolver.resolve(userIds);
+		assertEquals(50, result.size());
+		assertEquals(1, httpExecutor.requests);
+
+		httpExecutor.fail = false;
+		result = resolver.resolve(userIds);
+		assertEquals(50, result.size());
+		assertEquals(2, httpExecutor.requests);
+	}
+
+	/**
+	 * Counts requests and returns users known to VK ({@link #vkUserIds}) for users.get requests
+	 */
+	private final class CountingHttpExecutor implements HttpExecutor {
+
+		@Nonnull
+		private final Set<String> vkUserIds = new HashSet<String>();
+
+		private int requests;
+
+		private int requestedUserIds;
+
+		private boolean fail;
+
+		@Override
+		public <R> R execute(@Nonnull HttpTransaction<R> transaction) throws IOException {
+			requests++;
+			if (fail) {
+				throw new IOException("Test");
+			}
+
+			final List<User> result = new ArrayList<User>();
+			for (NameValuePair parameter : transaction.getRequestParameters()) {
+				if (parameter.getName().equals("uids")) {
+					for (String userId : parameter.getValue().split("[^0-9]+")) {
+						if (userId.length() > 0) {
+							requestedUserIds++;
+							if (vkUserIds.contains(userId)) {
+								result.add(newEmptyUser(account.newUserEntity(userId)));
+							}
+						}
+					}
+				}
+			}
+			//noinspection unchecked
+			return (R) result;
+		}
+
+		@Override
+		public <R> R execute(@Nonnull HttpTransaction<R> transaction, @Nonnull HttpTimeouts timeouts) throws IOException {
+			return execute(transaction);
+		}
+
+		@Nonnull
+		@Override
+		public <R> List<R> execute(@Nonnull List<? extends HttpTransaction<R>> transactions, @Nonnull HttpTimeouts timeouts) throws IOException {
+			final List<R> result = new ArrayList<R>(transactions.size());
+			for (HttpTransaction<R> transaction : transactions) {
+				result.add(execute(transaction));
+			}
+			return result;
+		}
+
+		@Override
+		public <R> R executeLongPoll(@Nonnull HttpTransaction<R> transaction, @Nonnull HttpTimeouts timeouts) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Nonnull
+		@Override
+		public HttpMetrics getMetrics() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -56,6 +56,9 @@ public final class XmppAccount extends AbstractAccount<XmppAccountConfiguration>
 
 	private static final String TAG = newTag(XmppAccount.class.getSimpleName());
 
+	@Nonnull
+	private final XmppVCardLoader vCardLoader = new XmppVCardLoader(this);
+
 	public XmppAccount(@Nonnull String id,
 					   @Nonnull Realm realm,
 					   @Nonnull User user,
@@ -113,6 +116,11 @@ public final class XmppAccount extends AbstractAccount<XmppAccountConfiguration>
 		return new XmppAccountChatService(this, getXmppConnectionAware());
 	}
 
+	@Nonnull
+	XmppVCardLoader getVCardLoader() {
+		return vCardLoader;
+	}
+
 	@Nonnull
 	public Entity newUserEntity(@Nonnull String accountUserId) {
 		return newEntity(accountUserId);
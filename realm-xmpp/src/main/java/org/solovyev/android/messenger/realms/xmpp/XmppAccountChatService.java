@@ -81,6 +81,11 @@ class XmppAccountChatService extends AbstractXmppAccountService implements Accou
 		return Collections.emptyList();
 	}
 
+	@Override
+	public int backfillMessagesForChat(@Nonnull String accountChatId) {
+		return 0;
+	}
+
 	@Nonnull
 	@Override
 	public List<AccountChat> getChats() {
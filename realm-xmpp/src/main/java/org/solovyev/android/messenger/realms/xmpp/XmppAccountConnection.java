@@ -22,7 +22,9 @@ import org.jivesoftware.smack.*;
 import org.jivesoftware.smackx.ChatStateManager;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
 import org.solovyev.android.messenger.accounts.AccountDisconnectedException;
+import org.solovyev.android.messenger.accounts.connection.ConnectionScheduler;
 import org.solovyev.android.messenger.accounts.connection.LoopedAccountConnection;
+import org.solovyev.android.messenger.accounts.connection.ReconnectPolicy;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -31,8 +33,6 @@ import static org.solovyev.android.messenger.App.getApplication;
 
 public class XmppAccountConnection extends LoopedAccountConnection<XmppAccount> implements XmppConnectionAware {
 
-	private static final int CONNECTION_RETRIES = 3;
-
 	@Nullable
 	private volatile Connection connection;
 
@@ -45,44 +45,59 @@ public class XmppAccountConnection extends LoopedAccountConnection<XmppAccount>
 	@Nonnull
 	private final ConnectionListener connectionListener = new XmppConnectionListener();
 
+	@Nonnull
+	private final XmppConnector connector;
+
 	public XmppAccountConnection(@Nonnull XmppAccount account, @Nonnull Context context) {
 		super(account, context);
 		chatListener = new XmppChatListener(account);
 		rosterListener = new XmppRosterListener(account);
+		connector = XmppConnector.DEFAULT;
+	}
+
+	XmppAccountConnection(@Nonnull XmppAccount account,
+						  @Nonnull Context context,
+						  long waitMillis,
+						  @Nonnull ConnectionScheduler scheduler,
+						  @Nonnull ReconnectPolicy reconnectPolicy,
+						  @Nonnull XmppConnector connector) {
+		super(account, context, waitMillis, scheduler, reconnectPolicy);
+		chatListener = new XmppChatListener(account);
+		rosterListener = new XmppRosterListener(account);
+		this.connector = connector;
 	}
 
 	@Override
-	protected void reconnectIfDisconnected() throws AccountConnectionException {
-		if (this.connection == null) {
-			tryToConnect(0);
-		}
+	protected boolean reconnectIfDisconnected() throws AccountConnectionException {
+		return this.connection == null && tryToConnect();
 	}
 
-	@Nullable
-	private synchronized Connection tryToConnect(int connectionAttempt) throws AccountConnectionException {
+	/**
+	 * Method makes one attempt to connect, retries are scheduled according to {@link ReconnectPolicy}
+	 *
+	 * @return true if new connection was established
+	 */
+	private synchronized boolean tryToConnect() throws AccountConnectionException {
 		if (this.connection == null) {
 			final XmppAccount account = getAccount();
-			final Connection connection = new XMPPConnection(account.getConfiguration().toXmppConfiguration());
 
 			// connect to the server
 			try {
+				final Connection connection = connector.newConnection(account);
 				prepareConnection(connection, account);
 
 				this.connection = connection;
+				return true;
 			} catch (XMPPException e) {
-				if (connectionAttempt < CONNECTION_RETRIES) {
-					tryToConnect(connectionAttempt + 1);
-				} else {
-					throw new AccountConnectionException(account.getId());
-				}
+				throw new AccountConnectionException(account.getId(), e);
 			}
 		}
 
-		return this.connection;
+		return false;
 	}
 
 	private void prepareConnection(@Nonnull Connection connection, @Nonnull XmppAccount account) throws XMPPException {
-		checkConnectionStatus(connection, account);
+		connector.connect(connection, account);
 
 		if (connection.isConnected()) {
 			connection.addConnectionListener(connectionListener);
@@ -136,7 +151,9 @@ public class XmppAccountConnection extends LoopedAccountConnection<XmppAccount>
 			prepareConnection(localConnection, getAccount());
 			return localConnection;
 		} else {
-			localConnection = tryToConnect(CONNECTION_RETRIES - 1);
+			// respects reconnect policy: fails fast while circuit breaker is open
+			reconnect();
+			localConnection = connection;
 			if (localConnection != null) {
 				return localConnection;
 			} else {
@@ -165,6 +182,7 @@ public class XmppAccountConnection extends LoopedAccountConnection<XmppAccount>
 			Log.e(TAG, e.getMessage(), e);
 
 			disconnect();
+			// reconnect is done as soon as reconnect policy allows
 			continueLoop();
 		}
 	}
@@ -35,6 +35,7 @@ import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import static org.solovyev.android.messenger.App.newSubTag;
 import static org.solovyev.android.messenger.entities.Entities.newEntity;
@@ -183,7 +184,7 @@ class XmppAccountUserService extends AbstractXmppAccountService implements Accou
 													  @Nonnull String accountUserId,
 													  @Nonnull Connection connection,
 													  @Nullable String name) throws XMPPException {
-		final List<AProperty> result = new ArrayList<AProperty>();
+		final List<AProperty> result;
 
 		if (loadVCard) {
 			try {
@@ -192,43 +193,74 @@ class XmppAccountUserService extends AbstractXmppAccountService implements Accou
 
 				userCard.load(connection, accountUserId);
 
-				result.add(newProperty(User.PROPERTY_FIRST_NAME, userCard.getFirstName()));
-				result.add(newProperty(User.PROPERTY_LAST_NAME, userCard.getLastName()));
-				result.add(newProperty(User.PROPERTY_NICKNAME, userCard.getNickName()));
-				result.add(newProperty(User.PROPERTY_EMAIL, userCard.getEmailHome()));
-				result.add(newProperty(User.PROPERTY_PHONE, userCard.getPhoneHome("VOICE")));
-				result.add(newProperty(XmppRealm.USER_PROPERTY_AVATAR_HASH, userCard.getAvatarHash()));
-
-				final byte[] avatar = userCard.getAvatar();
-				if (avatar != null) {
-					result.add(newProperty(XmppRealm.USER_PROPERTY_AVATAR_BASE64, ABase64StringEncoder.getInstance().convert(avatar)));
-				}
-
-				// full name
-				final String fullName = userCard.getField("FN");
-				Users.tryParseNameProperties(result, fullName);
+				result = toVCardProperties(userCard, name);
 			} catch (XMPPException e) {
-				if (!isEmpty(name)) {
-					Users.tryParseNameProperties(result, name);
-				}
+				result = toRosterProperties(name);
 
 				// For some reason vcard loading may return timeout exception => investigate this behaviour
 				// NOTE: pidgin loads user information also very slow
 				Log.w(TAG, e.getMessage(), e);
 			}
 		} else {
+			result = toRosterProperties(name);
+		}
+
+		return result;
+	}
+
+	@Nonnull
+	private static List<AProperty> toRosterProperties(@Nullable String name) {
+		final List<AProperty> result = new ArrayList<AProperty>();
+		if (!isEmpty(name)) {
+			Users.tryParseNameProperties(result, name);
+		}
+		return result;
+	}
+
+	/**
+	 * Converts loaded vCard to user properties. Avatar hash property is always set (to empty string if user has no
+	 * avatar) and marks that vCard was loaded, see {@link XmppVCardLoader#needsVCard(String, String)}
+	 */
+	@Nonnull
+	static List<AProperty> toVCardProperties(@Nonnull VCard userCard, @Nullable String name) {
+		final List<AProperty> result = new ArrayList<AProperty>();
+
+		result.add(newProperty(User.PROPERTY_FIRST_NAME, userCard.getFirstName()));
+		result.add(newProperty(User.PROPERTY_LAST_NAME, userCard.getLastName()));
+		result.add(newProperty(User.PROPERTY_NICKNAME, userCard.getNickName()));
+		result.add(newProperty(User.PROPERTY_EMAIL, userCard.getEmailHome()));
+		result.add(newProperty(User.PROPERTY_PHONE, userCard.getPhoneHome("VOICE")));
+
+		final String avatarHash = userCard.getAvatarHash();
+		result.add(newProperty(XmppRealm.USER_PROPERTY_AVATAR_HASH, avatarHash == null ? "" : avatarHash));
+
+		final byte[] avatar = userCard.getAvatar();
+		if (avatar != null) {
+			result.add(newProperty(XmppRealm.USER_PROPERTY_AVATAR_BASE64, ABase64StringEncoder.getInstance().convert(avatar)));
+		}
+
+		// full name
+		final String fullName = userCard.getField("FN");
+		if (!isEmpty(fullName)) {
+			Users.tryParseNameProperties(result, fullName);
+		} else if (isEmpty(userCard.getFirstName()) && !isEmpty(name)) {
+			// empty vCard => name from roster
 			Users.tryParseNameProperties(result, name);
 		}
 
 		return result;
 	}
 
-	private static class UserContactsLoader implements XmppConnectedCallable<List<User>> {
+	/**
+	 * Builds contacts from roster only: vCards are loaded afterwards by {@link XmppVCardLoader} without holding
+	 * the connection
+	 */
+	private class UserContactsLoader implements XmppConnectedCallable<List<User>> {
 
 		@Nonnull
-		private final Account account;
+		private final XmppAccount account;
 
-		private UserContactsLoader(@Nonnull Account account) {
+		private UserContactsLoader(@Nonnull XmppAccount account) {
 			this.account = account;
 		}
 
@@ -239,11 +271,37 @@ class XmppAccountUserService extends AbstractXmppAccountService implements Accou
 
 			final List<User> result = new ArrayList<User>(entries.size());
 			for (RosterEntry entry : entries) {
-				result.add(toUser(account.getId(), entry.getUser(), entry.getName(), connection, account));
+				result.add(toRosterUser(entry, roster));
 			}
 
+			account.getVCardLoader().loadAsync(connection, result);
+
 			return result;
 		}
+
+		@Nonnull
+		private User toRosterUser(@Nonnull RosterEntry entry, @Nonnull Roster roster) {
+			final Entity entity = newEntity(account.getId(), entry.getUser());
+
+			User storedUser;
+			try {
+				storedUser = userService.getUserById(entity, false, false);
+			} catch (NoSuchElementException e) {
+				storedUser = null;
+			}
+
+			final List<AProperty> properties;
+			if (storedUser != null && storedUser.getPropertyValueByName(XmppRealm.USER_PROPERTY_AVATAR_HASH) != null) {
+				// vCard was loaded before => keep its properties, they are replaced only if vCard is loaded again
+				properties = new ArrayList<AProperty>(storedUser.getPropertiesCollection());
+			} else {
+				properties = toRosterProperties(entry.getName());
+			}
+
+			final MutableUser user = newUser(entity, properties);
+			user.setOnline(isUserOnline(account, roster, entity));
+			return user;
+		}
 	}
 
 	private class OnlineUsersGetter implements XmppConnectedCallable<List<User>> {
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import org.jivesoftware.smack.Connection;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Creates and opens XMPP connections for {@link XmppAccountConnection} (can be replaced in tests)
+ */
+interface XmppConnector {
+
+	@Nonnull
+	XmppConnector DEFAULT = new XmppConnector() {
+		@Nonnull
+		@Override
+		public Connection newConnection(@Nonnull XmppAccount account) {
+			return new XMPPConnection(account.getConfiguration().toXmppConfiguration());
+		}
+
+		@Override
+		public void connect(@Nonnull Connection connection, @Nonnull XmppAccount account) throws XMPPException {
+			XmppAccountConnection.checkConnectionStatus(connection, account);
+		}
+	};
+
+	@Nonnull
+	Connection newConnection(@Nonnull XmppAccount account);
+
+	/**
+	 * Method connects and logs in if <var>connection</var> is not connected
+	 */
+	void connect(@Nonnull Connection connection, @Nonnull XmppAccount account) throws XMPPException;
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import android.util.Log;
+import org.jivesoftware.smack.Connection;
+import org.jivesoftware.smack.PacketCollector;
+import org.jivesoftware.smack.Roster;
+import org.jivesoftware.smack.RosterEntry;
+import org.jivesoftware.smack.filter.PacketIDFilter;
+import org.jivesoftware.smack.packet.DefaultPacketExtension;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smack.packet.PacketExtension;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smackx.packet.VCard;
+import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.users.MutableUser;
+import org.solovyev.android.messenger.users.User;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.solovyev.android.messenger.App.newSubTag;
+import static org.solovyev.android.messenger.realms.xmpp.XmppRealm.TAG;
+import static org.solovyev.android.messenger.users.Users.newUser;
+
+/**
+ * Background stage of roster synchronization: loads vCards of contacts after they were built from roster.
+ * Not more than {@link #MAX_IN_FLIGHT} vCard requests are sent at the same time, each request waits for a reply
+ * not longer than {@link #REQUEST_TIMEOUT} and no lock is held on the connection during the waits.
+ * vCards of contacts whose avatar hash (as announced in presence, XEP-0153) didn't change are not requested.
+ * Loading blocks a thread while waiting for replies => it is done on own small pool ({@link #THREADS} loads of all
+ * accounts at the same time) and doesn't occupy threads of {@link org.solovyev.android.messenger.accounts.connection.ConnectionScheduler}.
+ */
+final class XmppVCardLoader {
+
+	static final int MAX_IN_FLIGHT = 8;
+
+	/**
+	 * Max number of accounts which vCards are loaded at the same time
+	 */
+	private static final int THREADS = 2;
+
+	static final long REQUEST_TIMEOUT = 10L * 1000L;
+
+	private static final int SAVE_BATCH_SIZE = 50;
+
+	@Nonnull
+	private static final String VCARD_UPDATE_ELEMENT = "x";
+
+	@Nonnull
+	private static final String VCARD_UPDATE_NAMESPACE = "vcard-temp:x:update";
+
+	@Nonnull
+	private static final Executor sharedExecutor = newFixedThreadPool(THREADS, new VCardLoaderThreadFactory());
+
+	@Nonnull
+	private final XmppAccount account;
+
+	@Nonnull
+	private final AtomicBoolean running = new AtomicBoolean(false);
+
+	XmppVCardLoader(@Nonnull XmppAccount account) {
+		this.account = account;
+	}
+
+	/**
+	 * Method starts loading of vCards of <var>contacts</var> in background.
+	 *
+	 * @return false if previous loading is still running (contacts will be checked on next synchronization)
+	 */
+	boolean loadAsync(@Nonnull final Connection connection, @Nonnull final List<User> contacts) {
+		if (running.compareAndSet(false, true)) {
+			sharedExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						load(connection, contacts);
+					} catch (RuntimeException e) {
+						Log.e(newSubTag(TAG, "VCards"), e.getMessage(), e);
+					} finally {
+						running.set(false);
+					}
+				}
+			});
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	private void load(@Nonnull Connection connection, @Nonnull List<User> contacts) {
+		final Roster roster = connection.getRoster();
+
+		final LinkedList<User> pending = new LinkedList<User>();
+		for (User contact : contacts) {
+			final String accountUserId = contact.getEntity().getAccountEntityId();
+			final String presenceHash = getAvatarHash(roster.getPresence(accountUserId));
+			if (needsVCard(contact.getPropertyValueByName(XmppRealm.USER_PROPERTY_AVATAR_HASH), presenceHash)) {
+				pending.add(contact);
+			}
+		}
+
+		Log.d(newSubTag(TAG, "VCards"), "Loading " + pending.size() + " of " + contacts.size() + " vCards for " + account.getId());
+
+		final LinkedList<VCardRequest> inFlight = new LinkedList<VCardRequest>();
+		final List<User> loaded = new ArrayList<User>();
+		try {
+			while (!(pending.isEmpty() && inFlight.isEmpty()) && connection.isConnected()) {
+				while (inFlight.size() < MAX_IN_FLIGHT && !pending.isEmpty()) {
+					final User contact = pending.poll();
+					final RosterEntry entry = roster.getEntry(contact.getEntity().getAccountEntityId());
+					inFlight.add(VCardRequest.send(connection, contact, entry != null ? entry.getName() : null));
+				}
+
+				// replies are awaited in order of sending: older requests expire first
+				final User user = inFlight.poll().await();
+				if (user != null) {
+					loaded.add(user);
+					if (loaded.size() >= SAVE_BATCH_SIZE) {
+						save(loaded);
+						loaded.clear();
+					}
+				}
+			}
+		} finally {
+			for (VCardRequest request : inFlight) {
+				request.cancel();
+			}
+		}
+
+		if (!loaded.isEmpty()) {
+			save(loaded);
+		}
+	}
+
+	private void save(@Nonnull List<User> users) {
+		App.getUserService().mergeContacts(account, new ArrayList<User>(users), false, true);
+	}
+
+	/**
+	 * @param storedHash   avatar hash of the stored user, null if vCard was never loaded
+	 * @param presenceHash avatar hash announced by contact's client in presence, null if unknown
+	 * @return true if vCard should be requested
+	 */
+	static boolean needsVCard(@Nullable String storedHash, @Nullable String presenceHash) {
+		if (storedHash == null) {
+			// never loaded
+			return true;
+		} else if (presenceHash == null) {
+			// client doesn't announce avatar changes (or contact is offline) => keep loaded vCard
+			return false;
+		} else {
+			return !presenceHash.equals(storedHash);
+		}
+	}
+
+	@Nullable
+	static String getAvatarHash(@Nullable Presence presence) {
+		if (presence != null) {
+			final PacketExtension extension = presence.getExtension(VCARD_UPDATE_ELEMENT, VCARD_UPDATE_NAMESPACE);
+			if (extension instanceof DefaultPacketExtension) {
+				return ((DefaultPacketExtension) extension).getValue("photo");
+			}
+		}
+		return null;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC
+	*
+	**********************************************************************
+	*/
+
+	private static final class VCardRequest {
+
+		@Nonnull
+		private final User contact;
+
+		@Nullable
+		private final String name;
+
+		@Nonnull
+		private final PacketCollector collector;
+
+		private final long deadline;
+
+		private VCardRequest(@Nonnull User contact, @Nullable String name, @Nonnull PacketCollector collector, long deadline) {
+			this.contact = contact;
+			this.name = name;
+			this.collector = collector;
+			this.deadline = deadline;
+		}
+
+		@Nonnull
+		static VCardRequest send(@Nonnull Connection connection, @Nonnull User contact, @Nullable String name) {
+			final VCard request = new VCard();
+			request.setTo(contact.getEntity().getAccountEntityId());
+			request.setType(IQ.Type.GET);
+
+			final PacketCollector collector = connection.createPacketCollector(new PacketIDFilter(request.getPacketID()));
+			connection.sendPacket(request);
+			return new VCardRequest(contact, name, collector, currentTimeMillis() + REQUEST_TIMEOUT);
+		}
+
+		/**
+		 * @return contact with properties from loaded vCard, null if vCard was not loaded
+		 */
+		@Nullable
+		User await() {
+			final Packet reply;
+			try {
+				final long timeout = deadline - currentTimeMillis();
+				reply = timeout > 0 ? collector.nextResult(timeout) : collector.pollResult();
+			} finally {
+				collector.cancel();
+			}
+
+			final String accountUserId = contact.getEntity().getAccountEntityId();
+			if (reply == null) {
+				Log.w(newSubTag(TAG, "VCards"), "vCard request timed out for " + accountUserId);
+				return null;
+			} else if (reply instanceof VCard && ((IQ) reply).getType() == IQ.Type.RESULT) {
+				final MutableUser user = newUser(contact.getEntity(), XmppAccountUserService.toVCardProperties((VCard) reply, name));
+				user.setOnline(contact.isOnline());
+				return user;
+			} else {
+				Log.w(newSubTag(TAG, "VCards"), "vCard request failed for " + accountUserId + ": " + reply.getError());
+				return null;
+			}
+		}
+
+		void cancel() {
+			collector.cancel();
+		}
+	}
+
+	private static final class VCardLoaderThreadFactory implements ThreadFactory {
+
+		@Nonnull
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(@Nonnull Runnable r) {
+			final Thread thread = new Thread(r, "Xmpp vCard loader #" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
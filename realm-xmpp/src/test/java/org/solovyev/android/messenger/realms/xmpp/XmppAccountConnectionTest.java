@@ -0,0 +1,220 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import org.jivesoftware.smack.Connection;
+import org.jivesoftware.smack.ConnectionConfiguration;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException;
+import org.junit.After;
+import org.junit.Test;
+import org.solovyev.android.messenger.XmppTest;
+import org.solovyev.android.messenger.accounts.AccountConnectionException;
+import org.solovyev.android.messenger.accounts.connection.ConnectionScheduler;
+import org.solovyev.android.messenger.accounts.connection.ReconnectPolicy;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static org.junit.Assert.*;
+import static org.robolectric.Robolectric.application;
+import static org.solovyev.android.messenger.accounts.connection.ReconnectPolicy.State.closed;
+import static org.solovyev.android.messenger.accounts.connection.ReconnectPolicy.State.open;
+import static org.solovyev.android.messenger.accounts.connection.ReconnectPolicy.newReconnectPolicy;
+
+/**
+ * Drives {@link XmppAccountConnection} through sequences of failed and successful connections of a fake server
+ */
+public class XmppAccountConnectionTest extends XmppTest {
+
+	private static final long MIN_DELAY = 40L;
+	private static final long MAX_DELAY = 200L;
+	private static final int FAILURE_THRESHOLD = 3;
+	private static final long TIMEOUT = 5000L;
+
+	@Nonnull
+	private final ScheduledExecutorService timer = newScheduledThreadPool(1);
+
+	@Nonnull
+	private final ExecutorService io = newFixedThreadPool(2);
+
+	@After
+	@Override
+	public void tearDown() throws Exception {
+		timer.shutdownNow();
+		io.shutdownNow();
+		super.tearDown();
+	}
+
+	@Test
+	public void testShouldReconnectWithBackoff() throws Exception {
+		final FakeConnector connector = new FakeConnector(true, false, false, true);
+		final XmppAccountConnection connection = newConnection(connector, newReconnectPolicy(MIN_DELAY, MAX_DELAY, FAILURE_THRESHOLD, TIMEOUT));
+
+		connection.start();
+		assertEquals(1, connector.getAttempts());
+
+		// server drops connection
+		connection.disconnect();
+		connection.continueLoop();
+
+		connector.waitForAttempts(4);
+		waitForState(connection, closed);
+
+		final ReconnectPolicy policy = connection.getReconnectPolicy();
+		assertEquals(0, policy.getFailures());
+		assertEquals(2, policy.getLatencies().getCount());
+
+		// 2nd attempt is done immediately, next ones are delayed (delay is random in [delay / 2, delay])
+		final List<Long> times = connector.getAttemptTimes();
+		assertTrue(times.get(2) - times.get(1) >= MIN_DELAY / 2);
+		assertTrue(times.get(3) - times.get(2) >= MIN_DELAY);
+
+		connection.stop();
+	}
+
+	@Test
+	public void testShouldOpenCircuitBreakerIfServerIsFlapping() throws Exception {
+		final FakeConnector connector = new FakeConnector(true, false, false, false, false, false, false);
+		final XmppAccountConnection connection = newConnection(connector, newReconnectPolicy(MIN_DELAY, MAX_DELAY, FAILURE_THRESHOLD, 60L * 60L * 1000L));
+
+		connection.start();
+		connection.disconnect();
+		connection.continueLoop();
+
+		connector.waitForAttempts(1 + FAILURE_THRESHOLD);
+		waitForState(connection, open);
+
+		// no attempts while breaker is open: neither scheduled, nor on wake up, nor on demand
+		connection.continueLoop();
+		try {
+			connection.doOnConnection(new XmppConnectedCallable<Object>() {
+				@Override
+				public Object call(@Nonnull Connection connection) {
+					fail();
+					return null;
+				}
+			});
+			fail();
+		} catch (AccountConnectionException e) {
+			// ok
+		}
+		Thread.sleep(4 * MAX_DELAY);
+
+		assertEquals(1 + FAILURE_THRESHOLD, connector.getAttempts());
+		assertEquals(1, connection.getReconnectPolicy().getOpens());
+		assertFalse(connection.isStopped());
+
+		connection.stop();
+	}
+
+	@Test
+	public void testShouldConnectAfterOpenPeriod() throws Exception {
+		final FakeConnector connector = new FakeConnector(true, false, false, false, true);
+		final XmppAccountConnection connection = newConnection(connector, newReconnectPolicy(MIN_DELAY, MAX_DELAY, FAILURE_THRESHOLD, 2 * MAX_DELAY));
+
+		connection.start();
+		connection.disconnect();
+		connection.continueLoop();
+
+		connector.waitForAttempts(1 + FAILURE_THRESHOLD);
+		waitForState(connection, open);
+
+		// probe after open period succeeds
+		connector.waitForAttempts(2 + FAILURE_THRESHOLD);
+		waitForState(connection, closed);
+		assertEquals(2, connection.getReconnectPolicy().getLatencies().getCount());
+
+		connection.stop();
+	}
+
+	@Nonnull
+	private XmppAccountConnection newConnection(@Nonnull XmppConnector connector, @Nonnull ReconnectPolicy policy) {
+		return new XmppAccountConnection(getXmppAccount(), application, 60L * 60L * 1000L, new ConnectionScheduler(timer, io), policy, connector);
+	}
+
+	private static void waitForState(@Nonnull XmppAccountConnection connection, @Nonnull ReconnectPolicy.State state) throws InterruptedException {
+		final long start = currentTimeMillis();
+		while (connection.getReconnectPolicy().getState() != state) {
+			if (currentTimeMillis() - start > TIMEOUT) {
+				fail("State is " + connection.getReconnectPolicy().getState() + ", expected: " + state);
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Fake server: each connection attempt takes next result from the script (last result is repeated)
+	 */
+	private static final class FakeConnector implements XmppConnector {
+
+		@Nonnull
+		private final List<Boolean> script;
+
+		@Nonnull
+		private final List<Long> attemptTimes = new ArrayList<Long>();
+
+		private FakeConnector(@Nonnull Boolean... script) {
+			this.script = Arrays.asList(script);
+		}
+
+		@Nonnull
+		@Override
+		public Connection newConnection(@Nonnull XmppAccount account) {
+			// connection is never opened => no network access
+			return new XMPPConnection(new ConnectionConfiguration("localhost", 5222));
+		}
+
+		@Override
+		public synchronized void connect(@Nonnull Connection connection, @Nonnull XmppAccount account) throws XMPPException {
+			final int attempt = attemptTimes.size();
+			attemptTimes.add(currentTimeMillis());
+			notifyAll();
+
+			if (!script.get(Math.min(attempt, script.size() - 1))) {
+				throw new XMPPException("Connection refused, attempt: " + attempt);
+			}
+		}
+
+		synchronized int getAttempts() {
+			return attemptTimes.size();
+		}
+
+		@Nonnull
+		synchronized List<Long> getAttemptTimes() {
+			return new ArrayList<Long>(attemptTimes);
+		}
+
+		synchronized void waitForAttempts(int attempts) throws InterruptedException {
+			final long start = currentTimeMillis();
+			while (attemptTimes.size() < attempts) {
+				final long timeLeft = TIMEOUT - (currentTimeMillis() - start);
+				if (timeLeft <= 0) {
+					fail("Only " + attemptTimes.size() + " attempts of " + attempts + " were done");
+				}
+				wait(timeLeft);
+			}
+		}
+	}
+}
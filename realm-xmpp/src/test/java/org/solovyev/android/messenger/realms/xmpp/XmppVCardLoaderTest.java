@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import org.jivesoftware.smack.packet.DefaultPacketExtension;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smackx.packet.VCard;
+import org.junit.Test;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.properties.AProperty;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class XmppVCardLoaderTest {
+
+	@Test
+	public void testShouldLoadVCardOnlyIfAvatarHashChanged() throws Exception {
+		assertTrue(XmppVCardLoader.needsVCard(null, null));
+		assertTrue(XmppVCardLoader.needsVCard(null, "hash"));
+		assertTrue(XmppVCardLoader.needsVCard("", "hash"));
+		assertTrue(XmppVCardLoader.needsVCard("old", "hash"));
+
+		assertFalse(XmppVCardLoader.needsVCard("hash", "hash"));
+		assertFalse(XmppVCardLoader.needsVCard("", ""));
+		assertFalse(XmppVCardLoader.needsVCard("hash", null));
+	}
+
+	@Test
+	public void testShouldReadAvatarHashFromPresence() throws Exception {
+		final Presence presence = new Presence(Presence.Type.available);
+		assertNull(XmppVCardLoader.getAvatarHash(presence));
+
+		final DefaultPacketExtension extension = new DefaultPacketExtension("x", "vcard-temp:x:update");
+		extension.setValue("photo", "hash");
+		presence.addExtension(extension);
+		assertEquals("hash", XmppVCardLoader.getAvatarHash(presence));
+	}
+
+	@Test
+	public void testShouldMarkVCardAsLoaded() throws Exception {
+		final VCard vCard = new VCard();
+		final List<AProperty> properties = XmppAccountUserService.toVCardProperties(vCard, "Sergey Solovyev");
+
+		assertEquals("", getValue(properties, XmppRealm.USER_PROPERTY_AVATAR_HASH));
+		// empty vCard => roster name is used
+		assertEquals("Sergey", getValue(properties, User.PROPERTY_FIRST_NAME));
+		assertEquals("Solovyev", getValue(properties, User.PROPERTY_LAST_NAME));
+	}
+
+	@Nullable
+	private static String getValue(@Nonnull List<AProperty> properties, @Nonnull String name) {
+		String result = null;
+		for (AProperty property : properties) {
+			if (property.getName().equals(name)) {
+				// last property wins
+				result = property.getValue();
+			}
+		}
+		return result;
+	}
+}